@@ -75,6 +75,14 @@ public class Main {
                 "tests/us9_2.txt"
         };
 
+        String[] args20 = {"br.ufal.ic.p2.jackut.Facade",
+                "tests/us10_1.txt"
+        };
+
+        String[] args21 = {"br.ufal.ic.p2.jackut.Facade",
+                "tests/us10_2.txt"
+        };
+
 
 
         EasyAccept.main(args2);
@@ -99,6 +107,9 @@ public class Main {
         EasyAccept.main(args18);
         EasyAccept.main(args19);
 
+        EasyAccept.main(args20);
+        EasyAccept.main(args21);
+
 
     }
 
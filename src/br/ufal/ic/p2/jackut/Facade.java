@@ -1,21 +1,77 @@
 package br.ufal.ic.p2.jackut;
 
+import br.ufal.ic.p2.jackut.concorrencia.Comando;
+import br.ufal.ic.p2.jackut.concorrencia.EscritorUnico;
+import br.ufal.ic.p2.jackut.concorrencia.Travas;
 import br.ufal.ic.p2.jackut.models.exceptions.*;
 import br.ufal.ic.p2.jackut.models.exceptions.RelacionamentoExceptions.*;
+import br.ufal.ic.p2.jackut.persistence.*;
 import br.ufal.ic.p2.jackut.services.*;
 
 import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Flow;
 
 /**
- * Classe Facade que gerencia usurios, sesses, amizades e mensagens no sistema Jackut.
+ * Classe Facade que gerencia usuários, sessões, amizades e mensagens no sistema Jackut.
+ *
+ * <p>No modo concorrente (padrão), a Facade pode ser chamada por várias threads: cada operação trava apenas
+ * os usuários (e a comunidade) que toca, pelas {@link Travas} por faixa, e as consultas {@code ehAmigo},
+ * {@code getAtributoUsuario}, {@code getComunidades}, {@code getAmigos} e as de descrição e dono de comunidade
+ * não tomam trava nenhuma. A remoção de usuários, o checkpoint e a manutenção do armazenamento usam a trava exclusiva.</p>
+ *
+ * <p>No modo "escritor", as operações que alteram o sistema são aplicadas em lotes por uma única thread
+ * ({@link EscritorUnico}), sem travas, e todas as consultas leem as visões imutáveis do {@link VisaoService}.
+ * Cada lote é gravado de uma vez no armazenamento: no journal síncrono, um único fsync por lote.</p>
  */
 public class Facade implements Serializable {
 
     private static final long serialVersionUID = 1L;
     private static final String DATA_FILE = "jackut_data.ser";
 
+    /**
+     * Modo de persistência: "journal" (padrão) anexa cada mutação ao journal e grava os snapshots
+     * apenas nos checkpoints; "snapshot" regrava o arquivo completo do serviço a cada mutação;
+     * "memoria" mantém todo o estado apenas na memória, sem ler nem gravar arquivos.
+     */
+    private static final String MODO_PERSISTENCIA = System.getProperty("jackut.persistencia", "journal");
+
+    /**
+     * Durabilidade do journal: "sincrono" (fsync a cada operação), "grupo" (padrão; gravação em lote por
+     * uma thread de fundo) ou "encerramento" (persistência apenas em {@link #encerrarSistema()}).
+     */
+    private static final ModoDurabilidade DURABILIDADE = ModoDurabilidade.porNome(System.getProperty("jackut.durabilidade", "grupo"));
+
+    /** Intervalo, em milissegundos, entre as gravações em lote do modo "grupo". */
+    private static final long INTERVALO_LOTE_MS = Long.getLong("jackut.lote.intervaloMs", 10);
+
+    /** Tamanho, em bytes, a partir do qual o lote pendente do modo "grupo" é gravado antes do intervalo. */
+    private static final int LIMITE_LOTE_BYTES = Integer.getInteger("jackut.lote.limiteBytes", 64 * 1024);
+
+    /** Tamanho, em bytes, do journal ativo a partir do qual ele é compactado em segundo plano (0 desativa). */
+    private static final long LIMITE_COMPACTACAO_BYTES = Long.getLong("jackut.compactacao.limiteBytes", 16L * 1024 * 1024);
+
+    /** Tempo, em milissegundos, desde o último checkpoint a partir do qual um journal não vazio é compactado (0 desativa). */
+    private static final long LIMITE_COMPACTACAO_MS = Long.getLong("jackut.compactacao.idadeMs", 5 * 60 * 1000);
+
+    /**
+     * Concorrência: "travas" (padrão) permite chamadas de várias threads, com travas por usuário;
+     * "escritor" aplica as operações numa única thread escritora, em lotes, e responde as consultas
+     * por visões imutáveis; "nenhuma" dispensa as travas, para uso por uma única thread.
+     */
+    private static final String CONCORRENCIA = System.getProperty("jackut.concorrencia", "travas");
+
+    /** Tamanho do anel de comandos do modo "escritor", que é também o máximo de operações por lote. */
+    private static final int CAPACIDADE_ESCRITOR = Integer.getInteger("jackut.escritor.capacidade", 1024);
+
+    /** Quando verdadeiro, imprime em stderr o tempo de carregamento de cada armazenamento na inicialização. */
+    private static final boolean RELATORIO_INICIALIZACAO = Boolean.getBoolean("jackut.relatorioInicializacao");
+
     private UsuarioService usuarioService;
     private SessaoService sessaoService;
     private AmizadeService amizadeService;
@@ -24,12 +80,34 @@ public class Facade implements Serializable {
     private RelacionamentoService relacionamentoService;
     private MensagemService mensagemService;
     private RemoverService removerService;
+    private SugestaoService sugestaoService;
+    private Armazenamento armazenamento;
+    private InicializacaoParalela inicializacao;
+    private Travas travas;
 
+    /** Thread escritora e visões de leitura do modo "escritor"; nulas nos demais modos. */
+    private EscritorUnico escritor;
+    private VisaoService visoes;
+
+    /**
+     * Cria o sistema com o armazenamento definido pela propriedade {@code jackut.persistencia}.
+     */
     public Facade() {
+        this(criarArmazenamento(MODO_PERSISTENCIA));
+    }
+
+    /**
+     * Cria o sistema com o armazenamento informado, carregando o estado persistido se ele for persistente.
+     *
+     * @param armazenamento Estratégia de persistência usada por todos os serviços.
+     */
+    public Facade(Armazenamento armazenamento) {
+        this.armazenamento = armazenamento;
+        this.travas = new Travas(criarModoConcorrente(CONCORRENCIA), this::manutencao);
         this.usuarioService = new UsuarioService();
         this.sessaoService = new SessaoService(usuarioService);
 
-// primeiro crie os objetos com dependncias mnimas
+// primeiro crie os objetos com dependências mínimas
         this.recadoService = new RecadoService(usuarioService, sessaoService); // sem relacionamento por agora
         this.relacionamentoService = new RelacionamentoService(usuarioService, sessaoService); // idem
 
@@ -40,42 +118,329 @@ public class Facade implements Serializable {
 // agora pode instanciar os outros
         this.comunidadeService = new ComunidadeService(usuarioService, sessaoService);
         this.amizadeService = new AmizadeService(usuarioService, sessaoService, relacionamentoService);
-        this.mensagemService = new MensagemService(comunidadeService, sessaoService);
+        this.mensagemService = new MensagemService(usuarioService, comunidadeService, sessaoService);
+        this.comunidadeService.setMensagemService(mensagemService);
 
         this.removerService = new RemoverService(usuarioService, amizadeService, recadoService, comunidadeService, relacionamentoService, mensagemService, sessaoService);
+        this.sugestaoService = new SugestaoService(usuarioService, amizadeService, relacionamentoService);
+
+        usuarioService.setArmazenamento(armazenamento);
+        recadoService.setArmazenamento(armazenamento);
+        comunidadeService.setArmazenamento(armazenamento);
+        amizadeService.setArmazenamento(armazenamento);
+        relacionamentoService.setArmazenamento(armazenamento);
+        mensagemService.setArmazenamento(armazenamento);
+
+        armazenamento.preparar();
+        carregarEstado();
+        armazenamento.recuperar();
+
+        if (CONCORRENCIA.equals("escritor")) {
+            this.escritor = EscritorUnico.iniciar(CAPACIDADE_ESCRITOR, new EscritorUnico.Lote() {
+                @Override
+                public void iniciar() {
+                    armazenamento.iniciarLote();
+                }
+
+                @Override
+                public void concluir(Set<String> chaves, boolean todas) {
+                    concluirLote(chaves, todas);
+                }
+            });
+            this.visoes = new VisaoService(usuarioService, amizadeService, comunidadeService, relacionamentoService, escritor);
+        }
+    }
+
+    /**
+     * Cria o armazenamento correspondente a um modo de persistência.
+     *
+     * @param modo "journal", "snapshot" ou "memoria".
+     * @return O armazenamento; no modo "journal", com a durabilidade definida por {@code jackut.durabilidade}.
+     * @throws IllegalArgumentException Se o modo não existir.
+     */
+    public static Armazenamento criarArmazenamento(String modo) {
+        switch (modo) {
+            case "journal":
+                return new ArmazenamentoJournal(new Journal(Journal.ARQUIVO_PADRAO, DURABILIDADE, INTERVALO_LOTE_MS, LIMITE_LOTE_BYTES),
+                        LIMITE_COMPACTACAO_BYTES, LIMITE_COMPACTACAO_MS);
+            case "snapshot":
+                return new ArmazenamentoSnapshot();
+            case "memoria":
+                return new ArmazenamentoMemoria();
+            default:
+                throw new IllegalArgumentException("Modo de persistência desconhecido: " + modo);
+        }
+    }
 
+    /**
+     * Interpreta o modo de concorrência.
+     *
+     * @param modo "travas", "escritor" ou "nenhuma".
+     * @return {@code true} se as operações devem tomar as travas por usuário.
+     * @throws IllegalArgumentException Se o modo não existir.
+     */
+    private static boolean criarModoConcorrente(String modo) {
+        switch (modo) {
+            case "travas":
+                return true;
+            case "escritor":
+            case "nenhuma":
+                return false;
+            default:
+                throw new IllegalArgumentException("Modo de concorrência desconhecido: " + modo);
+        }
+    }
+
+    /**
+     * Executa o trabalho adiado do armazenamento (gravação dos snapshots, captura da compactação) ao fim de
+     * cada operação, sob a trava exclusiva, para que nenhuma outra operação altere o estado durante a leitura.
+     */
+    private void manutencao() {
+        if (armazenamento.manutencaoPendente()) {
+            sob(travas.exclusiva(), Comando.de(armazenamento::manutencao));
+        }
+    }
+
+    /**
+     * Conclui um lote do modo "escritor", na thread escritora: grava as mutações do lote, executa a manutenção
+     * do armazenamento e republica as visões das chaves tocadas, antes que as threads do lote sejam liberadas.
+     *
+     * @param chaves Logins e chaves de comunidade tocados pelo lote.
+     * @param todas Se o lote alterou o sistema inteiro.
+     */
+    private void concluirLote(Set<String> chaves, boolean todas) {
+        try {
+            armazenamento.concluirLote();
+            if (armazenamento.manutencaoPendente()) {
+                armazenamento.manutencao();
+            }
+        } finally {
+            visoes.atualizar(chaves, todas); // As mutações já valem na memória, mesmo que não tenham chegado ao disco
+        }
+    }
+
+    /**
+     * Executa uma operação que altera os usuários ou as comunidades informados: na thread escritora,
+     * republicando as suas visões, ou sob as travas das suas faixas.
+     *
+     * @param comando A operação.
+     * @param chaves Logins ou chaves de comunidade tocados pela operação.
+     * @param <T> Tipo do resultado.
+     * @return O resultado da operação.
+     */
+    private <T> T executar(Comando<T> comando, String... chaves) {
+        if (escritor != null) {
+            return escritor.executar(comando, chaves);
+        }
+        return sob(travas.travar(chaves), comando);
+    }
+
+    private void executar(Comando.Acao acao, String... chaves) {
+        executar(Comando.de(acao), chaves);
+    }
+
+    /**
+     * Executa uma operação que só altera caixas de recados e mensagens de comunidades, que não fazem parte das visões:
+     * na thread escritora, sem republicar visão nenhuma, ou sob as travas das chaves informadas.
+     *
+     * @param comando A operação.
+     * @param chaves Logins tocados pela operação.
+     * @param <T> Tipo do resultado.
+     * @return O resultado da operação.
+     */
+    private <T> T executarNasCaixas(Comando<T> comando, String... chaves) {
+        return escritor != null ? escritor.executar(comando) : executar(comando, chaves);
+    }
+
+    /**
+     * Executa uma operação que altera o sistema inteiro: na thread escritora, descartando todas as visões,
+     * ou sob a trava exclusiva.
+     *
+     * @param acao A operação.
+     */
+    private void executarExclusivo(Comando.Acao acao) {
+        if (escritor != null) {
+            escritor.executarExclusivo(Comando.de(acao));
+            return;
+        }
+        sob(travas.exclusiva(), Comando.de(acao));
+    }
+
+    /**
+     * Executa uma consulta sob as travas das faixas das chaves informadas, no modo de travas.
+     *
+     * @param consulta A consulta.
+     * @param chaves Logins ou chaves de comunidade lidos pela consulta.
+     * @param <T> Tipo do resultado.
+     * @return O resultado da consulta.
+     */
+    private <T> T consultar(Comando<T> consulta, String... chaves) {
+        return sob(travas.travar(chaves), consulta);
+    }
+
+    /**
+     * Executa um comando com uma trava já tomada e a libera ao final, relançando a exceção declarada pelo método da Facade.
+     *
+     * @param trava Trava tomada para o comando.
+     * @param comando O comando.
+     * @param <T> Tipo do resultado.
+     * @return O resultado do comando.
+     */
+    private static <T> T sob(Travas.Trava trava, Comando<T> comando) {
+        try {
+            return comando.executar();
+        } catch (Exception e) {
+            throw Comando.relancar(e);
+        } finally {
+            trava.close();
+        }
+    }
+
+    /**
+     * Acrescenta o login do usuário da sessão às chaves de uma operação.
+     *
+     * @param idSessao Sessão do usuário que executa a operação.
+     * @param chaves Outros logins ou chaves de comunidade tocados pela operação.
+     * @return As chaves, começando pelo login (nulo se a sessão não existir).
+     */
+    private String[] chavesSessao(String idSessao, String... chaves) {
+        String[] todas = new String[chaves.length + 1];
+        todas[0] = sessaoService.getLogin(idSessao);
+        System.arraycopy(chaves, 0, todas, 1, chaves.length);
+        return todas;
+    }
+
+    /**
+     * Formata um conjunto de logins ou nomes como nos scripts de aceitação: "{a,b,c}".
+     *
+     * @param itens Os itens, na ordem de exibição.
+     * @return O texto formatado.
+     */
+    private static String formatar(Collection<String> itens) {
+        return itens.isEmpty() ? "{}" : "{" + String.join(",", itens) + "}";
+    }
+
+    /**
+     * Formata as falhas de um envio em lote: "{destino=erro,...}".
+     *
+     * @param falhas Os destinos que falharam, com a mensagem do erro de cada um.
+     * @return O texto formatado.
+     */
+    private static String formatar(Map<String, String> falhas) {
+        List<String> itens = new ArrayList<>(falhas.size());
+        falhas.forEach((destino, erro) -> itens.add(destino + "=" + erro));
+        return formatar(itens);
+    }
+
+    /**
+     * Lê uma lista no mesmo formato das listas retornadas, "{a,b,c}" (as chaves são opcionais).
+     *
+     * @param texto A lista.
+     * @return Os itens, na ordem em que aparecem; vazia para "{}".
+     */
+    private static List<String> lerLista(String texto) {
+        String itens = texto.startsWith("{") && texto.endsWith("}") ? texto.substring(1, texto.length() - 1) : texto;
+        return itens.isEmpty() ? List.of() : Arrays.asList(itens.split(","));
     }
 
     /**
-     * Reseta o sistema, apagando todos os usurios cadastrados.
+     * Carrega em paralelo os armazenamentos independentes; as caixas de recados e as mensagens,
+     * mais pesadas, só são lidas no primeiro uso.
+     */
+    private void carregarEstado() {
+        this.inicializacao = new InicializacaoParalela()
+                .imediato(usuarioService.getCarregamento())
+                .imediato(relacionamentoService.getCarregamento())
+                .imediato(comunidadeService.getCarregamento())
+                .imediato(amizadeService.getCarregamento())
+                .adiado(recadoService.getCarregamento())
+                .adiado(mensagemService.getCarregamento());
+
+        if (!armazenamento.isPersistente()) {
+            // Nada a ler: todos os serviços começam vazios.
+            usuarioService.getCarregamento().dispensar();
+            relacionamentoService.getCarregamento().dispensar();
+            comunidadeService.getCarregamento().dispensar();
+            amizadeService.getCarregamento().dispensar();
+            recadoService.getCarregamento().dispensar();
+            mensagemService.getCarregamento().dispensar();
+        }
+        inicializacao.executar();
+
+        if (RELATORIO_INICIALIZACAO) {
+            System.err.print(inicializacao.relatorio());
+        }
+    }
+
+    /**
+     * Retorna o relatório de inicialização, com o tempo de carregamento de cada armazenamento.
+     *
+     * @return O relatório, uma linha por armazenamento.
+     */
+    public String getRelatorioInicializacao() {
+        return inicializacao.relatorio();
+    }
+
+    /**
+     * Retorna as métricas da persistência: tamanho do journal, tempo de recuperação e último checkpoint.
+     *
+     * @return As métricas do armazenamento numa linha.
+     */
+    public String getEstatisticasPersistencia() {
+        return armazenamento.estatisticas();
+    }
+
+    /**
+     * Descreve o modo de concorrência; no modo "escritor", com a quantidade de operações e de lotes aplicados.
+     *
+     * @return As métricas numa linha.
+     */
+    public String getEstatisticasConcorrencia() {
+        return escritor != null ? escritor.estatisticas() : (travas.isAtivas() ? "travas por faixa" : "sem travas");
+    }
+
+    /**
+     * Grava em paralelo os snapshots de todos os serviços, confirmados como uma única geração do manifesto,
+     * e, no modo journal, esvazia o journal.
+     */
+    private void checkpoint() {
+        armazenamento.checkpoint();
+    }
+
+    /**
+     * Reseta o sistema, apagando todos os usuários cadastrados.
      */
     public void zerarSistema() {
-        usuarioService.zerar();
-        recadoService.zerar();
-        comunidadeService.zerar();
-        amizadeService.zerar();
-        relacionamentoService.zerar();
-        mensagemService.zerar();
+        executarExclusivo(() -> {
+            usuarioService.zerar();
+            recadoService.zerar();
+            comunidadeService.zerar();
+            amizadeService.zerar();
+            relacionamentoService.zerar();
+            mensagemService.zerar();
+
+            armazenamento.checkpoint();
+        });
+        sugestaoService.invalidarTudo();
     }
 
     /**
      * Encerra o sistema e persiste os dados.
      */
     public void encerrarSistema() {
-        usuarioService.saveUsuariosToFile();
-        recadoService.saveRecadosToFile();
-        comunidadeService.saveComunidadesToFile();
-        amizadeService.saveAmizadesToFile();
-        relacionamentoService.saveRelacionamentoToFile();
-        mensagemService.saveMensagensToFile();
+        if (escritor != null) {
+            escritor.executar(Comando.de(this::checkpoint)); // Nenhuma visão muda
+            return;
+        }
+        sob(travas.exclusiva(), Comando.de(this::checkpoint));
     }
 
     public String getAtributoUsuario(String login, String atributo) throws UsuarioException {
-        return usuarioService.getAtributoUsuario(login, atributo);
+        return visoes != null ? visoes.getAtributoUsuario(login, atributo) : usuarioService.getAtributoUsuario(login, atributo);
     }
 
     public void criarUsuario(String login, String senha, String nome) throws UsuarioException {
-        usuarioService.criarUsuario(login, senha, nome);
+        executar(() -> usuarioService.criarUsuario(login, senha, nome), login);
     }
 
     public String abrirSessao(String login, String senha) throws LoginSenhaInvalidosException, UsuarioNaoCadastradoException {
@@ -83,101 +448,287 @@ public class Facade implements Serializable {
     }
 
     public void editarPerfil(String idSessao, String atributo, String valor) throws UsuarioException {
-        sessaoService.editarPerfil(idSessao, atributo, valor);
+        executar(() -> sessaoService.editarPerfil(idSessao, atributo, valor), chavesSessao(idSessao));
     }
 
     public void adicionarAmigo(String idSessao, String amigo) throws UsuarioException, UsuarioEhSeuInimigoException {
-        amizadeService.adicionarAmigo(idSessao, amigo);
+        executar(() -> amizadeService.adicionarAmigo(idSessao, amigo), chavesSessao(idSessao, amigo));
+        sugestaoService.invalidarAmizade(sessaoService.getLogin(idSessao), amigo);
     }
 
     public boolean ehAmigo(String login, String amigo) throws UsuarioException {
-        return amizadeService.ehAmigo(login, amigo);
+        return visoes != null ? visoes.ehAmigo(login, amigo) : amizadeService.ehAmigo(login, amigo);
     }
 
     public String getAmigos(String login) throws UsuarioException {
-        Set<String> amigos =  amizadeService.getAmigos(login);
-        return amigos.isEmpty() ? "{}" : "{" + String.join(",", amigos) + "}";
+        return formatar(visoes != null ? visoes.getAmigos(login) : amizadeService.getAmigos(login));
+    }
+
+    /**
+     * Sugere novos amigos a um usuário: os amigos dos seus amigos, do que tem mais amigos em comum com ele ao que
+     * tem menos e, no empate, do que tem mais comunidades em comum. Amigos, convites pendentes enviados pelo
+     * usuário e inimigos dele não são sugeridos.
+     *
+     * @param login Login do usuário.
+     * @param quantidade Quantidade máxima de sugestões.
+     * @return Os logins sugeridos, como "{a,b}"; "{}" se não houver sugestões.
+     * @throws UsuarioNaoCadastradoException Se o usuário não existir.
+     */
+    public String sugerirAmigos(String login, int quantidade) throws UsuarioNaoCadastradoException {
+        return formatar(sugestaoService.sugerirAmigos(login, quantidade));
+    }
+
+    /**
+     * Retorna os amigos em comum de dois usuários, sem travas.
+     *
+     * @param login Login de um usuário.
+     * @param outro Login do outro.
+     * @return Os logins dos amigos em comum, na ordem em que os usuários foram registrados, como "{a,b}".
+     * @throws UsuarioNaoCadastradoException Se algum dos usuários não existir.
+     */
+    public String getAmigosEmComum(String login, String outro) throws UsuarioNaoCadastradoException {
+        return formatar(amizadeService.getAmigosEmComum(login, outro));
+    }
+
+    /**
+     * Conta os amigos em comum de dois usuários, sem criar a lista deles.
+     *
+     * @param login Login de um usuário.
+     * @param outro Login do outro.
+     * @return A quantidade de amigos em comum.
+     * @throws UsuarioNaoCadastradoException Se algum dos usuários não existir.
+     */
+    public int contarAmigosEmComum(String login, String outro) throws UsuarioNaoCadastradoException {
+        return amizadeService.contarAmigosEmComum(login, outro);
     }
 
     public void enviarRecado(String idSessao, String destinatario, String recado) throws UsuarioException, UsuarioEhSeuInimigoException {
-        recadoService.enviarRecado(idSessao, destinatario, recado);
+        // Sem a trava do destinatário: a caixa de recados aceita vários remetentes ao mesmo tempo.
+        executarNasCaixas(Comando.de(() -> recadoService.enviarRecado(idSessao, destinatario, recado)), chavesSessao(idSessao));
+    }
+
+    /**
+     * Envia o mesmo recado a vários destinatários, validando a sessão uma única vez e persistindo todos os envios
+     * juntos. Destinatários inexistentes, inimigos ou o próprio remetente não recebem o recado, sem interromper
+     * o envio aos demais; um destinatário repetido o recebe uma única vez.
+     *
+     * @param idSessao Sessão do remetente.
+     * @param destinatarios Logins dos destinatários, como "{login1,login2}".
+     * @param recado Texto do recado.
+     * @return Os destinatários que não receberam o recado, com o erro de cada um, como "{login=erro}";
+     *         "{}" se todos o receberam.
+     * @throws UsuarioException Se a sessão for inválida.
+     */
+    public String enviarRecados(String idSessao, String destinatarios, String recado) throws UsuarioException {
+        List<String> lista = lerLista(destinatarios);
+        return formatar(executarNasCaixas(() -> recadoService.enviarRecados(idSessao, lista, recado), chavesSessao(idSessao)));
     }
 
     public String lerRecado(String idSessao) throws UsuarioException {
-        return recadoService.lerRecado(idSessao);
+        return executarNasCaixas(() -> recadoService.lerRecado(idSessao), chavesSessao(idSessao));
+    }
+
+    /**
+     * Lê de uma vez até {@code max} recados do usuário da sessão.
+     *
+     * @param idSessao Sessão do usuário.
+     * @param max Quantidade máxima de recados.
+     * @return Os recados lidos, como "{r1,r2}"; "{}" se não houver recados.
+     * @throws UsuarioException Se a sessão for inválida.
+     */
+    public String lerRecados(String idSessao, int max) throws UsuarioException {
+        return formatar(executarNasCaixas(() -> recadoService.lerRecados(idSessao, max), chavesSessao(idSessao)));
+    }
+
+    /**
+     * Conta os recados ainda não lidos do usuário da sessão, sem lê-los nem lançar exceção quando não há nenhum.
+     *
+     * @param idSessao Sessão do usuário.
+     * @return A quantidade de recados.
+     * @throws UsuarioException Se a sessão for inválida.
+     */
+    public int contarRecados(String idSessao) throws UsuarioException {
+        return executarNasCaixas(() -> recadoService.contarRecados(idSessao), chavesSessao(idSessao));
+    }
+
+    /**
+     * Assina os recados do usuário da sessão: cada recado que chega à sua caixa é entregue ao assinante assim
+     * que ele o pedir ({@link Flow.Subscription#request(long)}), sem consultas repetidas a {@link #lerRecado(String)}.
+     * Um recado entregue é retirado da caixa e a leitura é persistida como em {@link #lerRecados(String, int)};
+     * os recados que o assinante ainda não pediu continuam na caixa.
+     *
+     * @param idSessao Sessão do usuário.
+     * @return O publicador dos recados do usuário.
+     * @throws UsuarioException Se a sessão for inválida.
+     */
+    public Flow.Publisher<String> assinarRecados(String idSessao) throws UsuarioException {
+        return recadoService.assinarRecados(idSessao,
+                max -> executarNasCaixas(() -> recadoService.lerRecados(idSessao, max), chavesSessao(idSessao)));
     }
 
     public void criarComunidade(String idSessao, String nome, String descricao) throws UsuarioException, ComunidadeNomeExisteException {
-        comunidadeService.criarComunidade(idSessao, nome, descricao);
+        executar(() -> comunidadeService.criarComunidade(idSessao, nome, descricao), chavesSessao(idSessao, Travas.comunidade(nome)));
+        sugestaoService.invalidarComunidade(sessaoService.getLogin(idSessao));
     }
 
     public String getDescricaoComunidade(String nomeComunidade) throws ComunidadeNaoExisteException {
-        return comunidadeService.getDescricaoComunidade(nomeComunidade);
+        return visoes != null ? visoes.getDescricaoComunidade(nomeComunidade) : comunidadeService.getDescricaoComunidade(nomeComunidade);
     }
 
     public String getDonoComunidade(String nomeComunidade) throws ComunidadeNaoExisteException {
-        return comunidadeService.getDonoComunidade(nomeComunidade);
+        return visoes != null ? visoes.getDonoComunidade(nomeComunidade) : comunidadeService.getDonoComunidade(nomeComunidade);
     }
 
     public String getMembrosComunidade(String nomeComunidade) throws ComunidadeNaoExisteException {
-        Set<String> membrosComunidade = comunidadeService.getMembrosComunidade(nomeComunidade);
-        return membrosComunidade.isEmpty() ? "{}" : "{" + String.join(",", membrosComunidade) + "}";
+        if (visoes != null) {
+            return formatar(visoes.getMembrosComunidade(nomeComunidade));
+        }
+        return consultar(() -> formatar(comunidadeService.getMembrosComunidade(nomeComunidade)), Travas.comunidade(nomeComunidade));
     }
 
     public String getComunidades(String login) throws UsuarioNaoCadastradoException {
-        List<String> comunidadesDoUsuario = comunidadeService.getComunidades(login);
+        return formatar(visoes != null ? visoes.getComunidades(login) : comunidadeService.getComunidades(login));
+    }
 
-        return comunidadesDoUsuario.isEmpty() ? "{}" : "{" + String.join(",", comunidadesDoUsuario) + "}";
+    /**
+     * Retorna as comunidades em comum de dois usuários, sem travas.
+     *
+     * @param login Login de um usuário.
+     * @param outro Login do outro.
+     * @return Os nomes das comunidades em comum, em ordem alfabética, como "{a,b}".
+     * @throws UsuarioNaoCadastradoException Se algum dos usuários não existir.
+     */
+    public String getComunidadesEmComum(String login, String outro) throws UsuarioNaoCadastradoException {
+        return formatar(comunidadeService.getComunidadesEmComum(login, outro));
+    }
+
+    /**
+     * Conta as comunidades em comum de dois usuários, sem criar a lista delas.
+     *
+     * @param login Login de um usuário.
+     * @param outro Login do outro.
+     * @return A quantidade de comunidades em comum.
+     * @throws UsuarioNaoCadastradoException Se algum dos usuários não existir.
+     */
+    public int contarComunidadesEmComum(String login, String outro) throws UsuarioNaoCadastradoException {
+        return comunidadeService.contarComunidadesEmComum(login, outro);
     }
 
     public void adicionarComunidade(String idSessao, String nome) throws UsuarioException, ComunidadeNaoExisteException, UsuarioJaFazParteComunidadeException {
-        comunidadeService.adicionarComunidade(idSessao, nome);
+        executar(() -> comunidadeService.adicionarComunidade(idSessao, nome), chavesSessao(idSessao, Travas.comunidade(nome)));
+        sugestaoService.invalidarComunidade(sessaoService.getLogin(idSessao));
     }
 
     public String lerMensagem(String idSessao) throws UsuarioException {
-        return mensagemService.lerMensagem(idSessao);
+        return executarNasCaixas(() -> mensagemService.lerMensagem(idSessao), chavesSessao(idSessao));
+    }
+
+    /**
+     * Lê de uma vez até {@code max} mensagens de comunidades do usuário da sessão.
+     *
+     * @param idSessao Sessão do usuário.
+     * @param max Quantidade máxima de mensagens.
+     * @return As mensagens lidas, como "{m1,m2}"; "{}" se não houver mensagens.
+     * @throws UsuarioException Se a sessão for inválida.
+     */
+    public String lerMensagens(String idSessao, int max) throws UsuarioException {
+        return formatar(executarNasCaixas(() -> mensagemService.lerMensagens(idSessao, max), chavesSessao(idSessao)));
+    }
+
+    /**
+     * Conta as mensagens de comunidades ainda não lidas pelo usuário da sessão, sem lê-las nem lançar exceção
+     * quando não há nenhuma.
+     *
+     * @param idSessao Sessão do usuário.
+     * @return A quantidade de mensagens.
+     * @throws UsuarioException Se a sessão for inválida.
+     */
+    public int contarMensagens(String idSessao) throws UsuarioException {
+        return executarNasCaixas(() -> mensagemService.contarMensagens(idSessao), chavesSessao(idSessao));
+    }
+
+    /**
+     * Assina as mensagens de comunidades do usuário da sessão, com as mesmas regras de entrega de
+     * {@link #assinarRecados(String)}.
+     *
+     * @param idSessao Sessão do usuário.
+     * @return O publicador das mensagens do usuário.
+     * @throws UsuarioException Se a sessão for inválida.
+     */
+    public Flow.Publisher<String> assinarMensagens(String idSessao) throws UsuarioException {
+        return mensagemService.assinarMensagens(idSessao,
+                max -> executarNasCaixas(() -> mensagemService.lerMensagens(idSessao, max), chavesSessao(idSessao)));
     }
 
     public void enviarMensagem(String idSessao, String comunidade, String mensagem) throws UsuarioException, ComunidadeNaoExisteException {
-        mensagemService.enviarMensagem(idSessao, comunidade, mensagem);
+        // Só a comunidade: a mensagem vai para o log dela, e não para a fila de cada membro.
+        executarNasCaixas(Comando.de(() -> mensagemService.enviarMensagem(idSessao, comunidade, mensagem)), Travas.comunidade(comunidade));
     }
 
+    /**
+     * Envia a mesma mensagem a várias comunidades, validando a sessão uma única vez e persistindo todos os envios
+     * juntos. Comunidades inexistentes não interrompem o envio às demais; uma comunidade repetida recebe a
+     * mensagem uma única vez.
+     *
+     * @param idSessao Sessão do remetente.
+     * @param comunidades Nomes das comunidades, como "{comunidade1,comunidade2}".
+     * @param mensagem Texto da mensagem.
+     * @return As comunidades que não receberam a mensagem, com o erro de cada uma, como "{comunidade=erro}";
+     *         "{}" se todas a receberam.
+     * @throws UsuarioException Se a sessão for inválida.
+     */
+    public String enviarMensagens(String idSessao, String comunidades, String mensagem) throws UsuarioException {
+        List<String> lista = lerLista(comunidades);
+        String[] chaves = new String[lista.size()];
+        for (int i = 0; i < chaves.length; i++) {
+            chaves[i] = Travas.comunidade(lista.get(i));
+        }
+        return formatar(executarNasCaixas(() -> mensagemService.enviarMensagens(idSessao, lista, mensagem), chaves));
+    }
 
     public boolean ehFa(String login, String idolo) {
-        return relacionamentoService.ehFa(login, idolo);
+        if (visoes != null) {
+            return visoes.ehFa(login, idolo);
+        }
+        return consultar(() -> relacionamentoService.ehFa(login, idolo), login);
     }
 
     public void adicionarIdolo(String idSessao, String nome) throws UsuarioException, UsuarioEhSeuInimigoException {
-        relacionamentoService.adicionarIdolo(idSessao, nome);
+        executar(() -> relacionamentoService.adicionarIdolo(idSessao, nome), chavesSessao(idSessao, nome));
     }
 
     public String getFas(String login) {
-        Set<String> fas = relacionamentoService.getFas(login);
-        return fas.isEmpty() ? "{}" : "{" + String.join(",", fas) + "}";
+        if (visoes != null) {
+            return formatar(visoes.getFas(login));
+        }
+        return consultar(() -> formatar(relacionamentoService.getFas(login)), login);
     }
 
     public boolean ehPaquera(String idSessao, String paquera) throws UsuarioException {
-        return relacionamentoService.ehPaquera(idSessao, paquera);
+        if (visoes != null) {
+            return visoes.ehPaquera(sessaoService.getUsuarioPorSessao(idSessao).getLogin(), paquera);
+        }
+        return consultar(() -> relacionamentoService.ehPaquera(idSessao, paquera), chavesSessao(idSessao));
     }
 
     public void adicionarPaquera(String idSessao, String paquera) throws UsuarioException, UsuarioJaEstaAdicionadoComoPaqueraException, UsuarioNaoPodeSerPaqueraDeSiMesmoException, UsuarioEhSeuInimigoException {
-        relacionamentoService.adicionarPaquera(idSessao, paquera);
+        executar(() -> relacionamentoService.adicionarPaquera(idSessao, paquera), chavesSessao(idSessao, paquera));
     }
 
     public String getPaqueras(String idSessao) throws UsuarioException {
-        Set<String> paqueras = relacionamentoService.getPaqueras(idSessao);
-        return paqueras.isEmpty() ? "{}" : "{" + String.join(",", paqueras) + "}";
+        if (visoes != null) {
+            return formatar(visoes.getPaqueras(sessaoService.getUsuarioPorSessao(idSessao).getLogin()));
+        }
+        return consultar(() -> formatar(relacionamentoService.getPaqueras(idSessao)), chavesSessao(idSessao));
     }
 
     public void adicionarInimigo(String idSessao, String inimigo) throws UsuarioException, UsuarioJaEstaAdicionadoComoInimigoException, UsuarioNaoPodeSerInimigoDeSiMesmoException {
-        relacionamentoService.adicionarInimigo(idSessao, inimigo);
+        executar(() -> relacionamentoService.adicionarInimigo(idSessao, inimigo), chavesSessao(idSessao, inimigo));
+        sugestaoService.invalidarInimizade(sessaoService.getLogin(idSessao), inimigo);
     }
 
     public void removerUsuario(String idSessao) throws UsuarioException, ComunidadeNaoExisteException {
-        removerService.removerUsuario(idSessao);
+        executarExclusivo(() -> removerService.removerUsuario(idSessao));
+        sugestaoService.invalidarTudo();
     }
-
-
-
-
 }
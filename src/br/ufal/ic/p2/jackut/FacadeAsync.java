@@ -0,0 +1,300 @@
+package br.ufal.ic.p2.jackut;
+
+import br.ufal.ic.p2.jackut.concorrencia.Comando;
+import br.ufal.ic.p2.jackut.concorrencia.ThreadsVirtuais;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Flow;
+
+/**
+ * Versão assíncrona da {@link Facade}: cada operação é executada num {@link Executor} e retorna um
+ * {@link CompletableFuture}, que pode ser encadeado com as seguintes (por exemplo, {@code abrirSessao} seguido
+ * de {@code enviarRecado}) sem que a thread que as pediu fique parada enquanto a persistência grava.
+ *
+ * <p>Por padrão, cada operação roda numa thread própria, virtual quando a JVM as oferece ({@link ThreadsVirtuais}).
+ * Uma operação que falha completa o futuro com a mesma exceção que o método da {@code Facade} lançaria
+ * ({@link CompletableFuture#join()} a entrega dentro de uma {@link java.util.concurrent.CompletionException}).</p>
+ *
+ * <p>As operações seguem as regras de concorrência da {@code Facade}: no modo "nenhuma", elas não devem ser
+ * executadas ao mesmo tempo, e a ordem entre operações só é garantida quando uma é encadeada à outra.</p>
+ */
+public class FacadeAsync implements AutoCloseable {
+
+    private final Facade facade;
+    private final Executor executor;
+
+    /** Executor criado por esta classe, encerrado em {@link #close()}; {@code null} se foi informado. */
+    private final ExecutorService executorProprio;
+
+    /**
+     * Cria a versão assíncrona de uma {@code Facade}, com uma thread virtual (ou, antes do Java 21, de plataforma)
+     * por operação.
+     *
+     * @param facade Fachada que executa as operações.
+     */
+    public FacadeAsync(Facade facade) {
+        this.facade = facade;
+        this.executorProprio = ThreadsVirtuais.executorPorTarefa("jackut-async-");
+        this.executor = executorProprio;
+    }
+
+    /**
+     * Cria a versão assíncrona de uma {@code Facade}, com o executor informado.
+     *
+     * @param facade Fachada que executa as operações.
+     * @param executor Executor das operações; não é encerrado por {@link #close()}.
+     */
+    public FacadeAsync(Facade facade, Executor executor) {
+        this.facade = facade;
+        this.executor = executor;
+        this.executorProprio = null;
+    }
+
+    /**
+     * Retorna a fachada síncrona usada pelas operações.
+     *
+     * @return A {@code Facade}.
+     */
+    public Facade getFacade() {
+        return facade;
+    }
+
+    /**
+     * Encerra o executor criado por esta classe, depois das operações já pedidas; a {@code Facade} não é encerrada.
+     */
+    @Override
+    public void close() {
+        if (executorProprio != null) {
+            ThreadsVirtuais.encerrar(executorProprio);
+        }
+    }
+
+    /**
+     * Executa uma operação da {@code Facade} no executor.
+     *
+     * @param comando A operação.
+     * @param <T> Tipo do resultado.
+     * @return O futuro com o resultado, ou completado com a exceção da operação.
+     */
+    private <T> CompletableFuture<T> executar(Comando<T> comando) {
+        CompletableFuture<T> futuro = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                try {
+                    futuro.complete(comando.executar());
+                } catch (Throwable e) {
+                    futuro.completeExceptionally(e);
+                }
+            });
+        } catch (RuntimeException e) { // Executor encerrado ou saturado
+            futuro.completeExceptionally(e);
+        }
+        return futuro;
+    }
+
+    private CompletableFuture<Void> executar(Comando.Acao acao) {
+        return executar(Comando.de(acao));
+    }
+
+    /** Versão assíncrona de {@link Facade#zerarSistema()}. */
+    public CompletableFuture<Void> zerarSistema() {
+        return executar(facade::zerarSistema);
+    }
+
+    /** Versão assíncrona de {@link Facade#encerrarSistema()}. */
+    public CompletableFuture<Void> encerrarSistema() {
+        return executar(facade::encerrarSistema);
+    }
+
+    /** Versão assíncrona de {@link Facade#getAtributoUsuario(String, String)}. */
+    public CompletableFuture<String> getAtributoUsuario(String login, String atributo) {
+        return executar(() -> facade.getAtributoUsuario(login, atributo));
+    }
+
+    /** Versão assíncrona de {@link Facade#criarUsuario(String, String, String)}. */
+    public CompletableFuture<Void> criarUsuario(String login, String senha, String nome) {
+        return executar(() -> facade.criarUsuario(login, senha, nome));
+    }
+
+    /** Versão assíncrona de {@link Facade#abrirSessao(String, String)}; o futuro contém o id da sessão. */
+    public CompletableFuture<String> abrirSessao(String login, String senha) {
+        return executar(() -> facade.abrirSessao(login, senha));
+    }
+
+    /** Versão assíncrona de {@link Facade#editarPerfil(String, String, String)}. */
+    public CompletableFuture<Void> editarPerfil(String idSessao, String atributo, String valor) {
+        return executar(() -> facade.editarPerfil(idSessao, atributo, valor));
+    }
+
+    /** Versão assíncrona de {@link Facade#adicionarAmigo(String, String)}. */
+    public CompletableFuture<Void> adicionarAmigo(String idSessao, String amigo) {
+        return executar(() -> facade.adicionarAmigo(idSessao, amigo));
+    }
+
+    /** Versão assíncrona de {@link Facade#ehAmigo(String, String)}. */
+    public CompletableFuture<Boolean> ehAmigo(String login, String amigo) {
+        return executar(() -> facade.ehAmigo(login, amigo));
+    }
+
+    /** Versão assíncrona de {@link Facade#getAmigos(String)}. */
+    public CompletableFuture<String> getAmigos(String login) {
+        return executar(() -> facade.getAmigos(login));
+    }
+
+    /** Versão assíncrona de {@link Facade#getAmigosEmComum(String, String)}. */
+    public CompletableFuture<String> getAmigosEmComum(String login, String outro) {
+        return executar(() -> facade.getAmigosEmComum(login, outro));
+    }
+
+    /** Versão assíncrona de {@link Facade#contarAmigosEmComum(String, String)}. */
+    public CompletableFuture<Integer> contarAmigosEmComum(String login, String outro) {
+        return executar(() -> facade.contarAmigosEmComum(login, outro));
+    }
+
+    /** Versão assíncrona de {@link Facade#sugerirAmigos(String, int)}. */
+    public CompletableFuture<String> sugerirAmigos(String login, int quantidade) {
+        return executar(() -> facade.sugerirAmigos(login, quantidade));
+    }
+
+    /** Versão assíncrona de {@link Facade#enviarRecado(String, String, String)}. */
+    public CompletableFuture<Void> enviarRecado(String idSessao, String destinatario, String recado) {
+        return executar(() -> facade.enviarRecado(idSessao, destinatario, recado));
+    }
+
+    /** Versão assíncrona de {@link Facade#enviarRecados(String, String, String)}. */
+    public CompletableFuture<String> enviarRecados(String idSessao, String destinatarios, String recado) {
+        return executar(() -> facade.enviarRecados(idSessao, destinatarios, recado));
+    }
+
+    /** Versão assíncrona de {@link Facade#lerRecado(String)}. */
+    public CompletableFuture<String> lerRecado(String idSessao) {
+        return executar(() -> facade.lerRecado(idSessao));
+    }
+
+    /** Versão assíncrona de {@link Facade#lerRecados(String, int)}. */
+    public CompletableFuture<String> lerRecados(String idSessao, int max) {
+        return executar(() -> facade.lerRecados(idSessao, max));
+    }
+
+    /** Versão assíncrona de {@link Facade#contarRecados(String)}. */
+    public CompletableFuture<Integer> contarRecados(String idSessao) {
+        return executar(() -> facade.contarRecados(idSessao));
+    }
+
+    /** Versão assíncrona de {@link Facade#assinarRecados(String)}. */
+    public CompletableFuture<Flow.Publisher<String>> assinarRecados(String idSessao) {
+        return executar(() -> facade.assinarRecados(idSessao));
+    }
+
+    /** Versão assíncrona de {@link Facade#criarComunidade(String, String, String)}. */
+    public CompletableFuture<Void> criarComunidade(String idSessao, String nome, String descricao) {
+        return executar(() -> facade.criarComunidade(idSessao, nome, descricao));
+    }
+
+    /** Versão assíncrona de {@link Facade#getDescricaoComunidade(String)}. */
+    public CompletableFuture<String> getDescricaoComunidade(String nomeComunidade) {
+        return executar(() -> facade.getDescricaoComunidade(nomeComunidade));
+    }
+
+    /** Versão assíncrona de {@link Facade#getDonoComunidade(String)}. */
+    public CompletableFuture<String> getDonoComunidade(String nomeComunidade) {
+        return executar(() -> facade.getDonoComunidade(nomeComunidade));
+    }
+
+    /** Versão assíncrona de {@link Facade#getMembrosComunidade(String)}. */
+    public CompletableFuture<String> getMembrosComunidade(String nomeComunidade) {
+        return executar(() -> facade.getMembrosComunidade(nomeComunidade));
+    }
+
+    /** Versão assíncrona de {@link Facade#getComunidades(String)}. */
+    public CompletableFuture<String> getComunidades(String login) {
+        return executar(() -> facade.getComunidades(login));
+    }
+
+    /** Versão assíncrona de {@link Facade#getComunidadesEmComum(String, String)}. */
+    public CompletableFuture<String> getComunidadesEmComum(String login, String outro) {
+        return executar(() -> facade.getComunidadesEmComum(login, outro));
+    }
+
+    /** Versão assíncrona de {@link Facade#contarComunidadesEmComum(String, String)}. */
+    public CompletableFuture<Integer> contarComunidadesEmComum(String login, String outro) {
+        return executar(() -> facade.contarComunidadesEmComum(login, outro));
+    }
+
+    /** Versão assíncrona de {@link Facade#adicionarComunidade(String, String)}. */
+    public CompletableFuture<Void> adicionarComunidade(String idSessao, String nome) {
+        return executar(() -> facade.adicionarComunidade(idSessao, nome));
+    }
+
+    /** Versão assíncrona de {@link Facade#lerMensagem(String)}. */
+    public CompletableFuture<String> lerMensagem(String idSessao) {
+        return executar(() -> facade.lerMensagem(idSessao));
+    }
+
+    /** Versão assíncrona de {@link Facade#lerMensagens(String, int)}. */
+    public CompletableFuture<String> lerMensagens(String idSessao, int max) {
+        return executar(() -> facade.lerMensagens(idSessao, max));
+    }
+
+    /** Versão assíncrona de {@link Facade#contarMensagens(String)}. */
+    public CompletableFuture<Integer> contarMensagens(String idSessao) {
+        return executar(() -> facade.contarMensagens(idSessao));
+    }
+
+    /** Versão assíncrona de {@link Facade#assinarMensagens(String)}. */
+    public CompletableFuture<Flow.Publisher<String>> assinarMensagens(String idSessao) {
+        return executar(() -> facade.assinarMensagens(idSessao));
+    }
+
+    /** Versão assíncrona de {@link Facade#enviarMensagem(String, String, String)}. */
+    public CompletableFuture<Void> enviarMensagem(String idSessao, String comunidade, String mensagem) {
+        return executar(() -> facade.enviarMensagem(idSessao, comunidade, mensagem));
+    }
+
+    /** Versão assíncrona de {@link Facade#enviarMensagens(String, String, String)}. */
+    public CompletableFuture<String> enviarMensagens(String idSessao, String comunidades, String mensagem) {
+        return executar(() -> facade.enviarMensagens(idSessao, comunidades, mensagem));
+    }
+
+    /** Versão assíncrona de {@link Facade#ehFa(String, String)}. */
+    public CompletableFuture<Boolean> ehFa(String login, String idolo) {
+        return executar(() -> facade.ehFa(login, idolo));
+    }
+
+    /** Versão assíncrona de {@link Facade#adicionarIdolo(String, String)}. */
+    public CompletableFuture<Void> adicionarIdolo(String idSessao, String nome) {
+        return executar(() -> facade.adicionarIdolo(idSessao, nome));
+    }
+
+    /** Versão assíncrona de {@link Facade#getFas(String)}. */
+    public CompletableFuture<String> getFas(String login) {
+        return executar(() -> facade.getFas(login));
+    }
+
+    /** Versão assíncrona de {@link Facade#ehPaquera(String, String)}. */
+    public CompletableFuture<Boolean> ehPaquera(String idSessao, String paquera) {
+        return executar(() -> facade.ehPaquera(idSessao, paquera));
+    }
+
+    /** Versão assíncrona de {@link Facade#adicionarPaquera(String, String)}. */
+    public CompletableFuture<Void> adicionarPaquera(String idSessao, String paquera) {
+        return executar(() -> facade.adicionarPaquera(idSessao, paquera));
+    }
+
+    /** Versão assíncrona de {@link Facade#getPaqueras(String)}. */
+    public CompletableFuture<String> getPaqueras(String idSessao) {
+        return executar(() -> facade.getPaqueras(idSessao));
+    }
+
+    /** Versão assíncrona de {@link Facade#adicionarInimigo(String, String)}. */
+    public CompletableFuture<Void> adicionarInimigo(String idSessao, String inimigo) {
+        return executar(() -> facade.adicionarInimigo(idSessao, inimigo));
+    }
+
+    /** Versão assíncrona de {@link Facade#removerUsuario(String)}. */
+    public CompletableFuture<Void> removerUsuario(String idSessao) {
+        return executar(() -> facade.removerUsuario(idSessao));
+    }
+}
@@ -0,0 +1,85 @@
+package br.ufal.ic.p2.jackut.benchmark;
+
+import br.ufal.ic.p2.jackut.Facade;
+import br.ufal.ic.p2.jackut.persistence.*;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Executa a mesma carga de trabalho da {@code Facade} (cadastro de usuários, amizades, envio e leitura de recados)
+ * com cada armazenamento disponível, para comparar o custo de persistência de cada um.
+ *
+ * <p>Uso: {@code java br.ufal.ic.p2.jackut.benchmark.ArmazenamentoBenchmark [usuarios]} (padrão: 2.000).
+ * Os arquivos de dados são gravados no diretório atual e zerados ao final de cada rodada;
+ * execute-o num diretório vazio. Uma rodada inicial em memória, não exibida, aquece a JVM.</p>
+ */
+public class ArmazenamentoBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int total = args.length > 0 ? Integer.parseInt(args[0]) : 2_000;
+
+        Map<String, Supplier<Armazenamento>> armazenamentos = new LinkedHashMap<>();
+        armazenamentos.put("memoria", ArmazenamentoMemoria::new);
+        armazenamentos.put("snapshot", ArmazenamentoSnapshot::new);
+        for (ModoDurabilidade modo : ModoDurabilidade.values()) {
+            armazenamentos.put("journal/" + modo.name().toLowerCase(),
+                    () -> new ArmazenamentoJournal(new Journal(Journal.ARQUIVO_PADRAO, modo, 10, 64 * 1024)));
+        }
+
+        medir("aquecimento", new ArmazenamentoMemoria(), total, false);
+
+        System.out.printf("%d usuarios, %d amizades, %d recados enviados e lidos%n%n", total, total, total * 2);
+        System.out.printf("%-22s %12s %12s %12s %12s%n", "armazenamento", "cadastro", "amizades", "recados", "encerrar");
+
+        for (Map.Entry<String, Supplier<Armazenamento>> entrada : armazenamentos.entrySet()) {
+            medir(entrada.getKey(), entrada.getValue().get(), total, true);
+        }
+    }
+
+    private static void medir(String nome, Armazenamento armazenamento, int total, boolean exibir) throws Exception {
+        Facade facade = new Facade(armazenamento);
+        facade.zerarSistema();
+        String[] sessoes = new String[total];
+
+        long inicio = System.nanoTime();
+        for (int i = 0; i < total; i++) {
+            facade.criarUsuario("usuario" + i, "senha" + i, "Usuario " + i);
+            sessoes[i] = facade.abrirSessao("usuario" + i, "senha" + i);
+        }
+        long cadastro = System.nanoTime() - inicio;
+
+        inicio = System.nanoTime();
+        for (int i = 0; i < total; i++) {
+            String amigo = "usuario" + ((i + 1) % total);
+            facade.adicionarAmigo(sessoes[i], amigo);
+            facade.adicionarAmigo(sessoes[(i + 1) % total], "usuario" + i);
+        }
+        long amizades = System.nanoTime() - inicio;
+
+        inicio = System.nanoTime();
+        for (int i = 0; i < total; i++) {
+            for (int j = 1; j <= 2; j++) {
+                facade.enviarRecado(sessoes[i], "usuario" + ((i + j) % total), "Recado " + j + " de usuario" + i);
+            }
+        }
+        for (int i = 0; i < total; i++) {
+            facade.lerRecado(sessoes[i]);
+            facade.lerRecado(sessoes[i]);
+        }
+        long recados = System.nanoTime() - inicio;
+
+        inicio = System.nanoTime();
+        facade.encerrarSistema();
+        long encerrar = System.nanoTime() - inicio;
+
+        facade.zerarSistema();
+        armazenamento.fechar();
+
+        if (exibir) {
+            System.out.printf("%-22s %12d %12d %12d %12d%n", nome,
+                    cadastro / 1_000_000, amizades / 1_000_000, recados / 1_000_000, encerrar / 1_000_000);
+        }
+    }
+}
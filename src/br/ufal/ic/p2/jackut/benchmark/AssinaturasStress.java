@@ -0,0 +1,179 @@
+package br.ufal.ic.p2.jackut.benchmark;
+
+import br.ufal.ic.p2.jackut.Facade;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Teste das assinaturas de recados com um assinante que falha: vários recados chegam de uma vez à caixa de um
+ * usuário assinado, e o assinante lança exceção ao receber um deles, no meio da sequência. Verifica que a
+ * assinatura é cancelada com {@code onError} e que nenhum recado se perdeu: os recados entregues antes da falha
+ * mais os que continuam na caixa somam todos os enviados, e uma nova assinatura recebe os restantes, em ordem.
+ * Com armazenamento persistente, o sistema é reaberto e a caixa é verificada de novo.
+ *
+ * <p>Uso: {@code java br.ufal.ic.p2.jackut.benchmark.AssinaturasStress [recados] [falha] [persistencia]}
+ * (padrão: 200 recados, falha no 3º, journal). Os arquivos de dados são gravados no diretório atual; execute-o num
+ * diretório vazio. Termina com código 1 se alguma verificação falhar.</p>
+ */
+public class AssinaturasStress {
+
+    private static final long ESPERA_SEGUNDOS = 10;
+
+    private final List<String> falhas = new ArrayList<>();
+
+    public static void main(String[] args) throws Exception {
+        int recados = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int falha = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+        String persistencia = args.length > 2 ? args[2] : "journal";
+
+        System.out.printf("%d recados, falha no %d, persistencia %s%n%n", recados, falha, persistencia);
+        AssinaturasStress teste = new AssinaturasStress();
+        teste.executar(recados, falha, persistencia);
+
+        if (teste.falhas.isEmpty()) {
+            System.out.println("OK");
+        } else {
+            teste.falhas.forEach(f -> System.out.println("FALHA: " + f));
+            System.exit(1);
+        }
+        System.exit(0);
+    }
+
+    private void executar(int recados, int falha, String persistencia) throws Exception {
+        Facade facade = new Facade(Facade.criarArmazenamento(persistencia));
+        facade.zerarSistema();
+        facade.criarUsuario("remetente", "senha", "Remetente");
+        facade.criarUsuario("assinante", "senha", "Assinante");
+        String remetente = facade.abrirSessao("remetente", "senha");
+        String assinante = facade.abrirSessao("assinante", "senha");
+
+        // A caixa já tem todos os recados quando o assinante faz o primeiro pedido: a entrega encontra a sequência inteira.
+        Falho falho = new Falho(falha);
+        facade.assinarRecados(assinante).subscribe(falho);
+        List<String> enviados = new ArrayList<>(recados);
+        for (int i = 0; i < recados; i++) {
+            String recado = "recado " + i;
+            enviados.add(recado);
+            facade.enviarRecado(remetente, "assinante", recado);
+        }
+        falho.assinatura.request(Long.MAX_VALUE);
+
+        verificar(falho.erro.await(ESPERA_SEGUNDOS, TimeUnit.SECONDS), "o assinante que falhou nao recebeu onError");
+        List<String> entregues = falho.copiarRecebidos();
+        verificar(entregues.size() == Math.min(falha, recados),
+                "entregues antes da falha: " + entregues.size() + ", esperado " + Math.min(falha, recados));
+
+        int naCaixa = facade.contarRecados(assinante);
+        verificar(entregues.size() + naCaixa == recados,
+                "recados perdidos: " + entregues.size() + " entregues + " + naCaixa + " na caixa != " + recados);
+
+        facade.encerrarSistema();
+        facade = new Facade(Facade.criarArmazenamento(persistencia));
+        assinante = facade.abrirSessao("assinante", "senha");
+        verificar(facade.contarRecados(assinante) == naCaixa,
+                "apos reabrir: " + facade.contarRecados(assinante) + " na caixa, esperado " + naCaixa);
+
+        Coletor coletor = new Coletor(naCaixa);
+        facade.assinarRecados(assinante).subscribe(coletor);
+        verificar(coletor.fim.await(ESPERA_SEGUNDOS, TimeUnit.SECONDS), "a nova assinatura nao recebeu todos os recados");
+
+        List<String> todos = new ArrayList<>(entregues);
+        todos.addAll(coletor.copiarRecebidos());
+        verificar(todos.equals(enviados), "os recados entregues nao correspondem aos enviados, em ordem");
+        verificar(facade.contarRecados(assinante) == 0, "recados restantes na caixa apos a nova assinatura");
+        facade.encerrarSistema();
+    }
+
+    private void verificar(boolean condicao, String falha) {
+        if (!condicao) {
+            falhas.add(falha);
+        }
+    }
+
+    /**
+     * Assinante que guarda os recados recebidos e lança exceção ao receber o recado de número {@code falha}.
+     */
+    private static final class Falho implements Flow.Subscriber<String> {
+
+        private final int falha;
+        private final List<String> recebidos = Collections.synchronizedList(new ArrayList<>());
+        private final CountDownLatch erro = new CountDownLatch(1);
+        private volatile Flow.Subscription assinatura;
+
+        private Falho(int falha) {
+            this.falha = falha;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription assinatura) {
+            this.assinatura = assinatura;
+        }
+
+        @Override
+        public void onNext(String recado) {
+            recebidos.add(recado);
+            if (recebidos.size() == falha) {
+                throw new IllegalStateException("falha simulada no recado " + falha);
+            }
+        }
+
+        @Override
+        public void onError(Throwable erro) {
+            this.erro.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+        }
+
+        private List<String> copiarRecebidos() {
+            synchronized (recebidos) {
+                return new ArrayList<>(recebidos);
+            }
+        }
+    }
+
+    /**
+     * Assinante que pede todos os recados e avisa quando recebeu a quantidade esperada.
+     */
+    private static final class Coletor implements Flow.Subscriber<String> {
+
+        private final List<String> recebidos = Collections.synchronizedList(new ArrayList<>());
+        private final CountDownLatch fim;
+
+        private Coletor(int esperados) {
+            this.fim = new CountDownLatch(esperados);
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription assinatura) {
+            assinatura.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(String recado) {
+            recebidos.add(recado);
+            fim.countDown();
+        }
+
+        @Override
+        public void onError(Throwable erro) {
+            erro.printStackTrace();
+        }
+
+        @Override
+        public void onComplete() {
+        }
+
+        private List<String> copiarRecebidos() {
+            synchronized (recebidos) {
+                return new ArrayList<>(recebidos);
+            }
+        }
+    }
+}
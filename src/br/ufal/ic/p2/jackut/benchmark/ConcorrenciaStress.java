@@ -0,0 +1,323 @@
+package br.ufal.ic.p2.jackut.benchmark;
+
+import br.ufal.ic.p2.jackut.Facade;
+import br.ufal.ic.p2.jackut.models.exceptions.ContaJaExisteNomeException;
+import br.ufal.ic.p2.jackut.models.exceptions.NaoHaMensagensException;
+import br.ufal.ic.p2.jackut.models.exceptions.NaoHaRecadosException;
+import br.ufal.ic.p2.jackut.models.exceptions.UsuarioException;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Teste de estresse do modo concorrente da {@code Facade}: várias threads cadastram usuários, trocam pedidos de
+ * amizade nos dois sentidos, enviam e leem recados, entram numa comunidade, enviam mensagens e editam perfis ao
+ * mesmo tempo, enquanto uma thread consulta {@code ehAmigo}, {@code getComunidades} e {@code getAtributoUsuario}
+ * sem parar. Ao final verifica que nenhuma atualização se perdeu: cada login foi criado uma única vez, toda amizade
+ * é recíproca, cada recado e cada mensagem foi lido exatamente uma vez, a comunidade tem todos os membros e todos
+ * os atributos editados estão no perfil. Com armazenamento persistente, o sistema é reaberto e verificado de novo.
+ *
+ * <p>Uso: {@code java br.ufal.ic.p2.jackut.benchmark.ConcorrenciaStress [threads] [usuarios] [persistencia]}
+ * (padrão: 8, 2.000, journal). Os arquivos de dados são gravados no diretório atual; execute-o num diretório vazio.
+ * O modo de concorrência vem da propriedade {@code jackut.concorrencia} ("travas" ou "escritor").
+ * Termina com código 1 se alguma verificação falhar.</p>
+ */
+public class ConcorrenciaStress {
+
+    private static final String COMUNIDADE = "estresse";
+
+    /** Recados enviados por usuário. */
+    private static final int RECADOS = 5;
+
+    /** Mensagens enviadas à comunidade. */
+    private static final int MENSAGENS = 20;
+
+    /** Atributos editados por usuário. */
+    private static final int ATRIBUTOS = 4;
+
+    private final int total;
+    private final ExecutorService executor;
+    private final List<String> falhas = Collections.synchronizedList(new ArrayList<>());
+    private Facade facade;
+    private String[] sessoes;
+
+    private ConcorrenciaStress(int threads, int total) {
+        this.total = total;
+        this.executor = Executors.newFixedThreadPool(threads);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int total = args.length > 1 ? Integer.parseInt(args[1]) : 2_000;
+        String persistencia = args.length > 2 ? args[2] : "journal";
+
+        ConcorrenciaStress stress = new ConcorrenciaStress(threads, total);
+        System.out.printf("%d threads, %d usuarios, persistencia %s%n%n", threads, total, persistencia);
+        stress.executar(persistencia);
+    }
+
+    private void executar(String persistencia) throws Exception {
+        facade = new Facade(Facade.criarArmazenamento(persistencia));
+        facade.zerarSistema();
+        sessoes = new String[total];
+
+        AtomicBoolean consultando = new AtomicBoolean(true);
+        AtomicLong consultas = new AtomicLong();
+        Thread consultor = new Thread(() -> consultar(consultando, consultas), "consultas-sem-trava");
+        consultor.start();
+
+        etapa("cadastro", this::cadastrar);
+        etapa("amizades", this::adicionarAmizades);
+        etapa("recados", this::trocarRecados);
+        etapa("comunidade", this::participarDaComunidade);
+        etapa("perfis", this::editarPerfis);
+
+        consultando.set(false);
+        consultor.join();
+        System.out.printf("%-12s %d consultas sem trava concorrentes%n", "consultas", consultas.get());
+        System.out.printf("%-12s %s%n", "execucao", facade.getEstatisticasConcorrencia());
+
+        verificarEstado("estado final");
+
+        if (!"memoria".equals(persistencia)) {
+            facade.encerrarSistema();
+            facade = new Facade(Facade.criarArmazenamento(persistencia));
+            verificarEstado("estado reaberto");
+            facade.zerarSistema();
+        }
+        executor.shutdown();
+
+        if (falhas.isEmpty()) {
+            System.out.println("\nOK: nenhuma atualizacao perdida");
+        } else {
+            System.out.println("\nFALHAS:");
+            falhas.stream().limit(20).forEach(falha -> System.out.println("  " + falha));
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Cria cada login duas vezes, em tarefas concorrentes: exatamente uma das criações deve falhar.
+     */
+    private void cadastrar() throws Exception {
+        AtomicInteger repetidos = new AtomicInteger();
+        paralelo(total * 2, k -> {
+            int i = k / 2;
+            try {
+                facade.criarUsuario(login(i), "senha" + i, "Usuario " + i);
+            } catch (ContaJaExisteNomeException e) {
+                repetidos.incrementAndGet();
+            }
+        });
+        verificar(repetidos.get() == total, "cadastro: " + repetidos.get() + " criacoes repetidas rejeitadas, esperado " + total);
+
+        paralelo(total, i -> sessoes[i] = facade.abrirSessao(login(i), "senha" + i));
+    }
+
+    /**
+     * Cada usuário pede amizade ao seguinte e o seguinte pede de volta, em tarefas concorrentes e embaralhadas.
+     */
+    private void adicionarAmizades() throws Exception {
+        paralelo(total * 2, k -> {
+            int i = k / 2;
+            int j = (i + 1) % total;
+            if (k % 2 == 0) {
+                facade.adicionarAmigo(sessoes[i], login(j));
+            } else {
+                facade.adicionarAmigo(sessoes[j], login(i));
+            }
+        });
+    }
+
+    /**
+     * Envia recados a destinatários aleatórios enquanto outras tarefas leem caixas aleatórias; depois esvazia
+     * todas as caixas e compara, por usuário, os recados lidos com os enviados.
+     */
+    private void trocarRecados() throws Exception {
+        AtomicIntegerArray enviados = new AtomicIntegerArray(total);
+        AtomicIntegerArray lidos = new AtomicIntegerArray(total);
+
+        paralelo(total * RECADOS * 2, k -> {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            if (k % 2 == 0) {
+                int remetente = random.nextInt(total);
+                int destinatario = (remetente + 1 + random.nextInt(total - 1)) % total;
+                facade.enviarRecado(sessoes[remetente], login(destinatario), "recado " + k);
+                enviados.incrementAndGet(destinatario);
+            } else {
+                int leitor = random.nextInt(total);
+                if (lerRecado(leitor)) {
+                    lidos.incrementAndGet(leitor);
+                }
+            }
+        });
+        paralelo(total, i -> {
+            while (lerRecado(i)) {
+                lidos.incrementAndGet(i);
+            }
+        });
+
+        for (int i = 0; i < total; i++) {
+            verificar(enviados.get(i) == lidos.get(i), "recados de " + login(i) + ": " + lidos.get(i) + " lidos, " + enviados.get(i) + " enviados");
+        }
+    }
+
+    /**
+     * Todos entram na comunidade ao mesmo tempo; depois, mensagens são enviadas enquanto os membros leem.
+     * Cada membro deve ler exatamente todas as mensagens.
+     */
+    private void participarDaComunidade() throws Exception {
+        facade.criarComunidade(sessoes[0], COMUNIDADE, "Teste de estresse");
+        paralelo(total - 1, i -> facade.adicionarComunidade(sessoes[i + 1], COMUNIDADE));
+
+        AtomicIntegerArray lidas = new AtomicIntegerArray(total);
+        paralelo(MENSAGENS + total, k -> {
+            if (k < MENSAGENS) {
+                facade.enviarMensagem(sessoes[ThreadLocalRandom.current().nextInt(total)], COMUNIDADE, "mensagem " + k);
+            } else if (lerMensagem(k - MENSAGENS)) {
+                lidas.incrementAndGet(k - MENSAGENS);
+            }
+        });
+        paralelo(total, i -> {
+            while (lerMensagem(i)) {
+                lidas.incrementAndGet(i);
+            }
+        });
+
+        for (int i = 0; i < total; i++) {
+            verificar(lidas.get(i) == MENSAGENS, "mensagens de " + login(i) + ": " + lidas.get(i) + " lidas, esperado " + MENSAGENS);
+        }
+    }
+
+    /**
+     * Edita atributos distintos do mesmo usuário em tarefas concorrentes.
+     */
+    private void editarPerfis() throws Exception {
+        paralelo(total * ATRIBUTOS, k -> {
+            int i = k % total;
+            facade.editarPerfil(sessoes[i], "atributo" + (k / total), "valor" + k);
+        });
+    }
+
+    /**
+     * Verifica o estado deixado pelas etapas: amizades recíprocas, membros da comunidade e atributos editados.
+     *
+     * @param nome Nome da verificação, exibido no relatório.
+     */
+    private void verificarEstado(String nome) throws Exception {
+        long inicio = System.nanoTime();
+        String membros = facade.getMembrosComunidade(COMUNIDADE);
+        verificar(membros.split(",").length == total, nome + ": comunidade com " + membros.split(",").length + " membros");
+
+        paralelo(total, i -> {
+            int j = (i + 1) % total;
+            verificar(facade.ehAmigo(login(i), login(j)) && facade.ehAmigo(login(j), login(i)),
+                    nome + ": " + login(i) + " e " + login(j) + " nao sao amigos");
+            verificar(facade.getComunidades(login(i)).contains(COMUNIDADE), nome + ": " + login(i) + " fora da comunidade");
+            for (int a = 0; a < ATRIBUTOS; a++) {
+                String valor = facade.getAtributoUsuario(login(i), "atributo" + a);
+                verificar(valor.equals("valor" + (a * total + i)), nome + ": atributo" + a + " de " + login(i) + " = " + valor);
+            }
+        });
+        System.out.printf("%-12s %8d ms%n", nome, (System.nanoTime() - inicio) / 1_000_000);
+    }
+
+    /**
+     * Consulta sem parar as operações sem trava; qualquer exceção inesperada (por exemplo, uma
+     * {@code ConcurrentModificationException}) é uma falha.
+     */
+    private void consultar(AtomicBoolean consultando, AtomicLong consultas) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (consultando.get()) {
+            int i = random.nextInt(total);
+            try {
+                facade.ehAmigo(login(i), login((i + 1) % total));
+                facade.getComunidades(login(i));
+                facade.getAtributoUsuario(login(i), "atributo0");
+            } catch (UsuarioException e) {
+                // Usuário ainda não cadastrado ou atributo ainda não editado
+            } catch (RuntimeException e) {
+                falhas.add("consulta sem trava: " + e);
+            }
+            consultas.incrementAndGet();
+        }
+    }
+
+    private boolean lerRecado(int i) throws UsuarioException {
+        try {
+            facade.lerRecado(sessoes[i]);
+            return true;
+        } catch (NaoHaRecadosException e) {
+            return false;
+        }
+    }
+
+    private boolean lerMensagem(int i) throws UsuarioException {
+        try {
+            facade.lerMensagem(sessoes[i]);
+            return true;
+        } catch (NaoHaMensagensException e) {
+            return false;
+        }
+    }
+
+    private void etapa(String nome, Etapa etapa) throws Exception {
+        long inicio = System.nanoTime();
+        etapa.executar();
+        System.out.printf("%-12s %8d ms%n", nome, (System.nanoTime() - inicio) / 1_000_000);
+    }
+
+    /**
+     * Executa as tarefas de 0 a {@code quantidade - 1} em ordem aleatória no pool e aguarda todas.
+     * Uma exceção numa tarefa é registrada como falha.
+     */
+    private void paralelo(int quantidade, Tarefa tarefa) throws InterruptedException {
+        List<Integer> ordem = new ArrayList<>(quantidade);
+        for (int k = 0; k < quantidade; k++) {
+            ordem.add(k);
+        }
+        Collections.shuffle(ordem, new Random(quantidade));
+
+        List<Future<?>> futuros = new ArrayList<>(quantidade);
+        for (int k : ordem) {
+            futuros.add(executor.submit(() -> {
+                try {
+                    tarefa.executar(k);
+                } catch (Exception e) {
+                    falhas.add("tarefa " + k + ": " + e);
+                }
+            }));
+        }
+        for (Future<?> futuro : futuros) {
+            try {
+                futuro.get();
+            } catch (ExecutionException e) {
+                falhas.add(e.getCause().toString());
+            }
+        }
+    }
+
+    private void verificar(boolean condicao, String falha) {
+        if (!condicao) {
+            falhas.add(falha);
+        }
+    }
+
+    private static String login(int i) {
+        return "usuario" + i;
+    }
+
+    @FunctionalInterface
+    private interface Etapa {
+        void executar() throws Exception;
+    }
+
+    @FunctionalInterface
+    private interface Tarefa {
+        void executar(int indice) throws Exception;
+    }
+}
@@ -0,0 +1,145 @@
+package br.ufal.ic.p2.jackut.benchmark;
+
+import br.ufal.ic.p2.jackut.concorrencia.FilaMpsc;
+
+import java.util.LinkedList;
+import java.util.Queue;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Compara a caixa de recados sem travas ({@link FilaMpsc}) com a anterior, uma {@link LinkedList} protegida pela
+ * trava do destinatário, com vários remetentes enviando à mesma caixa enquanto o dono a esvazia.
+ *
+ * <p>Uso: {@code java br.ufal.ic.p2.jackut.benchmark.FilaRecadosBenchmark [recados]} (padrão: 2.000.000 por rodada).
+ * Cada rodada é repetida com 1, 2, 4, 8 e 16 remetentes; a primeira passada, não exibida, aquece a JVM. Também
+ * verifica que o dono recebe todos os recados e, de cada remetente, na ordem de envio; termina com código 1 se não.</p>
+ */
+public class FilaRecadosBenchmark {
+
+    private static final int[] REMETENTES = {1, 2, 4, 8, 16};
+
+    /**
+     * Caixa de recados medida.
+     */
+    private interface Caixa {
+        void adicionar(Long recado);
+
+        Long retirar();
+    }
+
+    /**
+     * A caixa anterior: uma lista encadeada, com uma trava tomada por remetentes e pelo dono.
+     */
+    private static final class CaixaComTrava implements Caixa {
+        private final Queue<Long> recados = new LinkedList<>();
+        private final ReentrantLock trava = new ReentrantLock();
+
+        @Override
+        public void adicionar(Long recado) {
+            trava.lock();
+            try {
+                recados.add(recado);
+            } finally {
+                trava.unlock();
+            }
+        }
+
+        @Override
+        public Long retirar() {
+            trava.lock();
+            try {
+                return recados.poll();
+            } finally {
+                trava.unlock();
+            }
+        }
+    }
+
+    /**
+     * A caixa sem travas.
+     */
+    private static final class CaixaSemTrava implements Caixa {
+        private final FilaMpsc<Long> recados = new FilaMpsc<>();
+
+        @Override
+        public void adicionar(Long recado) {
+            recados.adicionar(recado);
+        }
+
+        @Override
+        public Long retirar() {
+            return recados.retirar();
+        }
+    }
+
+    private static boolean falhou;
+
+    public static void main(String[] args) throws Exception {
+        int total = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+
+        for (int remetentes : REMETENTES) { // Aquecimento
+            medir(new CaixaComTrava(), remetentes, total / 10);
+            medir(new CaixaSemTrava(), remetentes, total / 10);
+        }
+
+        System.out.printf("%d recados por rodada, 1 dono lendo%n%n", total);
+        System.out.printf("%-11s %18s %18s%n", "remetentes", "LinkedList+trava", "FilaMpsc");
+        for (int remetentes : REMETENTES) {
+            double comTrava = medir(new CaixaComTrava(), remetentes, total);
+            double semTrava = medir(new CaixaSemTrava(), remetentes, total);
+            System.out.printf("%-11d %14.1f M/s %14.1f M/s%n", remetentes, comTrava, semTrava);
+        }
+
+        if (falhou) {
+            System.out.println("\nFALHA: recados perdidos ou fora de ordem");
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Executa uma rodada e retorna a vazão, em milhões de recados por segundo.
+     */
+    private static double medir(Caixa caixa, int remetentes, int total) throws InterruptedException {
+        int porRemetente = total / remetentes;
+        Thread[] threads = new Thread[remetentes];
+        for (int r = 0; r < remetentes; r++) {
+            long base = (long) r << 32;
+            threads[r] = new Thread(() -> {
+                for (int i = 0; i < porRemetente; i++) {
+                    caixa.adicionar(base | i);
+                }
+            });
+        }
+
+        long inicio = System.nanoTime();
+        for (Thread thread : threads) {
+            thread.start();
+        }
+
+        int[] proximo = new int[remetentes]; // Próximo número esperado de cada remetente
+        long recebidos = 0;
+        long esperados = (long) porRemetente * remetentes;
+        while (recebidos < esperados) {
+            Long recado = caixa.retirar();
+            if (recado == null) {
+                Thread.onSpinWait();
+                continue;
+            }
+            int remetente = (int) (recado >>> 32);
+            int numero = (int) (long) recado;
+            if (numero != proximo[remetente]++) {
+                falhou = true;
+            }
+            recebidos++;
+        }
+        long decorrido = System.nanoTime() - inicio;
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        if (caixa.retirar() != null) {
+            falhou = true;
+        }
+        return esperados / (decorrido / 1e3);
+    }
+}
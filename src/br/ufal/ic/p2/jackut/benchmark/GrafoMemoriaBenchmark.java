@@ -0,0 +1,75 @@
+package br.ufal.ic.p2.jackut.benchmark;
+
+import br.ufal.ic.p2.jackut.models.entities.ConjuntoLogins;
+import br.ufal.ic.p2.jackut.models.entities.IdsUsuarios;
+
+import java.util.*;
+import java.util.function.Supplier;
+
+/**
+ * Compara a memória ocupada pelo grafo de amizades guardado em {@code LinkedHashSet}s de logins, como antes,
+ * com a mesma estrutura em {@link ConjuntoLogins} (identificadores inteiros de {@link IdsUsuarios}).
+ *
+ * <p>Uso: {@code java br.ufal.ic.p2.jackut.benchmark.GrafoMemoriaBenchmark [arestas] [usuarios]}
+ * (padrão: 10.000.000 arestas entre 1.000.000 usuários). Recomenda-se {@code -Xmx4g} para o volume padrão.</p>
+ */
+public class GrafoMemoriaBenchmark {
+
+    public static void main(String[] args) {
+        int arestas = args.length > 0 ? Integer.parseInt(args[0]) : 10_000_000;
+        int usuarios = args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000;
+
+        String[] logins = new String[usuarios];
+        for (int i = 0; i < usuarios; i++) {
+            logins[i] = "usuario" + i;
+        }
+
+        System.out.printf("%d usuarios, %d arestas%n%n", usuarios, arestas);
+        System.out.printf("%-16s %14s %14s %12s %14s%n", "conjuntos", "bytes", "bytes/aresta", "montar (ms)", "consultas (ms)");
+
+        medir("LinkedHashSet", logins, arestas, LinkedHashSet::new);
+        IdsUsuarios ids = new IdsUsuarios(); // Vazia: a tabela cresce com o grafo e entra na medição
+        medir("ConjuntoLogins", logins, arestas, () -> new ConjuntoLogins(ids));
+    }
+
+    private static void medir(String nome, String[] logins, int arestas, Supplier<Set<String>> fabrica) {
+        long antes = memoriaUsada();
+
+        long inicio = System.nanoTime();
+        Map<String, Set<String>> grafo = new HashMap<>();
+        for (String login : logins) {
+            grafo.put(login, fabrica.get());
+        }
+        Random random = new Random(42);
+        for (int i = 0; i < arestas; i++) {
+            grafo.get(logins[random.nextInt(logins.length)]).add(logins[random.nextInt(logins.length)]);
+        }
+        long montar = System.nanoTime() - inicio;
+
+        long bytes = memoriaUsada() - antes;
+
+        inicio = System.nanoTime();
+        int encontrados = 0;
+        for (int i = 0; i < arestas; i++) {
+            if (grafo.get(logins[random.nextInt(logins.length)]).contains(logins[random.nextInt(logins.length)])) {
+                encontrados++;
+            }
+        }
+        long consultas = System.nanoTime() - inicio;
+
+        int total = 0;
+        for (Set<String> conjunto : grafo.values()) {
+            total += conjunto.size();
+        }
+        System.out.printf("%-16s %,14d %14.1f %12d %14d   (%d arestas distintas, %d encontradas)%n",
+                nome, bytes, (double) bytes / total, montar / 1_000_000, consultas / 1_000_000, total, encontrados);
+    }
+
+    private static long memoriaUsada() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
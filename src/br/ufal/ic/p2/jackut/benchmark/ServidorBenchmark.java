@@ -0,0 +1,141 @@
+package br.ufal.ic.p2.jackut.benchmark;
+
+import br.ufal.ic.p2.jackut.Facade;
+import br.ufal.ic.p2.jackut.concorrencia.ThreadsVirtuais;
+import br.ufal.ic.p2.jackut.servidor.ServidorJackut;
+
+import java.io.*;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Mede o {@link ServidorJackut} com vários clientes TCP enviando recados e lendo-os de volta, com e sem
+ * pipelining: em cada rodada, cada cliente envia {@code profundidade} comandos antes de ler as respostas.
+ *
+ * <p>Uso: {@code java br.ufal.ic.p2.jackut.benchmark.ServidorBenchmark [clientes] [recados]} (padrão: 16, 2.000
+ * recados por cliente). O servidor roda na mesma JVM, numa porta livre, com armazenamento em memória.
+ * Termina com código 1 se alguma resposta for um erro.</p>
+ */
+public class ServidorBenchmark {
+
+    private static final int[] PROFUNDIDADES = {1, 16, 256};
+
+    public static void main(String[] args) throws Exception {
+        int clientes = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        int recados = args.length > 1 ? Integer.parseInt(args[1]) : 2_000;
+
+        Facade facade = new Facade(Facade.criarArmazenamento("memoria"));
+        facade.zerarSistema();
+        AtomicLong erros = new AtomicLong();
+
+        try (ServidorJackut servidor = new ServidorJackut(facade, 0)) {
+            servidor.iniciar();
+            System.out.printf("%d clientes, %d recados enviados e lidos por cliente, %s%n%n",
+                    clientes, recados, facade.getEstatisticasConcorrencia());
+            System.out.printf("%-12s %10s %14s%n", "profundidade", "ms", "comandos/s");
+
+            for (int rodada = 0; rodada <= PROFUNDIDADES.length; rodada++) {
+                int profundidade = PROFUNDIDADES[Math.max(0, rodada - 1)]; // A rodada 0 aquece a JVM
+                String prefixo = "r" + rodada + "c";
+                long inicio = System.nanoTime();
+
+                CyclicBarrier barreira = new CyclicBarrier(clientes);
+                List<Thread> threads = new ArrayList<>();
+                for (int c = 0; c < clientes; c++) {
+                    int cliente = c;
+                    threads.add(ThreadsVirtuais.iniciar("cliente-" + cliente, () -> {
+                        try {
+                            executarCliente(servidor.getPorta(), prefixo, cliente, clientes, recados, profundidade, barreira, erros);
+                        } catch (IOException e) {
+                            e.printStackTrace();
+                            erros.incrementAndGet();
+                        }
+                    }));
+                }
+                for (Thread thread : threads) {
+                    thread.join();
+                }
+
+                long decorrido = System.nanoTime() - inicio;
+                if (rodada > 0) {
+                    long comandos = (long) clientes * (2L * recados + 2);
+                    System.out.printf("%-12d %10d %14.0f%n", profundidade, decorrido / 1_000_000, comandos / (decorrido / 1e9));
+                }
+            }
+            System.out.println();
+            System.out.println(servidor.estatisticas());
+        }
+
+        if (erros.get() > 0) {
+            System.out.println("FALHAS: " + erros.get() + " respostas de erro");
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Cadastra o usuário do cliente, envia os recados ao próximo cliente e lê os recebidos do anterior.
+     */
+    private static void executarCliente(int porta, String prefixo, int cliente, int clientes, int recados,
+                                        int profundidade, CyclicBarrier barreira, AtomicLong erros) throws IOException {
+        try (Socket socket = new Socket("localhost", porta)) {
+            socket.setTcpNoDelay(true);
+            BufferedReader entrada = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            Writer saida = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+            String login = prefixo + cliente;
+            String destino = prefixo + ((cliente + 1) % clientes);
+
+            List<String> cadastro = List.of(
+                    "criarUsuario login=" + login + " senha=s nome=\"Cliente " + cliente + "\"",
+                    "s=abrirSessao login=" + login + " senha=s");
+            enviar(cadastro, entrada, saida, erros);
+            aguardar(barreira); // Só envia recados depois que o destinatário foi cadastrado
+
+            List<String> envios = new ArrayList<>();
+            for (int i = 0; i < recados; i++) {
+                envios.add("enviarRecado id=${s} destinatario=" + destino + " recado=\"Recado " + i + "\"");
+            }
+            List<String> leituras = new ArrayList<>();
+            for (int i = 0; i < recados; i++) {
+                leituras.add("lerRecado id=${s}");
+            }
+
+            for (List<String> comandos : List.of(envios, leituras)) {
+                for (int i = 0; i < comandos.size(); i += profundidade) {
+                    enviar(comandos.subList(i, Math.min(comandos.size(), i + profundidade)), entrada, saida, erros);
+                }
+                if (comandos == envios) {
+                    aguardar(barreira); // Só lê os recados depois que o cliente anterior enviou todos
+                }
+            }
+        }
+    }
+
+    private static void aguardar(CyclicBarrier barreira) throws IOException {
+        try {
+            barreira.await();
+        } catch (InterruptedException | BrokenBarrierException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private static void enviar(List<String> comandos, BufferedReader entrada, Writer saida, AtomicLong erros) throws IOException {
+        for (String comando : comandos) {
+            saida.write(comando);
+            saida.write('\n');
+        }
+        saida.flush();
+        for (int i = 0; i < comandos.size(); i++) {
+            String resposta = entrada.readLine();
+            if (resposta == null || resposta.startsWith("ERRO")) {
+                if (erros.incrementAndGet() <= 5) {
+                    System.out.println("  " + resposta);
+                }
+            }
+        }
+    }
+}
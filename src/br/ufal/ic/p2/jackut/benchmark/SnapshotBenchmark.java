@@ -0,0 +1,111 @@
+package br.ufal.ic.p2.jackut.benchmark;
+
+import br.ufal.ic.p2.jackut.models.entities.Amizade;
+import br.ufal.ic.p2.jackut.models.entities.Comunidade;
+import br.ufal.ic.p2.jackut.models.entities.IdsUsuarios;
+import br.ufal.ic.p2.jackut.models.entities.Usuario;
+import br.ufal.ic.p2.jackut.persistence.Snapshot;
+import br.ufal.ic.p2.jackut.persistence.codec.AmizadeCodec;
+import br.ufal.ic.p2.jackut.persistence.codec.ComunidadeCodec;
+import br.ufal.ic.p2.jackut.persistence.codec.UsuarioCodec;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Compara o tamanho e o tempo de gravação/leitura dos snapshots no formato binário do Jackut
+ * com a serialização Java ({@code ObjectOutputStream}) usada anteriormente.
+ *
+ * <p>Uso: {@code java br.ufal.ic.p2.jackut.benchmark.SnapshotBenchmark [usuarios]} (padrão: 1.000.000).
+ * Recomenda-se {@code -Xmx4g} para o volume padrão.</p>
+ */
+public class SnapshotBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int total = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        Random random = new Random(42);
+
+        Map<String, Usuario> usuarios = new HashMap<>();
+        Map<String, Amizade> amizades = new LinkedHashMap<>();
+        Map<String, Comunidade> comunidades = new LinkedHashMap<>();
+        IdsUsuarios ids = new IdsUsuarios();
+
+        for (int i = 0; i < total; i++) {
+            String login = "usuario" + i;
+            Usuario usuario = new Usuario(login, "senha" + i, "Usuario Numero " + i);
+            usuario.setAtributo("cidadeNatal", "Cidade " + random.nextInt(500));
+            usuario.setAtributo("estadoCivil", random.nextBoolean() ? "solteiro" : "casado");
+            usuarios.put(login, usuario);
+            amizades.put(login, new Amizade(ids));
+        }
+
+        for (int i = 0; i < total; i++) {
+            Amizade amizade = amizades.get("usuario" + i);
+            for (int j = 0; j < 5; j++) {
+                String amigo = "usuario" + random.nextInt(total);
+                amizade.getAmigos().add(amigo);
+                amizades.get(amigo).getAmigos().add("usuario" + i);
+            }
+        }
+
+        for (int c = 0; c < total / 100; c++) {
+            String nome = "Comunidade " + c;
+            String dono = "usuario" + random.nextInt(total);
+            Comunidade comunidade = new Comunidade(dono, nome, "Descricao da comunidade " + c, ids);
+            usuarios.get(dono).comunidades.add(nome);
+            for (int j = 0; j < 50; j++) {
+                String membro = "usuario" + random.nextInt(total);
+                comunidade.adicionarMembro(membro);
+                usuarios.get(membro).comunidades.add(nome);
+            }
+            comunidades.put(nome, comunidade);
+        }
+
+        System.out.printf("%d usuarios, %d comunidades%n%n", total, comunidades.size());
+        System.out.printf("%-12s %-9s %12s %12s %12s%n", "snapshot", "formato", "bytes", "gravar (ms)", "ler (ms)");
+
+        medir("usuarios", usuarios,
+                arquivo -> Snapshot.salvar(arquivo, UsuarioCodec.TIPO, UsuarioCodec.VERSAO, out -> UsuarioCodec.escreverMapa(out, usuarios)),
+                arquivo -> Snapshot.carregar(arquivo, UsuarioCodec.TIPO, UsuarioCodec.VERSAO, UsuarioCodec::lerMapa, null));
+        medir("amizades", amizades,
+                arquivo -> Snapshot.salvar(arquivo, AmizadeCodec.TIPO, AmizadeCodec.VERSAO, out -> AmizadeCodec.escreverMapa(out, amizades)),
+                arquivo -> Snapshot.carregar(arquivo, AmizadeCodec.TIPO, AmizadeCodec.VERSAO, (in, versao) -> AmizadeCodec.lerMapa(in, versao, ids), null));
+        medir("comunidades", comunidades,
+                arquivo -> Snapshot.salvar(arquivo, ComunidadeCodec.TIPO, ComunidadeCodec.VERSAO, out -> ComunidadeCodec.escreverMapa(out, comunidades)),
+                arquivo -> Snapshot.carregar(arquivo, ComunidadeCodec.TIPO, ComunidadeCodec.VERSAO, (in, versao) -> ComunidadeCodec.lerMapa(in, versao, ids), null));
+    }
+
+    private interface Operacao {
+        void executar(String arquivo) throws Exception;
+    }
+
+    private static void medir(String nome, Object estado, Operacao gravarBinario, Operacao lerBinario) throws Exception {
+        File serializado = File.createTempFile("jackut-" + nome, ".javaser");
+        File binario = File.createTempFile("jackut-" + nome, ".bin");
+        serializado.deleteOnExit();
+        binario.deleteOnExit();
+
+        long inicio = System.nanoTime();
+        try (ObjectOutputStream oos = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(serializado)))) {
+            oos.writeObject(estado);
+        }
+        long gravarJava = System.nanoTime() - inicio;
+
+        inicio = System.nanoTime();
+        try (ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(new FileInputStream(serializado)))) {
+            ois.readObject();
+        }
+        long lerJava = System.nanoTime() - inicio;
+
+        inicio = System.nanoTime();
+        gravarBinario.executar(binario.getPath());
+        long gravarBin = System.nanoTime() - inicio;
+
+        inicio = System.nanoTime();
+        lerBinario.executar(binario.getPath());
+        long lerBin = System.nanoTime() - inicio;
+
+        System.out.printf("%-12s %-9s %12d %12d %12d%n", nome, "java", serializado.length(), gravarJava / 1_000_000, lerJava / 1_000_000);
+        System.out.printf("%-12s %-9s %12d %12d %12d%n", nome, "binario", binario.length(), gravarBin / 1_000_000, lerBin / 1_000_000);
+    }
+}
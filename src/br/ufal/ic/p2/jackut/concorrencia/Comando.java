@@ -0,0 +1,66 @@
+package br.ufal.ic.p2.jackut.concorrencia;
+
+/**
+ * Operação da {@code Facade} executada pelo modo de concorrência: sob as {@link Travas} ou
+ * na thread do {@link EscritorUnico}.
+ *
+ * <p>As operações da {@code Facade} declaram exceções que não têm um ancestral comum além de {@link Exception};
+ * por isso o comando pode lançar qualquer exceção, e quem o executa a relança sem embrulhá-la
+ * ({@link #relancar(Throwable)}), de modo que o chamador da {@code Facade} recebe exatamente a exceção do serviço.</p>
+ *
+ * @param <T> Tipo do resultado.
+ */
+@FunctionalInterface
+public interface Comando<T> {
+
+    /**
+     * Executa a operação.
+     *
+     * @return O resultado da operação.
+     * @throws Exception A exceção lançada pelo serviço.
+     */
+    T executar() throws Exception;
+
+    /**
+     * Operação sem resultado.
+     */
+    @FunctionalInterface
+    interface Acao {
+
+        /**
+         * Executa a operação.
+         *
+         * @throws Exception A exceção lançada pelo serviço.
+         */
+        void executar() throws Exception;
+    }
+
+    /**
+     * Adapta uma operação sem resultado.
+     *
+     * @param acao A operação.
+     * @return Um comando que executa a operação e retorna {@code null}.
+     */
+    static Comando<Void> de(Acao acao) {
+        return () -> {
+            acao.executar();
+            return null;
+        };
+    }
+
+    /**
+     * Relança uma exceção sem embrulhá-la, mesmo que seja verificada: o método que chama a {@code Facade}
+     * já a declara, pois é a exceção lançada pela operação do serviço.
+     *
+     * @param erro A exceção lançada pelo comando.
+     * @return Nunca retorna; o tipo permite escrever {@code throw Comando.relancar(erro)}.
+     */
+    static RuntimeException relancar(Throwable erro) {
+        return Comando.<RuntimeException>lancar(erro);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <E extends Throwable> E lancar(Throwable erro) throws E {
+        throw (E) erro;
+    }
+}
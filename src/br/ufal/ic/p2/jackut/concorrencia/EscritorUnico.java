@@ -0,0 +1,303 @@
+package br.ufal.ic.p2.jackut.concorrencia;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Laço de comandos com uma única thread escritora, alternativa às {@link Travas}: as threads que chamam a
+ * {@code Facade} publicam seus comandos num anel de tamanho fixo e a thread escritora os aplica em lotes,
+ * um de cada vez, sem nenhuma trava sobre o estado dos serviços.
+ *
+ * <p>Ao fim de cada lote, e antes de liberar as threads que o enviaram, a thread escritora executa o
+ * {@link Lote} informado na construção: a {@code Facade} o usa para gravar as mutações do lote de uma vez
+ * no armazenamento e para republicar as visões de leitura das chaves tocadas.</p>
+ *
+ * <p>O anel é de múltiplos produtores e um único consumidor: cada produtor reserva uma posição com um
+ * contador atômico e espera, se o anel estiver cheio, que a thread escritora libere aquela posição.</p>
+ */
+public class EscritorUnico {
+
+    /**
+     * Trabalho executado pela thread escritora em torno de cada lote de comandos.
+     */
+    public interface Lote {
+
+        /**
+         * Chamado antes do primeiro comando do lote.
+         */
+        void iniciar();
+
+        /**
+         * Chamado depois do último comando do lote, antes de liberar as threads que o enviaram. Uma exceção
+         * (por exemplo, o lote não chegou ao disco) é relançada a todos os comandos do lote que não falharam.
+         *
+         * @param chaves Logins e chaves de comunidade informados pelos comandos do lote.
+         * @param todas Se algum comando do lote alterou o sistema inteiro (por exemplo, a remoção de um usuário).
+         */
+        void concluir(Set<String> chaves, boolean todas);
+    }
+
+    /**
+     * Comando publicado no anel, com o resultado preenchido pela thread escritora.
+     */
+    private static final class Pedido {
+
+        private final Comando<?> comando;
+        private final String[] chaves;
+        private final boolean exclusivo;
+        private final Thread chamador = Thread.currentThread();
+
+        private Object resultado;
+        private Throwable erro;
+
+        /** Escrito por último pela thread escritora; a leitura do chamador enxerga o resultado e o erro. */
+        private volatile boolean concluido;
+
+        private Pedido(Comando<?> comando, String[] chaves, boolean exclusivo) {
+            this.comando = comando;
+            this.chaves = chaves;
+            this.exclusivo = exclusivo;
+        }
+    }
+
+    /** Quantidade de esperas ativas antes de uma thread estacionar. */
+    private static final int ESPERAS_ATIVAS = 100;
+
+    private final AtomicReferenceArray<Pedido> anel;
+    private final int mascara;
+
+    /** Próxima posição a ser reservada por um produtor. */
+    private final AtomicLong cauda = new AtomicLong();
+
+    /** Quantidade de posições já consumidas pela thread escritora; um produtor só ocupa a posição de uma volta anterior já consumida. */
+    private volatile long consumidos;
+
+    /** Indica que a thread escritora está (ou está prestes a ficar) estacionada à espera de comandos. */
+    private volatile boolean dormindo;
+
+    private final Lote lote;
+    private final Thread escritor;
+
+    /** Chaves tocadas pelo lote em andamento; usado apenas pela thread escritora. */
+    private final Set<String> chavesLote = new HashSet<>();
+    private boolean todasLote;
+
+    private volatile long lotes;
+    private volatile long comandos;
+
+    /**
+     * Construtor da classe {@code EscritorUnico}; a thread escritora só é iniciada por {@link #iniciar}.
+     *
+     * @param capacidade Tamanho do anel e máximo de comandos por lote; arredondado para uma potência de dois.
+     * @param lote Trabalho executado em torno de cada lote.
+     */
+    private EscritorUnico(int capacidade, Lote lote) {
+        int tamanho = Integer.highestOneBit(Math.max(2, capacidade - 1)) << 1;
+        this.anel = new AtomicReferenceArray<>(tamanho);
+        this.mascara = tamanho - 1;
+        this.lote = lote;
+        this.escritor = new Thread(this::executarLaco, "jackut-escritor");
+        this.escritor.setDaemon(true); // Fica estacionada enquanto não houver comandos
+    }
+
+    /**
+     * Cria o escritor e inicia a sua thread, já com o objeto inteiramente construído.
+     *
+     * @param capacidade Tamanho do anel e máximo de comandos por lote; arredondado para uma potência de dois.
+     * @param lote Trabalho executado em torno de cada lote.
+     * @return O escritor, pronto para receber comandos.
+     */
+    public static EscritorUnico iniciar(int capacidade, Lote lote) {
+        EscritorUnico escritor = new EscritorUnico(capacidade, lote);
+        escritor.escritor.start();
+        return escritor;
+    }
+
+    /**
+     * Executa um comando na thread escritora e espera o fim do seu lote.
+     * Chamado pela própria thread escritora (dentro de outro comando), executa o comando diretamente.
+     *
+     * @param comando A operação.
+     * @param chaves Logins ou chaves de comunidade cujas visões o comando altera; chaves nulas são ignoradas.
+     * @param <T> Tipo do resultado.
+     * @return O resultado do comando.
+     */
+    public <T> T executar(Comando<T> comando, String... chaves) {
+        return enviar(new Pedido(comando, chaves, false));
+    }
+
+    /**
+     * Executa na thread escritora um comando que altera o sistema inteiro.
+     *
+     * @param comando A operação.
+     * @param <T> Tipo do resultado.
+     * @return O resultado do comando.
+     */
+    public <T> T executarExclusivo(Comando<T> comando) {
+        return enviar(new Pedido(comando, new String[0], true));
+    }
+
+    /**
+     * Indica se a thread atual é a thread escritora.
+     *
+     * @return {@code true} dentro de um comando ou do trabalho de um lote.
+     */
+    public boolean isEscritor() {
+        return Thread.currentThread() == escritor;
+    }
+
+    /**
+     * Descreve a execução: comandos aplicados, lotes e tamanho médio dos lotes.
+     *
+     * @return As métricas numa linha.
+     */
+    public String estatisticas() {
+        long totalLotes = lotes;
+        long totalComandos = comandos;
+        return String.format("escritor único: %d comandos em %d lotes (%.1f por lote)",
+                totalComandos, totalLotes, totalLotes == 0 ? 0.0 : (double) totalComandos / totalLotes);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T enviar(Pedido pedido) {
+        if (isEscritor()) {
+            registrarChaves(pedido);
+            try {
+                return (T) pedido.comando.executar();
+            } catch (Exception e) {
+                throw Comando.relancar(e);
+            }
+        }
+
+        publicar(pedido);
+        for (int n = 0; !pedido.concluido; n++) {
+            if (n < ESPERAS_ATIVAS) {
+                Thread.onSpinWait();
+            } else {
+                LockSupport.park(this);
+            }
+        }
+
+        if (pedido.erro != null) {
+            throw Comando.relancar(pedido.erro);
+        }
+        return (T) pedido.resultado;
+    }
+
+    private void publicar(Pedido pedido) {
+        long sequencia = cauda.getAndIncrement();
+        for (int n = 0; sequencia - consumidos > mascara; n++) { // Anel cheio: espera a volta anterior ser consumida
+            if (n < ESPERAS_ATIVAS) {
+                Thread.onSpinWait();
+            } else {
+                LockSupport.parkNanos(this, 10_000);
+            }
+        }
+        anel.set((int) sequencia & mascara, pedido);
+        if (dormindo) {
+            LockSupport.unpark(escritor);
+        }
+    }
+
+    private void executarLaco() {
+        Pedido[] pedidos = new Pedido[mascara + 1];
+        long cabeca = 0;
+        while (true) {
+            int total = 0;
+            pedidos[total++] = aguardar((int) cabeca & mascara);
+            Pedido proximo;
+            while (total < pedidos.length && (proximo = anel.get((int) (cabeca + total) & mascara)) != null) {
+                pedidos[total++] = proximo;
+            }
+            for (int i = 0; i < total; i++) {
+                anel.lazySet((int) (cabeca + i) & mascara, null);
+            }
+            cabeca += total;
+            consumidos = cabeca;
+
+            aplicar(pedidos, total);
+            lotes++;
+            comandos += total;
+            for (int i = 0; i < total; i++) {
+                Pedido pedido = pedidos[i];
+                pedidos[i] = null;
+                pedido.concluido = true;
+                LockSupport.unpark(pedido.chamador);
+            }
+        }
+    }
+
+    /**
+     * Espera o comando da posição informada ser publicado.
+     *
+     * @param indice Posição no anel.
+     * @return O comando.
+     */
+    private Pedido aguardar(int indice) {
+        Pedido pedido;
+        for (int n = 0; (pedido = anel.get(indice)) == null; n++) {
+            if (n < ESPERAS_ATIVAS) {
+                Thread.onSpinWait();
+                continue;
+            }
+            dormindo = true;
+            if ((pedido = anel.get(indice)) == null) { // O produtor publica antes de ler "dormindo"
+                LockSupport.park(this);
+            }
+            dormindo = false;
+            if (pedido != null) {
+                break;
+            }
+        }
+        return pedido;
+    }
+
+    /**
+     * Aplica os comandos de um lote, na ordem, e executa o trabalho do lote.
+     *
+     * @param pedidos Os comandos.
+     * @param total Quantidade de comandos.
+     */
+    private void aplicar(Pedido[] pedidos, int total) {
+        chavesLote.clear();
+        todasLote = false;
+        try {
+            lote.iniciar();
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        }
+
+        for (int i = 0; i < total; i++) {
+            Pedido pedido = pedidos[i];
+            registrarChaves(pedido);
+            try {
+                pedido.resultado = pedido.comando.executar();
+            } catch (Throwable e) {
+                pedido.erro = e; // Relançado na thread que enviou o comando
+            }
+        }
+
+        try {
+            lote.concluir(Collections.unmodifiableSet(chavesLote), todasLote);
+        } catch (RuntimeException e) {
+            for (int i = 0; i < total; i++) {
+                if (pedidos[i].erro == null) {
+                    pedidos[i].erro = e;
+                }
+            }
+        }
+    }
+
+    private void registrarChaves(Pedido pedido) {
+        todasLote |= pedido.exclusivo;
+        for (String chave : pedido.chaves) {
+            if (chave != null) {
+                chavesLote.add(chave);
+            }
+        }
+    }
+}
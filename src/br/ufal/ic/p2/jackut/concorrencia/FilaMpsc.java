@@ -0,0 +1,191 @@
+package br.ufal.ic.p2.jackut.concorrencia;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * Fila sem travas de múltiplos produtores e um único consumidor, formada por blocos encadeados de
+ * {@link #TAMANHO_BLOCO} posições: um produtor reserva uma posição do bloco da cauda com um incremento atômico
+ * e a preenche; quem encontra o bloco cheio encadeia o próximo. Ao contrário de uma lista encadeada, não há
+ * um nó por elemento, e produtores concorrentes só disputam o contador do bloco.
+ *
+ * <p>O consumo ({@link #retirar()}, {@link #paraLista()}) deve ser feito por uma thread de cada vez, como o dono
+ * da caixa de recados sob a sua trava; as chamadas sucessivas podem vir de threads diferentes desde que
+ * ordenadas por essa trava. Um elemento cuja posição já foi reservada, mas ainda não preenchida, é aguardado
+ * pelo consumidor: a ordem da fila é a ordem das reservas.</p>
+ *
+ * @param <E> Tipo dos elementos.
+ */
+public class FilaMpsc<E> {
+
+    /** Posições de cada bloco. */
+    public static final int TAMANHO_BLOCO = 32;
+
+    /**
+     * Bloco de posições da fila.
+     */
+    private static final class Bloco<E> {
+
+        private final AtomicReferenceArray<E> itens = new AtomicReferenceArray<>(TAMANHO_BLOCO);
+
+        /** Posição do bloco na fila: o primeiro é o zero, e cada bloco encadeado tem o número do anterior mais um. */
+        private final long numero;
+
+        /** Posições reservadas pelos produtores; passa de {@link #TAMANHO_BLOCO} quando o bloco enche. */
+        private final AtomicInteger reservadas = new AtomicInteger();
+
+        private volatile Bloco<E> proximo;
+
+        /** Posições já retiradas; alterado apenas pelo consumidor. */
+        private int retiradas;
+
+        private Bloco(long numero) {
+            this.numero = numero;
+        }
+    }
+
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<Bloco, Bloco> PROXIMO =
+            AtomicReferenceFieldUpdater.newUpdater(Bloco.class, Bloco.class, "proximo");
+
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<FilaMpsc, Bloco> CAUDA =
+            AtomicReferenceFieldUpdater.newUpdater(FilaMpsc.class, Bloco.class, "cauda");
+
+    /** Bloco onde os produtores reservam posições. */
+    private volatile Bloco<E> cauda;
+
+    /** Bloco de onde o consumidor retira; os anteriores já foram liberados. */
+    private Bloco<E> cabeca;
+
+    /**
+     * Cria uma fila vazia.
+     */
+    public FilaMpsc() {
+        cabeca = cauda = new Bloco<>(0);
+    }
+
+    /**
+     * Acrescenta um elemento ao final da fila; pode ser chamado por várias threads ao mesmo tempo.
+     *
+     * @param elemento O elemento, não nulo.
+     */
+    @SuppressWarnings("unchecked")
+    public void adicionar(E elemento) {
+        if (elemento == null) {
+            throw new NullPointerException();
+        }
+
+        while (true) {
+            Bloco<E> bloco = cauda;
+            int posicao = bloco.reservadas.getAndIncrement();
+            if (posicao < TAMANHO_BLOCO) {
+                bloco.itens.set(posicao, elemento);
+                return;
+            }
+
+            // Bloco cheio: encadeia um novo, já com o elemento na primeira posição, ou ajuda a avançar a cauda.
+            Bloco<E> proximo = bloco.proximo;
+            if (proximo == null) {
+                Bloco<E> novo = new Bloco<>(bloco.numero + 1);
+                novo.reservadas.set(1);
+                novo.itens.set(0, elemento);
+                if (PROXIMO.compareAndSet(bloco, null, novo)) {
+                    CAUDA.compareAndSet(this, bloco, novo);
+                    return;
+                }
+                proximo = bloco.proximo;
+            }
+            CAUDA.compareAndSet(this, bloco, proximo);
+        }
+    }
+
+    /**
+     * Retira o elemento mais antigo; apenas o consumidor pode chamá-lo.
+     *
+     * @return O elemento, ou {@code null} se a fila estiver vazia.
+     */
+    public E retirar() {
+        Bloco<E> bloco = cabeca;
+        if (bloco.retiradas == TAMANHO_BLOCO) {
+            Bloco<E> proximo = bloco.proximo;
+            if (proximo == null) {
+                return null;
+            }
+            cabeca = bloco = proximo; // O bloco esgotado fica para o coletor de lixo
+        }
+
+        int posicao = bloco.retiradas;
+        if (posicao >= Math.min(bloco.reservadas.get(), TAMANHO_BLOCO)) {
+            return null;
+        }
+
+        E elemento = aguardar(bloco, posicao);
+        bloco.itens.lazySet(posicao, null);
+        bloco.retiradas = posicao + 1;
+        return elemento;
+    }
+
+    /**
+     * Indica se a fila está vazia; apenas o consumidor pode chamá-lo.
+     *
+     * @return {@code true} se {@link #retirar()} retornaria {@code null}.
+     */
+    public boolean isVazia() {
+        Bloco<E> bloco = cabeca;
+        if (bloco.retiradas == TAMANHO_BLOCO) {
+            bloco = bloco.proximo;
+            if (bloco == null) {
+                return true;
+            }
+        }
+        return bloco.retiradas >= Math.min(bloco.reservadas.get(), TAMANHO_BLOCO);
+    }
+
+    /**
+     * Conta os elementos da fila sem percorrê-la: a diferença entre a última posição reservada e a próxima a
+     * retirar, calculadas pelos números dos blocos da cauda e da cabeça. Apenas o consumidor pode chamá-lo;
+     * elementos adicionados ao mesmo tempo podem ainda não ser contados.
+     *
+     * @return A quantidade de elementos que {@link #retirar()} retornaria.
+     */
+    public int tamanho() {
+        Bloco<E> ultimo = cauda;
+        for (Bloco<E> proximo = ultimo.proximo; proximo != null; proximo = ultimo.proximo) {
+            ultimo = proximo; // A cauda pode ainda não ter avançado para o bloco encadeado por outro produtor
+        }
+        long reservadas = ultimo.numero * TAMANHO_BLOCO + Math.min(ultimo.reservadas.get(), TAMANHO_BLOCO);
+        long retiradas = cabeca.numero * TAMANHO_BLOCO + cabeca.retiradas;
+        return (int) Math.max(0, reservadas - retiradas);
+    }
+
+    /**
+     * Copia os elementos da fila, do mais antigo ao mais recente, sem retirá-los; apenas o consumidor pode chamá-lo.
+     *
+     * @return Uma lista nova com os elementos.
+     */
+    public List<E> paraLista() {
+        List<E> elementos = new ArrayList<>();
+        for (Bloco<E> bloco = cabeca; bloco != null; bloco = bloco.proximo) {
+            int fim = Math.min(bloco.reservadas.get(), TAMANHO_BLOCO);
+            for (int posicao = bloco.retiradas; posicao < fim; posicao++) {
+                elementos.add(aguardar(bloco, posicao));
+            }
+        }
+        return elementos;
+    }
+
+    /**
+     * Espera o produtor que reservou uma posição preenchê-la.
+     */
+    private static <E> E aguardar(Bloco<E> bloco, int posicao) {
+        E elemento;
+        while ((elemento = bloco.itens.get(posicao)) == null) {
+            Thread.onSpinWait(); // Entre a reserva e o preenchimento há apenas uma escrita
+        }
+        return elemento;
+    }
+}
@@ -0,0 +1,234 @@
+package br.ufal.ic.p2.jackut.concorrencia;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publicador ({@link Flow.Publisher}) dos itens que chegam à caixa de um usuário: recados ou mensagens de
+ * comunidades. Em vez de consultar a caixa repetidamente, o cliente assina o publicador e recebe cada item
+ * quando ele chega.
+ *
+ * <p>A própria caixa é o buffer de cada assinante: um item só sai dela quando o assinante o pediu
+ * ({@link Flow.Subscription#request(long)}), por meio da {@link Retirada} informada na construção, que o lê
+ * e persiste a leitura como {@code lerRecados}/{@code lerMensagens}. Cada passo da entrega retira um único
+ * item e o entrega antes de retirar o próximo: se o assinante falhar, nenhum outro item terá saído da caixa sem
+ * ser entregue. O que o assinante ainda não pediu continua na caixa, persistido, sem ocupar memória do
+ * publicador. Quem adiciona um item à caixa apenas chama {@link Avisos#avisar(String)}, que agenda a entrega
+ * numa thread de fundo: o envio nunca espera um assinante lento.</p>
+ *
+ * @param <T> Tipo dos itens.
+ */
+public class PublicadorCaixa<T> implements Flow.Publisher<T> {
+
+    /**
+     * Threads virtuais ({@link ThreadsVirtuais}) que entregam os itens aos assinantes, fora das threads que os
+     * enviaram: uma mensagem a uma comunidade com muitos assinantes, ou um assinante lento, não multiplica as
+     * threads de plataforma. Antes do Java 21, as entregas usam threads de plataforma reaproveitadas.
+     */
+    private static final ExecutorService ENTREGA = ThreadsVirtuais.executorPorTarefa("jackut-assinaturas-");
+
+    /**
+     * Retira itens da caixa do usuário assinado, no modo de concorrência da {@code Facade}.
+     *
+     * @param <T> Tipo dos itens.
+     */
+    @FunctionalInterface
+    public interface Retirada<T> {
+
+        /**
+         * Retira e persiste a leitura de até {@code max} itens, do mais antigo ao mais recente.
+         *
+         * @param max Quantidade máxima de itens.
+         * @return Os itens retirados; vazia se a caixa estiver vazia.
+         * @throws Exception Se a leitura falhar, por exemplo porque a sessão deixou de existir.
+         */
+        List<T> retirar(int max) throws Exception;
+    }
+
+    /**
+     * Avisos de chegada de itens, por dono da caixa, para as assinaturas ativas. Sem assinaturas,
+     * {@link #avisar(String)} custa uma consulta a um mapa vazio.
+     */
+    public static final class Avisos {
+
+        private final Map<String, Set<Runnable>> ouvintes = new ConcurrentHashMap<>();
+
+        /**
+         * Comunica que chegaram itens à caixa de um usuário.
+         *
+         * @param chave Login do dono da caixa.
+         */
+        public void avisar(String chave) {
+            Set<Runnable> assinaturas = ouvintes.get(chave);
+            if (assinaturas != null) {
+                assinaturas.forEach(Runnable::run);
+            }
+        }
+
+        /**
+         * Indica se não há nenhuma assinatura ativa.
+         *
+         * @return {@code true} se nenhum aviso teria efeito.
+         */
+        public boolean isVazio() {
+            return ouvintes.isEmpty();
+        }
+
+        /**
+         * Retorna os donos das caixas assinadas.
+         *
+         * @return Uma visão dos logins com assinaturas ativas.
+         */
+        public Set<String> getChaves() {
+            return ouvintes.keySet();
+        }
+
+        private void registrar(String chave, Runnable aviso) {
+            ouvintes.compute(chave, (k, assinaturas) -> {
+                Set<Runnable> conjunto = assinaturas != null ? assinaturas : ConcurrentHashMap.newKeySet();
+                conjunto.add(aviso);
+                return conjunto;
+            });
+        }
+
+        private void remover(String chave, Runnable aviso) {
+            ouvintes.computeIfPresent(chave, (k, assinaturas) -> {
+                assinaturas.remove(aviso);
+                return assinaturas.isEmpty() ? null : assinaturas;
+            });
+        }
+    }
+
+    private final String chave;
+    private final Avisos avisos;
+    private final Retirada<T> retirada;
+
+    /**
+     * Construtor da classe {@code PublicadorCaixa}.
+     *
+     * @param chave Login do dono da caixa.
+     * @param avisos Avisos de chegada do serviço dono da caixa.
+     * @param retirada Leitura dos itens da caixa.
+     */
+    public PublicadorCaixa(String chave, Avisos avisos, Retirada<T> retirada) {
+        this.chave = chave;
+        this.avisos = avisos;
+        this.retirada = retirada;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super T> assinante) {
+        Assinatura assinatura = new Assinatura(Objects.requireNonNull(assinante));
+        assinante.onSubscribe(assinatura);
+        avisos.registrar(chave, assinatura);
+    }
+
+    /**
+     * Assinatura de um assinante: acumula os pedidos e entrega os itens numa thread de fundo, uma entrega de
+     * cada vez, com os avisos que chegam durante uma entrega acumulados para a seguinte.
+     */
+    private final class Assinatura implements Flow.Subscription, Runnable {
+
+        private final Flow.Subscriber<? super T> assinante;
+
+        /** Itens pedidos e ainda não entregues; {@link Long#MAX_VALUE} significa sem limite. */
+        private final AtomicLong pedidos = new AtomicLong();
+
+        /** Avisos ainda não tratados; só há uma entrega agendada enquanto for maior que zero. */
+        private final AtomicInteger avisosPendentes = new AtomicInteger();
+
+        private volatile boolean cancelada;
+
+        /** Erro a comunicar ao assinante na próxima entrega (pedido inválido). */
+        private volatile Throwable erro;
+
+        private Assinatura(Flow.Subscriber<? super T> assinante) {
+            this.assinante = assinante;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                erro = new IllegalArgumentException("Quantidade pedida deve ser positiva: " + n);
+            } else {
+                pedidos.accumulateAndGet(n, (atual, mais) -> atual + mais < 0 ? Long.MAX_VALUE : atual + mais);
+            }
+            run();
+        }
+
+        @Override
+        public void cancel() {
+            cancelada = true;
+            avisos.remover(chave, this);
+        }
+
+        /**
+         * Agenda uma entrega, se nenhuma estiver em andamento; chamado pelos avisos e pelos pedidos.
+         */
+        @Override
+        public void run() {
+            if (avisosPendentes.getAndIncrement() == 0) {
+                ENTREGA.execute(this::entregarPendentes);
+            }
+        }
+
+        private void entregarPendentes() {
+            int tratados = 1;
+            do {
+                try {
+                    entregar();
+                } catch (RuntimeException e) {
+                    cancel(); // O assinante falhou ao receber o erro
+                    e.printStackTrace();
+                } finally {
+                    tratados = avisosPendentes.addAndGet(-tratados); // Senão, nenhuma entrega seria agendada de novo
+                }
+            } while (tratados != 0);
+        }
+
+        private void entregar() {
+            while (!cancelada) {
+                if (erro != null) {
+                    cancel();
+                    assinante.onError(erro);
+                    return;
+                }
+
+                long quantidade = pedidos.get();
+                if (quantidade == 0) {
+                    return; // Os itens ficam na caixa até o assinante pedir mais
+                }
+
+                List<T> itens;
+                try {
+                    itens = retirada.retirar(1); // Um de cada vez: um item retirado nunca fica sem entrega
+                } catch (Exception e) {
+                    cancel();
+                    assinante.onError(e);
+                    return;
+                }
+                if (itens.isEmpty()) {
+                    return;
+                }
+
+                if (quantidade != Long.MAX_VALUE) {
+                    pedidos.decrementAndGet();
+                }
+                try {
+                    assinante.onNext(itens.get(0)); // Já retirado da caixa: é entregue mesmo após um cancelamento
+                } catch (RuntimeException e) {
+                    cancel(); // Um assinante que lança exceção em onNext é considerado cancelado
+                    assinante.onError(e);
+                    return;
+                }
+            }
+        }
+    }
+}
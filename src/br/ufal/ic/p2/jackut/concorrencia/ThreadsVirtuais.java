@@ -0,0 +1,134 @@
+package br.ufal.ic.p2.jackut.concorrencia;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Threads para tarefas que passam a maior parte do tempo esperando: conexões do servidor, entregas das assinaturas
+ * e operações da {@code FacadeAsync}. A partir do Java 21 são threads virtuais; nas versões anteriores, em que elas
+ * não existem (ou ainda são uma prévia desativada), são threads de plataforma daemon com os mesmos nomes.
+ *
+ * <p>Os métodos do Java 21 são obtidos por reflexão, de modo que o projeto continua compilando e rodando em
+ * Java 17.</p>
+ */
+public final class ThreadsVirtuais {
+
+    /** {@code Thread.ofVirtual()}, ou {@code null} se a JVM não oferece threads virtuais. */
+    private static final Method DE_VIRTUAIS;
+
+    /** {@code Thread.Builder.name(String, long)}. */
+    private static final Method NOMEAR;
+
+    /** {@code Thread.Builder.factory()}. */
+    private static final Method FABRICA;
+
+    /** {@code Executors.newThreadPerTaskExecutor(ThreadFactory)}. */
+    private static final Method POR_TAREFA;
+
+    static {
+        Method[] metodos = new Method[4];
+        try {
+            Class<?> construtor = Class.forName("java.lang.Thread$Builder");
+            metodos[0] = Thread.class.getMethod("ofVirtual");
+            metodos[1] = construtor.getMethod("name", String.class, long.class);
+            metodos[2] = construtor.getMethod("factory");
+            metodos[3] = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+            metodos[0].invoke(null); // Em Java 19 e 20, sem --enable-preview, lança UnsupportedOperationException
+        } catch (ReflectiveOperationException e) {
+            metodos = new Method[4];
+        }
+        DE_VIRTUAIS = metodos[0];
+        NOMEAR = metodos[1];
+        FABRICA = metodos[2];
+        POR_TAREFA = metodos[3];
+    }
+
+    private ThreadsVirtuais() {
+    }
+
+    /**
+     * Indica se as threads criadas por esta classe são virtuais.
+     *
+     * @return {@code true} a partir do Java 21.
+     */
+    public static boolean isDisponiveis() {
+        return DE_VIRTUAIS != null;
+    }
+
+    /**
+     * Cria uma fábrica de threads chamadas {@code prefixo0}, {@code prefixo1}, e assim por diante.
+     *
+     * @param prefixo Prefixo dos nomes das threads.
+     * @return A fábrica, de threads virtuais se disponíveis, ou de threads de plataforma daemon.
+     */
+    public static ThreadFactory fabrica(String prefixo) {
+        if (isDisponiveis()) {
+            try {
+                return (ThreadFactory) FABRICA.invoke(NOMEAR.invoke(DE_VIRTUAIS.invoke(null), prefixo, 0L));
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("Não foi possível criar threads virtuais", e);
+            }
+        }
+        AtomicLong contador = new AtomicLong();
+        return tarefa -> {
+            Thread thread = new Thread(tarefa, prefixo + contador.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Cria um executor que roda cada tarefa numa thread da {@link #fabrica(String)}. Sem threads virtuais, as
+     * threads de plataforma ociosas são reaproveitadas pelas tarefas seguintes.
+     *
+     * @param prefixo Prefixo dos nomes das threads.
+     * @return O executor, a ser encerrado com {@link #encerrar(ExecutorService)}.
+     */
+    public static ExecutorService executorPorTarefa(String prefixo) {
+        ThreadFactory fabrica = fabrica(prefixo);
+        if (isDisponiveis()) {
+            try {
+                return (ExecutorService) POR_TAREFA.invoke(null, fabrica);
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("Não foi possível criar threads virtuais", e);
+            }
+        }
+        return Executors.newCachedThreadPool(fabrica);
+    }
+
+    /**
+     * Inicia uma thread com o nome informado.
+     *
+     * @param nome Nome da thread.
+     * @param tarefa Tarefa executada pela thread.
+     * @return A thread, já iniciada.
+     */
+    public static Thread iniciar(String nome, Runnable tarefa) {
+        Thread thread = fabrica(nome).newThread(tarefa);
+        thread.setName(nome);
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * Encerra um executor depois das tarefas já pedidas e espera que terminem, como {@code ExecutorService.close()}
+     * do Java 19. Se a espera for interrompida, as tarefas são interrompidas e o estado de interrupção é mantido.
+     *
+     * @param executor O executor.
+     */
+    public static void encerrar(ExecutorService executor) {
+        executor.shutdown();
+        try {
+            while (!executor.awaitTermination(1, TimeUnit.DAYS)) {
+                // Continua esperando, como ExecutorService.close()
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
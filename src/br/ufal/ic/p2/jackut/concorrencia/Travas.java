@@ -0,0 +1,145 @@
+package br.ufal.ic.p2.jackut.concorrencia;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Travas por faixas das chaves (logins e nomes de comunidades) usadas pela {@code Facade} no modo concorrente.
+ * Cada chave cai numa de {@link #FAIXAS} faixas pelo seu hash; uma operação trava apenas as faixas das chaves
+ * que toca, sempre em ordem crescente de faixa, de modo que duas operações sobre os mesmos usuários
+ * (por exemplo, {@code adicionarAmigo} nos dois sentidos) nunca entram em impasse.
+ *
+ * <p>As operações que alteram o sistema inteiro (remoção de usuário, checkpoint, compactação do journal)
+ * usam a trava {@link #exclusiva()}, que trava todas as faixas na mesma ordem.</p>
+ */
+public class Travas {
+
+    /** Quantidade de faixas; potência de dois. */
+    public static final int FAIXAS = 1024;
+
+    /** Trava de cada faixa, ou {@code null} quando as travas estão desativadas. */
+    private final ReentrantLock[] faixas;
+
+    /** Executado depois que uma trava é liberada (por exemplo, a manutenção do armazenamento). */
+    private final Runnable aoLiberar;
+
+    /** Índices de todas as faixas, em ordem, usados pela trava exclusiva. */
+    private final int[] todas;
+
+    /**
+     * Construtor da classe {@code Travas}.
+     *
+     * @param ativas Se falso, nenhuma trava é tomada: o sistema só pode ser usado por uma thread de cada vez.
+     * @param aoLiberar Executado, já sem nenhuma faixa tomada, sempre que uma trava é liberada; pode tomar a trava exclusiva.
+     */
+    public Travas(boolean ativas, Runnable aoLiberar) {
+        this.aoLiberar = aoLiberar;
+        this.faixas = ativas ? new ReentrantLock[FAIXAS] : null;
+        this.todas = new int[ativas ? FAIXAS : 0];
+        for (int n = 0; n < todas.length; n++) {
+            faixas[n] = new ReentrantLock();
+            todas[n] = n;
+        }
+    }
+
+    /**
+     * Indica se as travas estão ativas.
+     *
+     * @return {@code true} no modo concorrente.
+     */
+    public boolean isAtivas() {
+        return faixas != null;
+    }
+
+    /**
+     * Trava as faixas das chaves informadas; chaves nulas são ignoradas.
+     *
+     * @param chaves Logins ou chaves de comunidade tocados pela operação.
+     * @return A trava, a ser liberada com {@link Trava#close()}.
+     */
+    public Trava travar(String... chaves) {
+        return travar(Arrays.asList(chaves));
+    }
+
+    /**
+     * Trava as faixas das chaves informadas; chaves nulas são ignoradas.
+     *
+     * @param chaves Logins ou chaves de comunidade tocados pela operação.
+     * @return A trava, a ser liberada com {@link Trava#close()}.
+     */
+    public Trava travar(Collection<String> chaves) {
+        if (faixas == null) {
+            return new Trava(new int[0]);
+        }
+
+        int[] indices = new int[chaves.size()];
+        int total = 0;
+        for (String chave : chaves) {
+            if (chave != null) {
+                indices[total++] = faixa(chave);
+            }
+        }
+        Arrays.sort(indices, 0, total);
+
+        int distintos = 0;
+        for (int i = 0; i < total; i++) {
+            if (distintos == 0 || indices[distintos - 1] != indices[i]) {
+                indices[distintos++] = indices[i];
+            }
+        }
+        return new Trava(Arrays.copyOf(indices, distintos));
+    }
+
+    /**
+     * Trava todas as faixas, excluindo qualquer outra operação enquanto estiver tomada.
+     *
+     * @return A trava, a ser liberada com {@link Trava#close()}.
+     */
+    public Trava exclusiva() {
+        return new Trava(todas);
+    }
+
+    /**
+     * Chave de travamento de uma comunidade, separada do espaço dos logins.
+     *
+     * @param nome Nome da comunidade.
+     * @return A chave da comunidade.
+     */
+    public static String comunidade(String nome) {
+        return nome == null ? null : "comunidade:" + nome;
+    }
+
+    private static int faixa(String chave) {
+        int h = chave.hashCode();
+        return (h ^ (h >>> 16)) & (FAIXAS - 1);
+    }
+
+    /**
+     * Conjunto de faixas tomadas por uma operação, liberadas em ordem inversa.
+     */
+    public final class Trava implements AutoCloseable {
+
+        private final int[] indices;
+
+        private Trava(int[] indices) {
+            this.indices = indices;
+            for (int indice : indices) {
+                faixas[indice].lock();
+            }
+        }
+
+        /**
+         * Libera as faixas e executa a rotina de liberação.
+         */
+        @Override
+        public void close() {
+            for (int i = indices.length - 1; i >= 0; i--) {
+                faixas[indices[i]].unlock();
+            }
+            if (aoLiberar != null) {
+                aoLiberar.run();
+            }
+        }
+    }
+}
@@ -1,36 +1,41 @@
 package br.ufal.ic.p2.jackut.models.entities;
 
 import java.io.Serializable;
-import java.util.LinkedHashSet;
 import java.util.Set;
 
 /**
- * Representa o relacionamento de amizade entre usurios.
+ * Representa o relacionamento de amizade entre usuários.
  * Armazena os amigos, os convites de amizade enviados e recebidos.
  */
 public class Amizade implements Serializable {
 
-    /** Conjunto de usurios que so amigos. */
+    /** Versão da classe original, para ler os "amizades.ser" gravados com serialização Java. */
+    private static final long serialVersionUID = 6259519149623843567L;
+
+    /** Conjunto de usuários que são amigos. */
     private Set<String> amigos;
 
-    /** Conjunto de nomes de usurios para os quais convites de amizade foram enviados. */
+    /** Conjunto de nomes de usuários para os quais convites de amizade foram enviados. */
     private Set<String> convitesEnviados;
 
-    /** Conjunto de nomes de usurios dos quais convites de amizade foram recebidos. */
+    /** Conjunto de nomes de usuários dos quais convites de amizade foram recebidos. */
     private Set<String> convitesRecebidos;
 
     /**
      * Construtor da classe {@code Amizade}.
-     * Inicializa os conjuntos de amigos, convites enviados e convites recebidos como {@link LinkedHashSet}.
+     * Inicializa os conjuntos de amigos, convites enviados e convites recebidos na ordem de inserção,
+     * como {@link ConjuntoLogins}, que {@code ehAmigo} consulta sem travas.
+     *
+     * @param ids Tabela dos identificadores dos logins do sistema.
      */
-    public Amizade() {
-        this.amigos = new LinkedHashSet<>();
-        this.convitesEnviados = new LinkedHashSet<>();
-        this.convitesRecebidos = new LinkedHashSet<>();
+    public Amizade(IdsUsuarios ids) {
+        this.amigos = new ConjuntoLogins(ids);
+        this.convitesEnviados = new ConjuntoLogins(ids);
+        this.convitesRecebidos = new ConjuntoLogins(ids);
     }
 
     /**
-     * Retorna o conjunto de amigos do usurio.
+     * Retorna o conjunto de amigos do usuário.
      *
      * @return um {@link Set} contendo os nomes dos amigos.
      */
@@ -39,20 +44,31 @@ public class Amizade implements Serializable {
     }
 
     /**
-     * Retorna o conjunto de convites de amizade enviados pelo usurio.
+     * Retorna o conjunto de convites de amizade enviados pelo usuário.
      *
-     * @return um {@link Set} contendo os nomes dos usurios para os quais convites foram enviados.
+     * @return um {@link Set} contendo os nomes dos usuários para os quais convites foram enviados.
      */
     public Set<String> getConvitesEnviados() {
         return convitesEnviados;
     }
 
     /**
-     * Retorna o conjunto de convites de amizade recebidos pelo usurio.
+     * Retorna o conjunto de convites de amizade recebidos pelo usuário.
      *
-     * @return um {@link Set} contendo os nomes dos usurios que enviaram convites de amizade.
+     * @return um {@link Set} contendo os nomes dos usuários que enviaram convites de amizade.
      */
     public Set<String> getConvitesRecebidos() {
         return convitesRecebidos;
     }
+
+    /**
+     * Converte para {@link ConjuntoLogins} os conjuntos lidos da serialização Java, gravados como {@code LinkedHashSet}.
+     *
+     * @param ids Tabela dos identificadores dos logins do sistema.
+     */
+    public void indexar(IdsUsuarios ids) {
+        amigos = new ConjuntoLogins(ids, amigos);
+        convitesEnviados = new ConjuntoLogins(ids, convitesEnviados);
+        convitesRecebidos = new ConjuntoLogins(ids, convitesRecebidos);
+    }
 }
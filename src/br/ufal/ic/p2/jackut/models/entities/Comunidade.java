@@ -1,45 +1,58 @@
 package br.ufal.ic.p2.jackut.models.entities;
 
 import java.io.Serializable;
-import java.util.LinkedHashSet;
 import java.util.Set;
 
 /**
  * Representa uma comunidade dentro da plataforma.
- * Cada comunidade possui um nome, descrio, dono e uma lista de membros.
+ * Cada comunidade possui um nome, descrição, dono e uma lista de membros.
  */
 public class Comunidade implements Serializable {
 
+    /** Versão da classe original, para ler os "comunidades.ser" gravados com serialização Java. */
+    private static final long serialVersionUID = -4566814552400205519L;
+
     /** Nome da comunidade. */
     private String nome;
 
-    /** Descrio da comunidade. */
+    /** Descrição da comunidade. */
     private String descricao;
 
-    /** Login do usurio que  dono da comunidade. */
+    /** Login do usuário que é dono da comunidade. */
     private String loginDono;
 
-    /** Conjunto de logins dos membros da comunidade. */
-    public Set<String> membros = new LinkedHashSet<>();
+    /** Conjunto de logins dos membros da comunidade, em ordem de entrada. */
+    public Set<String> membros;
 
     /**
      * Construtor da classe {@code Comunidade}.
      *
-     * @param loginDono Login do usurio criador (dono) da comunidade.
+     * @param loginDono Login do usuário criador (dono) da comunidade.
      * @param nome Nome da comunidade.
-     * @param descricao Descrio da comunidade.
+     * @param descricao Descrição da comunidade.
+     * @param ids Tabela dos identificadores dos logins do sistema, usada pelo conjunto de membros.
      */
-    public Comunidade(String loginDono, String nome, String descricao) {
+    public Comunidade(String loginDono, String nome, String descricao, IdsUsuarios ids) {
         this.nome = nome;
         this.descricao = descricao;
         this.loginDono = loginDono;
+        this.membros = new ConjuntoLogins(ids);
         membros.add(loginDono);
     }
 
     /**
-     * Retorna a descrio da comunidade.
+     * Retorna o nome da comunidade.
+     *
+     * @return uma {@link String} com o nome.
+     */
+    public String getNome() {
+        return nome;
+    }
+
+    /**
+     * Retorna a descrição da comunidade.
      *
-     * @return uma {@link String} com a descrio.
+     * @return uma {@link String} com a descrição.
      */
     public String getDescricao() {
         return descricao;
@@ -64,11 +77,20 @@ public class Comunidade implements Serializable {
     }
 
     /**
-     * Adiciona um novo membro  comunidade.
+     * Adiciona um novo membro à comunidade.
      *
-     * @param membro Login do usurio a ser adicionado como membro.
+     * @param membro Login do usuário a ser adicionado como membro.
      */
     public void adicionarMembro(String membro) {
         membros.add(membro);
     }
+
+    /**
+     * Converte para {@link ConjuntoLogins} os membros lidos da serialização Java, gravados como {@code LinkedHashSet}.
+     *
+     * @param ids Tabela dos identificadores dos logins do sistema.
+     */
+    public void indexar(IdsUsuarios ids) {
+        membros = new ConjuntoLogins(ids, membros);
+    }
 }
@@ -0,0 +1,273 @@
+package br.ufal.ic.p2.jackut.models.entities;
+
+import java.io.Serializable;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.NoSuchElementException;
+
+/**
+ * Conjunto de logins em ordem de inserção guardado como identificadores inteiros ({@link IdsUsuarios}): um vetor
+ * de {@code int} na ordem de inserção e, a partir de {@link #LIMITE_BUSCA_LINEAR} elementos, um índice de
+ * endereçamento aberto, também de {@code int}, para as buscas. No {@code GrafoMemoriaBenchmark} (10 milhões de
+ * amizades entre 1 milhão de usuários), o grafo ocupa cerca de 27 bytes por relacionamento, contando os próprios
+ * conjuntos e a tabela de identificadores, contra 61 bytes com {@code LinkedHashSet}.
+ *
+ * <p>Os relacionamentos entre usuários (amigos, convites, ídolos, fãs, paqueras, inimigos e membros de
+ * comunidades) usam esta classe pela interface {@link java.util.Set}, e os algoritmos sobre o grafo podem usar
+ * diretamente os identificadores ({@link #contemId(int)}, {@link #getIds()}).</p>
+ *
+ * <p>As alterações devem ser feitas por uma thread de cada vez, como sob a trava do dono do conjunto; as
+ * leituras podem ser feitas sem trava, ao mesmo tempo: cada alteração publica de uma vez um novo
+ * {@link Estado}, e quem percorre o conjunto vê sempre o mesmo estado do começo ao fim.</p>
+ */
+public final class ConjuntoLogins extends AbstractSet<String> implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Quantidade de elementos até a qual a busca percorre o vetor, sem índice. */
+    public static final int LIMITE_BUSCA_LINEAR = 8;
+
+    private static final Estado VAZIO = new Estado(new int[0], null, 0);
+
+    /**
+     * Estado publicado do conjunto. Uma inclusão escreve no vetor e no índice apenas posições que os estados
+     * anteriores não leem (além do tamanho deles) e publica um novo estado; uma remoção cria vetores novos.
+     */
+    private static final class Estado {
+
+        /** Identificadores em ordem de inserção, nas posições de 0 a {@link #tamanho} (exclusive). */
+        private final int[] ids;
+
+        /** Endereçamento aberto com sondagem linear: o identificador mais um nas posições ocupadas, zero nas livres; nulo se pequeno. */
+        private final int[] indice;
+
+        private final int tamanho;
+
+        private Estado(int[] ids, int[] indice, int tamanho) {
+            this.ids = ids;
+            this.indice = indice;
+            this.tamanho = tamanho;
+        }
+    }
+
+    /** Tabela que converte os logins deste conjunto. */
+    private final transient IdsUsuarios tabela;
+
+    private transient volatile Estado estado = VAZIO;
+
+    /**
+     * Cria um conjunto vazio.
+     *
+     * @param tabela Tabela dos identificadores dos logins do sistema.
+     */
+    public ConjuntoLogins(IdsUsuarios tabela) {
+        this.tabela = tabela;
+    }
+
+    /**
+     * Cria um conjunto com os logins de uma coleção, na ordem de iteração dela.
+     *
+     * @param tabela Tabela dos identificadores dos logins do sistema.
+     * @param logins Os logins.
+     */
+    public ConjuntoLogins(IdsUsuarios tabela, Collection<String> logins) {
+        this.tabela = tabela;
+        addAll(logins);
+    }
+
+    /**
+     * Verifica se o conjunto contém um identificador.
+     *
+     * @param id Identificador de um login.
+     * @return {@code true} se o login pertencer ao conjunto.
+     */
+    public boolean contemId(int id) {
+        return contem(estado, id);
+    }
+
+    /**
+     * Inclui um identificador no fim da ordem, se ainda não pertencer ao conjunto.
+     *
+     * @param id Identificador de um login.
+     * @return {@code true} se o conjunto mudou.
+     */
+    public boolean adicionarId(int id) {
+        Estado atual = estado;
+        if (contem(atual, id)) {
+            return false;
+        }
+
+        int tamanho = atual.tamanho + 1;
+        int[] ids = atual.ids;
+        if (atual.tamanho == ids.length) {
+            ids = Arrays.copyOf(ids, Math.max(4, ids.length + (ids.length >> 1)));
+        }
+        ids[atual.tamanho] = id;
+
+        int[] indice = atual.indice;
+        if (tamanho > LIMITE_BUSCA_LINEAR) {
+            if (indice == null || tamanho * 4 > indice.length * 3) {
+                indice = indexar(ids, tamanho);
+            } else {
+                inserir(indice, id);
+            }
+        }
+        estado = new Estado(ids, indice, tamanho);
+        return true;
+    }
+
+    /**
+     * Retira um identificador do conjunto, preservando a ordem dos demais.
+     *
+     * @param id Identificador de um login.
+     * @return {@code true} se o conjunto mudou.
+     */
+    public boolean removerId(int id) {
+        Estado atual = estado;
+        int posicao = 0;
+        while (posicao < atual.tamanho && atual.ids[posicao] != id) {
+            posicao++;
+        }
+        if (posicao == atual.tamanho) {
+            return false;
+        }
+
+        int tamanho = atual.tamanho - 1;
+        int[] ids = new int[atual.ids.length];
+        System.arraycopy(atual.ids, 0, ids, 0, posicao);
+        System.arraycopy(atual.ids, posicao + 1, ids, posicao, tamanho - posicao);
+        estado = new Estado(ids, tamanho > LIMITE_BUSCA_LINEAR ? indexar(ids, tamanho) : null, tamanho);
+        return true;
+    }
+
+    /**
+     * Copia os identificadores do conjunto.
+     *
+     * @return Os identificadores, em ordem de inserção.
+     */
+    public int[] getIds() {
+        Estado atual = estado;
+        return Arrays.copyOf(atual.ids, atual.tamanho);
+    }
+
+    @Override
+    public boolean contains(Object login) {
+        if (!(login instanceof String)) {
+            return false;
+        }
+        int id = tabela.buscar((String) login);
+        return id >= 0 && contemId(id);
+    }
+
+    @Override
+    public boolean add(String login) {
+        return adicionarId(tabela.id(login));
+    }
+
+    @Override
+    public boolean remove(Object login) {
+        if (!(login instanceof String)) {
+            return false;
+        }
+        int id = tabela.buscar((String) login);
+        return id >= 0 && removerId(id);
+    }
+
+    @Override
+    public void clear() {
+        estado = VAZIO;
+    }
+
+    @Override
+    public int size() {
+        return estado.tamanho;
+    }
+
+    @Override
+    public Iterator<String> iterator() {
+        Estado percorrido = estado;
+        return new Iterator<>() {
+            private int proxima;
+
+            @Override
+            public boolean hasNext() {
+                return proxima < percorrido.tamanho;
+            }
+
+            @Override
+            public String next() {
+                if (proxima >= percorrido.tamanho) {
+                    throw new NoSuchElementException();
+                }
+                return tabela.login(percorrido.ids[proxima++]);
+            }
+
+            @Override
+            public void remove() {
+                if (proxima == 0) {
+                    throw new IllegalStateException();
+                }
+                removerId(percorrido.ids[proxima - 1]);
+            }
+        };
+    }
+
+    /**
+     * Grava o conjunto, na serialização Java, como o {@code LinkedHashSet} usado antes desta classe.
+     */
+    private Object writeReplace() {
+        return new LinkedHashSet<>(this);
+    }
+
+    private static boolean contem(Estado estado, int id) {
+        int[] indice = estado.indice;
+        if (indice == null) {
+            for (int i = 0; i < estado.tamanho; i++) {
+                if (estado.ids[i] == id) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        int mascara = indice.length - 1;
+        for (int posicao = espalhar(id) & mascara; indice[posicao] != 0; posicao = (posicao + 1) & mascara) {
+            if (indice[posicao] == id + 1) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Cria o índice dos primeiros identificadores do vetor, com ocupação de no máximo metade; o índice é
+     * recriado quando a ocupação passa de três quartos.
+     */
+    private static int[] indexar(int[] ids, int tamanho) {
+        int[] indice = new int[Integer.highestOneBit(tamanho * 2 - 1) << 1];
+        for (int i = 0; i < tamanho; i++) {
+            inserir(indice, ids[i]);
+        }
+        return indice;
+    }
+
+    private static void inserir(int[] indice, int id) {
+        int mascara = indice.length - 1;
+        int posicao = espalhar(id) & mascara;
+        while (indice[posicao] != 0) {
+            posicao = (posicao + 1) & mascara;
+        }
+        indice[posicao] = id + 1;
+    }
+
+    /**
+     * Espalha os bits do identificador: identificadores densos e consecutivos cairiam em posições vizinhas.
+     */
+    private static int espalhar(int id) {
+        int h = id * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,98 @@
+package br.ufal.ic.p2.jackut.models.entities;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Filtro de Bloom de pares de logins: responde "certamente não" ou "talvez" se um par foi incluído, com
+ * {@link #FUNCOES} bits por par num vetor de {@link #BITS_POR_PAR} bits por par da capacidade (menos de 0,1%
+ * de falsos positivos com o filtro cheio). Não há remoção; quem o usa cria um filtro novo, maior, quando a
+ * capacidade se esgota.
+ *
+ * <p>Os pares são identificados pelo {@link String#hashCode()} dos dois logins, que a {@link String} guarda
+ * depois de calculado: a consulta não faz nenhuma busca em mapa. As inclusões podem ser feitas por várias threads
+ * e as consultas não usam trava; um par incluído é visto por toda consulta que comece depois da inclusão.</p>
+ */
+public class FiltroBloom {
+
+    /** Bits do vetor por par da capacidade. */
+    public static final int BITS_POR_PAR = 16;
+
+    /** Bits marcados por par. */
+    public static final int FUNCOES = 7;
+
+    private final AtomicLongArray bits;
+    private final int mascara;
+    private final int capacidade;
+
+    /**
+     * Cria um filtro vazio.
+     *
+     * @param capacidade Quantidade de pares até a qual a taxa de falsos positivos é garantida.
+     */
+    public FiltroBloom(int capacidade) {
+        this.capacidade = Math.max(64, capacidade);
+        int tamanho = Integer.highestOneBit(this.capacidade * BITS_POR_PAR - 1) << 1;
+        this.bits = new AtomicLongArray(tamanho >>> 6);
+        this.mascara = tamanho - 1;
+    }
+
+    /**
+     * Retorna a quantidade de pares para a qual o filtro foi dimensionado.
+     *
+     * @return A capacidade.
+     */
+    public int getCapacidade() {
+        return capacidade;
+    }
+
+    /**
+     * Inclui um par.
+     *
+     * @param login Primeiro login do par.
+     * @param outro Segundo login do par.
+     */
+    public void adicionar(String login, String outro) {
+        long hash = espalhar(login, outro);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32) | 1;
+        for (int i = 0; i < FUNCOES; i++) {
+            int bit = (h1 + i * h2) & mascara;
+            long marca = 1L << bit;
+            int palavra = bit >>> 6;
+            if ((bits.get(palavra) & marca) == 0) {
+                bits.getAndAccumulate(palavra, marca, (atual, novo) -> atual | novo);
+            }
+        }
+    }
+
+    /**
+     * Verifica se um par pode ter sido incluído.
+     *
+     * @param login Primeiro login do par.
+     * @param outro Segundo login do par.
+     * @return {@code false} se o par certamente não foi incluído; {@code true} se talvez tenha sido.
+     */
+    public boolean talvezContenha(String login, String outro) {
+        long hash = espalhar(login, outro);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32) | 1;
+        for (int i = 0; i < FUNCOES; i++) {
+            int bit = (h1 + i * h2) & mascara;
+            if ((bits.get(bit >>> 6) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Combina os hashes dos dois logins, na ordem, e espalha os bits (finalizador do MurmurHash3): as duas metades
+     * do resultado geram as posições por hash duplo.
+     */
+    private static long espalhar(String login, String outro) {
+        long h = ((long) login.hashCode() << 32) ^ (outro.hashCode() & 0xFFFFFFFFL) ^ 0x9E3779B97F4A7C15L;
+        h = (h ^ (h >>> 33)) * 0xFF51AFD7ED558CCDL;
+        h = (h ^ (h >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return h ^ (h >>> 33);
+    }
+}
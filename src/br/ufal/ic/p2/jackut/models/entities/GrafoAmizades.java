@@ -0,0 +1,333 @@
+package br.ufal.ic.p2.jackut.models.entities;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Visão de leitura do grafo de amizades confirmadas, pelos identificadores de {@link IdsUsuarios}, em formato
+ * CSR (<i>compressed sparse row</i>): um vetor com o início da linha de cada usuário e um único vetor com os
+ * amigos de todos, cada linha em ordem crescente. {@link #ehAmigo(String, String)} é uma busca binária na linha
+ * e os percursos e as interseções ({@link #getAmigosEmComum(int, int)}) leem posições contíguas da memória, em
+ * vez de nós espalhados de conjuntos.
+ *
+ * <p>As amizades feitas depois da última reconstrução ficam numa sobreposição, consultada junto com a base.
+ * Quando a sobreposição passa de {@link #LIMITE_SOBREPOSICAO} amizades (ou de um dezesseis avos da base), uma
+ * thread de fundo mescla a base com ela, linha a linha, e publica a nova base; as amizades feitas durante a
+ * mesclagem vão para uma nova sobreposição.</p>
+ *
+ * <p>As leituras não usam trava: cada alteração publica de uma vez um novo {@link Estado}. As alterações são
+ * serializadas pelo próprio grafo.</p>
+ */
+public class GrafoAmizades {
+
+    /** Amizades na sobreposição a partir das quais a base é reconstruída (com {@code -Djackut.grafo.sobreposicao=N}). */
+    public static final int LIMITE_SOBREPOSICAO = Integer.getInteger("jackut.grafo.sobreposicao", 4096);
+
+    /** Thread que mescla a sobreposição com a base, fora das threads que fazem as amizades. */
+    private static final ExecutorService MESCLAGEM = Executors.newSingleThreadExecutor(tarefa -> {
+        Thread thread = new Thread(tarefa, "jackut-grafo");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /** Base imutável em formato CSR. */
+    private static final class Csr {
+
+        private static final Csr VAZIO = new Csr(new int[1], new int[0]);
+
+        /** Início da linha de cada identificador em {@link #vizinhos}; a linha {@code id} termina em {@code inicio[id + 1]}. */
+        private final int[] inicio;
+
+        /** Amigos de todos os usuários, linha após linha, cada linha em ordem crescente. */
+        private final int[] vizinhos;
+
+        private Csr(int[] inicio, int[] vizinhos) {
+            this.inicio = inicio;
+            this.vizinhos = vizinhos;
+        }
+
+        private int linhas() {
+            return inicio.length - 1;
+        }
+
+        private boolean contem(int id, int amigo) {
+            return id < linhas() && Arrays.binarySearch(vizinhos, inicio[id], inicio[id + 1], amigo) >= 0;
+        }
+
+        private int grau(int id) {
+            return id < linhas() ? inicio[id + 1] - inicio[id] : 0;
+        }
+
+        private int inicio(int id) {
+            return id < linhas() ? inicio[id] : 0;
+        }
+    }
+
+    /** Amizades feitas depois da última reconstrução, nos dois sentidos. */
+    private static final class Sobreposicao {
+
+        private final IdsUsuarios tabela;
+        private final Map<Integer, ConjuntoLogins> linhas = new ConcurrentHashMap<>();
+
+        /** Quantidade de amizades; alterada sob a trava do grafo. */
+        private int amizades;
+
+        private Sobreposicao(IdsUsuarios tabela) {
+            this.tabela = tabela;
+        }
+
+        private boolean contem(int id, int amigo) {
+            ConjuntoLogins linha = linhas.get(id);
+            return linha != null && linha.contemId(amigo);
+        }
+
+        private int[] linha(int id) {
+            ConjuntoLogins linha = linhas.get(id);
+            return linha != null ? linha.getIds() : new int[0];
+        }
+
+        private void adicionar(int id, int amigo) {
+            linhas.computeIfAbsent(id, k -> new ConjuntoLogins(tabela)).adicionarId(amigo);
+        }
+    }
+
+    /**
+     * Estado publicado: a tabela dos identificadores, a base, a sobreposição em mesclagem (ou {@code null}) e a
+     * sobreposição atual.
+     */
+    private static final class Estado {
+
+        private final IdsUsuarios tabela;
+        private final Csr base;
+        private final Sobreposicao congelada;
+        private final Sobreposicao atual;
+
+        private Estado(IdsUsuarios tabela, Csr base, Sobreposicao congelada, Sobreposicao atual) {
+            this.tabela = tabela;
+            this.base = base;
+            this.congelada = congelada;
+            this.atual = atual;
+        }
+
+        /** Indica se nenhuma sobreposição tem amizades do usuário: a linha da base está completa. */
+        private boolean isSomenteBase(int id) {
+            return (congelada == null || !congelada.linhas.containsKey(id)) && !atual.linhas.containsKey(id);
+        }
+
+        private boolean contem(int id, int amigo) {
+            return base.contem(id, amigo)
+                    || (congelada != null && congelada.contem(id, amigo))
+                    || atual.contem(id, amigo);
+        }
+    }
+
+    private volatile Estado estado;
+
+    /**
+     * Cria um grafo vazio.
+     *
+     * @param tabela Tabela dos identificadores dos logins do sistema.
+     */
+    public GrafoAmizades(IdsUsuarios tabela) {
+        this.estado = new Estado(tabela, Csr.VAZIO, null, new Sobreposicao(tabela));
+    }
+
+    /**
+     * Verifica se dois usuários são amigos.
+     *
+     * @param login Login do usuário.
+     * @param amigo Login do possível amigo.
+     * @return {@code true} se a amizade estiver confirmada.
+     */
+    public boolean ehAmigo(String login, String amigo) {
+        Estado atual = estado;
+        int id = atual.tabela.buscar(login);
+        int idAmigo = atual.tabela.buscar(amigo);
+        return id >= 0 && idAmigo >= 0 && atual.contem(id, idAmigo);
+    }
+
+    /**
+     * Retorna a tabela que converte os identificadores recebidos e retornados pelo grafo; trocada a cada
+     * {@link #reconstruir(Map, IdsUsuarios)}.
+     *
+     * @return A tabela dos identificadores.
+     */
+    public IdsUsuarios getTabela() {
+        return estado.tabela;
+    }
+
+    /**
+     * Retorna os amigos de um usuário, para percorrer o grafo.
+     *
+     * @param id Identificador do usuário.
+     * @return Os identificadores dos amigos, em ordem crescente.
+     */
+    public int[] getAmigos(int id) {
+        return linha(estado, id);
+    }
+
+    /**
+     * Retorna os amigos em comum de dois usuários, pela interseção das suas linhas ({@link Intersecao}).
+     *
+     * @param id Identificador de um usuário.
+     * @param outro Identificador do outro.
+     * @return Os identificadores dos amigos em comum, em ordem crescente.
+     */
+    public int[] getAmigosEmComum(int id, int outro) {
+        Estado atual = estado;
+        if (atual.isSomenteBase(id) && atual.isSomenteBase(outro)) {
+            Csr base = atual.base;
+            return Intersecao.intersecao(base.vizinhos, base.inicio(id), base.inicio(id) + base.grau(id),
+                    base.vizinhos, base.inicio(outro), base.inicio(outro) + base.grau(outro));
+        }
+        int[] a = linha(atual, id);
+        int[] b = linha(atual, outro);
+        return Intersecao.intersecao(a, 0, a.length, b, 0, b.length);
+    }
+
+    /**
+     * Conta os amigos em comum de dois usuários sem criar a lista deles: com as duas linhas inteiras na base,
+     * a interseção percorre diretamente o vetor da base.
+     *
+     * @param id Identificador de um usuário.
+     * @param outro Identificador do outro.
+     * @return A quantidade de amigos em comum.
+     */
+    public int contarAmigosEmComum(int id, int outro) {
+        Estado atual = estado;
+        if (atual.isSomenteBase(id) && atual.isSomenteBase(outro)) {
+            Csr base = atual.base;
+            return Intersecao.contar(base.vizinhos, base.inicio(id), base.inicio(id) + base.grau(id),
+                    base.vizinhos, base.inicio(outro), base.inicio(outro) + base.grau(outro));
+        }
+        int[] a = linha(atual, id);
+        int[] b = linha(atual, outro);
+        return Intersecao.contar(a, 0, a.length, b, 0, b.length);
+    }
+
+    /**
+     * Registra uma amizade confirmada, nos dois sentidos.
+     *
+     * @param login Login de um dos amigos.
+     * @param amigo Login do outro.
+     */
+    public synchronized void adicionar(String login, String amigo) {
+        Estado atual = estado;
+        int id = atual.tabela.id(login);
+        int idAmigo = atual.tabela.id(amigo);
+        if (atual.contem(id, idAmigo)) {
+            return;
+        }
+
+        atual.atual.adicionar(id, idAmigo);
+        atual.atual.adicionar(idAmigo, id);
+        atual.atual.amizades++;
+
+        if (atual.congelada == null
+                && atual.atual.amizades > Math.max(LIMITE_SOBREPOSICAO, atual.base.vizinhos.length / 32)) {
+            estado = new Estado(atual.tabela, atual.base, atual.atual, new Sobreposicao(atual.tabela));
+            MESCLAGEM.execute(this::mesclar);
+        }
+    }
+
+    /**
+     * Reconstrói o grafo a partir das amizades, descartando as sobreposições; usado após o carregamento e ao zerar.
+     *
+     * @param amizades Mapa de login para amizades.
+     * @param tabela Tabela dos identificadores dos logins do sistema, que passa a ser a do grafo.
+     */
+    public synchronized void reconstruir(Map<String, Amizade> amizades, IdsUsuarios tabela) {
+        Sobreposicao todas = new Sobreposicao(tabela);
+        for (Map.Entry<String, Amizade> entrada : amizades.entrySet()) {
+            int id = tabela.id(entrada.getKey());
+            for (String amigo : entrada.getValue().getAmigos()) {
+                todas.adicionar(id, tabela.id(amigo));
+            }
+        }
+        estado = new Estado(tabela, mesclar(Csr.VAZIO, todas, tabela), null, new Sobreposicao(tabela));
+    }
+
+    /**
+     * Mescla a sobreposição congelada com a base e publica o resultado; executado na thread de fundo.
+     * Uma reconstrução feita nesse meio-tempo descarta a sobreposição congelada, e o resultado com ela.
+     */
+    private void mesclar() {
+        Estado inicio = estado;
+        if (inicio.congelada == null) {
+            return;
+        }
+        Csr nova = mesclar(inicio.base, inicio.congelada, inicio.tabela);
+        synchronized (this) {
+            if (estado.congelada == inicio.congelada) {
+                estado = new Estado(inicio.tabela, nova, null, estado.atual);
+            }
+        }
+    }
+
+    private static Csr mesclar(Csr base, Sobreposicao sobreposicao, IdsUsuarios tabela) {
+        int linhas = Math.max(base.linhas(), tabela.getTotal());
+        int[][] acrescimos = new int[linhas][];
+        int[] inicio = new int[linhas + 1];
+        for (int id = 0; id < linhas; id++) {
+            int[] linha = sobreposicao.linha(id);
+            Arrays.sort(linha);
+            acrescimos[id] = linha;
+            inicio[id + 1] = inicio[id] + base.grau(id) + linha.length; // Limite superior, sem descontar repetidos
+        }
+
+        int[] vizinhos = new int[inicio[linhas]];
+        int fim = 0;
+        for (int id = 0; id < linhas; id++) {
+            int a = id < base.linhas() ? base.inicio[id] : 0;
+            int fimA = a + base.grau(id);
+            int[] b = acrescimos[id];
+            int j = 0;
+            inicio[id] = fim;
+            while (a < fimA || j < b.length) {
+                int proximo;
+                if (j == b.length || (a < fimA && base.vizinhos[a] < b[j])) {
+                    proximo = base.vizinhos[a++];
+                } else if (a == fimA || b[j] < base.vizinhos[a]) {
+                    proximo = b[j++];
+                } else {
+                    proximo = base.vizinhos[a++];
+                    j++;
+                }
+                vizinhos[fim++] = proximo;
+            }
+        }
+        inicio[linhas] = fim;
+        return new Csr(inicio, fim == vizinhos.length ? vizinhos : Arrays.copyOf(vizinhos, fim));
+    }
+
+    private static int[] linha(Estado estado, int id) {
+        Csr base = estado.base;
+        int[] linha = Arrays.copyOfRange(base.vizinhos, base.inicio(id), base.inicio(id) + base.grau(id));
+        if (estado.congelada != null) {
+            linha = unir(linha, estado.congelada.linha(id));
+        }
+        return unir(linha, estado.atual.linha(id));
+    }
+
+    /**
+     * Une duas linhas: a primeira em ordem crescente, a segunda em qualquer ordem.
+     */
+    private static int[] unir(int[] ordenada, int[] acrescimos) {
+        if (acrescimos.length == 0) {
+            return ordenada;
+        }
+        int[] uniao = Arrays.copyOf(ordenada, ordenada.length + acrescimos.length);
+        System.arraycopy(acrescimos, 0, uniao, ordenada.length, acrescimos.length);
+        Arrays.sort(uniao);
+        int fim = 0;
+        for (int i = 0; i < uniao.length; i++) {
+            if (fim == 0 || uniao[fim - 1] != uniao[i]) {
+                uniao[fim++] = uniao[i];
+            }
+        }
+        return Arrays.copyOf(uniao, fim);
+    }
+}
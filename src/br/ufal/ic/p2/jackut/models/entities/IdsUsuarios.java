@@ -0,0 +1,90 @@
+package br.ufal.ic.p2.jackut.models.entities;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Tabela de identificadores inteiros densos dos logins: o primeiro login registrado recebe o 0, o seguinte o 1,
+ * e assim por diante. Os conjuntos de relacionamentos ({@link ConjuntoLogins}) guardam esses inteiros em vez das
+ * {@link String}s, e a tabela converte de volta para o login quando o conjunto é percorrido.
+ *
+ * <p>Cada sistema tem a sua tabela, criada pelo serviço de usuários e trocada por uma vazia quando o sistema é
+ * zerado; os conjuntos e o grafo de amizades recebem a tabela na criação. Uma tabela nunca esquece um login: um
+ * usuário removido e depois recriado recebe o mesmo identificador. Os identificadores existem apenas em memória;
+ * os snapshots continuam gravando os logins.</p>
+ */
+public final class IdsUsuarios {
+
+    /** Identificador de cada login registrado. */
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+
+    /** Login de cada identificador; substituído por uma cópia maior, sob a trava da tabela, quando enche. */
+    private volatile String[] logins = new String[1024];
+
+    /** Próximo identificador a ser atribuído; alterado sob a trava da tabela. */
+    private int proximo;
+
+    /**
+     * Cria uma tabela vazia.
+     */
+    public IdsUsuarios() {
+    }
+
+    /**
+     * Retorna o identificador de um login, registrando-o se ainda não tiver um.
+     *
+     * @param login O login.
+     * @return O identificador, maior ou igual a zero.
+     */
+    public int id(String login) {
+        Integer id = ids.get(login);
+        return id != null ? id : registrar(login);
+    }
+
+    /**
+     * Retorna o identificador de um login sem registrá-lo.
+     *
+     * @param login O login.
+     * @return O identificador, ou -1 se o login nunca foi registrado.
+     */
+    public int buscar(String login) {
+        Integer id = ids.get(login);
+        return id != null ? id : -1;
+    }
+
+    /**
+     * Retorna o login de um identificador.
+     *
+     * @param id Identificador retornado por {@link #id(String)}.
+     * @return O login.
+     */
+    public String login(int id) {
+        return logins[id];
+    }
+
+    /**
+     * Retorna a quantidade de logins registrados.
+     *
+     * @return O próximo identificador a ser atribuído.
+     */
+    public synchronized int getTotal() {
+        return proximo;
+    }
+
+    private synchronized int registrar(String login) {
+        Integer existente = ids.get(login);
+        if (existente != null) {
+            return existente;
+        }
+
+        String[] atuais = logins;
+        if (proximo == atuais.length) {
+            atuais = Arrays.copyOf(atuais, atuais.length * 2);
+            logins = atuais;
+        }
+        atuais[proximo] = login; // Antes de publicar o identificador: quem o obtiver já encontra o login
+        ids.put(login, proximo);
+        return proximo++;
+    }
+}
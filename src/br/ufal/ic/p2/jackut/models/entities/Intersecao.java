@@ -0,0 +1,154 @@
+package br.ufal.ic.p2.jackut.models.entities;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Interseção de vetores ordenados por galope (<i>galloping search</i>): cada elemento do vetor menor é procurado
+ * no maior a partir da posição do anterior, com passos que dobram até ultrapassá-lo e uma busca binária no
+ * último passo. O custo é proporcional a {@code m log(n/m)}, para vetores de tamanhos {@code m <= n}: linear
+ * quando os tamanhos são parecidos e pouco mais que {@code m} buscas quando um deles é muito menor.
+ *
+ * <p>As contagens percorrem os vetores sem criar o resultado.</p>
+ */
+public final class Intersecao {
+
+    private Intersecao() {
+    }
+
+    /**
+     * Calcula a interseção de dois intervalos de vetores em ordem crescente, sem repetições.
+     *
+     * @param a Primeiro vetor.
+     * @param inicioA Início do intervalo em {@code a}.
+     * @param fimA Fim (exclusive) do intervalo em {@code a}.
+     * @param b Segundo vetor.
+     * @param inicioB Início do intervalo em {@code b}.
+     * @param fimB Fim (exclusive) do intervalo em {@code b}.
+     * @return Os elementos comuns, em ordem crescente.
+     */
+    public static int[] intersecao(int[] a, int inicioA, int fimA, int[] b, int inicioB, int fimB) {
+        int[] comuns = new int[Math.min(fimA - inicioA, fimB - inicioB)];
+        int total = intersecao(a, inicioA, fimA, b, inicioB, fimB, comuns);
+        return total == comuns.length ? comuns : Arrays.copyOf(comuns, total);
+    }
+
+    /**
+     * Conta os elementos comuns a dois intervalos de vetores em ordem crescente, sem repetições.
+     *
+     * @param a Primeiro vetor.
+     * @param inicioA Início do intervalo em {@code a}.
+     * @param fimA Fim (exclusive) do intervalo em {@code a}.
+     * @param b Segundo vetor.
+     * @param inicioB Início do intervalo em {@code b}.
+     * @param fimB Fim (exclusive) do intervalo em {@code b}.
+     * @return A quantidade de elementos comuns.
+     */
+    public static int contar(int[] a, int inicioA, int fimA, int[] b, int inicioB, int fimB) {
+        return intersecao(a, inicioA, fimA, b, inicioB, fimB, null);
+    }
+
+    /**
+     * Calcula a interseção de dois vetores em ordem crescente, sem repetições.
+     *
+     * @param a Primeiro vetor.
+     * @param b Segundo vetor.
+     * @param <T> Tipo dos elementos.
+     * @return Os elementos comuns, em ordem crescente.
+     */
+    public static <T extends Comparable<? super T>> List<T> intersecao(T[] a, T[] b) {
+        List<T> comuns = new ArrayList<>();
+        intersecao(a, b, comuns);
+        return comuns;
+    }
+
+    /**
+     * Conta os elementos comuns a dois vetores em ordem crescente, sem repetições.
+     *
+     * @param a Primeiro vetor.
+     * @param b Segundo vetor.
+     * @param <T> Tipo dos elementos.
+     * @return A quantidade de elementos comuns.
+     */
+    public static <T extends Comparable<? super T>> int contar(T[] a, T[] b) {
+        return intersecao(a, b, null);
+    }
+
+    private static int intersecao(int[] a, int inicioA, int fimA, int[] b, int inicioB, int fimB, int[] comuns) {
+        if (fimA - inicioA > fimB - inicioB) {
+            return intersecao(b, inicioB, fimB, a, inicioA, fimA, comuns); // Percorre o menor, galopa no maior
+        }
+        int total = 0;
+        int posicao = inicioB;
+        for (int i = inicioA; i < fimA && posicao < fimB; i++) {
+            posicao = galopar(b, posicao, fimB, a[i]);
+            if (posicao < fimB && b[posicao] == a[i]) {
+                if (comuns != null) {
+                    comuns[total] = a[i];
+                }
+                total++;
+                posicao++;
+            }
+        }
+        return total;
+    }
+
+    private static <T extends Comparable<? super T>> int intersecao(T[] a, T[] b, List<T> comuns) {
+        if (a.length > b.length) {
+            return intersecao(b, a, comuns);
+        }
+        int total = 0;
+        int posicao = 0;
+        for (int i = 0; i < a.length && posicao < b.length; i++) {
+            posicao = galopar(b, posicao, a[i]);
+            if (posicao < b.length && b[posicao].compareTo(a[i]) == 0) {
+                if (comuns != null) {
+                    comuns.add(a[i]);
+                }
+                total++;
+                posicao++;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Retorna a primeira posição de {@code v}, a partir de {@code inicio}, com valor maior ou igual a {@code valor}.
+     */
+    private static int galopar(int[] v, int inicio, int fim, int valor) {
+        int limite = inicio;
+        for (int passo = 1; limite < fim && v[limite] < valor; passo <<= 1) {
+            inicio = limite + 1;
+            limite += passo;
+        }
+        int alto = Math.min(limite, fim);
+        while (inicio < alto) {
+            int meio = (inicio + alto) >>> 1;
+            if (v[meio] < valor) {
+                inicio = meio + 1;
+            } else {
+                alto = meio;
+            }
+        }
+        return inicio;
+    }
+
+    private static <T extends Comparable<? super T>> int galopar(T[] v, int inicio, T valor) {
+        int limite = inicio;
+        for (int passo = 1; limite < v.length && v[limite].compareTo(valor) < 0; passo <<= 1) {
+            inicio = limite + 1;
+            limite += passo;
+        }
+        int alto = Math.min(limite, v.length);
+        while (inicio < alto) {
+            int meio = (inicio + alto) >>> 1;
+            if (v[meio].compareTo(valor) < 0) {
+                inicio = meio + 1;
+            } else {
+                alto = meio;
+            }
+        }
+        return inicio;
+    }
+}
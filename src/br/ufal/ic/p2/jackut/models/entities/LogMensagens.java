@@ -0,0 +1,210 @@
+package br.ufal.ic.p2.jackut.models.entities;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Log das mensagens postadas em uma comunidade, em ordem de postagem. Cada mensagem é guardada uma única vez,
+ * qualquer que seja o número de membros; cada membro tem apenas um cursor, o número de sequência da próxima
+ * mensagem que ainda não leu.
+ *
+ * <p>O log conta, para cada mensagem, quantos leitores ainda não a leram; as mensagens do início do log que
+ * já foram lidas por todos são descartadas. Os métodos são sincronizados: uma mensagem pode ser postada
+ * enquanto membros diferentes leem o log.</p>
+ */
+public class LogMensagens {
+
+    /** Mensagens do log, de {@link #inicio} (inclusive) a {@link #fim} (exclusive), em ordem de sequência. */
+    private Mensagem[] mensagens = new Mensagem[8];
+
+    /** Quantidade de leitores que ainda não leram cada mensagem, nas mesmas posições de {@link #mensagens}. */
+    private int[] pendentes = new int[8];
+
+    private int inicio;
+    private int fim;
+
+    /** Quantidade de membros com cursor neste log. */
+    private int leitores;
+
+    /**
+     * Acrescenta uma mensagem ao fim do log, pendente para todos os leitores atuais.
+     *
+     * @param mensagem A mensagem, com sequência maior que a de todas as mensagens do log.
+     */
+    public synchronized void adicionar(Mensagem mensagem) {
+        if (leitores > 0) { // Sem leitores, ninguém a leria
+            acrescentar(mensagem, leitores);
+        }
+    }
+
+    /**
+     * Acrescenta ao fim do log uma mensagem lida do disco; os leitores são definidos depois, por {@link #recontar}.
+     *
+     * @param mensagem A mensagem, com sequência maior que a de todas as mensagens do log.
+     */
+    public synchronized void restaurar(Mensagem mensagem) {
+        acrescentar(mensagem, 0);
+    }
+
+    /**
+     * Registra um novo leitor, cujo cursor começa depois das mensagens já postadas.
+     */
+    public synchronized void adicionarLeitor() {
+        leitores++;
+    }
+
+    /**
+     * Retira um leitor, como se ele tivesse lido todas as mensagens a partir do seu cursor.
+     *
+     * @param cursor Sequência da próxima mensagem que o leitor leria.
+     */
+    public synchronized void removerLeitor(long cursor) {
+        for (int i = buscar(cursor); i < fim; i++) {
+            pendentes[i]--;
+        }
+        leitores--;
+        descartarLidas();
+    }
+
+    /**
+     * Retorna a primeira mensagem a partir de um cursor, sem marcá-la como lida.
+     *
+     * @param cursor Sequência da próxima mensagem do leitor.
+     * @return A mensagem, ou {@code null} se o leitor já leu todas.
+     */
+    public synchronized Mensagem proxima(long cursor) {
+        int posicao = buscar(cursor);
+        return posicao < fim ? mensagens[posicao] : null;
+    }
+
+    /**
+     * Marca uma mensagem como lida por um leitor; quando todos a leram, ela pode ser descartada.
+     *
+     * @param mensagem Mensagem retornada por {@link #proxima(long)}.
+     */
+    public synchronized void marcarLida(Mensagem mensagem) {
+        int posicao = buscar(mensagem.getSequencia());
+        if (posicao < fim && mensagens[posicao] == mensagem) {
+            pendentes[posicao]--;
+            descartarLidas();
+        }
+    }
+
+    /**
+     * Conta as mensagens a partir de um cursor, sem copiá-las.
+     *
+     * @param cursor Sequência da próxima mensagem do leitor.
+     * @return A quantidade de mensagens ainda não lidas pelo leitor.
+     */
+    public synchronized int contarDesde(long cursor) {
+        return fim - buscar(cursor);
+    }
+
+    /**
+     * Copia as mensagens a partir de um cursor.
+     *
+     * @param cursor Sequência da próxima mensagem do leitor.
+     * @return As mensagens ainda não lidas pelo leitor, em ordem.
+     */
+    public synchronized List<Mensagem> desde(long cursor) {
+        return new ArrayList<>(Arrays.asList(mensagens).subList(buscar(cursor), fim));
+    }
+
+    /**
+     * Copia todas as mensagens mantidas no log.
+     *
+     * @return As mensagens ainda não lidas por algum leitor, em ordem.
+     */
+    public synchronized List<Mensagem> getMensagens() {
+        return desde(Long.MIN_VALUE);
+    }
+
+    /**
+     * Retorna a sequência da última mensagem mantida no log.
+     *
+     * @return A sequência, ou -1 se o log estiver vazio.
+     */
+    public synchronized long getUltimaSequencia() {
+        return fim > inicio ? mensagens[fim - 1].getSequencia() : -1;
+    }
+
+    /**
+     * Redefine os leitores do log a partir dos seus cursores, depois que o log foi carregado do disco.
+     *
+     * @param cursores Cursores de todos os leitores do log, em ordem crescente.
+     */
+    public synchronized void recontar(long[] cursores) {
+        leitores = cursores.length;
+        int anteriores = 0; // Cursores até a mensagem atual: leitores que ainda não a leram
+        for (int i = inicio; i < fim; i++) {
+            while (anteriores < cursores.length && cursores[anteriores] <= mensagens[i].getSequencia()) {
+                anteriores++;
+            }
+            pendentes[i] = anteriores;
+        }
+        descartarLidas();
+    }
+
+    /**
+     * Grava a mensagem na próxima posição, abrindo espaço se preciso.
+     */
+    private void acrescentar(Mensagem mensagem, int pendentesMensagem) {
+        if (fim == mensagens.length) {
+            abrirEspaco();
+        }
+        mensagens[fim] = mensagem;
+        pendentes[fim] = pendentesMensagem;
+        fim++;
+    }
+
+    /**
+     * Busca a posição da primeira mensagem com sequência maior ou igual à informada.
+     *
+     * @param sequencia A sequência procurada.
+     * @return A posição, ou {@link #fim} se não houver.
+     */
+    private int buscar(long sequencia) {
+        int baixo = inicio;
+        int alto = fim;
+        while (baixo < alto) {
+            int meio = (baixo + alto) >>> 1;
+            if (mensagens[meio].getSequencia() < sequencia) {
+                baixo = meio + 1;
+            } else {
+                alto = meio;
+            }
+        }
+        return baixo;
+    }
+
+    /**
+     * Descarta as mensagens do início do log que todos os leitores já leram.
+     */
+    private void descartarLidas() {
+        while (inicio < fim && pendentes[inicio] <= 0) {
+            mensagens[inicio++] = null;
+        }
+        if (inicio == fim) {
+            inicio = fim = 0;
+        }
+    }
+
+    /**
+     * Abre espaço no fim do log: move as mensagens para o começo, se metade do vetor já foi descartada,
+     * ou dobra o vetor.
+     */
+    private void abrirEspaco() {
+        int tamanho = fim - inicio;
+        if (inicio >= mensagens.length / 2) {
+            System.arraycopy(mensagens, inicio, mensagens, 0, tamanho);
+            System.arraycopy(pendentes, inicio, pendentes, 0, tamanho);
+            Arrays.fill(mensagens, tamanho, fim, null);
+        } else {
+            mensagens = Arrays.copyOfRange(mensagens, inicio, mensagens.length * 2);
+            pendentes = Arrays.copyOfRange(pendentes, inicio, pendentes.length * 2);
+        }
+        inicio = 0;
+        fim = tamanho;
+    }
+}
@@ -4,18 +4,27 @@ import java.io.Serializable;
 
 /**
  * Representa uma mensagem postada em uma comunidade.
- * Atualmente, armazena apenas o contedo textual da mensagem.
+ * Armazena o conteúdo textual e o número de sequência com que foi postada.
  */
 public class Mensagem implements Serializable {
 
-    /** Contedo textual da mensagem. */
+    /** Versão da classe original, para ler os "mensagens.ser" gravados com serialização Java. */
+    private static final long serialVersionUID = -8852959695756771100L;
+
+    /** Conteúdo textual da mensagem. */
     private String mensagem;
 
+    /**
+     * Número de sequência global da mensagem, que ordena as mensagens de todas as comunidades;
+     * zero nas mensagens gravadas antes dos logs de comunidade.
+     */
+    private long sequencia;
+
     /**
      * Construtor da classe {@code Mensagem}.
      *
-     * @param mensagem O contedo da mensagem.
-     * @param login O login do usurio que postou a mensagem (atualmente ignorado).
+     * @param mensagem O conteúdo da mensagem.
+     * @param login O login do usuário que postou a mensagem (atualmente ignorado).
      * @param comunidade O nome da comunidade onde a mensagem foi postada (atualmente ignorado).
      */
     public Mensagem(String mensagem, String login, String comunidade) {
@@ -23,11 +32,31 @@ public class Mensagem implements Serializable {
     }
 
     /**
-     * Retorna o contedo da mensagem.
+     * Construtor da classe {@code Mensagem} com o número de sequência.
+     *
+     * @param mensagem O conteúdo da mensagem.
+     * @param sequencia O número de sequência global da mensagem.
+     */
+    public Mensagem(String mensagem, long sequencia) {
+        this.mensagem = mensagem;
+        this.sequencia = sequencia;
+    }
+
+    /**
+     * Retorna o conteúdo da mensagem.
      *
      * @return uma {@link String} com o texto da mensagem.
      */
     public String getMensagem() {
         return mensagem;
     }
+
+    /**
+     * Retorna o número de sequência da mensagem.
+     *
+     * @return O número de sequência; mensagens mais recentes têm números maiores.
+     */
+    public long getSequencia() {
+        return sequencia;
+    }
 }
@@ -1,33 +1,86 @@
 package br.ufal.ic.p2.jackut.models.entities;
 
+import br.ufal.ic.p2.jackut.concorrencia.FilaMpsc;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.Queue;
 
 /**
- * Representa uma fila de recados (mensagens) enviados a um usurio.
- * Os recados so armazenados em ordem de chegada.
+ * Representa uma fila de recados (mensagens) enviados a um usuário.
+ * Os recados são armazenados em ordem de chegada.
+ *
+ * <p>A fila não usa travas: vários remetentes podem adicionar recados ao mesmo tempo, enquanto o dono,
+ * um de cada vez, os lê ({@link FilaMpsc}).</p>
  */
 public class Recado implements Serializable {
 
-    /** Fila de recados do usurio, mantida em ordem de insero (FIFO). */
-    private Queue<String> recados = new LinkedList<>();
+    /** Versão da classe original, para ler os "recados.ser" gravados com serialização Java. */
+    private static final long serialVersionUID = -4492056929636890871L;
+
+    /** Campo gravado na serialização Java, com o mesmo nome e tipo da versão original. */
+    private static final ObjectStreamField[] serialPersistentFields = {
+            new ObjectStreamField("recados", Queue.class)
+    };
+
+    /** Fila de recados do usuário, mantida em ordem de inserção (FIFO). */
+    private transient FilaMpsc<String> recados = new FilaMpsc<>();
 
     /**
-     * Adiciona um novo recado  fila.
+     * Adiciona um novo recado à fila; pode ser chamado por vários remetentes ao mesmo tempo.
      *
-     * @param recado O contedo textual do recado a ser adicionado.
+     * @param recado O conteúdo textual do recado a ser adicionado.
      */
     public void adicionarRecado(String recado) {
-        recados.add(recado);
+        recados.adicionar(recado);
     }
 
     /**
-     * L e remove o recado mais antigo da fila.
+     * Retorna os recados ainda não lidos, do mais antigo ao mais recente.
      *
-     * @return O contedo do recado, ou {@code null} se a fila estiver vazia.
+     * @return Uma {@link Collection} somente leitura com os recados.
+     */
+    public Collection<String> getRecados() {
+        return Collections.unmodifiableList(recados.paraLista());
+    }
+
+    /**
+     * Conta os recados ainda não lidos, sem copiá-los.
+     *
+     * @return A quantidade de recados na fila.
+     */
+    public int contarRecados() {
+        return recados.tamanho();
+    }
+
+    /**
+     * Lê e remove o recado mais antigo da fila.
+     *
+     * @return O conteúdo do recado, ou {@code null} se a fila estiver vazia.
      */
     public String lerRecado() {
-        return recados.poll(); // Retorna e remove o primeiro recado
+        return recados.retirar(); // Retorna e remove o primeiro recado
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        ObjectOutputStream.PutField campos = out.putFields();
+        campos.put("recados", new LinkedList<>(recados.paraLista()));
+        out.writeFields();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField campos = in.readFields();
+        Queue<String> lidos = (Queue<String>) campos.get("recados", null);
+        recados = new FilaMpsc<>();
+        if (lidos != null) {
+            lidos.forEach(recados::adicionar);
+        }
     }
 }
@@ -1,22 +1,22 @@
 package br.ufal.ic.p2.jackut.models.entities;
 
 /**
- * Representa uma sesso de usurio autenticado na plataforma.
- * Armazena o identificador da sesso e o login do usurio associado.
+ * Representa uma sessão de usuário autenticado na plataforma.
+ * Armazena o identificador da sessão e o login do usuário associado.
  */
 public class Sessao {
 
-    /** Identificador nico da sesso. */
+    /** Identificador único da sessão. */
     public String idSessao;
 
-    /** Login do usurio associado  sesso. */
+    /** Login do usuário associado à sessão. */
     private String login;
 
     /**
      * Construtor da classe {@code Sessao}.
      *
-     * @param idSessao Identificador nico da sesso.
-     * @param login Login do usurio autenticado.
+     * @param idSessao Identificador único da sessão.
+     * @param login Login do usuário autenticado.
      */
     public Sessao(String idSessao, String login) {
         this.idSessao = idSessao;
@@ -24,18 +24,18 @@ public class Sessao {
     }
 
     /**
-     * Retorna o identificador da sesso.
+     * Retorna o identificador da sessão.
      *
-     * @return uma {@link String} com o ID da sesso.
+     * @return uma {@link String} com o ID da sessão.
      */
     public String getIdSessao() {
         return idSessao;
     }
 
     /**
-     * Retorna o login do usurio associado  sesso.
+     * Retorna o login do usuário associado à sessão.
      *
-     * @return uma {@link String} com o login do usurio.
+     * @return uma {@link String} com o login do usuário.
      */
     public String getLogin() {
         return login;
@@ -3,36 +3,47 @@ package br.ufal.ic.p2.jackut.models.entities;
 import br.ufal.ic.p2.jackut.models.exceptions.*;
 import java.io.Serializable;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
- * Classe que representa um usurio no sistema Jackut.
- * Um usurio possui login, senha, nome, atributos personalizados e pode participar de comunidades.
+ * Classe que representa um usuário no sistema Jackut.
+ * Um usuário possui login, senha, nome, atributos personalizados e pode participar de comunidades.
  */
 public class Usuario implements Serializable {
     private static final long serialVersionUID = 1L;
 
-    /** Login nico do usurio. */
+    /** Login único do usuário. */
     private String login;
 
-    /** Senha de acesso do usurio. */
+    /** Senha de acesso do usuário. */
     private String senha;
 
-    /** Nome completo do usurio. */
+    /** Nome completo do usuário. */
     private String nome;
 
-    /** Mapa de atributos personalizados do usurio (chave: nome do atributo, valor: contedo). */
-    private Map<String, String> atributos = new HashMap<>();
+    /**
+     * Mapa de atributos personalizados do usuário (chave: nome do atributo, valor: conteúdo).
+     * Concorrente, para que {@code getAtributoUsuario} o leia sem travas enquanto outra thread edita o perfil.
+     */
+    private Map<String, String> atributos = new ConcurrentHashMap<>();
 
-    /** Lista com os nomes das comunidades das quais o usurio participa. */
-    public List<String> comunidades = new ArrayList<>();
+    /**
+     * Lista com os nomes das comunidades das quais o usuário participa.
+     * Copiada a cada alteração (raras), para que {@code getComunidades} a percorra sem travas.
+     */
+    public List<String> comunidades = new CopyOnWriteArrayList<>();
+
+    /** Nomes das comunidades em ordem alfabética, para as interseções; descartado a cada alteração da lista. */
+    private transient volatile String[] comunidadesOrdenadas;
 
     /**
      * Construtor da classe {@code Usuario}.
      *
-     * @param login Nome de usurio nico.
-     * @param senha Senha do usurio.
-     * @param nome Nome completo do usurio.
-     * @throws UsuarioException Se login ou senha forem invlidos.
+     * @param login Nome de usuário único.
+     * @param senha Senha do usuário.
+     * @param nome Nome completo do usuário.
+     * @throws UsuarioException Se login ou senha forem inválidos.
      */
     public Usuario(String login, String senha, String nome) {
         this.login = login;
@@ -41,25 +52,25 @@ public class Usuario implements Serializable {
     }
 
     /**
-     * Retorna o login do usurio.
+     * Retorna o login do usuário.
      *
-     * @return Uma {@link String} contendo o login do usurio.
+     * @return Uma {@link String} contendo o login do usuário.
      */
     public String getLogin() {
         return login;
     }
 
     /**
-     * Retorna o nome completo do usurio.
+     * Retorna o nome completo do usuário.
      *
-     * @return Uma {@link String} contendo o nome do usurio.
+     * @return Uma {@link String} contendo o nome do usuário.
      */
     public String getNome() {
         return nome;
     }
 
     /**
-     * Retorna a senha do usurio.
+     * Retorna a senha do usuário.
      *
      * @return Uma {@link String} contendo a senha.
      */
@@ -68,11 +79,11 @@ public class Usuario implements Serializable {
     }
 
     /**
-     * Retorna o valor de um atributo especfico do usurio.
+     * Retorna o valor de um atributo específico do usuário.
      *
      * @param chave Nome do atributo a ser recuperado.
      * @return O valor associado ao atributo.
-     * @throws UsuarioException Se o atributo no estiver preenchido.
+     * @throws UsuarioException Se o atributo não estiver preenchido.
      */
     public String getAtributo(String chave) throws UsuarioException {
         if (!this.atributos.containsKey(chave)) {
@@ -82,7 +93,16 @@ public class Usuario implements Serializable {
     }
 
     /**
-     * Define ou atualiza um atributo personalizado para o usurio.
+     * Retorna o mapa de atributos personalizados do usuário.
+     *
+     * @return Um {@link Map} com os atributos (chave: nome do atributo, valor: conteúdo).
+     */
+    public Map<String, String> getAtributos() {
+        return atributos;
+    }
+
+    /**
+     * Define ou atualiza um atributo personalizado para o usuário.
      *
      * @param chave Nome do atributo.
      * @param valor Valor a ser associado ao atributo.
@@ -90,4 +110,45 @@ public class Usuario implements Serializable {
     public void setAtributo(String chave, String valor) {
         this.atributos.put(chave, valor);
     }
+
+    /**
+     * Inclui uma comunidade no fim da lista de comunidades do usuário.
+     *
+     * @param nome Nome da comunidade.
+     */
+    public synchronized void entrarComunidade(String nome) {
+        comunidades.add(nome);
+        comunidadesOrdenadas = null;
+    }
+
+    /**
+     * Retira uma comunidade da lista de comunidades do usuário.
+     *
+     * @param nome Nome da comunidade.
+     */
+    public synchronized void sairComunidade(String nome) {
+        comunidades.remove(nome);
+        comunidadesOrdenadas = null;
+    }
+
+    /**
+     * Retorna as comunidades do usuário em ordem alfabética, para interseções com as de outro usuário
+     * ({@link Intersecao}). O vetor é compartilhado entre as chamadas e não deve ser alterado.
+     *
+     * @return Os nomes das comunidades, ordenados.
+     */
+    public String[] getComunidadesOrdenadas() {
+        String[] ordenadas = comunidadesOrdenadas;
+        if (ordenadas == null) {
+            synchronized (this) {
+                ordenadas = comunidadesOrdenadas;
+                if (ordenadas == null) {
+                    ordenadas = comunidades.toArray(new String[0]);
+                    Arrays.sort(ordenadas);
+                    comunidadesOrdenadas = ordenadas;
+                }
+            }
+        }
+        return ordenadas;
+    }
 }
@@ -1,14 +1,14 @@
 package br.ufal.ic.p2.jackut.models.exceptions;
 
 /**
- * Exceo lanada quando um atributo do usurio no foi preenchido.
+ * Exceção lançada quando um atributo do usuário não foi preenchido.
  */
 public class AtributoNaoPreenchidoException extends UsuarioException {
 
     /**
-     * Construtor padro que define a mensagem de erro.
+     * Construtor padrão que define a mensagem de erro.
      */
     public AtributoNaoPreenchidoException() {
-        super("Atributo no preenchido.");
+        super("Atributo não preenchido.");
     }
 }
@@ -1,14 +1,14 @@
 package br.ufal.ic.p2.jackut.models.exceptions;
 
 /**
- * Exceo lanada quando uma conta j existe com o nome informado.
+ * Exceção lançada quando uma conta já existe com o nome informado.
  */
 public class ContaJaExisteNomeException extends UsuarioException {
 
     /**
-     * Construtor padro que define a mensagem de erro.
+     * Construtor padrão que define a mensagem de erro.
      */
     public ContaJaExisteNomeException() {
-        super("Conta com esse nome j existe.");
+        super("Conta com esse nome já existe.");
     }
 }
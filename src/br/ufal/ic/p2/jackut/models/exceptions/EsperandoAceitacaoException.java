@@ -1,15 +1,15 @@
 package br.ufal.ic.p2.jackut.models.exceptions;
 
 /**
- * Exceo lanada quando uma conta j enviou um convite de amizade e quer enviar novamente
+ * Exceção lançada quando uma conta já enviou um convite de amizade e quer enviar novamente
  */
 
 public class EsperandoAceitacaoException extends UsuarioException {
 
     /**
-     * Construtor padro que define a mensagem de erro.
+     * Construtor padrão que define a mensagem de erro.
      */
     public EsperandoAceitacaoException() {
-        super("Usurio j est adicionado como amigo, esperando aceitao do convite.");
+        super("Usuário já está adicionado como amigo, esperando aceitação do convite.");
     }
 }
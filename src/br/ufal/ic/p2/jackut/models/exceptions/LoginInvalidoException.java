@@ -1,14 +1,14 @@
 package br.ufal.ic.p2.jackut.models.exceptions;
 
 /**
- * Exceo lanada quando o campo login  invalido
+ * Exceção lançada quando o campo login é invalido
  */
 public class LoginInvalidoException extends UsuarioException {
 
     /**
-     * Construtor padro que define a mensagem de erro.
+     * Construtor padrão que define a mensagem de erro.
      */
     public LoginInvalidoException() {
-        super("Login invlido.");
+        super("Login inválido.");
     }
 }
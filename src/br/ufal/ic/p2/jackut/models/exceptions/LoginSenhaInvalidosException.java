@@ -1,14 +1,14 @@
 package br.ufal.ic.p2.jackut.models.exceptions;
 
 /**
- * Exceo lanada quando ao iniciar sesso, existe login ou senha incorretos.
+ * Exceção lançada quando ao iniciar sessão, existe login ou senha incorretos.
  */
 public class LoginSenhaInvalidosException extends UsuarioException {
 
     /**
-     * Construtor padro que define a mensagem de erro.
+     * Construtor padrão que define a mensagem de erro.
      */
     public LoginSenhaInvalidosException() {
-        super("Login ou senha invlidos.");
+        super("Login ou senha inválidos.");
     }
 }
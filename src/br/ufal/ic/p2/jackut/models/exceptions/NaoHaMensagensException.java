@@ -1,14 +1,14 @@
 package br.ufal.ic.p2.jackut.models.exceptions;
 
 /**
- * Exceo lanada quando no h recados
+ * Exceção lançada quando não há recados
  */
 public class NaoHaMensagensException extends UsuarioException {
 
     /**
-     * Construtor padro que define a mensagem de erro.
+     * Construtor padrão que define a mensagem de erro.
      */
     public NaoHaMensagensException() {
-        super("No h mensagens.");
+        super("Não há mensagens.");
     }
 }
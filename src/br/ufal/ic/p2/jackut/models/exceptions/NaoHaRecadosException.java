@@ -1,14 +1,14 @@
 package br.ufal.ic.p2.jackut.models.exceptions;
 
 /**
- * Exceo lanada quando no h recados
+ * Exceção lançada quando não há recados
  */
 public class NaoHaRecadosException extends UsuarioException {
 
     /**
-     * Construtor padro que define a mensagem de erro.
+     * Construtor padrão que define a mensagem de erro.
      */
     public NaoHaRecadosException() {
-        super("No h recados.");
+        super("Não há recados.");
     }
 }
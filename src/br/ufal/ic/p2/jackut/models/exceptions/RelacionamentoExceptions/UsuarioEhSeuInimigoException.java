@@ -2,6 +2,6 @@ package br.ufal.ic.p2.jackut.models.exceptions.RelacionamentoExceptions;
 
 public class UsuarioEhSeuInimigoException extends Exception {
     public UsuarioEhSeuInimigoException(String nomeUsuario) {
-        super("Funo invlida: " + nomeUsuario +"  seu inimigo.");
+        super("Função inválida: " + nomeUsuario +" é seu inimigo.");
     }
 }
@@ -2,7 +2,7 @@ package br.ufal.ic.p2.jackut.models.exceptions.RelacionamentoExceptions;
 
 public class UsuarioJaEstaAdicionadoComoInimigoException extends Exception {
     public UsuarioJaEstaAdicionadoComoInimigoException() {
-        super("Usurio j est adicionado como inimigo.");
+        super("Usuário já está adicionado como inimigo.");
     }
 }
 
@@ -2,6 +2,6 @@ package br.ufal.ic.p2.jackut.models.exceptions.RelacionamentoExceptions;
 
 public class UsuarioJaEstaAdicionadoComoPaqueraException extends Exception {
     public UsuarioJaEstaAdicionadoComoPaqueraException() {
-        super("Usurio j est adicionado como paquera.");
+        super("Usuário já está adicionado como paquera.");
     }
 }
@@ -2,6 +2,6 @@ package br.ufal.ic.p2.jackut.models.exceptions.RelacionamentoExceptions;
 
 public class UsuarioNaoPodeSerInimigoDeSiMesmoException extends Exception {
     public UsuarioNaoPodeSerInimigoDeSiMesmoException() {
-        super("Usurio no pode ser inimigo de si mesmo.");
+        super("Usuário não pode ser inimigo de si mesmo.");
     }
 }
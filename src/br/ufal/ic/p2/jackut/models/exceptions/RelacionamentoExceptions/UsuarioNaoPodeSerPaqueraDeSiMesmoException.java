@@ -2,6 +2,6 @@ package br.ufal.ic.p2.jackut.models.exceptions.RelacionamentoExceptions;
 
 public class UsuarioNaoPodeSerPaqueraDeSiMesmoException extends Exception {
     public UsuarioNaoPodeSerPaqueraDeSiMesmoException() {
-        super("Usurio no pode ser paquera de si mesmo.");
+        super("Usuário não pode ser paquera de si mesmo.");
     }
 }
@@ -1,15 +1,15 @@
 package br.ufal.ic.p2.jackut.models.exceptions;
 
 /**
- * Exceo lanada quando tenta enviar convite de amizade para alguem que j est na lista de amigos
+ * Exceção lançada quando tenta enviar convite de amizade para alguem que já está na lista de amigos
  */
 
 public class SaoAmigosException extends UsuarioException {
 
     /**
-     * Construtor padro que define a mensagem de erro.
+     * Construtor padrão que define a mensagem de erro.
      */
     public SaoAmigosException() {
-        super("J so amigos.");
+        super("Já são amigos.");
     }
 }
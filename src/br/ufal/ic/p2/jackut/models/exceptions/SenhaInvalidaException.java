@@ -1,14 +1,14 @@
 package br.ufal.ic.p2.jackut.models.exceptions;
 
 /**
- * Exceo lanada quando o campo senha  invalido
+ * Exceção lançada quando o campo senha é invalido
  */
 public class SenhaInvalidaException extends UsuarioException {
 
     /**
-     * Construtor padro que define a mensagem de erro.
+     * Construtor padrão que define a mensagem de erro.
      */
     public SenhaInvalidaException() {
-        super("Senha invlida.");
+        super("Senha inválida.");
     }
 }
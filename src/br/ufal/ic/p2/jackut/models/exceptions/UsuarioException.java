@@ -1,8 +1,8 @@
 package br.ufal.ic.p2.jackut.models.exceptions;
 
 /**
- * Classe base para excees relacionadas a operaes com usurios no sistema Jackut.
- * Todas as excees especficas de usurio devem herdar desta classe.
+ * Classe base para exceções relacionadas a operações com usuários no sistema Jackut.
+ * Todas as exceções específicas de usuário devem herdar desta classe.
  */
 public class UsuarioException extends Exception {
 
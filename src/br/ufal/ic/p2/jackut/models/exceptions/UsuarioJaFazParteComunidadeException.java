@@ -2,6 +2,6 @@ package br.ufal.ic.p2.jackut.models.exceptions;
 
 public class UsuarioJaFazParteComunidadeException extends Exception {
     public UsuarioJaFazParteComunidadeException() {
-        super("Usuario j faz parte dessa comunidade.");
+        super("Usuario já faz parte dessa comunidade.");
     }
 }
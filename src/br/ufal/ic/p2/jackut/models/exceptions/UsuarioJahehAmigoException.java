@@ -1,14 +1,14 @@
 package br.ufal.ic.p2.jackut.models.exceptions;
 
 /**
- * Exceo lanada quando um usurio tenta adicionar outro usurio que j  seu amigo.
+ * Exceção lançada quando um usuário tenta adicionar outro usuário que já é seu amigo.
  */
 public class UsuarioJahehAmigoException extends UsuarioException {
 
     /**
-     * Construtor padro que define a mensagem de erro.
+     * Construtor padrão que define a mensagem de erro.
      */
     public UsuarioJahehAmigoException() {
-        super("Usurio j est adicionado como amigo.");
+        super("Usuário já está adicionado como amigo.");
     }
 }
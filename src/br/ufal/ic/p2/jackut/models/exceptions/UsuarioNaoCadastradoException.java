@@ -1,14 +1,14 @@
 package br.ufal.ic.p2.jackut.models.exceptions;
 
 /**
- * Exceo lanada quando uma operao  realizada com um usurio que no est cadastrado no sistema.
+ * Exceção lançada quando uma operação é realizada com um usuário que não está cadastrado no sistema.
  */
 public class UsuarioNaoCadastradoException extends UsuarioException {
 
     /**
-     * Construtor padro que define a mensagem de erro.
+     * Construtor padrão que define a mensagem de erro.
      */
     public UsuarioNaoCadastradoException() {
-        super("Usurio no cadastrado.");
+        super("Usuário não cadastrado.");
     }
 }
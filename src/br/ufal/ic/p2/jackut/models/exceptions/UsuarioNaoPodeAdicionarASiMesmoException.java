@@ -1,14 +1,14 @@
 package br.ufal.ic.p2.jackut.models.exceptions;
 
 /**
- * Exceo lanada quando um usurio tenta se adicionar como amigo.
+ * Exceção lançada quando um usuário tenta se adicionar como amigo.
  */
 public class UsuarioNaoPodeAdicionarASiMesmoException extends UsuarioException {
 
     /**
-     * Construtor padro que define a mensagem de erro.
+     * Construtor padrão que define a mensagem de erro.
      */
     public UsuarioNaoPodeAdicionarASiMesmoException() {
-        super("Usurio no pode adicionar a si mesmo como amigo.");
+        super("Usuário não pode adicionar a si mesmo como amigo.");
     }
 }
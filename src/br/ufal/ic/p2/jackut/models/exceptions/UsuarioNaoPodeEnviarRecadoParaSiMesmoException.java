@@ -1,14 +1,14 @@
 package br.ufal.ic.p2.jackut.models.exceptions;
 
 /**
- * Exceo lanada quando um usurio tenta enviar um recado para si mesmo.
+ * Exceção lançada quando um usuário tenta enviar um recado para si mesmo.
  */
 public class UsuarioNaoPodeEnviarRecadoParaSiMesmoException extends UsuarioException {
 
     /**
-     * Construtor padro que define a mensagem de erro.
+     * Construtor padrão que define a mensagem de erro.
      */
     public UsuarioNaoPodeEnviarRecadoParaSiMesmoException() {
-        super("Usurio no pode enviar recado para si mesmo.");
+        super("Usuário não pode enviar recado para si mesmo.");
     }
 }
@@ -0,0 +1,74 @@
+package br.ufal.ic.p2.jackut.persistence;
+
+import java.io.UncheckedIOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Agendador das descargas em lote (group commit) do journal.
+ * Descarrega periodicamente os registros acumulados e, quando o lote pendente atinge o limite,
+ * antecipa a descarga sem bloquear quem solicitou.
+ * Todas as instâncias compartilham uma única thread de fundo, de modo que as descargas nunca se sobrepõem.
+ */
+public class AgendadorDescarga {
+
+    /** Thread de fundo compartilhada pelas descargas. */
+    private static final ScheduledExecutorService EXECUTOR = Executors.newSingleThreadScheduledExecutor(tarefa -> {
+        Thread thread = new Thread(tarefa, "jackut-descarga-journal");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /** Journal cujos registros pendentes são descarregados. */
+    private final Journal journal;
+
+    /** Descarga periódica agendada. */
+    private final ScheduledFuture<?> periodica;
+
+    /** Indica se já há uma descarga antecipada na fila, evitando pedidos repetidos. */
+    private final AtomicBoolean antecipada = new AtomicBoolean();
+
+    /**
+     * Construtor da classe {@code AgendadorDescarga}.
+     *
+     * @param journal Journal a ser descarregado.
+     * @param intervaloMs Intervalo, em milissegundos, entre as descargas periódicas.
+     */
+    public AgendadorDescarga(Journal journal, long intervaloMs) {
+        this.journal = journal;
+        this.periodica = EXECUTOR.scheduleWithFixedDelay(this::descarregar, intervaloMs, intervaloMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Solicita uma descarga imediata, executada na thread de fundo.
+     */
+    public void antecipar() {
+        if (antecipada.compareAndSet(false, true)) {
+            EXECUTOR.execute(() -> {
+                antecipada.set(false);
+                descarregar();
+            });
+        }
+    }
+
+    /**
+     * Descarrega o journal; uma falha é registrada e o lote, que continua pendente, segue para a próxima descarga.
+     */
+    private void descarregar() {
+        try {
+            journal.descarregar();
+        } catch (UncheckedIOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Cancela as descargas periódicas.
+     */
+    public void parar() {
+        periodica.cancel(false);
+    }
+}
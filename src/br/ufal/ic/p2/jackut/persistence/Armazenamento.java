@@ -0,0 +1,123 @@
+package br.ufal.ic.p2.jackut.persistence;
+
+/**
+ * Estratégia de persistência do sistema Jackut, escolhida na construção da {@code Facade}.
+ * Os serviços comunicam cada mutação ao armazenamento, que decide o custo de persistência:
+ * nenhum ({@link ArmazenamentoMemoria}), regravação do snapshot a cada mutação ({@link ArmazenamentoSnapshot})
+ * ou registro no journal com snapshots apenas nos checkpoints ({@link ArmazenamentoJournal}).
+ */
+public interface Armazenamento {
+
+    /**
+     * Retorna o nome do armazenamento, usado em relatórios.
+     *
+     * @return Nome do armazenamento.
+     */
+    String getNome();
+
+    /**
+     * Indica se o armazenamento lê e grava em disco. Um armazenamento não persistente não carrega nada na
+     * inicialização e não cria nenhum arquivo.
+     *
+     * @return {@code true} se o estado for persistido em disco.
+     */
+    boolean isPersistente();
+
+    /**
+     * Inclui um repositório entre os persistidos por este armazenamento.
+     *
+     * @param repositorio Repositório de um serviço.
+     */
+    void registrar(Repositorio repositorio);
+
+    /**
+     * Prepara o disco antes que os repositórios sejam carregados: conclui um checkpoint interrompido depois de
+     * confirmado e verifica se os snapshots correspondem à última geração confirmada.
+     *
+     * @throws IllegalStateException Se algum snapshot estiver ausente, corrompido ou pertencer a outra geração.
+     */
+    void preparar();
+
+    /**
+     * Reaplica as mutações gravadas após o último checkpoint; chamado depois que os repositórios foram carregados.
+     */
+    void recuperar();
+
+    /**
+     * Comunica uma mutação feita por um serviço.
+     *
+     * @param repositorio Repositório alterado.
+     * @param operacao Nome da operação realizada.
+     * @param argumentos Argumentos necessários para reaplicá-la.
+     */
+    void mutacao(Repositorio repositorio, String operacao, String... argumentos);
+
+    /**
+     * Aplica e comunica uma mutação feita sem a trava do objeto alterado (por exemplo, recados enviados ao mesmo
+     * destinatário por vários remetentes): as mutações concorrentes são registradas na ordem em que foram aplicadas.
+     *
+     * @param repositorio Repositório alterado.
+     * @param aplicar Aplica a mutação no repositório.
+     * @param operacao Nome da operação realizada.
+     * @param argumentos Argumentos necessários para reaplicá-la.
+     */
+    void mutacaoOrdenada(Repositorio repositorio, Runnable aplicar, String operacao, String... argumentos);
+
+    /**
+     * Comunica que um repositório foi alterado como efeito de uma mutação já comunicada por outro serviço
+     * (por exemplo, as comunidades de um usuário, ao criar uma comunidade).
+     *
+     * @param repositorio Repositório alterado.
+     */
+    void alterado(Repositorio repositorio);
+
+    /**
+     * Comunica que um repositório foi zerado.
+     *
+     * @param repositorio Repositório zerado.
+     */
+    void zerado(Repositorio repositorio);
+
+    /**
+     * Indica se há trabalho de persistência adiado que precisa ver o estado sem nenhuma operação em andamento
+     * (a gravação dos snapshots alterados ou a captura de uma compactação).
+     *
+     * @return {@code true} se {@link #manutencao()} deve ser chamado.
+     */
+    boolean manutencaoPendente();
+
+    /**
+     * Executa o trabalho adiado. Chamado pela {@code Facade} ao fim de cada operação, sob a trava exclusiva
+     * no modo concorrente, para que nenhum repositório seja alterado enquanto é lido.
+     */
+    void manutencao();
+
+    /**
+     * Abre um lote de operações aplicadas em sequência pela thread escritora; as mutações comunicadas até
+     * {@link #concluirLote()} podem chegar ao disco juntas.
+     */
+    void iniciarLote();
+
+    /**
+     * Fecha o lote aberto por {@link #iniciarLote()}. Quando o método retorna, as mutações do lote são tão
+     * duráveis quanto seriam se tivessem sido comunicadas uma a uma.
+     */
+    void concluirLote();
+
+    /**
+     * Grava o estado de todos os repositórios, de modo que as mutações anteriores não precisem mais ser reaplicadas.
+     */
+    void checkpoint();
+
+    /**
+     * Libera os recursos do armazenamento, após um último checkpoint.
+     */
+    void fechar();
+
+    /**
+     * Descreve o estado da persistência: tamanho do journal, tempo de recuperação e último checkpoint, conforme o caso.
+     *
+     * @return Métricas do armazenamento numa linha.
+     */
+    String estatisticas();
+}
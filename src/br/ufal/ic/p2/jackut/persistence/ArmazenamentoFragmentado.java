@@ -0,0 +1,689 @@
+package br.ufal.ic.p2.jackut.persistence;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Armazenamento em disco particionado por chave: as entradas são distribuídas pelo hash da chave entre
+ * arquivos de fragmento, e apenas as entradas em uso ficam na memória.
+ *
+ * <p>A quantidade de fragmentos começa em {@link #FRAGMENTOS_INICIAIS} e dobra sempre que a média de entradas
+ * por fragmento passaria de {@link #ENTRADAS_POR_FRAGMENTO}; assim, ler um fragmento por falta ou regravá-lo
+ * num checkpoint custa o mesmo com mil ou com um milhão de entradas. A quantidade atual e o número de entradas de
+ * cada fragmento ficam no arquivo de índice, gravado no mesmo lote que os fragmentos.</p>
+ *
+ * <p>Na gravação, só as entradas alteradas são copiadas sob o monitor do armazenamento; a releitura, a fusão e a
+ * codificação dos fragmentos são adiadas para a thread que confirma o lote ({@link Snapshot#adiar}).</p>
+ *
+ * <p>Uma entrada é lida do seu fragmento no primeiro acesso e permanece residente enquanto for usada.
+ * Quando o número de residentes passa da capacidade, as entradas acessadas há mais tempo são despejadas,
+ * desde que não tenham alterações pendentes; as alteradas só podem sair depois de gravadas por {@link #salvar()}.
+ * Uma entrada despejada que ainda esteja referenciada por algum objeto do sistema é reaproveitada no próximo
+ * acesso, de modo que nunca existem duas instâncias da mesma chave.</p>
+ *
+ * <p>A busca de uma entrada residente não toma nenhuma trava: os residentes ficam num mapa concorrente e cada um
+ * guarda o valor do {@link #relogio} no seu último acesso, que avança a cada leitura de fragmento. O despejo,
+ * feito sob o monitor do armazenamento, escolhe as entradas com o acesso mais antigo.</p>
+ *
+ * @param <V> Tipo das entradas.
+ */
+public class ArmazenamentoFragmentado<V> {
+
+    /** Quantidade de arquivos de fragmento de um armazenamento novo, e a dos gravados antes do arquivo de índice. */
+    public static final int FRAGMENTOS_INICIAIS = 64;
+
+    /** Média de entradas por fragmento a partir da qual a quantidade de fragmentos dobra. */
+    public static final int ENTRADAS_POR_FRAGMENTO = Integer.getInteger("jackut.fragmentos.entradas", 1024);
+
+    /** Versão do formato do arquivo de índice. */
+    private static final int VERSAO_INDICE = 1;
+
+    /** Diretório dos arquivos de fragmento. */
+    private final File diretorio;
+
+    /** Tipo gravado no cabeçalho de cada fragmento. */
+    private final String tipo;
+
+    /** Versão do esquema do codec. */
+    private final int versao;
+
+    /** Escrita do mapa de entradas de um fragmento. */
+    private final SnapshotIncremental.Escrita<Map<String, V>> escrita;
+
+    /** Leitura do mapa de entradas de um fragmento. */
+    private final SnapshotIncremental.Leitura<Map<String, V>> leitura;
+
+    /** Quantidade de entradas residentes a partir da qual as menos usadas são despejadas. */
+    private final int capacidade;
+
+    /** Indica se os fragmentos são lidos e gravados em disco; sem disco, todas as entradas ficam residentes. */
+    private boolean emDisco = true;
+
+    /** Indica se o arquivo de índice já foi lido. */
+    private boolean indiceLido;
+
+    /** Quantidade de fragmentos em disco; determina em qual arquivo cada chave está. */
+    private int fragmentos = FRAGMENTOS_INICIAIS;
+
+    /** Quantidade de entradas de cada fragmento em disco, ou {@code null} se ainda não for conhecida. */
+    private int[] contagens;
+
+    /** Quantidade de fragmentos da divisão anterior, cujos arquivos ainda precisam ser apagados; zero se não houver. */
+    private int anteriores;
+
+    /** Indica se uma gravação que muda a quantidade de fragmentos aguarda confirmação. */
+    private boolean redividindo;
+
+    /** Entradas residentes, com o momento do último acesso de cada uma. */
+    private final ConcurrentHashMap<String, Residente<V>> residentes = new ConcurrentHashMap<>();
+
+    /** Relógio lógico dos acessos: avança a cada entrada trazida para a memória. */
+    private volatile long relogio;
+
+    /** Chaves criadas, alteradas ou removidas desde a última gravação; uma chave alterada e não residente foi removida. */
+    private final Set<String> alteradas = new HashSet<>();
+
+    /**
+     * Chaves gravadas num lote ainda não confirmado: o fragmento em disco ainda não as reflete, então
+     * continuam residentes (ou, se removidas, ausentes) como se estivessem alteradas.
+     */
+    private final Set<String> emGravacao = new HashSet<>();
+
+    /** Entradas despejadas que ainda podem estar referenciadas fora do armazenamento. */
+    private final Map<String, Despejada<V>> despejadas = new HashMap<>();
+
+    /** Fila das entradas despejadas já coletadas pelo coletor de lixo. */
+    private final ReferenceQueue<V> coletadas = new ReferenceQueue<>();
+
+    /** Quantidade de leituras de fragmento feitas por falta de uma entrada na memória. */
+    private long faltas;
+
+    /** Quantidade de entradas despejadas da memória. */
+    private long despejos;
+
+    /**
+     * Construtor da classe {@code ArmazenamentoFragmentado}.
+     *
+     * @param diretorio Diretório dos arquivos de fragmento.
+     * @param tipo Tipo do conteúdo, gravado no cabeçalho de cada fragmento.
+     * @param versao Versão do esquema do codec.
+     * @param escrita Escrita do mapa de entradas de um fragmento.
+     * @param leitura Leitura do mapa de entradas de um fragmento.
+     * @param capacidade Quantidade máxima de entradas residentes sem alterações pendentes.
+     */
+    public ArmazenamentoFragmentado(String diretorio, String tipo, int versao, SnapshotIncremental.Escrita<Map<String, V>> escrita,
+                                    SnapshotIncremental.Leitura<Map<String, V>> leitura, int capacidade) {
+        this.diretorio = new File(diretorio);
+        this.tipo = tipo;
+        this.versao = versao;
+        this.escrita = escrita;
+        this.leitura = leitura;
+        this.capacidade = capacidade;
+    }
+
+    /**
+     * Obtém uma entrada, lendo-a do seu fragmento se ela não estiver na memória.
+     *
+     * @param chave Chave da entrada.
+     * @return A entrada, ou {@code null} se ela não existir (ou se a chave for nula).
+     */
+    public V buscar(String chave) {
+        if (chave == null) {
+            return null;
+        }
+
+        Residente<V> residente = residentes.get(chave);
+        if (residente == null) {
+            return buscarAusente(chave);
+        }
+        long agora = relogio;
+        if (residente.acesso != agora) { // Evita escrever na entrada a cada leitura
+            residente.acesso = agora;
+        }
+        return residente.valor;
+    }
+
+    /**
+     * Obtém uma entrada que não estava residente, relendo-a do seu fragmento.
+     *
+     * @param chave Chave da entrada.
+     * @return A entrada, ou {@code null} se ela não existir.
+     */
+    private synchronized V buscarAusente(String chave) {
+        Residente<V> residente = residentes.get(chave); // Outra thread pode tê-la trazido enquanto esta aguardava
+        if (residente != null) {
+            return residente.valor;
+        }
+        if (alteradas.contains(chave) || emGravacao.contains(chave)) {
+            return null; // Removida, mas a remoção ainda não chegou ao fragmento
+        }
+
+        if (!emDisco) {
+            return null;
+        }
+
+        limparColetadas();
+        Despejada<V> despejada = despejadas.remove(chave);
+        V valor = despejada != null ? despejada.get() : null;
+        if (valor == null) {
+            lerIndice();
+            Map<String, V> fragmento = lerFragmento(fragmentos, fragmento(chave, fragmentos));
+            faltas++;
+            valor = fragmento.get(chave);
+            if (valor == null) {
+                return null;
+            }
+        }
+
+        residentes.put(chave, new Residente<>(valor, ++relogio));
+        despejar();
+        return valor;
+    }
+
+    /**
+     * Indica se existe uma entrada com a chave informada.
+     *
+     * @param chave Chave da entrada.
+     * @return {@code true} se a entrada existir.
+     */
+    public boolean contem(String chave) {
+        return buscar(chave) != null;
+    }
+
+    /**
+     * Insere ou substitui uma entrada, marcando-a para a próxima gravação.
+     * Também deve ser chamado quando uma entrada já existente é modificada.
+     *
+     * @param chave Chave da entrada.
+     * @param valor Entrada.
+     */
+    public synchronized void colocar(String chave, V valor) {
+        Residente<V> residente = residentes.get(chave);
+        if (residente != null && residente.valor == valor) {
+            residente.acesso = relogio;
+        } else {
+            residentes.put(chave, new Residente<>(valor, relogio));
+        }
+        despejadas.remove(chave);
+        alteradas.add(chave);
+    }
+
+    /**
+     * Remove uma entrada, marcando a remoção para a próxima gravação.
+     *
+     * @param chave Chave da entrada.
+     */
+    public synchronized void remover(String chave) {
+        residentes.remove(chave);
+        despejadas.remove(chave);
+        alteradas.add(chave);
+    }
+
+    /**
+     * Grava nos fragmentos as entradas alteradas desde a última gravação e, em seguida,
+     * despeja as entradas excedentes que deixaram de ter alterações pendentes.
+     * Se a média de entradas por fragmento passar de {@link #ENTRADAS_POR_FRAGMENTO}, todos os fragmentos são
+     * redivididos em o dobro de arquivos; os da divisão anterior são apagados na gravação seguinte.
+     *
+     * <p>Sob o monitor, as entradas alteradas são apenas codificadas; os fragmentos são lidos e regravados depois,
+     * fora dele, a partir dessa cópia.</p>
+     *
+     * @throws UncheckedIOException Se as entradas alteradas não puderem ser codificadas; nesse caso continuam pendentes.
+     */
+    public synchronized void salvar() {
+        if (!emDisco) {
+            alteradas.clear();
+            return;
+        }
+        lerIndice();
+        if (alteradas.isEmpty() && (anteriores == 0 || redividindo)) {
+            return;
+        }
+
+        int atual = fragmentos;
+        int novo = redividindo ? atual : dividir(atual);
+        int[] contadas = contagens != null ? contagens.clone() : null;
+        Map<Integer, Alteracoes> alteracoes = copiarAlteradas(novo);
+
+        diretorio.mkdirs();
+        if (anteriores != 0 && !redividindo) {
+            for (int n = 0; n < anteriores; n++) {
+                if (arquivo(anteriores, n).exists()) {
+                    Snapshot.apagar(arquivo(anteriores, n).getPath());
+                }
+            }
+        }
+        int descartar = novo != atual ? atual : (redividindo ? anteriores : 0);
+
+        Set<String> gravadas = new HashSet<>(alteradas);
+        emGravacao.addAll(gravadas);
+        alteradas.clear();
+        redividindo = novo != atual;
+
+        Snapshot.adiar(() -> {
+            int[] novasContagens = gravar(atual, novo, contadas, alteracoes);
+            Snapshot.salvar(indice().getPath(), tipo + "-indice", VERSAO_INDICE, out -> {
+                out.escreverVarInt(novo);
+                out.escreverVarInt(descartar);
+                for (int contagem : novasContagens) {
+                    out.escreverVarInt(contagem);
+                }
+            });
+            // Antes disso, uma entrada despejada seria relida do fragmento antigo
+            Snapshot.aposConfirmar(() -> concluirGravacao(gravadas, novo, novasContagens, descartar));
+        });
+    }
+
+    /**
+     * Copia as entradas alteradas, agrupadas pelo fragmento da nova divisão: as existentes são codificadas
+     * e as removidas, apenas listadas.
+     *
+     * @param novo Quantidade de fragmentos a gravar.
+     * @return As alterações de cada fragmento.
+     */
+    private Map<Integer, Alteracoes> copiarAlteradas(int novo) {
+        Map<Integer, Map<String, V>> valores = new HashMap<>();
+        Map<Integer, Alteracoes> alteracoes = new HashMap<>();
+        for (String chave : alteradas) {
+            int m = fragmento(chave, novo);
+            Alteracoes alteracao = alteracoes.computeIfAbsent(m, k -> new Alteracoes());
+            Residente<V> residente = residentes.get(chave);
+            if (residente == null) {
+                alteracao.removidas.add(chave);
+            } else {
+                valores.computeIfAbsent(m, k -> new HashMap<>()).put(chave, residente.valor);
+            }
+        }
+        try {
+            for (Map.Entry<Integer, Map<String, V>> entrada : valores.entrySet()) {
+                alteracoes.get(entrada.getKey()).valores = Snapshot.codificar(tipo, versao, out -> escrita.escrever(out, entrada.getValue()));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return alteracoes;
+    }
+
+    /**
+     * Grava os fragmentos afetados pelas alterações. Com a mesma quantidade de fragmentos, só os que têm
+     * alterações são relidos e regravados (e, se as contagens ainda não forem conhecidas, os demais são apenas lidos);
+     * numa redivisão, cada fragmento antigo é lido uma vez e repartido entre os novos que correspondem a ele.
+     * Não acessa o estado do armazenamento, apenas os arquivos e as cópias recebidas.
+     *
+     * @param atual Quantidade de fragmentos em disco.
+     * @param novo Quantidade de fragmentos a gravar, múltipla de {@code atual}.
+     * @param contadas Quantidade de entradas de cada fragmento em disco, ou {@code null} se não for conhecida.
+     * @param alteracoes Alterações por fragmento da nova divisão.
+     * @return A quantidade de entradas de cada fragmento da nova divisão.
+     * @throws UncheckedIOException Se as alterações copiadas não puderem ser lidas.
+     */
+    private int[] gravar(int atual, int novo, int[] contadas, Map<Integer, Alteracoes> alteracoes) {
+        boolean contar = contadas == null;
+        int[] novasContagens = novo == atual && !contar ? contadas : new int[novo];
+        int fator = novo / atual;
+
+        for (int n = 0; n < atual; n++) {
+            boolean alterado = false;
+            for (int m = n; m < novo && !alterado; m += atual) {
+                alterado = alteracoes.containsKey(m);
+            }
+            if (novo == atual && !alterado && !contar) {
+                continue;
+            }
+
+            Map<String, V> antigo = lerFragmento(atual, n);
+            if (novo == atual && !alterado) {
+                novasContagens[n] = antigo.size();
+                continue;
+            }
+
+            List<Map<String, V>> partes = new ArrayList<>(fator);
+            if (fator == 1) {
+                partes.add(antigo);
+            } else {
+                for (int j = 0; j < fator; j++) {
+                    partes.add(new HashMap<>());
+                }
+                for (Map.Entry<String, V> entrada : antigo.entrySet()) {
+                    partes.get(fragmento(entrada.getKey(), novo) / atual).put(entrada.getKey(), entrada.getValue());
+                }
+            }
+
+            for (int j = 0; j < fator; j++) {
+                int m = n + j * atual;
+                Map<String, V> fragmento = partes.get(j);
+                Alteracoes alteracao = alteracoes.get(m);
+                if (alteracao != null) {
+                    fragmento.keySet().removeAll(alteracao.removidas);
+                    if (alteracao.valores != null) {
+                        try {
+                            fragmento.putAll(Snapshot.decodificar(alteracao.valores, tipo, versao, leitura::ler));
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    }
+                }
+                novasContagens[m] = fragmento.size();
+                Snapshot.salvar(arquivo(novo, m).getPath(), tipo, versao, out -> escrita.escrever(out, fragmento));
+            }
+        }
+        return novasContagens;
+    }
+
+    /**
+     * Calcula a quantidade de fragmentos para a próxima gravação: a atual, dobrada enquanto a média
+     * estimada de entradas por fragmento passar de {@link #ENTRADAS_POR_FRAGMENTO}.
+     *
+     * @param atual Quantidade de fragmentos em disco.
+     * @return A quantidade de fragmentos a gravar.
+     */
+    private int dividir(int atual) {
+        if (contagens == null) {
+            return atual; // Contadas nesta gravação; a divisão fica para a próxima
+        }
+        long estimativa = alteradas.size(); // Entradas novas ainda não estão nas contagens
+        for (int contagem : contagens) {
+            estimativa += contagem;
+        }
+        int novo = atual;
+        while (estimativa > (long) novo * ENTRADAS_POR_FRAGMENTO) {
+            novo *= 2;
+        }
+        return novo;
+    }
+
+    /**
+     * Grava os fragmentos afetados pelas alterações. Com a mesma quantidade de fragmentos, só os que têm
+     * alterações são relidos e regravados (e, se as contagens ainda não forem conhecidas, os demais são apenas lidos);
+     * numa redivisão, cada fragmento antigo é lido uma vez e repartido entre os novos que correspondem a ele.
+     *
+     * @param atual Quantidade de fragmentos em disco.
+     * @param novo Quantidade de fragmentos a gravar, múltipla de {@code atual}.
+     * @param alteracoes Alterações por fragmento da nova divisão; um valor nulo indica uma entrada removida.
+     * @return A quantidade de entradas de cada fragmento da nova divisão.
+     */
+    private int[] gravar(int atual, int novo, Map<Integer, Map<String, V>> alteracoes) {
+        boolean contar = contagens == null;
+        int[] novasContagens = novo == atual && !contar ? contagens.clone() : new int[novo];
+        int fator = novo / atual;
+
+        for (int n = 0; n < atual; n++) {
+            boolean alterado = false;
+            for (int m = n; m < novo && !alterado; m += atual) {
+                alterado = alteracoes.containsKey(m);
+            }
+            if (novo == atual && !alterado && !contar) {
+                continue;
+            }
+
+            Map<String, V> antigo = lerFragmento(atual, n);
+            if (novo == atual && !alterado) {
+                novasContagens[n] = antigo.size();
+                continue;
+            }
+
+            List<Map<String, V>> partes = new ArrayList<>(fator);
+            if (fator == 1) {
+                partes.add(antigo);
+            } else {
+                for (int j = 0; j < fator; j++) {
+                    partes.add(new HashMap<>());
+                }
+                for (Map.Entry<String, V> entrada : antigo.entrySet()) {
+                    partes.get(fragmento(entrada.getKey(), novo) / atual).put(entrada.getKey(), entrada.getValue());
+                }
+            }
+
+            for (int j = 0; j < fator; j++) {
+                int m = n + j * atual;
+                Map<String, V> fragmento = partes.get(j);
+                for (Map.Entry<String, V> alteracao : alteracoes.getOrDefault(m, Map.of()).entrySet()) {
+                    if (alteracao.getValue() == null) {
+                        fragmento.remove(alteracao.getKey());
+                    } else {
+                        fragmento.put(alteracao.getKey(), alteracao.getValue());
+                    }
+                }
+                novasContagens[m] = fragmento.size();
+                Snapshot.salvar(arquivo(novo, m).getPath(), tipo, versao, out -> escrita.escrever(out, fragmento));
+            }
+        }
+        return novasContagens;
+    }
+
+    /**
+     * Remove todas as entradas da memória, sem tocar nos fragmentos em disco.
+     */
+    public synchronized void limpar() {
+        residentes.clear();
+        despejadas.clear();
+        alteradas.clear();
+        emGravacao.clear();
+    }
+
+    /**
+     * Apaga todos os fragmentos do disco.
+     */
+    public synchronized void apagar() {
+        if (!emDisco) {
+            return;
+        }
+        lerIndice();
+        for (int total : new int[]{fragmentos, anteriores}) {
+            for (int n = 0; n < total; n++) {
+                if (arquivo(total, n).exists()) {
+                    Snapshot.apagar(arquivo(total, n).getPath());
+                }
+            }
+        }
+        if (indice().exists()) {
+            Snapshot.apagar(indice().getPath());
+        }
+        fragmentos = FRAGMENTOS_INICIAIS;
+        contagens = new int[FRAGMENTOS_INICIAIS];
+        anteriores = 0;
+    }
+
+    /**
+     * Deixa de usar o disco: nenhum fragmento é lido ou gravado, e nenhuma entrada é despejada.
+     * Usado quando o sistema roda com armazenamento apenas em memória.
+     */
+    public synchronized void desativarDisco() {
+        emDisco = false;
+    }
+
+    /**
+     * Indica se o armazenamento já tem algum fragmento gravado em disco.
+     *
+     * @return {@code true} se existir ao menos um fragmento.
+     */
+    public boolean existe() {
+        if (!emDisco) {
+            return false;
+        }
+        if (indice().exists()) {
+            return true;
+        }
+        for (int n = 0; n < FRAGMENTOS_INICIAIS; n++) {
+            if (arquivo(FRAGMENTOS_INICIAIS, n).exists()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Retorna a quantidade de entradas residentes na memória.
+     *
+     * @return Quantidade de entradas residentes.
+     */
+    public int getResidentes() {
+        return residentes.size();
+    }
+
+    /**
+     * Descreve o uso de memória do armazenamento: residentes, leituras por falta e despejos.
+     *
+     * @return Estatísticas do armazenamento numa linha.
+     */
+    public synchronized String estatisticas() {
+        return String.format("%s: %d residentes (capacidade %d), %d pendentes, %d fragmentos, %d faltas, %d despejos",
+                diretorio.getName(), residentes.size(), capacidade, alteradas.size(), fragmentos, faltas, despejos);
+    }
+
+    /**
+     * Quando os residentes passam da capacidade, despeja as entradas acessadas há mais tempo, sem alterações
+     * pendentes, até que sobre uma folga de 1/16 da capacidade; assim a ordenação por acesso não se repete a cada falta.
+     */
+    private void despejar() {
+        if (!emDisco || residentes.size() <= capacidade) {
+            return;
+        }
+
+        // O acesso é copiado antes de ordenar: as buscas sem trava continuam a atualizá-lo durante a ordenação.
+        List<Map.Entry<Long, String>> candidatas = new ArrayList<>();
+        for (Map.Entry<String, Residente<V>> entrada : residentes.entrySet()) {
+            if (!alteradas.contains(entrada.getKey()) && !emGravacao.contains(entrada.getKey())) {
+                candidatas.add(Map.entry(entrada.getValue().acesso, entrada.getKey()));
+            }
+        }
+        candidatas.sort(Map.Entry.comparingByKey());
+
+        int excedentes = residentes.size() - (capacidade - capacidade / 16);
+        for (int i = 0; i < excedentes && i < candidatas.size(); i++) {
+            String chave = candidatas.get(i).getValue();
+            Residente<V> residente = residentes.get(chave);
+            if (residente != null && residentes.remove(chave, residente)) {
+                despejadas.put(chave, new Despejada<>(chave, residente.valor, coletadas));
+                despejos++;
+            }
+        }
+    }
+
+    /**
+     * Libera as chaves cuja gravação foi confirmada, passa a usar a divisão gravada e despeja as entradas excedentes.
+     *
+     * @param gravadas Chaves gravadas no lote confirmado.
+     * @param novo Quantidade de fragmentos gravada.
+     * @param novasContagens Quantidade de entradas de cada fragmento gravado.
+     * @param descartar Quantidade de fragmentos da divisão que deixou de ser usada, ou zero.
+     */
+    private synchronized void concluirGravacao(Set<String> gravadas, int novo, int[] novasContagens, int descartar) {
+        emGravacao.removeAll(gravadas);
+        fragmentos = novo;
+        contagens = novasContagens;
+        anteriores = descartar;
+        redividindo = false;
+        despejar();
+    }
+
+    /**
+     * Lê o arquivo de índice, se ainda não tiver sido lido. Sem ele, os fragmentos são os da divisão
+     * inicial e, se já houver algum em disco, as contagens são calculadas na próxima gravação.
+     */
+    private void lerIndice() {
+        if (indiceLido) {
+            return;
+        }
+        indiceLido = true;
+        int[][] lido = Snapshot.carregar(indice().getPath(), tipo + "-indice", VERSAO_INDICE, (in, v) -> {
+            int total = in.lerVarInt();
+            int[] cabecalho = {total, in.lerVarInt()};
+            int[] lidas = new int[total];
+            for (int n = 0; n < total; n++) {
+                lidas[n] = in.lerVarInt();
+            }
+            return new int[][]{cabecalho, lidas};
+        }, null);
+        if (lido != null) {
+            fragmentos = lido[0][0];
+            anteriores = lido[0][1];
+            contagens = lido[1];
+        } else {
+            fragmentos = FRAGMENTOS_INICIAIS;
+            contagens = existe() ? null : new int[FRAGMENTOS_INICIAIS];
+        }
+    }
+
+    /**
+     * Esquece as entradas despejadas que o coletor de lixo já recolheu.
+     */
+    private void limparColetadas() {
+        Despejada<?> coletada;
+        while ((coletada = (Despejada<?>) coletadas.poll()) != null) {
+            despejadas.remove(coletada.chave, coletada);
+        }
+    }
+
+    private Map<String, V> lerFragmento(int total, int numero) {
+        Map<String, V> fragmento = Snapshot.carregar(arquivo(total, numero).getPath(), tipo, versao, leitura::ler, null);
+        return fragmento != null ? fragmento : new HashMap<>();
+    }
+
+    private static int fragmento(String chave, int total) {
+        return Math.floorMod(chave.hashCode(), total);
+    }
+
+    /**
+     * Arquivo de um fragmento. Os da divisão inicial mantêm o nome usado antes do arquivo de índice.
+     */
+    private File arquivo(int total, int numero) {
+        if (total == FRAGMENTOS_INICIAIS) {
+            return new File(diretorio, String.format("%02d.ser", numero));
+        }
+        return new File(diretorio, String.format("%d-%d.ser", total, numero));
+    }
+
+    private File indice() {
+        return new File(diretorio, "indice.ser");
+    }
+
+    /**
+     * Entrada residente e o valor do relógio no seu último acesso.
+     *
+     * @param <V> Tipo da entrada.
+     */
+    private static class Residente<V> {
+
+        private final V valor;
+
+        private volatile long acesso;
+
+        private Residente(V valor, long acesso) {
+            this.valor = valor;
+            this.acesso = acesso;
+        }
+    }
+
+    /**
+     * Cópia das alterações de um fragmento feita na captura.
+     */
+    private static class Alteracoes {
+
+        /** Entradas existentes, codificadas como o mapa de um fragmento, ou {@code null} se não houver. */
+        private byte[] valores;
+
+        /** Chaves removidas. */
+        private final Set<String> removidas = new HashSet<>();
+    }
+
+    /**
+     * Referência fraca a uma entrada despejada, identificada pela sua chave.
+     *
+     * @param <V> Tipo da entrada.
+     */
+    private static class Despejada<V> extends WeakReference<V> {
+
+        private final String chave;
+
+        private Despejada(String chave, V valor, ReferenceQueue<V> fila) {
+            super(valor, fila);
+            this.chave = chave;
+        }
+    }
+}
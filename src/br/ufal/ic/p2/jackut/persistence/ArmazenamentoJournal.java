@@ -0,0 +1,317 @@
+package br.ufal.ic.p2.jackut.persistence;
+
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Armazenamento com journal: cada mutação é anexada ao {@link Journal} e os snapshots dos repositórios
+ * só são gravados nos checkpoints, em paralelo e confirmados pelo {@link Manifesto}; os segmentos do journal
+ * incorporados são apagados logo após a confirmação. Na inicialização, os registros restantes são reaplicados
+ * sobre os snapshots carregados.
+ *
+ * <p>Para que o journal não cresça sem limite entre dois encerramentos, ele é compactado quando passa de um
+ * tamanho ou de uma idade: o arquivo ativo é selado, o estado alterado é codificado na memória pela thread que
+ * fez a mutação (sem escrita em disco), na {@link #manutencao()} ao fim da operação, e uma thread de fundo grava
+ * os snapshots, confirma a geração e apaga o segmento selado, enquanto as novas mutações seguem para o novo arquivo ativo.</p>
+ */
+public class ArmazenamentoJournal implements Armazenamento {
+
+    /** Thread de fundo compartilhada pelas compactações. */
+    private static final ExecutorService COMPACTACAO = Executors.newSingleThreadExecutor(tarefa -> {
+        Thread thread = new Thread(tarefa, "jackut-compactacao-journal");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /** Journal onde as mutações são registradas. */
+    private final Journal journal;
+
+    /** Tamanho, em bytes, do arquivo ativo a partir do qual o journal é compactado; 0 desativa o critério. */
+    private final long limiteBytes;
+
+    /** Idade, em milissegundos, do último checkpoint a partir da qual o journal é compactado; 0 desativa o critério. */
+    private final long limiteIdadeMs;
+
+    /** Repositórios persistidos, na ordem de registro. */
+    private final List<Repositorio> repositorios = new ArrayList<>();
+
+    /** Manifesto que confirma os snapshots de cada checkpoint como uma geração. */
+    private final Manifesto manifesto = new Manifesto(Manifesto.ARQUIVO_PADRAO);
+
+    /** Compactação em andamento na thread de fundo, ou {@code null}. */
+    private volatile Future<?> compactacao;
+
+    /** Indica que uma mutação encontrou o journal acima do limite e a compactação aguarda a próxima manutenção. */
+    private volatile boolean compactacaoPendente;
+
+    /** Momento (em milissegundos desde a época) do último checkpoint confirmado, ou da abertura do armazenamento. */
+    private volatile long ultimoCheckpointMs = System.currentTimeMillis();
+
+    /** Duração do último checkpoint, em nanossegundos, da captura à confirmação. */
+    private volatile long duracaoCheckpointNs;
+
+    /** Tempo em que a thread das mutações ficou parada no último checkpoint, em nanossegundos. */
+    private volatile long pausaCheckpointNs;
+
+    /** Quantidade de compactações em segundo plano concluídas. */
+    private volatile int compactacoes;
+
+    /**
+     * Construtor da classe {@code ArmazenamentoJournal}, sem compactação automática.
+     *
+     * @param journal Journal onde as mutações são registradas.
+     */
+    public ArmazenamentoJournal(Journal journal) {
+        this(journal, 0, 0);
+    }
+
+    /**
+     * Construtor da classe {@code ArmazenamentoJournal}.
+     *
+     * @param journal Journal onde as mutações são registradas.
+     * @param limiteBytes Tamanho do arquivo ativo, em bytes, que dispara a compactação (0 desativa).
+     * @param limiteIdadeMs Tempo desde o último checkpoint, em milissegundos, que dispara a compactação
+     *                      de um journal não vazio (0 desativa).
+     */
+    public ArmazenamentoJournal(Journal journal, long limiteBytes, long limiteIdadeMs) {
+        this.journal = journal;
+        this.limiteBytes = limiteBytes;
+        this.limiteIdadeMs = limiteIdadeMs;
+    }
+
+    @Override
+    public String getNome() {
+        return "journal (" + journal.getModo().name().toLowerCase() + ")";
+    }
+
+    @Override
+    public boolean isPersistente() {
+        return true;
+    }
+
+    @Override
+    public void registrar(Repositorio repositorio) {
+        repositorios.add(repositorio);
+        repositorio.registrarOperacoes(journal);
+    }
+
+    @Override
+    public void preparar() {
+        manifesto.recuperar();
+        // Os segmentos selados até a geração confirmada já estão nos snapshots e não podem ser reaplicados.
+        journal.descartarSegmentos(manifesto.getJournalCompactado());
+        manifesto.verificar();
+    }
+
+    @Override
+    public void recuperar() {
+        journal.recuperar();
+    }
+
+    @Override
+    public void mutacao(Repositorio repositorio, String operacao, String... argumentos) {
+        journal.append(operacao, argumentos);
+        if (deveCompactar()) {
+            compactacaoPendente = true; // A captura precisa do estado sem outras mutações em andamento
+        }
+    }
+
+    /**
+     * Aplica a mutação e anexa o registro sob a mesma exclusão do journal, de modo que a ordem dos registros
+     * é a ordem de aplicação.
+     */
+    @Override
+    public void mutacaoOrdenada(Repositorio repositorio, Runnable aplicar, String operacao, String... argumentos) {
+        journal.append(aplicar, operacao, argumentos);
+        if (deveCompactar()) {
+            compactacaoPendente = true;
+        }
+    }
+
+    @Override
+    public void alterado(Repositorio repositorio) {
+        // A mutação que causou a alteração já está no journal.
+    }
+
+    @Override
+    public void zerado(Repositorio repositorio) {
+        aguardarCompactacao(); // A compactação em andamento regravaria o estado anterior sobre o zerado
+        manifesto.executar(repositorio::apagar);
+    }
+
+    @Override
+    public boolean manutencaoPendente() {
+        return compactacaoPendente;
+    }
+
+    /**
+     * Inicia a compactação pedida por alguma mutação, se o journal ainda estiver acima do limite.
+     */
+    @Override
+    public void manutencao() {
+        if (!compactacaoPendente) {
+            return;
+        }
+        compactacaoPendente = false;
+        if (deveCompactar()) {
+            compactar();
+        }
+    }
+
+    @Override
+    public void iniciarLote() {
+        journal.iniciarLote();
+    }
+
+    /**
+     * Grava os registros do lote com um único fsync, no modo síncrono.
+     */
+    @Override
+    public void concluirLote() {
+        journal.concluirLote();
+    }
+
+    @Override
+    public void checkpoint() {
+        compactacaoPendente = false;
+        aguardarCompactacao();
+        long inicio = System.nanoTime();
+        long segmento = journal.rotacionar();
+        manifesto.checkpoint(repositorios, segmento, () -> journal.descartarSegmentos(segmento));
+        duracaoCheckpointNs = pausaCheckpointNs = System.nanoTime() - inicio;
+        ultimoCheckpointMs = System.currentTimeMillis();
+    }
+
+    @Override
+    public void fechar() {
+        checkpoint();
+        journal.fechar();
+    }
+
+    /**
+     * Descreve o journal: tamanho ainda não incorporado aos snapshots, tempo da última recuperação
+     * e o último checkpoint.
+     *
+     * @return Métricas do armazenamento numa linha.
+     */
+    @Override
+    public String estatisticas() {
+        return String.format("%s: %d bytes no journal, recuperação de %d registros em %.1f ms, "
+                        + "último checkpoint há %d s (geração %d, %.1f ms, pausa de %.1f ms), %d compactações",
+                getNome(), journal.getTamanho(), journal.getRegistrosRecuperados(), journal.getTempoRecuperacaoNs() / 1e6,
+                (System.currentTimeMillis() - ultimoCheckpointMs) / 1000, manifesto.getGeracao(),
+                duracaoCheckpointNs / 1e6, pausaCheckpointNs / 1e6, compactacoes);
+    }
+
+    /**
+     * Retorna o journal deste armazenamento.
+     *
+     * @return O journal de mutações.
+     */
+    public Journal getJournal() {
+        return journal;
+    }
+
+    /**
+     * Retorna o tamanho do journal ainda não incorporado aos snapshots.
+     *
+     * @return Tamanho em bytes.
+     */
+    public long getTamanhoJournal() {
+        return journal.getTamanho();
+    }
+
+    /**
+     * Retorna o tempo gasto na reaplicação do journal durante a inicialização.
+     *
+     * @return Tempo em nanossegundos.
+     */
+    public long getTempoRecuperacaoNs() {
+        return journal.getTempoRecuperacaoNs();
+    }
+
+    /**
+     * Retorna o momento do último checkpoint confirmado.
+     *
+     * @return Milissegundos desde a época, ou o momento da abertura se ainda não houve checkpoint.
+     */
+    public long getUltimoCheckpointMs() {
+        return ultimoCheckpointMs;
+    }
+
+    /**
+     * Retorna a quantidade de compactações em segundo plano concluídas.
+     *
+     * @return Quantidade de compactações.
+     */
+    public int getCompactacoes() {
+        return compactacoes;
+    }
+
+    /**
+     * Indica se o journal passou do limite de tamanho ou de idade e nenhuma compactação está em andamento.
+     *
+     * @return {@code true} se o journal deve ser compactado agora.
+     */
+    private boolean deveCompactar() {
+        if (compactacao != null && !compactacao.isDone()) {
+            return false;
+        }
+
+        long tamanho = journal.getTamanhoAtivo();
+        return (limiteBytes > 0 && tamanho >= limiteBytes)
+                || (limiteIdadeMs > 0 && tamanho > 0 && System.currentTimeMillis() - ultimoCheckpointMs >= limiteIdadeMs);
+    }
+
+    /**
+     * Sela o journal e captura o estado alterado na thread das mutações; a gravação e a confirmação
+     * seguem na thread de fundo. No modo concorrente, é chamado sob a trava exclusiva.
+     */
+    private void compactar() {
+        aguardarCompactacao();
+        long inicio = System.nanoTime();
+        long segmento;
+        try {
+            segmento = journal.rotacionar();
+        } catch (UncheckedIOException e) {
+            e.printStackTrace(); // Os registros continuam pendentes; a compactação é tentada de novo mais tarde
+            return;
+        }
+        Manifesto.Lote lote = manifesto.capturar(repositorios, segmento);
+        long pausa = System.nanoTime() - inicio;
+
+        compactacao = COMPACTACAO.submit(() -> {
+            try {
+                manifesto.confirmarCapturado(lote, () -> journal.descartarSegmentos(segmento));
+                pausaCheckpointNs = pausa;
+                duracaoCheckpointNs = System.nanoTime() - inicio;
+                ultimoCheckpointMs = System.currentTimeMillis();
+                compactacoes++;
+            } catch (RuntimeException e) {
+                e.printStackTrace(); // O segmento selado continua no disco e é reaplicado na próxima inicialização
+            }
+        });
+    }
+
+    /**
+     * Aguarda o término da compactação em andamento, se houver.
+     */
+    private void aguardarCompactacao() {
+        if (compactacao == null) {
+            return;
+        }
+        try {
+            compactacao.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            e.getCause().printStackTrace();
+        }
+        compactacao = null;
+    }
+}
@@ -0,0 +1,77 @@
+package br.ufal.ic.p2.jackut.persistence;
+
+/**
+ * Armazenamento puramente em memória: nada é lido nem gravado em disco.
+ * Indicado para testes e benchmarks, em que o custo de persistência não interessa.
+ */
+public class ArmazenamentoMemoria implements Armazenamento {
+
+    @Override
+    public String getNome() {
+        return "memoria";
+    }
+
+    @Override
+    public boolean isPersistente() {
+        return false;
+    }
+
+    @Override
+    public void registrar(Repositorio repositorio) {
+    }
+
+    @Override
+    public void preparar() {
+    }
+
+    @Override
+    public void recuperar() {
+    }
+
+    @Override
+    public void mutacao(Repositorio repositorio, String operacao, String... argumentos) {
+    }
+
+    @Override
+    public void mutacaoOrdenada(Repositorio repositorio, Runnable aplicar, String operacao, String... argumentos) {
+        aplicar.run();
+    }
+
+    @Override
+    public void alterado(Repositorio repositorio) {
+    }
+
+    @Override
+    public void zerado(Repositorio repositorio) {
+    }
+
+    @Override
+    public boolean manutencaoPendente() {
+        return false;
+    }
+
+    @Override
+    public void manutencao() {
+    }
+
+    @Override
+    public void iniciarLote() {
+    }
+
+    @Override
+    public void concluirLote() {
+    }
+
+    @Override
+    public void checkpoint() {
+    }
+
+    @Override
+    public void fechar() {
+    }
+
+    @Override
+    public String estatisticas() {
+        return "memoria: sem persistência";
+    }
+}
@@ -0,0 +1,125 @@
+package br.ufal.ic.p2.jackut.persistence;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Armazenamento por snapshots: ao fim de cada operação, os snapshots dos repositórios alterados são gravados
+ * e confirmados juntos como uma nova geração do {@link Manifesto}.
+ * Não há journal; o estado em disco acompanha cada operação, ao custo de uma gravação por operação.
+ *
+ * <p>A gravação não acontece dentro da mutação, e sim na {@link #manutencao()}, que a {@code Facade} executa
+ * depois de liberar as travas da operação: no modo concorrente, os repositórios alterados por várias
+ * operações simultâneas são gravados numa única geração, sem que nenhuma outra operação os altere durante a leitura.</p>
+ */
+public class ArmazenamentoSnapshot implements Armazenamento {
+
+    /** Repositórios persistidos, na ordem de registro. */
+    private final List<Repositorio> repositorios = new ArrayList<>();
+
+    /** Manifesto que confirma cada gravação como uma geração. */
+    private final Manifesto manifesto = new Manifesto(Manifesto.ARQUIVO_PADRAO);
+
+    /** Repositórios alterados cujo snapshot ainda não foi gravado. */
+    private final Set<Repositorio> pendentes = ConcurrentHashMap.newKeySet();
+
+    @Override
+    public String getNome() {
+        return "snapshot";
+    }
+
+    @Override
+    public boolean isPersistente() {
+        return true;
+    }
+
+    @Override
+    public void registrar(Repositorio repositorio) {
+        repositorios.add(repositorio);
+    }
+
+    @Override
+    public void preparar() {
+        manifesto.recuperar();
+        manifesto.verificar();
+    }
+
+    @Override
+    public void recuperar() {
+    }
+
+    @Override
+    public void mutacao(Repositorio repositorio, String operacao, String... argumentos) {
+        pendentes.add(repositorio);
+    }
+
+    /**
+     * Aplica a mutação; a ordem não importa, pois o snapshot grava o estado resultante.
+     */
+    @Override
+    public void mutacaoOrdenada(Repositorio repositorio, Runnable aplicar, String operacao, String... argumentos) {
+        aplicar.run();
+        pendentes.add(repositorio);
+    }
+
+    @Override
+    public void alterado(Repositorio repositorio) {
+        pendentes.add(repositorio);
+    }
+
+    @Override
+    public void zerado(Repositorio repositorio) {
+        pendentes.remove(repositorio);
+        manifesto.executar(repositorio::apagar);
+    }
+
+    @Override
+    public boolean manutencaoPendente() {
+        return !pendentes.isEmpty();
+    }
+
+    /**
+     * Grava, numa única geração, os snapshots dos repositórios alterados desde a última manutenção.
+     */
+    @Override
+    public void manutencao() {
+        List<Repositorio> alterados = new ArrayList<>();
+        for (Repositorio repositorio : repositorios) { // Na ordem de registro, como no checkpoint
+            if (pendentes.remove(repositorio)) {
+                alterados.add(repositorio);
+            }
+        }
+        if (!alterados.isEmpty()) {
+            manifesto.executar(() -> alterados.forEach(Repositorio::salvar));
+        }
+    }
+
+    @Override
+    public void iniciarLote() {
+    }
+
+    /**
+     * Nada a fazer: os repositórios alterados no lote são gravados juntos na {@link #manutencao()} seguinte.
+     */
+    @Override
+    public void concluirLote() {
+    }
+
+    @Override
+    public void checkpoint() {
+        pendentes.clear();
+        manifesto.checkpoint(repositorios, null);
+    }
+
+    @Override
+    public void fechar() {
+        checkpoint();
+    }
+
+    @Override
+    public String estatisticas() {
+        return "snapshot: geração " + manifesto.getGeracao();
+    }
+}
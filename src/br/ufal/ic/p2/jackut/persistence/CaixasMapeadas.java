@@ -0,0 +1,411 @@
+package br.ufal.ic.p2.jackut.persistence;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Caixas de entrada de recados guardadas fora do heap, em segmentos de arquivo mapeados em memória.
+ * Os textos são anexados ao final do segmento atual e nunca são regravados; cada usuário tem apenas um cursor
+ * na memória, e ler o próximo texto é só avançar esse cursor.
+ *
+ * <p>Formato de cada registro: {@code [tamanho:int][próximo:long][texto em UTF-8]}, onde "próximo" aponta para o
+ * registro seguinte da mesma caixa, formando uma lista encadeada dentro dos segmentos. Um ponteiro guarda o número
+ * do segmento nos 32 bits altos e a posição dentro dele nos 32 bits baixos.</p>
+ *
+ * <p>Nos checkpoints ({@link #salvar()}), os segmentos alterados são descarregados para o disco e os cursores são
+ * gravados no índice. Cada segmento conta os seus registros ainda não lidos; um segmento anterior ao atual cuja
+ * contagem chegou a zero não é mais referenciado pelo índice e é apagado por uma thread de fundo, mesmo que
+ * segmentos mais antigos continuem presos por recados que ninguém leu.</p>
+ */
+public class CaixasMapeadas {
+
+    /** Indica se as caixas de recados usam segmentos mapeados ({@code -Djackut.caixas=mapeadas}) em vez do heap. */
+    public static final boolean ATIVADAS = "mapeadas".equals(System.getProperty("jackut.caixas", "heap"));
+
+    /** Tamanho de cada segmento; um texto maior que isso ganha um segmento do seu tamanho. */
+    public static final int TAMANHO_SEGMENTO = Integer.getInteger("jackut.caixas.segmentoBytes", 1 << 20);
+
+    /** Bytes do cabeçalho de cada registro: tamanho e ponteiro para o próximo. */
+    private static final int CABECALHO_REGISTRO = 12;
+
+    /** Ponteiro nulo, para o fim de uma caixa. */
+    private static final long NENHUM = -1;
+
+    /** Versão do formato do índice; a versão 2 acrescenta a contagem de registros não lidos de cada segmento. */
+    private static final int VERSAO = 2;
+
+    /** Thread de fundo compartilhada que apaga os segmentos já consumidos. */
+    private static final ExecutorService RECUPERACAO = Executors.newSingleThreadExecutor(tarefa -> {
+        Thread thread = new Thread(tarefa, "jackut-recuperacao-caixas");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /** Diretório dos segmentos e do índice. */
+    private final File diretorio;
+
+    /** Tipo gravado no cabeçalho do índice. */
+    private final String tipo;
+
+    /** Cursor de cada caixa com textos pendentes. */
+    private final Map<String, Cursor> cursores = new HashMap<>();
+
+    /** Segmentos já mapeados, pelo número. */
+    private final Map<Integer, MappedByteBuffer> mapeados = new HashMap<>();
+
+    /** Quantidade de registros ainda não lidos em cada segmento; os segmentos sem nenhum não aparecem. */
+    private final Map<Integer, Integer> vivos = new HashMap<>();
+
+    /** Segmentos escritos desde o último checkpoint. */
+    private final Set<Integer> sujos = new HashSet<>();
+
+    /** Número do segmento onde os textos são anexados; zero enquanto nenhum segmento foi criado. */
+    private int segmentoAtual;
+
+    /** Posição de escrita no segmento atual. */
+    private int posicao;
+
+    /** Incrementada ao zerar as caixas, para que remoções agendadas antes disso sejam ignoradas. */
+    private int geracao;
+
+    /** Quantidade de segmentos apagados pela thread de fundo. */
+    private long recuperados;
+
+    /**
+     * Construtor da classe {@code CaixasMapeadas}.
+     *
+     * @param diretorio Diretório dos segmentos e do índice.
+     * @param tipo Tipo do conteúdo, gravado no cabeçalho do índice.
+     */
+    public CaixasMapeadas(String diretorio, String tipo) {
+        this.diretorio = new File(diretorio);
+        this.tipo = tipo + ".caixas";
+    }
+
+    /**
+     * Anexa um texto ao final da caixa de um usuário.
+     *
+     * @param login Dono da caixa.
+     * @param texto Texto a ser anexado.
+     */
+    public synchronized void adicionar(String login, String texto) {
+        byte[] utf8 = texto.getBytes(StandardCharsets.UTF_8);
+        int tamanho = CABECALHO_REGISTRO + utf8.length;
+        if (segmentoAtual == 0 || posicao + tamanho > segmento(segmentoAtual).capacity()) {
+            novoSegmento(Math.max(TAMANHO_SEGMENTO, tamanho));
+        }
+
+        MappedByteBuffer buffer = segmento(segmentoAtual);
+        buffer.putInt(posicao, utf8.length);
+        buffer.putLong(posicao + 4, NENHUM);
+        buffer.put(posicao + CABECALHO_REGISTRO, utf8);
+        long registro = ponteiro(segmentoAtual, posicao);
+        posicao += tamanho;
+        sujos.add(segmentoAtual);
+
+        Cursor cursor = cursores.computeIfAbsent(login, k -> new Cursor());
+        if (cursor.pendentes == 0) {
+            cursor.cabeca = registro;
+        } else {
+            segmento(numero(cursor.cauda)).putLong(deslocamento(cursor.cauda) + 4, registro);
+            sujos.add(numero(cursor.cauda));
+        }
+        cursor.cauda = registro;
+        cursor.pendentes++;
+        vivos.merge(segmentoAtual, 1, Integer::sum);
+    }
+
+    /**
+     * Retira o texto mais antigo da caixa de um usuário, avançando o seu cursor.
+     *
+     * @param login Dono da caixa.
+     * @return O texto retirado, ou {@code null} se a caixa estiver vazia.
+     */
+    public synchronized String retirar(String login) {
+        Cursor cursor = cursores.get(login);
+        if (cursor == null) {
+            return null;
+        }
+
+        MappedByteBuffer buffer = segmento(numero(cursor.cabeca));
+        int inicio = deslocamento(cursor.cabeca);
+        byte[] utf8 = new byte[buffer.getInt(inicio)];
+        buffer.get(inicio + CABECALHO_REGISTRO, utf8);
+        vivos.computeIfPresent(numero(cursor.cabeca), (numero, quantidade) -> quantidade > 1 ? quantidade - 1 : null);
+
+        if (--cursor.pendentes == 0) {
+            cursores.remove(login);
+        } else {
+            cursor.cabeca = buffer.getLong(inicio + 4);
+        }
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Conta os textos pendentes na caixa de um usuário, mantidos no seu cursor.
+     *
+     * @param login Dono da caixa.
+     * @return A quantidade de textos, ou zero se a caixa estiver vazia.
+     */
+    public synchronized int contar(String login) {
+        Cursor cursor = cursores.get(login);
+        return cursor != null ? cursor.pendentes : 0;
+    }
+
+    /**
+     * Retorna os donos das caixas com textos pendentes.
+     *
+     * @return Uma cópia dos logins.
+     */
+    public synchronized Set<String> getDonos() {
+        return new LinkedHashSet<>(cursores.keySet());
+    }
+
+    /**
+     * Esvazia todas as caixas. Os segmentos deixam de ser referenciados e são apagados após o próximo checkpoint.
+     */
+    public synchronized void limpar() {
+        cursores.clear();
+        vivos.clear();
+    }
+
+    /**
+     * Descarrega para o disco os segmentos alterados, grava o índice de cursores e agenda a remoção
+     * dos segmentos cujos registros já foram todos lidos.
+     */
+    public synchronized void salvar() {
+        List<MappedByteBuffer> descarregar = new ArrayList<>();
+        for (int numero : sujos) {
+            MappedByteBuffer buffer = mapeados.get(numero);
+            if (buffer != null) {
+                descarregar.add(buffer);
+            }
+        }
+        sujos.clear();
+        Snapshot.antesDeConfirmar(() -> descarregar.forEach(MappedByteBuffer::force));
+
+        diretorio.mkdirs();
+        Snapshot.salvar(indice().getPath(), tipo, VERSAO, out -> {
+            out.escreverVarInt(segmentoAtual);
+            out.escreverVarInt(posicao);
+            out.escreverVarInt(cursores.size());
+            for (Map.Entry<String, Cursor> entrada : cursores.entrySet()) {
+                Cursor cursor = entrada.getValue();
+                out.escreverTextoRepetido(entrada.getKey());
+                out.escreverVarInt(numero(cursor.cabeca));
+                out.escreverVarInt(deslocamento(cursor.cabeca));
+                out.escreverVarInt(numero(cursor.cauda));
+                out.escreverVarInt(deslocamento(cursor.cauda));
+                out.escreverVarInt(cursor.pendentes);
+            }
+            out.escreverVarInt(vivos.size());
+            for (Map.Entry<Integer, Integer> entrada : vivos.entrySet()) {
+                out.escreverVarInt(entrada.getKey());
+                out.escreverVarInt(entrada.getValue());
+            }
+        });
+
+        agendarRecuperacao();
+    }
+
+    /**
+     * Carrega o índice de cursores gravado no último checkpoint.
+     * Registros anexados depois dele são descartados e regravados pela recuperação do journal.
+     */
+    public synchronized void carregar() {
+        cursores.clear();
+        mapeados.clear();
+        vivos.clear();
+        Snapshot.carregar(indice().getPath(), tipo, VERSAO, (in, versao) -> {
+            segmentoAtual = in.lerVarInt();
+            posicao = in.lerVarInt();
+            int total = in.lerVarInt();
+            for (int i = 0; i < total; i++) {
+                String login = in.lerTextoRepetido();
+                Cursor cursor = new Cursor();
+                cursor.cabeca = ponteiro(in.lerVarInt(), in.lerVarInt());
+                cursor.cauda = ponteiro(in.lerVarInt(), in.lerVarInt());
+                cursor.pendentes = in.lerVarInt();
+                cursores.put(login, cursor);
+            }
+            if (versao >= 2) {
+                int segmentos = in.lerVarInt();
+                for (int i = 0; i < segmentos; i++) {
+                    vivos.put(in.lerVarInt(), in.lerVarInt());
+                }
+            } else {
+                contarVivos(); // Índice anterior às contagens: percorre as caixas uma vez
+            }
+            return true;
+        }, null);
+
+        agendarRecuperacao();
+    }
+
+    /**
+     * Apaga todas as caixas, seus segmentos e o índice.
+     */
+    public synchronized void zerar() {
+        cursores.clear();
+        mapeados.clear();
+        vivos.clear();
+        sujos.clear();
+        segmentoAtual = 0;
+        posicao = 0;
+        geracao++;
+
+        Snapshot.apagar(indice().getPath());
+        Snapshot.aposConfirmar(() -> { // Os segmentos só saem depois que o índice que os referencia foi apagado
+            File[] segmentos = diretorio.listFiles((dir, nome) -> nome.endsWith(".seg"));
+            if (segmentos != null) {
+                for (File segmento : segmentos) {
+                    segmento.delete();
+                }
+            }
+        });
+    }
+
+    /**
+     * Indica se já existe um índice gravado para estas caixas.
+     *
+     * @return {@code true} se o índice existir.
+     */
+    public boolean existe() {
+        return indice().exists();
+    }
+
+    /**
+     * Descreve o uso das caixas: caixas com textos pendentes, segmento atual e segmentos já apagados.
+     *
+     * @return Estatísticas das caixas numa linha.
+     */
+    public synchronized String estatisticas() {
+        return String.format("%s: %d caixas pendentes, %d segmentos com recados não lidos, segmento atual %d (%d bytes usados), %d segmentos recuperados",
+                diretorio.getName(), cursores.size(), vivos.size(), segmentoAtual, posicao, recuperados);
+    }
+
+    /**
+     * Agenda, na thread de fundo, a remoção dos segmentos anteriores ao atual sem registros não lidos.
+     * Deve ser chamado logo após o índice ser gravado ou lido, pois as contagens valem para os cursores do índice;
+     * se o índice ainda não foi confirmado pelo {@link Manifesto}, a remoção só é agendada após a confirmação.
+     */
+    private void agendarRecuperacao() {
+        final Set<Integer> emUso = new HashSet<>(vivos.keySet());
+        final int atual = segmentoAtual;
+        final int agendadaNaGeracao = geracao;
+        Snapshot.aposConfirmar(() -> RECUPERACAO.execute(() -> recuperar(emUso, atual, agendadaNaGeracao)));
+    }
+
+    /**
+     * Apaga os segmentos anteriores ao atual que não têm registros não lidos. Os segmentos criados depois do
+     * agendamento têm número maior que o atual de então e nunca são apagados aqui.
+     *
+     * @param emUso Segmentos com registros não lidos segundo o índice.
+     * @param atual Segmento atual quando o índice foi gravado.
+     * @param agendadaNaGeracao Geração das caixas quando a remoção foi agendada.
+     */
+    private synchronized void recuperar(Set<Integer> emUso, int atual, int agendadaNaGeracao) {
+        if (agendadaNaGeracao != geracao) {
+            return;
+        }
+
+        File[] arquivos = diretorio.listFiles((dir, nome) -> nome.endsWith(".seg"));
+        if (arquivos == null) {
+            return;
+        }
+
+        for (File arquivo : arquivos) {
+            int numero = Integer.parseInt(arquivo.getName().substring(0, arquivo.getName().length() - 4));
+            if (numero < atual && !emUso.contains(numero) && arquivo.delete()) {
+                mapeados.remove(numero);
+                recuperados++;
+            }
+        }
+    }
+
+    /**
+     * Recalcula as contagens de registros não lidos percorrendo a lista de cada caixa.
+     */
+    private void contarVivos() {
+        for (Cursor cursor : cursores.values()) {
+            long registro = cursor.cabeca;
+            for (int i = 0; i < cursor.pendentes; i++) {
+                vivos.merge(numero(registro), 1, Integer::sum);
+                registro = segmento(numero(registro)).getLong(deslocamento(registro) + 4);
+            }
+        }
+    }
+
+    /**
+     * Cria e mapeia um novo segmento, que passa a receber os textos anexados.
+     *
+     * @param tamanho Tamanho do segmento, em bytes.
+     */
+    private void novoSegmento(int tamanho) {
+        segmentoAtual++;
+        posicao = 0;
+        diretorio.mkdirs();
+        mapeados.put(segmentoAtual, mapear(arquivo(segmentoAtual), tamanho));
+    }
+
+    /**
+     * Retorna o segmento mapeado com o número informado, mapeando o arquivo se necessário.
+     */
+    private MappedByteBuffer segmento(int numero) {
+        return mapeados.computeIfAbsent(numero, n -> mapear(arquivo(n), 0));
+    }
+
+    /**
+     * Mapeia um arquivo de segmento para leitura e escrita.
+     *
+     * @param arquivo Arquivo do segmento.
+     * @param tamanho Tamanho com que o arquivo é criado, ou zero para mapear o arquivo existente inteiro.
+     */
+    private static MappedByteBuffer mapear(File arquivo, int tamanho) {
+        try (RandomAccessFile raf = new RandomAccessFile(arquivo, "rw")) {
+            if (tamanho > 0) {
+                raf.setLength(tamanho);
+            }
+            return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, raf.length());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private File arquivo(int numero) {
+        return new File(diretorio, String.format("%08d.seg", numero));
+    }
+
+    private File indice() {
+        return new File(diretorio, "indice.ser");
+    }
+
+    private static long ponteiro(int segmento, int deslocamento) {
+        return ((long) segmento << 32) | (deslocamento & 0xFFFFFFFFL);
+    }
+
+    private static int numero(long ponteiro) {
+        return (int) (ponteiro >>> 32);
+    }
+
+    private static int deslocamento(long ponteiro) {
+        return (int) ponteiro;
+    }
+
+    /**
+     * Cursor de leitura de uma caixa: primeiro e último registros pendentes e quantos faltam ler.
+     */
+    private static class Cursor {
+        long cabeca = NENHUM;
+        long cauda = NENHUM;
+        int pendentes;
+    }
+}
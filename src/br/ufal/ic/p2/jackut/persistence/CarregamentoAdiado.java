@@ -0,0 +1,91 @@
+package br.ufal.ic.p2.jackut.persistence;
+
+/**
+ * Carregamento do estado persistido de um serviço, executado uma única vez: na inicialização do sistema
+ * (serviços carregados em paralelo) ou no primeiro uso (serviços pesados, como as caixas de recados).
+ * Registra o tempo gasto, usado no relatório de inicialização.
+ */
+public class CarregamentoAdiado {
+
+    /** Nome do armazenamento (arquivo) carregado. */
+    private final String armazenamento;
+
+    /** Rotina que lê o armazenamento e preenche o serviço. */
+    private final Runnable carga;
+
+    /** Indica se o estado já está disponível. */
+    private volatile boolean carregado;
+
+    /** Tempo gasto no carregamento, em nanossegundos. */
+    private long tempoNs;
+
+    /** Indica se o carregamento ocorreu no primeiro uso, e não na inicialização. */
+    private boolean sobDemanda;
+
+    /**
+     * Construtor da classe {@code CarregamentoAdiado}.
+     *
+     * @param armazenamento Nome do armazenamento carregado.
+     * @param carga Rotina que lê o armazenamento e preenche o serviço.
+     */
+    public CarregamentoAdiado(String armazenamento, Runnable carga) {
+        this.armazenamento = armazenamento;
+        this.carga = carga;
+    }
+
+    /**
+     * Carrega o estado durante a inicialização do sistema, se ainda não foi carregado.
+     */
+    public void carregar() {
+        executar(false);
+    }
+
+    /**
+     * Garante que o estado esteja carregado antes de um acesso, carregando-o agora se necessário.
+     */
+    public void garantir() {
+        if (!carregado) {
+            executar(true);
+        }
+    }
+
+    /**
+     * Dispensa o carregamento, porque o estado persistido vai ser descartado (por exemplo, ao zerar o sistema).
+     */
+    public synchronized void dispensar() {
+        carregado = true;
+    }
+
+    /**
+     * Indica se o estado já foi carregado (ou dispensado).
+     *
+     * @return {@code true} se o estado está disponível.
+     */
+    public boolean isCarregado() {
+        return carregado;
+    }
+
+    /**
+     * Descreve o carregamento numa linha do relatório de inicialização.
+     *
+     * @return Nome do armazenamento e tempo gasto, ou a indicação de que ainda não foi carregado.
+     */
+    public synchronized String descrever() {
+        if (!carregado) {
+            return armazenamento + ": adiado (ainda não utilizado)";
+        }
+        return String.format("%s: %.1f ms%s", armazenamento, tempoNs / 1e6, sobDemanda ? " (no primeiro uso)" : "");
+    }
+
+    private synchronized void executar(boolean primeiroUso) {
+        if (carregado) {
+            return;
+        }
+
+        long inicio = System.nanoTime();
+        carga.run();
+        tempoNs = System.nanoTime() - inicio;
+        sobDemanda = primeiroUso;
+        carregado = true;
+    }
+}
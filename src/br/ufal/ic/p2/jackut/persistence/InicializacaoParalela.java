@@ -0,0 +1,90 @@
+package br.ufal.ic.p2.jackut.persistence;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Inicialização do estado persistido dos serviços.
+ * Os armazenamentos independentes são carregados em paralelo, de modo que o tempo de partida passa a ser
+ * o do maior deles, e não a soma de todos; os armazenamentos adiados só são carregados no primeiro uso.
+ */
+public class InicializacaoParalela {
+
+    /** Carregamentos executados na inicialização. */
+    private final List<CarregamentoAdiado> imediatos = new ArrayList<>();
+
+    /** Carregamentos adiados até o primeiro uso do serviço. */
+    private final List<CarregamentoAdiado> adiados = new ArrayList<>();
+
+    /** Tempo total da fase paralela, em nanossegundos. */
+    private long tempoNs;
+
+    /**
+     * Inclui um armazenamento a ser carregado na inicialização.
+     *
+     * @param carregamento Carregamento do serviço.
+     * @return Esta inicialização, para encadear chamadas.
+     */
+    public InicializacaoParalela imediato(CarregamentoAdiado carregamento) {
+        imediatos.add(carregamento);
+        return this;
+    }
+
+    /**
+     * Inclui um armazenamento cujo carregamento fica para o primeiro uso; ele aparece apenas no relatório.
+     *
+     * @param carregamento Carregamento do serviço.
+     * @return Esta inicialização, para encadear chamadas.
+     */
+    public InicializacaoParalela adiado(CarregamentoAdiado carregamento) {
+        adiados.add(carregamento);
+        return this;
+    }
+
+    /**
+     * Carrega em paralelo os armazenamentos imediatos e aguarda o término de todos.
+     *
+     * @throws IllegalStateException Se algum carregamento falhar.
+     */
+    public void executar() {
+        long inicio = System.nanoTime();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(imediatos.size(), Runtime.getRuntime().availableProcessors())));
+        try {
+            List<Future<?>> tarefas = new ArrayList<>();
+            for (CarregamentoAdiado carregamento : imediatos) {
+                tarefas.add(executor.submit(carregamento::carregar));
+            }
+            for (Future<?> tarefa : tarefas) {
+                tarefa.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Inicialização interrompida.", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Falha ao carregar o estado persistido.", e.getCause());
+        } finally {
+            executor.shutdown();
+        }
+        tempoNs = System.nanoTime() - inicio;
+    }
+
+    /**
+     * Monta o relatório de inicialização, com o tempo de carregamento de cada armazenamento.
+     *
+     * @return O relatório, uma linha por armazenamento.
+     */
+    public String relatorio() {
+        StringBuilder relatorio = new StringBuilder(String.format("Inicialização paralela: %.1f ms%n", tempoNs / 1e6));
+        for (CarregamentoAdiado carregamento : imediatos) {
+            relatorio.append("  ").append(carregamento.descrever()).append(System.lineSeparator());
+        }
+        for (CarregamentoAdiado carregamento : adiados) {
+            relatorio.append("  ").append(carregamento.descrever()).append(System.lineSeparator());
+        }
+        return relatorio.toString();
+    }
+}
@@ -0,0 +1,584 @@
+package br.ufal.ic.p2.jackut.persistence;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Diário de escrita antecipada (write-ahead journal) das mutações do sistema Jackut.
+ * Cada operação que altera o estado dos serviços é anexada ao final do arquivo como um registro compacto,
+ * de forma que os snapshots ".ser" só precisam ser regravados nos checkpoints.
+ * Na inicialização, os registros são reaplicados sobre o último snapshot.
+ *
+ * <p>Formato de cada registro: {@code [tamanho:int][crc32:int][operação][nº de argumentos:int][argumentos...]},
+ * onde cada texto é gravado como tamanho seguido dos bytes em UTF-8.</p>
+ *
+ * <p>Os registros são acumulados num lote pendente e chegam ao disco conforme o {@link ModoDurabilidade}:
+ * imediatamente (com fsync), em lotes por uma thread de fundo, ou não são gravados. Se a gravação de um lote
+ * falhar, o arquivo volta ao tamanho anterior e o lote retorna, na frente, aos registros pendentes.</p>
+ *
+ * <p>Para a compactação, o arquivo ativo pode ser selado ({@link #rotacionar()}): ele passa a se chamar
+ * "jackut.journal.N" e os novos registros seguem para um arquivo ativo vazio. Os segmentos selados são
+ * reaplicados antes do arquivo ativo e apagados depois que um checkpoint os incorpora aos snapshots.</p>
+ */
+public class Journal {
+
+    /** Nome padrão do arquivo de journal. */
+    public static final String ARQUIVO_PADRAO = "jackut.journal";
+
+    /** Arquivo onde os registros são anexados. */
+    private final File arquivo;
+
+    /** Aplicadores de cada operação, usados durante a recuperação. */
+    private final Map<String, Consumer<String[]>> aplicadores = new HashMap<>();
+
+    /** Nível de durabilidade dos registros. */
+    private final ModoDurabilidade modo;
+
+    /** Tamanho do lote pendente a partir do qual a descarga é antecipada (modo {@link ModoDurabilidade#GRUPO}). */
+    private final int limiteLote;
+
+    /** Registros já codificados que ainda não foram gravados no arquivo. */
+    private ByteArrayOutputStream pendentes = new ByteArrayOutputStream();
+
+    /** Indica que um lote de operações está aberto: no modo síncrono, a descarga fica para {@link #concluirLote()}. */
+    private volatile boolean emLote;
+
+    /** Intervalo entre descargas em lote, em milissegundos (modo {@link ModoDurabilidade#GRUPO}). */
+    private final long intervaloLoteMs;
+
+    /**
+     * Agendador das descargas em lote, criado com o primeiro registro anexado no modo {@link ModoDurabilidade#GRUPO}
+     * (e não no construtor, para que a thread de fundo nunca veja o journal ainda em construção); nulo até lá.
+     */
+    private AgendadorDescarga agendador;
+
+    /** Garante que apenas uma descarga (ou truncamento) acesse o arquivo por vez. */
+    private final Object escrita = new Object();
+
+    /** Fluxo de saída aberto em modo de anexação. */
+    private FileOutputStream saida;
+
+    /** Tamanho a que o arquivo deve voltar antes da próxima gravação, após uma falha não desfeita; -1 se nenhum. */
+    private long tamanhoValido = -1;
+
+    /** Número do último segmento selado; os próximos recebem números maiores. */
+    private long ultimoSegmento;
+
+    /** Bytes de registros anexados desde a última rotação ou truncamento, gravados ou pendentes. */
+    private long tamanhoAtivo;
+
+    /** Quantidade de registros reaplicados na última recuperação. */
+    private int registrosRecuperados;
+
+    /** Tempo gasto na última recuperação, em nanossegundos. */
+    private long tempoRecuperacaoNs;
+
+    /**
+     * Construtor que utiliza o arquivo padrão "jackut.journal" com durabilidade síncrona.
+     */
+    public Journal() {
+        this(ARQUIVO_PADRAO, ModoDurabilidade.SINCRONO, 0, 0);
+    }
+
+    /**
+     * Construtor da classe {@code Journal}.
+     *
+     * @param caminho Caminho do arquivo de journal.
+     * @param modo Nível de durabilidade dos registros.
+     * @param intervaloLoteMs Intervalo entre descargas em lote, em milissegundos (modo {@link ModoDurabilidade#GRUPO}).
+     * @param limiteLote Tamanho, em bytes, que antecipa a descarga do lote (modo {@link ModoDurabilidade#GRUPO}).
+     */
+    public Journal(String caminho, ModoDurabilidade modo, long intervaloLoteMs, int limiteLote) {
+        this.arquivo = new File(caminho);
+        this.modo = modo;
+        this.limiteLote = limiteLote;
+        this.intervaloLoteMs = intervaloLoteMs;
+        TreeMap<Long, File> existentes = segmentos();
+        this.ultimoSegmento = existentes.isEmpty() ? 0 : existentes.lastKey();
+        this.tamanhoAtivo = arquivo.length();
+    }
+
+    /**
+     * Registra o aplicador de uma operação, chamado para cada registro dessa operação durante a recuperação.
+     *
+     * @param operacao Nome da operação.
+     * @param aplicador Função que reaplica a operação a partir dos argumentos gravados.
+     */
+    public void registrarOperacao(String operacao, Consumer<String[]> aplicador) {
+        aplicadores.put(operacao, aplicador);
+    }
+
+    /**
+     * Anexa um registro de mutação ao final do journal.
+     * No modo síncrono, o registro já está no disco quando o método retorna (ou quando o lote aberto por
+     * {@link #iniciarLote()} for concluído); no modo em grupo, ele apenas entra no lote pendente.
+     *
+     * @param operacao Nome da operação.
+     * @param argumentos Argumentos necessários para reaplicar a operação.
+     * @throws UncheckedIOException Se o registro não puder ser codificado (nada é aplicado), ou, no modo síncrono, gravado (ele continua pendente).
+     */
+    public void append(String operacao, String... argumentos) {
+        append(null, operacao, argumentos);
+    }
+
+    /**
+     * Aplica uma mutação e anexa o seu registro atomicamente: mutações concorrentes feitas sem trava sobre o
+     * mesmo objeto (por exemplo, recados enviados ao mesmo destinatário) ficam no journal na ordem em que foram
+     * aplicadas, e a reaplicação reproduz o mesmo estado.
+     *
+     * @param aplicar Aplica a mutação; se lançar uma exceção, nada é registrado. Pode ser {@code null}.
+     * @param operacao Nome da operação.
+     * @param argumentos Argumentos necessários para reaplicar a operação.
+     * @throws UncheckedIOException Se o registro não puder ser codificado (nada é aplicado), ou, no modo síncrono, gravado (ele continua pendente).
+     */
+    public void append(Runnable aplicar, String operacao, String... argumentos) {
+        if (modo == ModoDurabilidade.ENCERRAMENTO) {
+            if (aplicar != null) {
+                aplicar.run();
+            }
+            return;
+        }
+
+        // O registro é montado antes da mutação: uma falha aqui não deixa uma mutação aplicada sem registro.
+        byte[] registro;
+        try {
+            registro = codificar(operacao, argumentos);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Não foi possível codificar o registro de " + operacao + "; nada foi aplicado", e);
+        }
+        ByteBuffer quadro = ByteBuffer.allocate(8 + registro.length);
+        quadro.putInt(registro.length).putInt(crc(registro)).put(registro);
+
+        int tamanhoLote;
+        AgendadorDescarga agendadorAtual;
+        synchronized (this) {
+            if (agendador == null && modo == ModoDurabilidade.GRUPO) {
+                agendador = new AgendadorDescarga(this, intervaloLoteMs);
+            }
+            agendadorAtual = agendador;
+            if (aplicar != null) {
+                aplicar.run();
+            }
+            pendentes.writeBytes(quadro.array());
+            tamanhoLote = pendentes.size();
+            tamanhoAtivo += quadro.capacity();
+        }
+
+        if (modo == ModoDurabilidade.SINCRONO) {
+            if (!emLote) {
+                descarregar();
+            }
+        } else if (tamanhoLote >= limiteLote) {
+            agendadorAtual.antecipar();
+        }
+    }
+
+    /**
+     * Abre um lote de operações: no modo síncrono, os registros anexados até {@link #concluirLote()}
+     * são gravados juntos, com um único fsync. Usado pela thread escritora, que aplica as operações em lotes.
+     */
+    public void iniciarLote() {
+        emLote = true;
+    }
+
+    /**
+     * Fecha o lote aberto por {@link #iniciarLote()}; no modo síncrono, os registros do lote já estão
+     * no disco quando o método retorna.
+     *
+     * @throws UncheckedIOException No modo síncrono, se os registros não puderem ser gravados; eles continuam pendentes.
+     */
+    public void concluirLote() {
+        emLote = false;
+        if (modo == ModoDurabilidade.SINCRONO) {
+            descarregar();
+        }
+    }
+
+    /**
+     * Grava no arquivo, com fsync, todos os registros pendentes.
+     * Novos registros podem continuar a ser anexados enquanto o lote anterior é gravado.
+     *
+     * @throws UncheckedIOException Se o lote não puder ser gravado; ele volta, na frente, aos registros pendentes.
+     */
+    public void descarregar() {
+        synchronized (escrita) {
+            byte[] lote;
+            synchronized (this) {
+                if (pendentes.size() == 0 && tamanhoValido < 0) {
+                    return;
+                }
+                lote = pendentes.toByteArray();
+                pendentes = new ByteArrayOutputStream(Math.max(32, lote.length));
+            }
+
+            try {
+                gravar(lote);
+            } catch (IOException e) {
+                synchronized (this) {
+                    ByteArrayOutputStream devolvidos = new ByteArrayOutputStream(lote.length + pendentes.size());
+                    devolvidos.writeBytes(lote);
+                    devolvidos.writeBytes(pendentes.toByteArray());
+                    pendentes = devolvidos;
+                }
+                throw new UncheckedIOException("Não foi possível gravar o journal; os registros continuam pendentes", e);
+            }
+        }
+    }
+
+    /**
+     * Anexa um lote ao arquivo, com fsync. Se a escrita falhar, o arquivo volta ao tamanho anterior, para que
+     * um registro gravado pela metade não esconda da recuperação os registros seguintes; se nem isso for possível,
+     * o tamanho fica guardado e é restaurado antes da próxima gravação.
+     *
+     * @param lote Registros codificados.
+     * @throws IOException Se o lote não puder ser gravado.
+     */
+    private void gravar(byte[] lote) throws IOException {
+        FileOutputStream out = abrirSaida();
+        FileChannel canal = out.getChannel();
+        if (tamanhoValido >= 0) {
+            canal.truncate(tamanhoValido);
+            tamanhoValido = -1;
+        }
+        long anterior = canal.size();
+        try {
+            out.write(lote);
+            canal.force(false);
+        } catch (IOException e) {
+            try {
+                canal.truncate(anterior);
+            } catch (IOException falhaTruncamento) {
+                tamanhoValido = anterior;
+                e.addSuppressed(falhaTruncamento);
+            }
+            fecharSaida();
+            throw e;
+        }
+    }
+
+    /**
+     * Reaplica todos os registros válidos do journal sobre o estado atual dos serviços: primeiro os segmentos
+     * selados ainda não incorporados aos snapshots, em ordem, e depois o arquivo ativo.
+     * Um registro incompleto ou corrompido no final do arquivo ativo (escrita interrompida) é descartado.
+     *
+     * @return Quantidade de registros reaplicados.
+     */
+    public synchronized int recuperar() {
+        long inicio = System.nanoTime();
+        int aplicados = 0;
+        for (File segmento : segmentos().values()) {
+            aplicados += reaplicar(segmento);
+        }
+        aplicados += reaplicar(arquivo);
+
+        registrosRecuperados = aplicados;
+        tempoRecuperacaoNs = System.nanoTime() - inicio;
+        return aplicados;
+    }
+
+    /**
+     * Reaplica os registros válidos de um arquivo do journal, descartando a cauda incompleta do arquivo ativo.
+     *
+     * @param origem Arquivo ativo ou segmento selado.
+     * @return Quantidade de registros reaplicados.
+     */
+    private int reaplicar(File origem) {
+        if (!origem.exists()) {
+            return 0;
+        }
+
+        int aplicados = 0;
+        long fimValido = 0;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(origem)))) {
+            while (true) {
+                int tamanho;
+                try {
+                    tamanho = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+
+                int crcEsperado = in.readInt();
+                if (tamanho < 0 || tamanho > origem.length()) {
+                    break;
+                }
+
+                byte[] registro = new byte[tamanho];
+                in.readFully(registro);
+                if (crc(registro) != crcEsperado) {
+                    break;
+                }
+
+                aplicar(registro);
+                aplicados++;
+                fimValido += 8 + tamanho;
+            }
+        } catch (EOFException e) {
+            // Registro final incompleto: descartado abaixo.
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        if (origem == arquivo && fimValido < arquivo.length()) {
+            descartarCauda(fimValido);
+        }
+
+        return aplicados;
+    }
+
+    /**
+     * Sela o arquivo ativo: descarrega os registros pendentes, renomeia o arquivo para o próximo segmento
+     * e faz com que os registros seguintes sejam anexados a um novo arquivo ativo.
+     * Todo registro anexado antes da chamada fica no segmento selado; todo registro posterior, no novo arquivo.
+     *
+     * @return Número do segmento selado (ou do último segmento, se o arquivo ativo estava vazio).
+     * @throws UncheckedIOException Se os registros pendentes não puderem ser gravados; nada é selado.
+     */
+    public long rotacionar() {
+        synchronized (escrita) {
+            descarregar();
+            fecharSaida();
+            synchronized (this) {
+                tamanhoAtivo = pendentes.size();
+            }
+            if (!arquivo.exists() || arquivo.length() == 0) {
+                return ultimoSegmento;
+            }
+
+            File segmento = segmento(ultimoSegmento + 1);
+            if (!arquivo.renameTo(segmento)) {
+                throw new IllegalStateException("Não foi possível selar o journal em " + segmento);
+            }
+            return ++ultimoSegmento;
+        }
+    }
+
+    /**
+     * Apaga os segmentos selados já incorporados aos snapshots.
+     * Os segmentos criados depois recebem números maiores que o informado.
+     *
+     * @param ate Número do último segmento incorporado.
+     */
+    public void descartarSegmentos(long ate) {
+        synchronized (escrita) {
+            for (Map.Entry<Long, File> segmento : segmentos().entrySet()) {
+                if (segmento.getKey() <= ate) {
+                    segmento.getValue().delete();
+                }
+            }
+            ultimoSegmento = Math.max(ultimoSegmento, ate);
+        }
+    }
+
+    /**
+     * Retorna o tamanho do journal ainda não incorporado aos snapshots: o arquivo ativo (incluindo o lote pendente)
+     * mais os segmentos selados.
+     *
+     * @return Tamanho em bytes.
+     */
+    public long getTamanho() {
+        long tamanho;
+        synchronized (this) {
+            tamanho = tamanhoAtivo;
+        }
+        for (File segmento : segmentos().values()) {
+            tamanho += segmento.length();
+        }
+        return tamanho;
+    }
+
+    /**
+     * Retorna o tamanho dos registros anexados ao arquivo ativo desde a última rotação ou truncamento.
+     *
+     * @return Tamanho em bytes, incluindo o lote pendente.
+     */
+    public synchronized long getTamanhoAtivo() {
+        return tamanhoAtivo;
+    }
+
+    /**
+     * Retorna a quantidade de registros reaplicados na última recuperação.
+     *
+     * @return Quantidade de registros.
+     */
+    public synchronized int getRegistrosRecuperados() {
+        return registrosRecuperados;
+    }
+
+    /**
+     * Retorna o tempo gasto na última recuperação.
+     *
+     * @return Tempo em nanossegundos.
+     */
+    public synchronized long getTempoRecuperacaoNs() {
+        return tempoRecuperacaoNs;
+    }
+
+    /**
+     * Esvazia o journal, descartando também o lote pendente e os segmentos selados.
+     * Deve ser chamado logo após um checkpoint, quando os snapshots já refletem todos os registros.
+     */
+    public void truncar() {
+        synchronized (escrita) {
+            synchronized (this) {
+                pendentes.reset();
+                tamanhoAtivo = 0;
+            }
+            tamanhoValido = -1;
+            fecharSaida();
+            descartarSegmentos(ultimoSegmento);
+            try (FileOutputStream fos = new FileOutputStream(arquivo)) {
+                fos.getFD().sync();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Descarrega os registros pendentes, encerra as descargas periódicas e fecha o arquivo.
+     */
+    public void fechar() {
+        AgendadorDescarga agendadorAtual;
+        synchronized (this) {
+            agendadorAtual = agendador;
+        }
+        if (agendadorAtual != null) {
+            agendadorAtual.parar();
+        }
+        descarregar();
+        synchronized (escrita) {
+            fecharSaida();
+        }
+    }
+
+    /**
+     * Retorna o nível de durabilidade do journal.
+     *
+     * @return O modo de durabilidade.
+     */
+    public ModoDurabilidade getModo() {
+        return modo;
+    }
+
+    private void fecharSaida() {
+        if (saida == null) {
+            return;
+        }
+        try {
+            saida.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        saida = null;
+    }
+
+    /**
+     * Lista os segmentos selados existentes, em ordem crescente de número.
+     *
+     * @return Os segmentos, pelo número.
+     */
+    private TreeMap<Long, File> segmentos() {
+        TreeMap<Long, File> segmentos = new TreeMap<>();
+        File diretorio = arquivo.getAbsoluteFile().getParentFile();
+        String prefixo = arquivo.getName() + ".";
+        File[] arquivos = diretorio.listFiles((dir, nome) -> nome.startsWith(prefixo)
+                && nome.length() > prefixo.length() && nome.substring(prefixo.length()).chars().allMatch(Character::isDigit));
+        if (arquivos != null) {
+            for (File segmento : arquivos) {
+                segmentos.put(Long.parseLong(segmento.getName().substring(prefixo.length())), segmento);
+            }
+        }
+        return segmentos;
+    }
+
+    private File segmento(long numero) {
+        return new File(arquivo.getPath() + "." + numero);
+    }
+
+    /**
+     * Abre (se necessário) o fluxo de saída em modo de anexação.
+     *
+     * @return O fluxo de saída do journal.
+     * @throws IOException Se o arquivo não puder ser aberto.
+     */
+    private FileOutputStream abrirSaida() throws IOException {
+        if (saida == null) {
+            saida = new FileOutputStream(arquivo, true);
+        }
+        return saida;
+    }
+
+    /**
+     * Decodifica um registro e o entrega ao aplicador da operação correspondente.
+     *
+     * @param registro Bytes do registro, sem cabeçalho.
+     * @throws IOException Se o registro estiver malformado.
+     */
+    private void aplicar(byte[] registro) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(registro));
+        String operacao = lerTexto(in);
+        String[] argumentos = new String[in.readInt()];
+        for (int i = 0; i < argumentos.length; i++) {
+            argumentos[i] = lerTexto(in);
+        }
+
+        Consumer<String[]> aplicador = aplicadores.get(operacao);
+        if (aplicador != null) {
+            aplicador.accept(argumentos);
+        }
+    }
+
+    /**
+     * Remove do arquivo os bytes após o último registro válido.
+     *
+     * @param tamanhoValido Tamanho, em bytes, da parte íntegra do journal.
+     */
+    private void descartarCauda(long tamanhoValido) {
+        try (RandomAccessFile raf = new RandomAccessFile(arquivo, "rw")) {
+            raf.setLength(tamanhoValido);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Serializa a operação e seus argumentos no formato de registro do journal.
+     */
+    private static byte[] codificar(String operacao, String[] argumentos) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        escreverTexto(out, operacao);
+        out.writeInt(argumentos.length);
+        for (String argumento : argumentos) {
+            escreverTexto(out, argumento);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void escreverTexto(DataOutputStream out, String texto) throws IOException {
+        byte[] utf8 = texto.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(utf8.length);
+        out.write(utf8);
+    }
+
+    private static String lerTexto(DataInputStream in) throws IOException {
+        byte[] utf8 = new byte[in.readInt()];
+        in.readFully(utf8);
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+
+    private static int crc(byte[] dados) {
+        CRC32 crc = new CRC32();
+        crc.update(dados);
+        return (int) crc.getValue();
+    }
+}
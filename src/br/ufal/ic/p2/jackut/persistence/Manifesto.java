@@ -0,0 +1,542 @@
+package br.ufal.ic.p2.jackut.persistence;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Manifesto dos snapshots: registra o tamanho e o CRC32C de cada arquivo de snapshot da última geração confirmada.
+ *
+ * <p>As gravações de um checkpoint formam um lote: cada snapshot é gravado num arquivo temporário e, quando
+ * todos estão no disco, o manifesto da nova geração é gravado atomicamente. Essa gravação é o ponto de confirmação;
+ * só depois dela os temporários são renomeados sobre os destinos e os arquivos obsoletos são apagados. Se o processo
+ * for interrompido antes, vale a geração anterior inteira; se for interrompido depois, {@link #recuperar()} conclui
+ * as renomeações na próxima inicialização. Assim, os snapshots em disco nunca misturam gerações.</p>
+ *
+ * <p>Na compactação do journal, o lote é capturado na memória ({@link #capturar}) pela thread que altera os serviços,
+ * sem nenhuma escrita em disco, e confirmado depois por uma thread de fundo ({@link #confirmarCapturado}). Gravações
+ * que precisam reler arquivos inteiros, como a fusão de fragmentos ou de segmentos, são adiadas para essa thread
+ * ({@link Snapshot#adiar}) e trabalham sobre o estado copiado na captura.
+ * A geração registra também o último segmento selado do journal que ela incorpora.</p>
+ *
+ * <p>Formato: {@code [versão:int][geração:int][nº de entradas:int]([arquivo][tamanho:long][crc32c:int])...
+ * [nº de gravados:int]([arquivo])...[nº de removidos:int]([arquivo])...[segmento do journal:long]},
+ * seguido do mesmo rodapé dos snapshots.</p>
+ */
+public class Manifesto {
+
+    /** Nome padrão do arquivo de manifesto. */
+    public static final String ARQUIVO_PADRAO = "jackut.manifesto";
+
+    /** Versão do formato do manifesto. */
+    private static final int VERSAO = 2;
+
+    /** Manifesto em uso pelo armazenamento do sistema; as gravações de snapshot fora de um lote passam por ele. */
+    private static volatile Manifesto ativo;
+
+    /** Lote ao qual as gravações de snapshot da thread corrente pertencem. */
+    private static final ThreadLocal<Lote> LOTE = new ThreadLocal<>();
+
+    /** Arquivo do manifesto. */
+    private final File arquivo;
+
+    /** Número da última geração confirmada. */
+    private int geracao;
+
+    /** Tamanho e CRC32C de cada snapshot da geração confirmada, pelo caminho do arquivo. */
+    private final Map<String, Entrada> entradas = new TreeMap<>();
+
+    /** Snapshots gravados pela última geração, cujos temporários podem ainda não ter sido renomeados. */
+    private List<String> gravados = new ArrayList<>();
+
+    /** Snapshots removidos pela última geração, que podem ainda não ter sido apagados. */
+    private List<String> removidos = new ArrayList<>();
+
+    /** Último segmento selado do journal cujos registros já estão nos snapshots desta geração. */
+    private long journalCompactado;
+
+    /** Indica que um lote foi abortado; nenhuma nova geração é confirmada depois disso. */
+    private boolean abortado;
+
+    /**
+     * Construtor da classe {@code Manifesto}.
+     *
+     * @param caminho Caminho do arquivo de manifesto.
+     */
+    public Manifesto(String caminho) {
+        this.arquivo = new File(caminho);
+    }
+
+    /**
+     * Retorna o manifesto em uso pelo armazenamento do sistema.
+     *
+     * @return O manifesto ativo, ou {@code null} se nenhum armazenamento persistente estiver aberto.
+     */
+    public static Manifesto getAtivo() {
+        return ativo;
+    }
+
+    /**
+     * Retorna o lote ao qual as gravações da thread corrente pertencem.
+     *
+     * @return O lote corrente, ou {@code null} fora de um lote.
+     */
+    static Lote loteAtual() {
+        return LOTE.get();
+    }
+
+    /**
+     * Lê o manifesto, conclui um checkpoint interrompido depois da confirmação e passa a receber as gravações
+     * de snapshot do sistema. Deve ser chamado antes de os repositórios serem carregados.
+     *
+     * @return {@code true} se havia um checkpoint confirmado e não concluído, cujas renomeações foram refeitas.
+     * @throws IllegalStateException Se o manifesto estiver corrompido.
+     */
+    public synchronized boolean recuperar() {
+        entradas.clear();
+        gravados = new ArrayList<>();
+        removidos = new ArrayList<>();
+        geracao = 0;
+        journalCompactado = 0;
+
+        if (arquivo.exists()) {
+            try {
+                if (!Snapshot.verificar(arquivo)) {
+                    throw new IllegalStateException("Manifesto corrompido (CRC32C não confere): " + arquivo);
+                }
+                ler();
+            } catch (IOException e) {
+                throw new IllegalStateException("Falha ao ler o manifesto: " + arquivo, e);
+            }
+        }
+
+        boolean interrompido = false;
+        for (String caminho : gravados) {
+            File temporario = Snapshot.temporario(new File(caminho));
+            Entrada entrada = entradas.get(caminho);
+            if (!temporario.exists() || entrada == null) {
+                continue;
+            }
+            try {
+                Integer crc = Snapshot.lerRodape(temporario);
+                if (crc != null && crc == entrada.crc && temporario.length() == entrada.tamanho) {
+                    Snapshot.mover(temporario, new File(caminho));
+                    interrompido = true;
+                } else {
+                    temporario.delete(); // Sobra de um lote posterior que não chegou a ser confirmado
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException("Falha ao concluir o checkpoint da geração " + geracao, e);
+            }
+        }
+        for (String caminho : removidos) {
+            if (new File(caminho).delete()) {
+                interrompido = true;
+            }
+        }
+
+        ativo = this;
+        return interrompido;
+    }
+
+    /**
+     * Verificação rápida da geração confirmada: cada snapshot registrado deve existir com o tamanho e o CRC32C
+     * do manifesto, conferidos pelo rodapé (sem ler o conteúdo, que é conferido na carga de cada arquivo).
+     *
+     * @throws IllegalStateException Se algum snapshot estiver ausente, truncado ou pertencer a outra geração.
+     */
+    public synchronized void verificar() {
+        for (Map.Entry<String, Entrada> registro : entradas.entrySet()) {
+            File snapshot = new File(registro.getKey());
+            Entrada entrada = registro.getValue();
+            Integer crc;
+            try {
+                crc = snapshot.exists() ? Snapshot.lerRodape(snapshot) : null;
+            } catch (IOException e) {
+                crc = null;
+            }
+            if (crc == null || crc != entrada.crc || snapshot.length() != entrada.tamanho) {
+                throw new IllegalStateException("Snapshot " + snapshot + " não corresponde à geração " + geracao + " do manifesto.");
+            }
+        }
+    }
+
+    /**
+     * Executa gravações de snapshot num lote e confirma o lote como uma nova geração.
+     * Se a thread já pertence a um lote, as gravações simplesmente entram nele.
+     *
+     * @param gravacao Gravações e remoções de snapshots.
+     */
+    public void executar(Runnable gravacao) {
+        if (LOTE.get() != null) {
+            gravacao.run();
+            return;
+        }
+
+        Lote lote = new Lote(false);
+        LOTE.set(lote);
+        try {
+            gravacao.run();
+        } finally {
+            LOTE.remove();
+        }
+        confirmar(lote, null);
+    }
+
+    /**
+     * Checkpoint: grava os repositórios em paralelo num único lote e o confirma como uma nova geração.
+     *
+     * @param repositorios Repositórios a serem gravados.
+     * @param aoConfirmar Executado logo após a confirmação, antes das renomeações, ou {@code null}.
+     * @throws IllegalStateException Se alguma gravação falhar; nesse caso a geração anterior continua valendo.
+     */
+    public void checkpoint(List<Repositorio> repositorios, Runnable aoConfirmar) {
+        checkpoint(repositorios, -1, aoConfirmar);
+    }
+
+    /**
+     * Checkpoint: grava os repositórios em paralelo num único lote e o confirma como uma nova geração,
+     * que passa a incorporar os segmentos do journal até o informado.
+     *
+     * @param repositorios Repositórios a serem gravados.
+     * @param journalCompactado Último segmento selado do journal incorporado pelo lote, ou -1 se nenhum.
+     * @param aoConfirmar Executado logo após a confirmação, antes das renomeações (por exemplo, apagar os segmentos
+     *                    incorporados), ou {@code null}.
+     * @throws IllegalStateException Se alguma gravação falhar; nesse caso a geração anterior continua valendo.
+     */
+    public void checkpoint(List<Repositorio> repositorios, long journalCompactado, Runnable aoConfirmar) {
+        Lote lote = new Lote(false);
+        lote.journalCompactado = journalCompactado;
+        salvarEmParalelo(repositorios, lote);
+        confirmar(lote, aoConfirmar);
+    }
+
+    /**
+     * Captura na memória o estado alterado dos repositórios, sem escrever em disco. Deve ser chamado pela thread
+     * que altera os serviços, que fica parada apenas enquanto o estado é codificado.
+     *
+     * @param repositorios Repositórios a serem gravados.
+     * @param journalCompactado Último segmento selado do journal incorporado pelo lote.
+     * @return O lote capturado, a ser confirmado por {@link #confirmarCapturado}.
+     */
+    Lote capturar(List<Repositorio> repositorios, long journalCompactado) {
+        Lote lote = new Lote(true);
+        lote.journalCompactado = journalCompactado;
+        salvarEmParalelo(repositorios, lote);
+        return lote;
+    }
+
+    /**
+     * Executa as gravações adiadas do lote, grava nos temporários, com fsync, o conteúdo capturado e confirma o lote
+     * como uma nova geração.
+     * Pode ser executado numa thread de fundo enquanto os serviços continuam sendo alterados.
+     *
+     * @param lote Lote capturado por {@link #capturar}.
+     * @param aoConfirmar Executado logo após a confirmação, antes das renomeações, ou {@code null}.
+     * @throws IllegalStateException Se alguma gravação falhar; nesse caso a geração anterior continua valendo.
+     */
+    void confirmarCapturado(Lote lote, Runnable aoConfirmar) {
+        if (lote.falha == null) {
+            for (Runnable acao : lote.anteriores) {
+                acao.run();
+            }
+            lote.emMemoria = false; // As gravações adiadas vão direto para os temporários
+            LOTE.set(lote);
+            try {
+                for (Runnable gravacao : lote.adiadas) {
+                    gravacao.run();
+                }
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+                lote.falhar("gravação adiada", e);
+            } finally {
+                LOTE.remove();
+            }
+        }
+        if (lote.falha == null) {
+            for (Map.Entry<String, byte[]> capturado : lote.capturados.entrySet()) {
+                File temporario = Snapshot.temporario(new File(capturado.getKey()));
+                try {
+                    int crc = Snapshot.gravarTemporario(temporario, out -> out.write(capturado.getValue()));
+                    lote.preparado(capturado.getKey(), temporario.length(), crc);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    temporario.delete();
+                    lote.falhar(capturado.getKey(), e);
+                    break;
+                }
+            }
+        }
+        confirmar(lote, aoConfirmar);
+    }
+
+    /**
+     * Executa a gravação de cada repositório numa thread do lote, em paralelo, e aguarda todas.
+     *
+     * @param repositorios Repositórios a serem gravados.
+     * @param lote Lote que recebe as gravações.
+     */
+    private void salvarEmParalelo(List<Repositorio> repositorios, Lote lote) {
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(repositorios.size(), Runtime.getRuntime().availableProcessors())));
+        try {
+            List<Future<?>> tarefas = new ArrayList<>();
+            for (Repositorio repositorio : repositorios) {
+                tarefas.add(executor.submit(() -> {
+                    LOTE.set(lote);
+                    try {
+                        repositorio.salvar();
+                    } finally {
+                        LOTE.remove();
+                    }
+                }));
+            }
+            for (Future<?> tarefa : tarefas) {
+                tarefa.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            lote.falhar("checkpoint", e);
+        } catch (ExecutionException e) {
+            lote.falhar("checkpoint", e.getCause());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Retorna o número da última geração confirmada.
+     *
+     * @return A geração.
+     */
+    public synchronized int getGeracao() {
+        return geracao;
+    }
+
+    /**
+     * Retorna o último segmento selado do journal incorporado aos snapshots da geração confirmada.
+     *
+     * @return Número do segmento, ou 0 se nenhum.
+     */
+    public synchronized long getJournalCompactado() {
+        return journalCompactado;
+    }
+
+    /**
+     * Confirma um lote: grava o manifesto da nova geração e, em seguida, renomeia os temporários e apaga os removidos.
+     *
+     * @param lote Lote com as gravações já feitas nos temporários.
+     * @param aoConfirmar Executado logo após a confirmação, ou {@code null}.
+     */
+    private synchronized void confirmar(Lote lote, Runnable aoConfirmar) {
+        if (abortado || lote.falha != null) {
+            for (String caminho : lote.gravados.keySet()) {
+                Snapshot.temporario(new File(caminho)).delete();
+            }
+            if (abortado) {
+                throw new IllegalStateException("Um checkpoint anterior foi abortado; a geração " + geracao
+                        + " e o journal continuam valendo até a próxima inicialização.");
+            }
+            abortado = true;
+            throw new IllegalStateException("Checkpoint abortado ao gravar " + lote.arquivoFalho
+                    + "; a geração " + geracao + " continua valendo.", lote.falha);
+        }
+
+        long novoCompactado = Math.max(journalCompactado, lote.journalCompactado);
+        if (!lote.gravados.isEmpty() || !lote.removidos.isEmpty() || novoCompactado != journalCompactado) {
+            Map<String, Entrada> novas = new TreeMap<>(entradas);
+            novas.putAll(lote.gravados);
+            for (String caminho : lote.removidos) {
+                novas.remove(caminho);
+            }
+
+            try {
+                gravar(geracao + 1, novas, lote.gravados.keySet(), lote.removidos, novoCompactado);
+            } catch (IOException e) {
+                e.printStackTrace();
+                lote.falha = e;
+                lote.arquivoFalho = arquivo.getPath();
+                confirmar(lote, aoConfirmar);
+                return;
+            }
+
+            geracao++;
+            journalCompactado = novoCompactado;
+            entradas.clear();
+            entradas.putAll(novas);
+            gravados = new ArrayList<>(lote.gravados.keySet());
+            removidos = new ArrayList<>(lote.removidos);
+        }
+
+        if (aoConfirmar != null) {
+            aoConfirmar.run();
+        }
+
+        for (String caminho : lote.gravados.keySet()) {
+            try {
+                Snapshot.mover(Snapshot.temporario(new File(caminho)), new File(caminho));
+            } catch (IOException e) {
+                e.printStackTrace(); // A geração já está confirmada: a renomeação é refeita na próxima inicialização
+            }
+        }
+        for (String caminho : lote.removidos) {
+            new File(caminho).delete();
+        }
+        for (Runnable acao : lote.posteriores) {
+            acao.run();
+        }
+    }
+
+    private void gravar(int novaGeracao, Map<String, Entrada> novas, Collection<String> novosGravados,
+                        Collection<String> novosRemovidos, long novoCompactado) throws IOException {
+        File temporario = Snapshot.temporario(arquivo);
+        Snapshot.gravarTemporario(temporario, saida -> {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(saida));
+            out.writeInt(VERSAO);
+            out.writeInt(novaGeracao);
+            out.writeInt(novas.size());
+            for (Map.Entry<String, Entrada> registro : novas.entrySet()) {
+                out.writeUTF(registro.getKey());
+                out.writeLong(registro.getValue().tamanho);
+                out.writeInt(registro.getValue().crc);
+            }
+            out.writeInt(novosGravados.size());
+            for (String caminho : novosGravados) {
+                out.writeUTF(caminho);
+            }
+            out.writeInt(novosRemovidos.size());
+            for (String caminho : novosRemovidos) {
+                out.writeUTF(caminho);
+            }
+            out.writeLong(novoCompactado);
+            out.flush();
+        });
+        Snapshot.mover(temporario, arquivo);
+    }
+
+    private void ler() throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(arquivo)))) {
+            int versao = in.readInt();
+            if (versao > VERSAO) {
+                throw new IOException("Versão " + versao + " do manifesto não suportada.");
+            }
+            geracao = in.readInt();
+            int total = in.readInt();
+            for (int i = 0; i < total; i++) {
+                String caminho = in.readUTF();
+                entradas.put(caminho, new Entrada(in.readLong(), in.readInt()));
+            }
+            total = in.readInt();
+            for (int i = 0; i < total; i++) {
+                gravados.add(in.readUTF());
+            }
+            total = in.readInt();
+            for (int i = 0; i < total; i++) {
+                removidos.add(in.readUTF());
+            }
+            journalCompactado = versao >= 2 ? in.readLong() : 0;
+        }
+    }
+
+    /**
+     * Tamanho e CRC32C de um snapshot.
+     */
+    private static class Entrada {
+
+        private final long tamanho;
+        private final int crc;
+
+        private Entrada(long tamanho, int crc) {
+            this.tamanho = tamanho;
+            this.crc = crc;
+        }
+    }
+
+    /**
+     * Gravações de snapshot pendentes de confirmação. Pode ser alimentado por várias threads ao mesmo tempo.
+     */
+    static class Lote {
+
+        /**
+         * Indica que os snapshots são codificados na memória e só gravados em disco na confirmação; deixa de valer
+         * quando a confirmação começa, para que as gravações adiadas escrevam direto nos temporários.
+         */
+        private boolean emMemoria;
+
+        /** Conteúdo codificado de cada snapshot de um lote em memória, pelo caminho do destino. */
+        private final Map<String, byte[]> capturados = new LinkedHashMap<>();
+
+        /** Ações executadas antes de o conteúdo capturado ser gravado (por exemplo, descarregar segmentos mapeados). */
+        private final List<Runnable> anteriores = new ArrayList<>();
+
+        /** Gravações adiadas para a thread que confirma o lote, executadas antes de o conteúdo capturado ser gravado. */
+        private final List<Runnable> adiadas = new ArrayList<>();
+
+        /** Último segmento selado do journal incorporado pelo lote, ou -1 se nenhum. */
+        private long journalCompactado = -1;
+
+        /** Snapshots gravados nos temporários, pelo caminho do destino. */
+        private final Map<String, Entrada> gravados = new LinkedHashMap<>();
+
+        /** Snapshots a serem apagados depois da confirmação. */
+        private final List<String> removidos = new ArrayList<>();
+
+        /** Ações executadas depois que os temporários forem renomeados. */
+        private final List<Runnable> posteriores = new ArrayList<>();
+
+        /** Primeira falha de gravação do lote. */
+        private Throwable falha;
+
+        /** Arquivo cuja gravação falhou. */
+        private String arquivoFalho;
+
+        private Lote(boolean emMemoria) {
+            this.emMemoria = emMemoria;
+        }
+
+        boolean isEmMemoria() {
+            return emMemoria;
+        }
+
+        synchronized void capturado(String arquivo, byte[] conteudo) {
+            removidos.remove(arquivo);
+            capturados.put(arquivo, conteudo);
+        }
+
+        synchronized void antesDeConfirmar(Runnable acao) {
+            anteriores.add(acao);
+        }
+
+        synchronized void adiar(Runnable gravacao) {
+            adiadas.add(gravacao);
+        }
+
+        synchronized void preparado(String arquivo, long tamanho, int crc) {
+            removidos.remove(arquivo);
+            gravados.put(arquivo, new Entrada(tamanho, crc));
+        }
+
+        synchronized void removido(String arquivo) {
+            capturados.remove(arquivo);
+            if (gravados.remove(arquivo) != null) {
+                Snapshot.temporario(new File(arquivo)).delete();
+            }
+            if (!removidos.contains(arquivo)) {
+                removidos.add(arquivo);
+            }
+        }
+
+        synchronized void aposConfirmar(Runnable acao) {
+            posteriores.add(acao);
+        }
+
+        synchronized void falhar(String arquivo, Throwable causa) {
+            if (falha == null) {
+                falha = causa;
+                arquivoFalho = arquivo;
+            }
+        }
+    }
+}
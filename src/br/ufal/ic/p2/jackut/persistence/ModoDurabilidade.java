@@ -0,0 +1,30 @@
+package br.ufal.ic.p2.jackut.persistence;
+
+/**
+ * Níveis de durabilidade do journal, que definem quando os registros de mutação chegam ao disco.
+ */
+public enum ModoDurabilidade {
+
+    /** Cada registro é gravado e sincronizado com o disco (fsync) antes de a operação retornar. */
+    SINCRONO,
+
+    /**
+     * Os registros são acumulados em memória e gravados em lote por uma thread de fundo,
+     * a cada intervalo configurado ou quando o lote atinge o tamanho limite (group commit).
+     */
+    GRUPO,
+
+    /** Nada é gravado no journal; o estado só é persistido pelo checkpoint de {@code encerrarSistema}. */
+    ENCERRAMENTO;
+
+    /**
+     * Obtém o modo a partir do seu nome, sem diferenciar maiúsculas de minúsculas.
+     *
+     * @param nome Nome do modo ("sincrono", "grupo" ou "encerramento").
+     * @return O modo correspondente.
+     * @throws IllegalArgumentException Se o nome não corresponder a nenhum modo.
+     */
+    public static ModoDurabilidade porNome(String nome) {
+        return valueOf(nome.trim().toUpperCase());
+    }
+}
@@ -0,0 +1,33 @@
+package br.ufal.ic.p2.jackut.persistence;
+
+/**
+ * Estado de um serviço que pode ser persistido por um {@link Armazenamento}: usuários, amizades, comunidades,
+ * relacionamentos, recados ou mensagens. Cada serviço sabe codificar o seu estado; o armazenamento decide
+ * quando (e se) esse estado é gravado.
+ */
+public interface Repositorio {
+
+    /**
+     * Retorna o nome do repositório, usado em relatórios.
+     *
+     * @return Nome do repositório (por exemplo, "usuarios").
+     */
+    String getNome();
+
+    /**
+     * Registra no journal as operações deste repositório que devem ser reaplicadas na recuperação.
+     *
+     * @param journal Journal de mutações do sistema.
+     */
+    void registrarOperacoes(Journal journal);
+
+    /**
+     * Grava o estado alterado desde o último checkpoint.
+     */
+    void salvar();
+
+    /**
+     * Apaga o estado persistido, depois que o serviço foi zerado.
+     */
+    void apagar();
+}
@@ -0,0 +1,397 @@
+package br.ufal.ic.p2.jackut.persistence;
+
+import br.ufal.ic.p2.jackut.persistence.codec.EscritorBinario;
+import br.ufal.ic.p2.jackut.persistence.codec.LeitorBinario;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Utilitário de gravação e leitura dos arquivos de snapshot dos serviços.
+ * Os snapshots são gravados no formato binário versionado de {@link EscritorBinario};
+ * arquivos antigos, gravados com serialização Java, continuam podendo ser lidos e são convertidos no próximo checkpoint.
+ *
+ * <p>Um snapshot nunca é sobrescrito no lugar: o conteúdo é gravado num arquivo temporário ao lado do destino,
+ * seguido de um rodapé {@code [crc32c:int][mágico:int]}, descarregado com fsync e só então renomeado atomicamente
+ * sobre o destino. Durante um checkpoint, a renomeação fica a cargo do {@link Manifesto}, que confirma todos os
+ * arquivos da geração de uma só vez. Na leitura, o CRC32C do conteúdo é conferido antes da decodificação.</p>
+ */
+public final class Snapshot {
+
+    /** Primeiros bytes de um fluxo de serialização Java ({@code ObjectOutputStream}). */
+    private static final int MAGICO_SERIALIZACAO_JAVA = 0xACED;
+
+    /** Número mágico que encerra o rodapé de um snapshot com soma de verificação ("JKCR"). */
+    private static final int MAGICO_RODAPE = 0x4A4B4352;
+
+    /** Tamanho do rodapé: CRC32C seguido do número mágico. */
+    static final int TAMANHO_RODAPE = 8;
+
+    /** Sufixo do arquivo temporário em que um snapshot é gravado antes de ser renomeado. */
+    static final String SUFIXO_TEMPORARIO = ".tmp";
+
+    private Snapshot() {
+    }
+
+    /**
+     * Conteúdo de um snapshot a ser gravado.
+     */
+    @FunctionalInterface
+    public interface Escrita {
+        void escrever(EscritorBinario out) throws IOException;
+    }
+
+    /**
+     * Leitor do conteúdo de um snapshot no formato binário.
+     *
+     * @param <T> Tipo do estado carregado.
+     */
+    @FunctionalInterface
+    public interface Leitura<T> {
+        T ler(LeitorBinario in, int versao) throws IOException;
+    }
+
+    /**
+     * Leitor do conteúdo de um snapshot antigo, gravado com serialização Java.
+     *
+     * @param <T> Tipo do estado carregado.
+     */
+    @FunctionalInterface
+    public interface LeituraLegada<T> {
+        T ler(ObjectInputStream in) throws IOException, ClassNotFoundException;
+    }
+
+    /**
+     * Conteúdo bruto de um arquivo gravado atomicamente.
+     */
+    @FunctionalInterface
+    interface Conteudo {
+        void escrever(OutputStream out) throws IOException;
+    }
+
+    /**
+     * Grava um snapshot no formato binário.
+     * Dentro de um lote do {@link Manifesto}, o arquivo fica no temporário até a confirmação da geração
+     * (ou, num lote em memória, apenas codificado até lá); fora dele, é renomeado sobre o destino assim que gravado.
+     *
+     * @param arquivo Caminho do arquivo de snapshot.
+     * @param tipo Tipo do conteúdo, gravado no cabeçalho.
+     * @param versao Versão do esquema do codec.
+     * @param escrita Conteúdo do snapshot.
+     */
+    public static void salvar(String arquivo, String tipo, int versao, Escrita escrita) {
+        Manifesto.Lote lote = Manifesto.loteAtual();
+        if (lote == null && Manifesto.getAtivo() != null) {
+            Manifesto.getAtivo().executar(() -> salvar(arquivo, tipo, versao, escrita));
+            return;
+        }
+
+        if (lote != null && lote.isEmMemoria()) {
+            byte[] conteudo;
+            try {
+                conteudo = codificar(tipo, versao, escrita);
+            } catch (IOException e) {
+                e.printStackTrace();
+                lote.falhar(arquivo, e);
+                return;
+            }
+            lote.capturado(arquivo, conteudo);
+            return;
+        }
+
+        File destino = new File(arquivo);
+        File temporario = temporario(destino);
+        int crc;
+        try {
+            crc = gravarTemporario(temporario, saida -> {
+                EscritorBinario out = new EscritorBinario(new BufferedOutputStream(saida, 1 << 16));
+                out.escreverCabecalho(tipo, versao);
+                escrita.escrever(out);
+                out.flush();
+            });
+            if (lote == null) {
+                mover(temporario, destino);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            temporario.delete();
+            if (lote != null) {
+                lote.falhar(arquivo, e);
+            }
+            return;
+        }
+
+        if (lote != null) {
+            lote.preparado(arquivo, temporario.length(), crc);
+        }
+    }
+
+    /**
+     * Apaga um snapshot. Dentro de um lote do {@link Manifesto}, a remoção só acontece depois da confirmação da geração.
+     *
+     * @param arquivo Caminho do arquivo de snapshot.
+     */
+    public static void apagar(String arquivo) {
+        Manifesto.Lote lote = Manifesto.loteAtual();
+        if (lote == null && Manifesto.getAtivo() != null) {
+            Manifesto.getAtivo().executar(() -> apagar(arquivo));
+            return;
+        }
+
+        if (lote != null) {
+            lote.removido(arquivo);
+        } else {
+            new File(arquivo).delete();
+        }
+    }
+
+    /**
+     * Executa uma ação de que a confirmação dos snapshots depende: num lote em memória, na thread de fundo,
+     * antes de o conteúdo capturado ser gravado; fora dele, imediatamente.
+     *
+     * @param acao Ação que precisa estar concluída antes da confirmação (por exemplo, descarregar segmentos mapeados).
+     */
+    public static void antesDeConfirmar(Runnable acao) {
+        Manifesto.Lote lote = Manifesto.loteAtual();
+        if (lote != null && lote.isEmMemoria()) {
+            lote.antesDeConfirmar(acao);
+        } else {
+            acao.run();
+        }
+    }
+
+    /**
+     * Executa gravações de snapshot que dependem apenas de um estado já copiado: num lote em memória, na thread
+     * de fundo que confirma o lote, com os arquivos gravados direto nos temporários; fora dele, imediatamente.
+     * Assim, ler e regravar arquivos inteiros não pausa as threads que alteram os serviços.
+     *
+     * @param gravacao Gravações e remoções de snapshots, que não podem acessar o estado vivo do serviço.
+     */
+    public static void adiar(Runnable gravacao) {
+        Manifesto.Lote lote = Manifesto.loteAtual();
+        if (lote != null && lote.isEmMemoria()) {
+            lote.adiar(gravacao);
+        } else {
+            gravacao.run();
+        }
+    }
+
+    /**
+     * Codifica um conteúdo na memória, com o cabeçalho do formato binário e sem o rodapé.
+     *
+     * @param tipo Tipo do conteúdo, gravado no cabeçalho.
+     * @param versao Versão do esquema do codec.
+     * @param escrita Conteúdo a codificar.
+     * @return O conteúdo codificado.
+     * @throws IOException Se a escrita falhar.
+     */
+    static byte[] codificar(String tipo, int versao, Escrita escrita) throws IOException {
+        ByteArrayOutputStream conteudo = new ByteArrayOutputStream(1 << 12);
+        EscritorBinario out = new EscritorBinario(conteudo);
+        out.escreverCabecalho(tipo, versao);
+        escrita.escrever(out);
+        out.flush();
+        return conteudo.toByteArray();
+    }
+
+    /**
+     * Decodifica um conteúdo produzido por {@link #codificar}.
+     *
+     * @param conteudo Conteúdo codificado.
+     * @param tipo Tipo do conteúdo esperado.
+     * @param versaoMaxima Maior versão de esquema suportada pelo codec.
+     * @param leitura Leitor do formato binário.
+     * @param <T> Tipo do estado lido.
+     * @return O estado lido.
+     * @throws IOException Se o conteúdo não puder ser lido.
+     */
+    static <T> T decodificar(byte[] conteudo, String tipo, int versaoMaxima, Leitura<T> leitura) throws IOException {
+        LeitorBinario in = new LeitorBinario(new ByteArrayInputStream(conteudo));
+        return leitura.ler(in, in.lerCabecalho(tipo, versaoMaxima));
+    }
+
+    /**
+     * Executa uma ação assim que os snapshots gravados até aqui estiverem confirmados no disco:
+     * ao fim do lote corrente do {@link Manifesto} ou, fora de um lote, imediatamente.
+     *
+     * @param acao Ação que depende dos snapshots já gravados (por exemplo, apagar dados que eles deixaram de referenciar).
+     */
+    public static void aposConfirmar(Runnable acao) {
+        Manifesto.Lote lote = Manifesto.loteAtual();
+        if (lote != null) {
+            lote.aposConfirmar(acao);
+        } else {
+            acao.run();
+        }
+    }
+
+    /**
+     * Carrega um snapshot, detectando se ele está no formato binário ou na serialização Java antiga.
+     * Se o arquivo tiver rodapé, o CRC32C do conteúdo é conferido antes da leitura.
+     *
+     * @param arquivo Caminho do arquivo de snapshot.
+     * @param tipo Tipo do conteúdo esperado.
+     * @param versaoMaxima Maior versão de esquema suportada pelo codec.
+     * @param leitura Leitor do formato binário.
+     * @param legada Leitor da serialização Java antiga, ou {@code null} se esse formato não for aceito.
+     * @param <T> Tipo do estado carregado.
+     * @return O estado carregado, ou {@code null} se o arquivo não existir ou não puder ser lido.
+     * @throws IllegalStateException Se o conteúdo não corresponder ao CRC32C gravado no rodapé.
+     */
+    public static <T> T carregar(String arquivo, String tipo, int versaoMaxima, Leitura<T> leitura, LeituraLegada<T> legada) {
+        File file = new File(arquivo);
+        if (!file.exists() || file.length() == 0) {
+            return null;
+        }
+
+        // Verificação e leitura usam o mesmo arquivo aberto, mesmo que um checkpoint o substitua nesse meio tempo.
+        try (FileChannel canal = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (!verificar(canal)) {
+                throw new IllegalStateException("Snapshot corrompido (CRC32C não confere): " + arquivo);
+            }
+            canal.position(0);
+
+            BufferedInputStream entrada = new BufferedInputStream(Channels.newInputStream(canal), 1 << 16);
+            entrada.mark(2);
+            int inicio = (entrada.read() << 8) | entrada.read();
+            entrada.reset();
+
+            if (inicio == MAGICO_SERIALIZACAO_JAVA && legada != null) {
+                return legada.ler(new ObjectInputStream(entrada));
+            }
+
+            LeitorBinario in = new LeitorBinario(entrada);
+            int versao = in.lerCabecalho(tipo, versaoMaxima);
+            return leitura.ler(in, versao);
+        } catch (IOException | ClassNotFoundException | ClassCastException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Grava um conteúdo no arquivo temporário, seguido do rodapé com o seu CRC32C, e o descarrega com fsync.
+     *
+     * @param temporario Arquivo temporário.
+     * @param conteudo Conteúdo a ser gravado.
+     * @return O CRC32C do conteúdo.
+     * @throws IOException Se ocorrer erro de escrita.
+     */
+    static int gravarTemporario(File temporario, Conteudo conteudo) throws IOException {
+        CRC32C crc = new CRC32C();
+        try (FileOutputStream fos = new FileOutputStream(temporario)) {
+            conteudo.escrever(new CheckedOutputStream(fos, crc));
+            int valor = (int) crc.getValue();
+            DataOutputStream rodape = new DataOutputStream(fos);
+            rodape.writeInt(valor);
+            rodape.writeInt(MAGICO_RODAPE);
+            fos.getChannel().force(true);
+            return valor;
+        }
+    }
+
+    /**
+     * Renomeia atomicamente o temporário sobre o destino e descarrega o diretório, tornando a troca durável.
+     *
+     * @param temporario Arquivo temporário já descarregado.
+     * @param destino Arquivo de destino.
+     * @throws IOException Se a renomeação falhar.
+     */
+    static void mover(File temporario, File destino) throws IOException {
+        try {
+            Files.move(temporario.toPath(), destino.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporario.toPath(), destino.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        File diretorio = destino.getAbsoluteFile().getParentFile();
+        try (FileChannel canal = FileChannel.open(diretorio.toPath(), StandardOpenOption.READ)) {
+            canal.force(true);
+        } catch (IOException e) {
+            // Nem todo sistema permite abrir um diretório para fsync; a renomeação continua atômica.
+        }
+    }
+
+    /**
+     * Lê o CRC32C gravado no rodapé de um arquivo.
+     *
+     * @param arquivo Arquivo de snapshot.
+     * @return O CRC32C do rodapé, ou {@code null} se o arquivo não tiver rodapé (formato anterior).
+     * @throws IOException Se ocorrer erro de leitura.
+     */
+    static Integer lerRodape(File arquivo) throws IOException {
+        try (FileChannel canal = FileChannel.open(arquivo.toPath(), StandardOpenOption.READ)) {
+            return lerRodape(canal);
+        }
+    }
+
+    private static Integer lerRodape(FileChannel canal) throws IOException {
+        long tamanho = canal.size();
+        if (tamanho < TAMANHO_RODAPE) {
+            return null;
+        }
+        ByteBuffer rodape = ByteBuffer.allocate(TAMANHO_RODAPE);
+        while (rodape.hasRemaining()) {
+            if (canal.read(rodape, tamanho - TAMANHO_RODAPE + rodape.position()) < 0) {
+                return null;
+            }
+        }
+        rodape.flip();
+        int crc = rodape.getInt();
+        return rodape.getInt() == MAGICO_RODAPE ? crc : null;
+    }
+
+    /**
+     * Confere o CRC32C do conteúdo com o gravado no rodapé. Arquivos sem rodapé (formato anterior) são aceitos.
+     *
+     * @param arquivo Arquivo de snapshot.
+     * @return {@code false} se o conteúdo não corresponder ao rodapé.
+     * @throws IOException Se ocorrer erro de leitura.
+     */
+    static boolean verificar(File arquivo) throws IOException {
+        try (FileChannel canal = FileChannel.open(arquivo.toPath(), StandardOpenOption.READ)) {
+            return verificar(canal);
+        }
+    }
+
+    private static boolean verificar(FileChannel canal) throws IOException {
+        Integer esperado = lerRodape(canal);
+        if (esperado == null) {
+            return true;
+        }
+
+        CRC32C crc = new CRC32C();
+        long restante = canal.size() - TAMANHO_RODAPE;
+        ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16);
+        canal.position(0);
+        while (restante > 0) {
+            buffer.clear().limit((int) Math.min(buffer.capacity(), restante));
+            int lidos = canal.read(buffer);
+            if (lidos < 0) {
+                return false;
+            }
+            buffer.flip();
+            crc.update(buffer);
+            restante -= lidos;
+        }
+        return (int) crc.getValue() == esperado;
+    }
+
+    /**
+     * Retorna o arquivo temporário de um destino.
+     *
+     * @param destino Arquivo de destino.
+     * @return O arquivo temporário, no mesmo diretório.
+     */
+    static File temporario(File destino) {
+        return new File(destino.getPath() + SUFIXO_TEMPORARIO);
+    }
+}
@@ -0,0 +1,437 @@
+package br.ufal.ic.p2.jackut.persistence;
+
+import br.ufal.ic.p2.jackut.persistence.codec.EscritorBinario;
+import br.ufal.ic.p2.jackut.persistence.codec.LeitorBinario;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Snapshot de um serviço gravado de forma incremental.
+ * O serviço marca as chaves (logins, nomes de comunidades) que alterou desde o último checkpoint, e o checkpoint
+ * grava apenas essas entradas num segmento incremental ("arquivo.1", "arquivo.2", ...), em vez de regravar o mapa inteiro.
+ * Periodicamente os segmentos são fundidos num novo snapshot base completo.
+ *
+ * <p>Um snapshot pode ter várias seções (por exemplo, os quatro mapas de relacionamentos), cada uma associada a um mapa
+ * do serviço. Cada entrada de um segmento traz a chave, um indicador de remoção e, se ainda existir, o valor atual.</p>
+ *
+ * <p>Na compactação do journal, a fusão não regrava a base a partir dos mapas do serviço: apenas o último segmento
+ * é codificado na captura, e a base é relida, fundida com os segmentos e regravada na thread que confirma o lote.</p>
+ */
+public class SnapshotIncremental {
+
+    /** Quantidade de segmentos incrementais a partir da qual o próximo checkpoint regrava a base completa. */
+    public static final int LIMITE_SEGMENTOS = 8;
+
+    /** Caminho do snapshot base. */
+    private final String arquivo;
+
+    /** Tipo gravado no cabeçalho da base; os segmentos usam o tipo seguido de ".delta". */
+    private final String tipo;
+
+    /** Versão do esquema do codec. */
+    private final int versao;
+
+    /** Seções do snapshot, na ordem em que são gravadas. */
+    private final List<Secao<?>> secoes = new ArrayList<>();
+
+    /** Quantidade de segmentos incrementais existentes sobre a base atual. */
+    private int segmentos;
+
+    /** Indica que a próxima gravação deve regravar a base completa (por exemplo, após limpar o serviço). */
+    private boolean completoPendente;
+
+    /** Indica se a base em disco, se existir, está no formato binário e pode ser relida para a fusão. */
+    private boolean baseBinaria = true;
+
+    /**
+     * Construtor da classe {@code SnapshotIncremental}.
+     *
+     * @param arquivo Caminho do snapshot base.
+     * @param tipo Tipo do conteúdo, gravado no cabeçalho.
+     * @param versao Versão do esquema do codec.
+     */
+    public SnapshotIncremental(String arquivo, String tipo, int versao) {
+        this.arquivo = arquivo;
+        this.tipo = tipo;
+        this.versao = versao;
+    }
+
+    /**
+     * Escrita de um valor (ou de um mapa inteiro) no formato binário.
+     *
+     * @param <T> Tipo do valor.
+     */
+    @FunctionalInterface
+    public interface Escrita<T> {
+        void escrever(EscritorBinario out, T valor) throws IOException;
+    }
+
+    /**
+     * Leitura de um valor (ou de um mapa inteiro) no formato binário.
+     *
+     * @param <T> Tipo do valor.
+     */
+    @FunctionalInterface
+    public interface Leitura<T> {
+        T ler(LeitorBinario in, int versao) throws IOException;
+    }
+
+    /**
+     * Adiciona uma seção ao snapshot.
+     *
+     * @param atual Fornece o mapa atual do serviço.
+     * @param definir Substitui o mapa do serviço pelo mapa carregado.
+     * @param escritaMapa Escrita do mapa completo (snapshot base).
+     * @param leituraMapa Leitura do mapa completo (snapshot base).
+     * @param escritaValor Escrita de um único valor (segmento incremental).
+     * @param leituraValor Leitura de um único valor (segmento incremental).
+     * @param <V> Tipo dos valores do mapa.
+     * @return A seção criada, usada pelo serviço para marcar as chaves alteradas.
+     */
+    public <V> Secao<V> secao(Supplier<Map<String, V>> atual, Consumer<Map<String, V>> definir,
+                              Escrita<Map<String, V>> escritaMapa, Leitura<Map<String, V>> leituraMapa,
+                              Escrita<V> escritaValor, Leitura<V> leituraValor) {
+        return secao(1, atual, definir, escritaMapa, leituraMapa, escritaValor, leituraValor);
+    }
+
+    /**
+     * Adiciona uma seção acrescentada numa versão posterior do esquema: nos arquivos gravados antes dela,
+     * a seção não existe e o mapa do serviço começa vazio.
+     *
+     * @param desdeVersao Primeira versão do esquema que grava a seção.
+     * @param atual Fornece o mapa atual do serviço.
+     * @param definir Substitui o mapa do serviço pelo mapa carregado.
+     * @param escritaMapa Escrita do mapa completo (snapshot base).
+     * @param leituraMapa Leitura do mapa completo (snapshot base).
+     * @param escritaValor Escrita de um único valor (segmento incremental).
+     * @param leituraValor Leitura de um único valor (segmento incremental).
+     * @param <V> Tipo dos valores do mapa.
+     * @return A seção criada, usada pelo serviço para marcar as chaves alteradas.
+     */
+    public <V> Secao<V> secao(int desdeVersao, Supplier<Map<String, V>> atual, Consumer<Map<String, V>> definir,
+                              Escrita<Map<String, V>> escritaMapa, Leitura<Map<String, V>> leituraMapa,
+                              Escrita<V> escritaValor, Leitura<V> leituraValor) {
+        Secao<V> secao = new Secao<>(desdeVersao, atual, definir, escritaMapa, leituraMapa, escritaValor, leituraValor);
+        secoes.add(secao);
+        return secao;
+    }
+
+    /**
+     * Força a próxima gravação a regravar a base completa.
+     */
+    public void marcarCompleto() {
+        completoPendente = true;
+    }
+
+    /**
+     * Grava as alterações desde o último checkpoint: um novo segmento incremental ou, se os segmentos já
+     * passaram do limite ou as alterações são maiores que a metade dos dados, uma base completa.
+     * Se nada mudou, nada é gravado. Num lote em memória, a base completa é fundida a partir do disco
+     * depois da captura ({@link #fundirAdiado()}), a menos que o estado em disco tenha sido descartado.
+     *
+     * @throws UncheckedIOException Se o segmento da fusão não puder ser codificado; nesse caso as alterações continuam pendentes.
+     */
+    public void salvar() {
+        int alteradas = 0;
+        int total = 0;
+        for (Secao<?> secao : secoes) {
+            alteradas += secao.alteradas.size();
+            total += secao.atual.get().size();
+        }
+
+        if (completoPendente || segmentos >= LIMITE_SEGMENTOS || alteradas > total / 2) {
+            Manifesto.Lote lote = Manifesto.loteAtual();
+            if (lote != null && lote.isEmMemoria() && !completoPendente && baseBinaria) {
+                fundirAdiado();
+            } else {
+                salvarCompleto();
+            }
+        } else if (alteradas > 0) {
+            salvarSegmento();
+        }
+    }
+
+    /**
+     * Regrava a base completa e descarta os segmentos incrementais.
+     */
+    public void salvarCompleto() {
+        Snapshot.salvar(arquivo, tipo, versao, out -> {
+            for (Secao<?> secao : secoes) {
+                secao.escreverBase(out);
+            }
+        });
+
+        // Remove também segmentos que existam no disco sem terem sido carregados (estado dispensado ao zerar o serviço).
+        for (int n = 1; n <= segmentos || new File(arquivo + "." + n).exists(); n++) {
+            Snapshot.apagar(arquivo + "." + n);
+        }
+        segmentos = 0;
+        completoPendente = false;
+        baseBinaria = true;
+        for (Secao<?> secao : secoes) {
+            secao.alteradas.clear();
+        }
+    }
+
+    /**
+     * Codifica as alterações como um último segmento e adia a fusão: na thread que confirma o lote, a base e os
+     * segmentos existentes são relidos do disco, fundidos com esse segmento e regravados como uma nova base.
+     */
+    private void fundirAdiado() {
+        int existentes = segmentos;
+        byte[] ultimo;
+        try {
+            ultimo = Snapshot.codificar(tipo + ".delta", versao, out -> {
+                for (Secao<?> secao : secoes) {
+                    secao.escreverSegmento(out);
+                }
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        segmentos = 0;
+        for (Secao<?> secao : secoes) {
+            secao.alteradas.clear();
+        }
+        Snapshot.adiar(() -> fundir(existentes, ultimo));
+    }
+
+    /**
+     * Relê a base e os segmentos do disco, aplica o último segmento codificado na captura e grava o resultado
+     * como a nova base, apagando os segmentos. Trabalha sobre cópias, sem tocar nos mapas do serviço.
+     *
+     * @param existentes Quantidade de segmentos em disco sobre a base.
+     * @param ultimo Segmento com as alterações capturadas.
+     * @throws IllegalStateException Se a base ou algum segmento não puder ser lido.
+     */
+    private void fundir(int existentes, byte[] ultimo) {
+        List<Secao<?>.Copia> copias = new ArrayList<>();
+        for (Secao<?> secao : secoes) {
+            copias.add(secao.new Copia());
+        }
+
+        Boolean lida = Snapshot.carregar(arquivo, tipo, versao, (in, v) -> {
+            for (Secao<?>.Copia copia : copias) {
+                copia.lerBase(in, v);
+            }
+            return true;
+        }, null);
+        if (lida == null && new File(arquivo).exists()) {
+            throw new IllegalStateException("Não foi possível ler a base " + arquivo + " para a fusão.");
+        }
+        for (int n = 1; n <= existentes; n++) {
+            lida = Snapshot.carregar(arquivo + "." + n, tipo + ".delta", versao, (in, v) -> {
+                for (Secao<?>.Copia copia : copias) {
+                    copia.lerSegmento(in, v);
+                }
+                return true;
+            }, null);
+            if (lida == null) {
+                throw new IllegalStateException("Não foi possível ler o segmento " + arquivo + "." + n + " para a fusão.");
+            }
+        }
+        try {
+            Snapshot.decodificar(ultimo, tipo + ".delta", versao, (in, v) -> {
+                for (Secao<?>.Copia copia : copias) {
+                    copia.lerSegmento(in, v);
+                }
+                return true;
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        Snapshot.salvar(arquivo, tipo, versao, out -> {
+            for (Secao<?>.Copia copia : copias) {
+                copia.escrever(out);
+            }
+        });
+        for (int n = 1; n <= existentes || new File(arquivo + "." + n).exists(); n++) {
+            Snapshot.apagar(arquivo + "." + n);
+        }
+    }
+
+    /**
+     * Indica se a base deste snapshot existe em disco.
+     *
+     * @return {@code true} se o arquivo base existir.
+     */
+    public boolean existe() {
+        return new File(arquivo).exists();
+    }
+
+    /**
+     * Remove do disco a base e todos os segmentos incrementais.
+     */
+    public void apagar() {
+        Snapshot.apagar(arquivo);
+        for (int n = 1; n <= segmentos || new File(arquivo + "." + n).exists(); n++) {
+            Snapshot.apagar(arquivo + "." + n);
+        }
+        segmentos = 0;
+        baseBinaria = true;
+    }
+
+    /**
+     * Carrega a base e reaplica sobre ela os segmentos incrementais, na ordem em que foram gravados.
+     *
+     * @param legada Leitor da base em serialização Java antiga; deve preencher os mapas do serviço e retornar {@code true}.
+     */
+    public void carregar(Snapshot.LeituraLegada<Boolean> legada) {
+        baseBinaria = !new File(arquivo).exists();
+        Snapshot.carregar(arquivo, tipo, versao, (in, v) -> {
+            baseBinaria = true;
+            for (Secao<?> secao : secoes) {
+                secao.lerBase(in, v);
+            }
+            return true;
+        }, legada);
+
+        segmentos = 0;
+        while (new File(arquivo + "." + (segmentos + 1)).exists()) {
+            segmentos++;
+            Snapshot.carregar(arquivo + "." + segmentos, tipo + ".delta", versao, (in, v) -> {
+                for (Secao<?> secao : secoes) {
+                    secao.lerSegmento(in, v);
+                }
+                return true;
+            }, null);
+        }
+    }
+
+    /**
+     * Grava as entradas alteradas de todas as seções num novo segmento.
+     */
+    private void salvarSegmento() {
+        int numero = segmentos + 1;
+        Snapshot.salvar(arquivo + "." + numero, tipo + ".delta", versao, out -> {
+            for (Secao<?> secao : secoes) {
+                secao.escreverSegmento(out);
+            }
+        });
+
+        segmentos = numero;
+        for (Secao<?> secao : secoes) {
+            secao.alteradas.clear();
+        }
+    }
+
+    /**
+     * Seção do snapshot, associada a um mapa do serviço.
+     *
+     * @param <V> Tipo dos valores do mapa.
+     */
+    public static class Secao<V> {
+
+        private final int desdeVersao;
+        private final Supplier<Map<String, V>> atual;
+        private final Consumer<Map<String, V>> definir;
+        private final Escrita<Map<String, V>> escritaMapa;
+        private final Leitura<Map<String, V>> leituraMapa;
+        private final Escrita<V> escritaValor;
+        private final Leitura<V> leituraValor;
+
+        /**
+         * Chaves alteradas (inseridas, modificadas ou removidas) desde o último checkpoint; concorrente,
+         * pois operações sobre usuários diferentes marcam chaves ao mesmo tempo.
+         */
+        private final Set<String> alteradas = ConcurrentHashMap.newKeySet();
+
+        private Secao(int desdeVersao, Supplier<Map<String, V>> atual, Consumer<Map<String, V>> definir,
+                      Escrita<Map<String, V>> escritaMapa, Leitura<Map<String, V>> leituraMapa,
+                      Escrita<V> escritaValor, Leitura<V> leituraValor) {
+            this.desdeVersao = desdeVersao;
+            this.atual = atual;
+            this.definir = definir;
+            this.escritaMapa = escritaMapa;
+            this.leituraMapa = leituraMapa;
+            this.escritaValor = escritaValor;
+            this.leituraValor = leituraValor;
+        }
+
+        /**
+         * Marca uma chave como alterada desde o último checkpoint.
+         *
+         * @param chave Chave do mapa (login ou nome de comunidade).
+         */
+        public void marcar(String chave) {
+            alteradas.add(chave);
+        }
+
+        private void escreverBase(EscritorBinario out) throws IOException {
+            escritaMapa.escrever(out, atual.get());
+        }
+
+        private void lerBase(LeitorBinario in, int versao) throws IOException {
+            definir.accept(lerMapa(in, versao));
+        }
+
+        private Map<String, V> lerMapa(LeitorBinario in, int versao) throws IOException {
+            if (versao < desdeVersao) {
+                return new ConcurrentHashMap<>();
+            }
+            return leituraMapa.ler(in, versao);
+        }
+
+        private void escreverSegmento(EscritorBinario out) throws IOException {
+            Map<String, V> mapa = atual.get();
+            out.escreverVarInt(alteradas.size());
+            for (String chave : alteradas) {
+                out.escreverTextoRepetido(chave);
+                V valor = mapa.get(chave);
+                if (valor == null) {
+                    out.escreverVarInt(0);
+                } else {
+                    out.escreverVarInt(1);
+                    escritaValor.escrever(out, valor);
+                }
+            }
+        }
+
+        private void lerSegmento(LeitorBinario in, int versao) throws IOException {
+            aplicarSegmento(in, versao, atual.get());
+        }
+
+        private void aplicarSegmento(LeitorBinario in, int versao, Map<String, V> mapa) throws IOException {
+            if (versao < desdeVersao) {
+                return;
+            }
+            int total = in.lerVarInt();
+            for (int i = 0; i < total; i++) {
+                String chave = in.lerTextoRepetido();
+                if (in.lerVarInt() == 0) {
+                    mapa.remove(chave);
+                } else {
+                    mapa.put(chave, leituraValor.ler(in, versao));
+                }
+            }
+        }
+
+        /**
+         * Cópia do mapa da seção usada na fusão adiada, independente do mapa do serviço.
+         */
+        private final class Copia {
+
+            private Map<String, V> mapa = new HashMap<>();
+
+            private void lerBase(LeitorBinario in, int versao) throws IOException {
+                mapa = lerMapa(in, versao);
+            }
+
+            private void lerSegmento(LeitorBinario in, int versao) throws IOException {
+                aplicarSegmento(in, versao, mapa);
+            }
+
+            private void escrever(EscritorBinario out) throws IOException {
+                escritaMapa.escrever(out, mapa);
+            }
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package br.ufal.ic.p2.jackut.persistence.codec;
+
+import br.ufal.ic.p2.jackut.models.entities.Amizade;
+import br.ufal.ic.p2.jackut.models.entities.IdsUsuarios;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Codec binário de {@link Amizade} e do mapa de amizades ("amizades.ser").
+ */
+public final class AmizadeCodec {
+
+    /** Tipo gravado no cabeçalho do snapshot. */
+    public static final String TIPO = "amizades";
+
+    /** Versão atual do esquema. */
+    public static final int VERSAO = 1;
+
+    private AmizadeCodec() {
+    }
+
+    /**
+     * Grava os amigos e os convites enviados e recebidos de um usuário.
+     *
+     * @param out Escritor binário.
+     * @param amizade Amizades do usuário.
+     * @throws IOException Se ocorrer erro de escrita.
+     */
+    public static void escrever(EscritorBinario out, Amizade amizade) throws IOException {
+        out.escreverLogins(amizade.getAmigos());
+        out.escreverLogins(amizade.getConvitesEnviados());
+        out.escreverLogins(amizade.getConvitesRecebidos());
+    }
+
+    /**
+     * Lê as amizades gravadas por {@link #escrever(EscritorBinario, Amizade)}.
+     *
+     * @param in Leitor binário.
+     * @param versao Versão do esquema do snapshot.
+     * @param ids Tabela dos identificadores dos logins do sistema.
+     * @return As amizades do usuário.
+     * @throws IOException Se ocorrer erro de leitura.
+     */
+    public static Amizade ler(LeitorBinario in, int versao, IdsUsuarios ids) throws IOException {
+        Amizade amizade = new Amizade(ids);
+        in.lerLogins(amizade.getAmigos());
+        in.lerLogins(amizade.getConvitesEnviados());
+        in.lerLogins(amizade.getConvitesRecebidos());
+        return amizade;
+    }
+
+    /**
+     * Grava o mapa de amizades.
+     *
+     * @param out Escritor binário.
+     * @param amizades Mapa de login para amizades.
+     * @throws IOException Se ocorrer erro de escrita.
+     */
+    public static void escreverMapa(EscritorBinario out, Map<String, Amizade> amizades) throws IOException {
+        out.escreverVarInt(amizades.size());
+        for (Map.Entry<String, Amizade> entrada : amizades.entrySet()) {
+            out.escreverTextoRepetido(entrada.getKey());
+            escrever(out, entrada.getValue());
+        }
+    }
+
+    /**
+     * Lê o mapa de amizades.
+     *
+     * @param in Leitor binário.
+     * @param versao Versão do esquema do snapshot.
+     * @param ids Tabela dos identificadores dos logins do sistema.
+     * @return Mapa de login para amizades.
+     * @throws IOException Se ocorrer erro de leitura.
+     */
+    public static Map<String, Amizade> lerMapa(LeitorBinario in, int versao, IdsUsuarios ids) throws IOException {
+        int total = in.lerVarInt();
+        Map<String, Amizade> amizades = new ConcurrentHashMap<>(Math.max(16, total));
+        for (int i = 0; i < total; i++) {
+            String login = in.lerTextoRepetido();
+            amizades.put(login, ler(in, versao, ids));
+        }
+        return amizades;
+    }
+}
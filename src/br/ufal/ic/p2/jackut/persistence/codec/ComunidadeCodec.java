@@ -0,0 +1,90 @@
+package br.ufal.ic.p2.jackut.persistence.codec;
+
+import br.ufal.ic.p2.jackut.models.entities.Comunidade;
+import br.ufal.ic.p2.jackut.models.entities.IdsUsuarios;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Codec binário de {@link Comunidade} e do mapa de comunidades ("comunidades.ser").
+ */
+public final class ComunidadeCodec {
+
+    /** Tipo gravado no cabeçalho do snapshot. */
+    public static final String TIPO = "comunidades";
+
+    /** Versão atual do esquema. */
+    public static final int VERSAO = 1;
+
+    private ComunidadeCodec() {
+    }
+
+    /**
+     * Grava uma comunidade: nome, descrição, dono e membros.
+     *
+     * @param out Escritor binário.
+     * @param comunidade Comunidade a ser gravada.
+     * @throws IOException Se ocorrer erro de escrita.
+     */
+    public static void escrever(EscritorBinario out, Comunidade comunidade) throws IOException {
+        out.escreverTextoRepetido(comunidade.getNome());
+        out.escreverTexto(comunidade.getDescricao());
+        out.escreverTextoRepetido(comunidade.getloginDono());
+        out.escreverLogins(comunidade.getMembrosComunidade());
+    }
+
+    /**
+     * Lê uma comunidade gravada por {@link #escrever(EscritorBinario, Comunidade)}.
+     *
+     * @param in Leitor binário.
+     * @param versao Versão do esquema do snapshot.
+     * @param ids Tabela dos identificadores dos logins do sistema.
+     * @return A comunidade lida.
+     * @throws IOException Se ocorrer erro de leitura.
+     */
+    public static Comunidade ler(LeitorBinario in, int versao, IdsUsuarios ids) throws IOException {
+        String nome = in.lerTextoRepetido();
+        String descricao = in.lerTexto();
+        String dono = in.lerTextoRepetido();
+
+        Comunidade comunidade = new Comunidade(dono, nome, descricao, ids);
+        comunidade.membros.clear();
+        in.lerLogins(comunidade.membros);
+        return comunidade;
+    }
+
+    /**
+     * Grava o mapa de comunidades.
+     *
+     * @param out Escritor binário.
+     * @param comunidades Mapa de nome para comunidade.
+     * @throws IOException Se ocorrer erro de escrita.
+     */
+    public static void escreverMapa(EscritorBinario out, Map<String, Comunidade> comunidades) throws IOException {
+        out.escreverVarInt(comunidades.size());
+        for (Comunidade comunidade : comunidades.values()) {
+            escrever(out, comunidade);
+        }
+    }
+
+    /**
+     * Lê o mapa de comunidades.
+     *
+     * @param in Leitor binário.
+     * @param versao Versão do esquema do snapshot.
+     * @param ids Tabela dos identificadores dos logins do sistema.
+     * @return Mapa de nome para comunidade.
+     * @throws IOException Se ocorrer erro de leitura.
+     */
+    public static Map<String, Comunidade> lerMapa(LeitorBinario in, int versao, IdsUsuarios ids) throws IOException {
+        int total = in.lerVarInt();
+        Map<String, Comunidade> comunidades = new ConcurrentHashMap<>(Math.max(16, total));
+        for (int i = 0; i < total; i++) {
+            Comunidade comunidade = ler(in, versao, ids);
+            comunidades.put(comunidade.getNome(), comunidade);
+        }
+        return comunidades;
+    }
+}
@@ -0,0 +1,139 @@
+package br.ufal.ic.p2.jackut.persistence.codec;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Escritor do formato binário compacto dos snapshots do Jackut.
+ * Inteiros não negativos são gravados como varint, textos com prefixo de tamanho em UTF-8 e
+ * textos repetidos (como logins) por meio de uma tabela de textos, de modo que cada valor só é gravado uma vez.
+ */
+public class EscritorBinario implements Closeable {
+
+    /** Número mágico que identifica um snapshot no formato binário ("JKUT"). */
+    public static final int MAGICO = 0x4A4B5554;
+
+    /** Fluxo de saída subjacente. */
+    private final OutputStream saida;
+
+    /** Tabela de textos já gravados, associando cada texto ao seu índice. */
+    private final Map<String, Integer> tabela = new HashMap<>();
+
+    /**
+     * Construtor da classe {@code EscritorBinario}.
+     *
+     * @param saida Fluxo de saída (idealmente bufferizado).
+     */
+    public EscritorBinario(OutputStream saida) {
+        this.saida = saida;
+    }
+
+    /**
+     * Grava o cabeçalho do snapshot: número mágico, tipo do conteúdo e versão do esquema.
+     *
+     * @param tipo Tipo do conteúdo (por exemplo, "usuarios").
+     * @param versao Versão do esquema utilizado pelo codec.
+     * @throws IOException Se ocorrer erro de escrita.
+     */
+    public void escreverCabecalho(String tipo, int versao) throws IOException {
+        saida.write(MAGICO >>> 24);
+        saida.write(MAGICO >>> 16);
+        saida.write(MAGICO >>> 8);
+        saida.write(MAGICO);
+        escreverTexto(tipo);
+        escreverVarInt(versao);
+    }
+
+    /**
+     * Grava um inteiro não negativo em formato varint (7 bits por byte).
+     *
+     * @param valor Valor a ser gravado.
+     * @throws IOException Se ocorrer erro de escrita.
+     */
+    public void escreverVarInt(int valor) throws IOException {
+        while ((valor & ~0x7F) != 0) {
+            saida.write((valor & 0x7F) | 0x80);
+            valor >>>= 7;
+        }
+        saida.write(valor);
+    }
+
+    /**
+     * Grava um inteiro longo não negativo em formato varint (7 bits por byte).
+     *
+     * @param valor Valor a ser gravado.
+     * @throws IOException Se ocorrer erro de escrita.
+     */
+    public void escreverVarLong(long valor) throws IOException {
+        while ((valor & ~0x7FL) != 0) {
+            saida.write((int) (valor & 0x7F) | 0x80);
+            valor >>>= 7;
+        }
+        saida.write((int) valor);
+    }
+
+    /**
+     * Grava um texto com prefixo de tamanho, em UTF-8.
+     *
+     * @param texto Texto a ser gravado.
+     * @throws IOException Se ocorrer erro de escrita.
+     */
+    public void escreverTexto(String texto) throws IOException {
+        byte[] utf8 = texto.getBytes(StandardCharsets.UTF_8);
+        escreverVarInt(utf8.length);
+        saida.write(utf8);
+    }
+
+    /**
+     * Grava um texto que tende a se repetir no snapshot (logins, nomes de comunidades).
+     * Na primeira ocorrência o texto é gravado por completo; nas seguintes, apenas seu índice na tabela.
+     *
+     * @param texto Texto a ser gravado.
+     * @throws IOException Se ocorrer erro de escrita.
+     */
+    public void escreverTextoRepetido(String texto) throws IOException {
+        Integer indice = tabela.get(texto);
+        if (indice != null) {
+            escreverVarInt(indice + 1);
+            return;
+        }
+        tabela.put(texto, tabela.size());
+        escreverVarInt(0);
+        escreverTexto(texto);
+    }
+
+    /**
+     * Grava uma coleção de logins, precedida da quantidade, usando a tabela de textos repetidos.
+     *
+     * @param logins Logins a serem gravados.
+     * @throws IOException Se ocorrer erro de escrita.
+     */
+    public void escreverLogins(Collection<String> logins) throws IOException {
+        escreverVarInt(logins.size());
+        for (String login : logins) {
+            escreverTextoRepetido(login);
+        }
+    }
+
+    /**
+     * Descarrega os dados pendentes para o fluxo subjacente, sem fechá-lo.
+     *
+     * @throws IOException Se ocorrer erro de escrita.
+     */
+    public void flush() throws IOException {
+        saida.flush();
+    }
+
+    /**
+     * Descarrega os dados pendentes e fecha o fluxo subjacente.
+     *
+     * @throws IOException Se ocorrer erro de escrita.
+     */
+    @Override
+    public void close() throws IOException {
+        saida.close();
+    }
+}
@@ -0,0 +1,156 @@
+package br.ufal.ic.p2.jackut.persistence.codec;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Leitor do formato binário compacto dos snapshots do Jackut.
+ * Espelha as operações de {@link EscritorBinario}.
+ */
+public class LeitorBinario implements Closeable {
+
+    /** Fluxo de entrada subjacente. */
+    private final InputStream entrada;
+
+    /** Tabela de textos repetidos, na ordem em que foram lidos. */
+    private final List<String> tabela = new ArrayList<>();
+
+    /**
+     * Construtor da classe {@code LeitorBinario}.
+     *
+     * @param entrada Fluxo de entrada (idealmente bufferizado).
+     */
+    public LeitorBinario(InputStream entrada) {
+        this.entrada = entrada;
+    }
+
+    /**
+     * Lê e valida o cabeçalho do snapshot.
+     *
+     * @param tipoEsperado Tipo de conteúdo esperado.
+     * @param versaoMaxima Maior versão de esquema suportada pelo codec.
+     * @return A versão do esquema com que o snapshot foi gravado.
+     * @throws IOException Se o cabeçalho for inválido, de outro tipo ou de versão não suportada.
+     */
+    public int lerCabecalho(String tipoEsperado, int versaoMaxima) throws IOException {
+        int magico = (lerByte() << 24) | (lerByte() << 16) | (lerByte() << 8) | lerByte();
+        if (magico != EscritorBinario.MAGICO) {
+            throw new IOException("Snapshot em formato desconhecido.");
+        }
+
+        String tipo = lerTexto();
+        if (!tipo.equals(tipoEsperado)) {
+            throw new IOException("Snapshot de " + tipo + " não corresponde a " + tipoEsperado + ".");
+        }
+
+        int versao = lerVarInt();
+        if (versao > versaoMaxima) {
+            throw new IOException("Versão " + versao + " do snapshot de " + tipo + " não suportada.");
+        }
+        return versao;
+    }
+
+    /**
+     * Lê um inteiro gravado em formato varint.
+     *
+     * @return O valor lido.
+     * @throws IOException Se ocorrer erro de leitura ou o valor estiver malformado.
+     */
+    public int lerVarInt() throws IOException {
+        int valor = 0;
+        for (int deslocamento = 0; deslocamento < 32; deslocamento += 7) {
+            int b = lerByte();
+            valor |= (b & 0x7F) << deslocamento;
+            if ((b & 0x80) == 0) {
+                return valor;
+            }
+        }
+        throw new IOException("Varint malformado.");
+    }
+
+    /**
+     * Lê um inteiro longo gravado em formato varint.
+     *
+     * @return O valor lido.
+     * @throws IOException Se ocorrer erro de leitura ou o valor estiver malformado.
+     */
+    public long lerVarLong() throws IOException {
+        long valor = 0;
+        for (int deslocamento = 0; deslocamento < 64; deslocamento += 7) {
+            int b = lerByte();
+            valor |= (long) (b & 0x7F) << deslocamento;
+            if ((b & 0x80) == 0) {
+                return valor;
+            }
+        }
+        throw new IOException("Varint malformado.");
+    }
+
+    /**
+     * Lê um texto gravado com prefixo de tamanho.
+     *
+     * @return O texto lido.
+     * @throws IOException Se ocorrer erro de leitura.
+     */
+    public String lerTexto() throws IOException {
+        int tamanho = lerVarInt();
+        byte[] utf8 = entrada.readNBytes(tamanho);
+        if (utf8.length != tamanho) {
+            throw new EOFException();
+        }
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Lê um texto gravado com {@link EscritorBinario#escreverTextoRepetido(String)}.
+     *
+     * @return O texto lido.
+     * @throws IOException Se ocorrer erro de leitura ou o índice for inválido.
+     */
+    public String lerTextoRepetido() throws IOException {
+        int indice = lerVarInt();
+        if (indice == 0) {
+            String texto = lerTexto();
+            tabela.add(texto);
+            return texto;
+        }
+        if (indice > tabela.size()) {
+            throw new IOException("Referência inválida na tabela de textos.");
+        }
+        return tabela.get(indice - 1);
+    }
+
+    /**
+     * Lê uma coleção de logins gravada por {@link EscritorBinario#escreverLogins(Collection)}.
+     *
+     * @param destino Coleção que receberá os logins lidos.
+     * @throws IOException Se ocorrer erro de leitura.
+     */
+    public void lerLogins(Collection<String> destino) throws IOException {
+        int total = lerVarInt();
+        for (int i = 0; i < total; i++) {
+            destino.add(lerTextoRepetido());
+        }
+    }
+
+    private int lerByte() throws IOException {
+        int b = entrada.read();
+        if (b < 0) {
+            throw new EOFException();
+        }
+        return b;
+    }
+
+    /**
+     * Fecha o fluxo subjacente.
+     *
+     * @throws IOException Se ocorrer erro ao fechar.
+     */
+    @Override
+    public void close() throws IOException {
+        entrada.close();
+    }
+}
@@ -0,0 +1,234 @@
+package br.ufal.ic.p2.jackut.persistence.codec;
+
+import br.ufal.ic.p2.jackut.models.entities.LogMensagens;
+import br.ufal.ic.p2.jackut.models.entities.Mensagem;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Codec binário das mensagens de comunidades ("mensagens.ser"): os logs das comunidades, os cursores de cada
+ * usuário e as filas de mensagens já separadas para um usuário.
+ * Uma mensagem que está em várias filas tem o mesmo texto em todas, por isso seu texto é gravado
+ * pela tabela de textos repetidos.
+ *
+ * <p>Na versão 1, havia apenas as filas, sem números de sequência; a versão 2 acrescenta a sequência de cada
+ * mensagem e as seções de logs e de cursores.</p>
+ */
+public final class MensagemCodec {
+
+    /** Tipo gravado no cabeçalho do snapshot. */
+    public static final String TIPO = "mensagens";
+
+    /** Versão atual do esquema. */
+    public static final int VERSAO = 2;
+
+    private MensagemCodec() {
+    }
+
+    /**
+     * Grava a fila de mensagens de um usuário, da mais antiga à mais recente.
+     *
+     * @param out Escritor binário.
+     * @param fila Fila de mensagens.
+     * @throws IOException Se ocorrer erro de escrita.
+     */
+    public static void escreverFila(EscritorBinario out, Queue<Mensagem> fila) throws IOException {
+        out.escreverVarInt(fila.size());
+        for (Mensagem mensagem : fila) {
+            out.escreverTextoRepetido(mensagem.getMensagem());
+            out.escreverVarLong(mensagem.getSequencia());
+        }
+    }
+
+    /**
+     * Lê uma fila gravada por {@link #escreverFila(EscritorBinario, Queue)}.
+     *
+     * @param in Leitor binário.
+     * @param versao Versão do esquema do snapshot.
+     * @return A fila de mensagens.
+     * @throws IOException Se ocorrer erro de leitura.
+     */
+    public static Queue<Mensagem> lerFila(LeitorBinario in, int versao) throws IOException {
+        int tamanho = in.lerVarInt();
+        Queue<Mensagem> fila = new LinkedList<>();
+        for (int i = 0; i < tamanho; i++) {
+            String texto = in.lerTextoRepetido();
+            fila.add(new Mensagem(texto, versao >= 2 ? in.lerVarLong() : 0));
+        }
+        return fila;
+    }
+
+    /**
+     * Grava o mapa de filas de mensagens.
+     *
+     * @param out Escritor binário.
+     * @param mensagens Mapa de login para fila de mensagens.
+     * @throws IOException Se ocorrer erro de escrita.
+     */
+    public static void escreverMapa(EscritorBinario out, Map<String, Queue<Mensagem>> mensagens) throws IOException {
+        out.escreverVarInt(mensagens.size());
+        for (Map.Entry<String, Queue<Mensagem>> entrada : mensagens.entrySet()) {
+            out.escreverTextoRepetido(entrada.getKey());
+            escreverFila(out, entrada.getValue());
+        }
+    }
+
+    /**
+     * Lê o mapa de filas de mensagens.
+     *
+     * @param in Leitor binário.
+     * @param versao Versão do esquema do snapshot.
+     * @return Mapa de login para fila de mensagens.
+     * @throws IOException Se ocorrer erro de leitura.
+     */
+    public static Map<String, Queue<Mensagem>> lerMapa(LeitorBinario in, int versao) throws IOException {
+        int total = in.lerVarInt();
+        Map<String, Queue<Mensagem>> mensagens = new ConcurrentHashMap<>(Math.max(16, total));
+        for (int i = 0; i < total; i++) {
+            String login = in.lerTextoRepetido();
+            mensagens.put(login, lerFila(in, versao));
+        }
+        return mensagens;
+    }
+
+    /**
+     * Grava o log de uma comunidade: as mensagens ainda não lidas por algum membro, com a sequência de cada
+     * uma gravada como a diferença para a anterior.
+     *
+     * @param out Escritor binário.
+     * @param log Log da comunidade.
+     * @throws IOException Se ocorrer erro de escrita.
+     */
+    public static void escreverLog(EscritorBinario out, LogMensagens log) throws IOException {
+        List<Mensagem> mensagens = log.getMensagens();
+        out.escreverVarInt(mensagens.size());
+        long anterior = 0;
+        for (Mensagem mensagem : mensagens) {
+            out.escreverTexto(mensagem.getMensagem());
+            out.escreverVarLong(mensagem.getSequencia() - anterior);
+            anterior = mensagem.getSequencia();
+        }
+    }
+
+    /**
+     * Lê um log gravado por {@link #escreverLog(EscritorBinario, LogMensagens)}; os leitores do log são
+     * definidos depois, a partir dos cursores.
+     *
+     * @param in Leitor binário.
+     * @param versao Versão do esquema do snapshot.
+     * @return O log da comunidade.
+     * @throws IOException Se ocorrer erro de leitura.
+     */
+    public static LogMensagens lerLog(LeitorBinario in, int versao) throws IOException {
+        int tamanho = in.lerVarInt();
+        LogMensagens log = new LogMensagens();
+        long sequencia = 0;
+        for (int i = 0; i < tamanho; i++) {
+            String texto = in.lerTexto();
+            sequencia += in.lerVarLong();
+            log.restaurar(new Mensagem(texto, sequencia));
+        }
+        return log;
+    }
+
+    /**
+     * Grava o mapa de logs de comunidades.
+     *
+     * @param out Escritor binário.
+     * @param logs Mapa de nome da comunidade para log.
+     * @throws IOException Se ocorrer erro de escrita.
+     */
+    public static void escreverLogs(EscritorBinario out, Map<String, LogMensagens> logs) throws IOException {
+        out.escreverVarInt(logs.size());
+        for (Map.Entry<String, LogMensagens> entrada : logs.entrySet()) {
+            out.escreverTextoRepetido(entrada.getKey());
+            escreverLog(out, entrada.getValue());
+        }
+    }
+
+    /**
+     * Lê o mapa de logs de comunidades.
+     *
+     * @param in Leitor binário.
+     * @param versao Versão do esquema do snapshot.
+     * @return Mapa de nome da comunidade para log.
+     * @throws IOException Se ocorrer erro de leitura.
+     */
+    public static Map<String, LogMensagens> lerLogs(LeitorBinario in, int versao) throws IOException {
+        int total = in.lerVarInt();
+        Map<String, LogMensagens> logs = new ConcurrentHashMap<>(Math.max(16, total));
+        for (int i = 0; i < total; i++) {
+            String comunidade = in.lerTextoRepetido();
+            logs.put(comunidade, lerLog(in, versao));
+        }
+        return logs;
+    }
+
+    /**
+     * Grava os cursores de um usuário: para cada comunidade, a sequência da próxima mensagem a ler.
+     *
+     * @param out Escritor binário.
+     * @param cursores Mapa de nome da comunidade para cursor.
+     * @throws IOException Se ocorrer erro de escrita.
+     */
+    public static void escreverCursores(EscritorBinario out, Map<String, Long> cursores) throws IOException {
+        out.escreverVarInt(cursores.size());
+        for (Map.Entry<String, Long> entrada : cursores.entrySet()) {
+            out.escreverTextoRepetido(entrada.getKey());
+            out.escreverVarLong(entrada.getValue());
+        }
+    }
+
+    /**
+     * Lê os cursores gravados por {@link #escreverCursores(EscritorBinario, Map)}.
+     *
+     * @param in Leitor binário.
+     * @param versao Versão do esquema do snapshot.
+     * @return Mapa de nome da comunidade para cursor, na ordem gravada.
+     * @throws IOException Se ocorrer erro de leitura.
+     */
+    public static Map<String, Long> lerCursores(LeitorBinario in, int versao) throws IOException {
+        int total = in.lerVarInt();
+        Map<String, Long> cursores = new LinkedHashMap<>();
+        for (int i = 0; i < total; i++) {
+            String comunidade = in.lerTextoRepetido();
+            cursores.put(comunidade, in.lerVarLong());
+        }
+        return cursores;
+    }
+
+    /**
+     * Grava o mapa de cursores de todos os usuários.
+     *
+     * @param out Escritor binário.
+     * @param cursores Mapa de login para os cursores do usuário.
+     * @throws IOException Se ocorrer erro de escrita.
+     */
+    public static void escreverMapaCursores(EscritorBinario out, Map<String, Map<String, Long>> cursores) throws IOException {
+        out.escreverVarInt(cursores.size());
+        for (Map.Entry<String, Map<String, Long>> entrada : cursores.entrySet()) {
+            out.escreverTextoRepetido(entrada.getKey());
+            escreverCursores(out, entrada.getValue());
+        }
+    }
+
+    /**
+     * Lê o mapa de cursores de todos os usuários.
+     *
+     * @param in Leitor binário.
+     * @param versao Versão do esquema do snapshot.
+     * @return Mapa de login para os cursores do usuário.
+     * @throws IOException Se ocorrer erro de leitura.
+     */
+    public static Map<String, Map<String, Long>> lerMapaCursores(LeitorBinario in, int versao) throws IOException {
+        int total = in.lerVarInt();
+        Map<String, Map<String, Long>> cursores = new ConcurrentHashMap<>(Math.max(16, total));
+        for (int i = 0; i < total; i++) {
+            String login = in.lerTextoRepetido();
+            cursores.put(login, lerCursores(in, versao));
+        }
+        return cursores;
+    }
+}
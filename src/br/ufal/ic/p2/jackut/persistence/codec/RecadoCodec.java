@@ -0,0 +1,88 @@
+package br.ufal.ic.p2.jackut.persistence.codec;
+
+import br.ufal.ic.p2.jackut.models.entities.Recado;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Codec binário de {@link Recado} e do mapa de caixas de recados ("recados.ser").
+ */
+public final class RecadoCodec {
+
+    /** Tipo gravado no cabeçalho do snapshot. */
+    public static final String TIPO = "recados";
+
+    /** Versão atual do esquema. */
+    public static final int VERSAO = 1;
+
+    private RecadoCodec() {
+    }
+
+    /**
+     * Grava os recados não lidos de uma caixa, em ordem de chegada.
+     *
+     * @param out Escritor binário.
+     * @param recado Caixa de recados.
+     * @throws IOException Se ocorrer erro de escrita.
+     */
+    public static void escrever(EscritorBinario out, Recado recado) throws IOException {
+        Collection<String> recados = recado.getRecados();
+        out.escreverVarInt(recados.size());
+        for (String texto : recados) {
+            out.escreverTexto(texto);
+        }
+    }
+
+    /**
+     * Lê uma caixa de recados gravada por {@link #escrever(EscritorBinario, Recado)}.
+     *
+     * @param in Leitor binário.
+     * @param versao Versão do esquema do snapshot.
+     * @return A caixa de recados.
+     * @throws IOException Se ocorrer erro de leitura.
+     */
+    public static Recado ler(LeitorBinario in, int versao) throws IOException {
+        Recado recado = new Recado();
+        int total = in.lerVarInt();
+        for (int i = 0; i < total; i++) {
+            recado.adicionarRecado(in.lerTexto());
+        }
+        return recado;
+    }
+
+    /**
+     * Grava o mapa de caixas de recados.
+     *
+     * @param out Escritor binário.
+     * @param recados Mapa de login para caixa de recados.
+     * @throws IOException Se ocorrer erro de escrita.
+     */
+    public static void escreverMapa(EscritorBinario out, Map<String, Recado> recados) throws IOException {
+        out.escreverVarInt(recados.size());
+        for (Map.Entry<String, Recado> entrada : recados.entrySet()) {
+            out.escreverTextoRepetido(entrada.getKey());
+            escrever(out, entrada.getValue());
+        }
+    }
+
+    /**
+     * Lê o mapa de caixas de recados.
+     *
+     * @param in Leitor binário.
+     * @param versao Versão do esquema do snapshot.
+     * @return Mapa de login para caixa de recados.
+     * @throws IOException Se ocorrer erro de leitura.
+     */
+    public static Map<String, Recado> lerMapa(LeitorBinario in, int versao) throws IOException {
+        int total = in.lerVarInt();
+        Map<String, Recado> recados = new ConcurrentHashMap<>(Math.max(16, total));
+        for (int i = 0; i < total; i++) {
+            String login = in.lerTextoRepetido();
+            recados.put(login, ler(in, versao));
+        }
+        return recados;
+    }
+}
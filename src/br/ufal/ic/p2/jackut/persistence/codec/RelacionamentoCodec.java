@@ -0,0 +1,84 @@
+package br.ufal.ic.p2.jackut.persistence.codec;
+
+import br.ufal.ic.p2.jackut.models.entities.ConjuntoLogins;
+import br.ufal.ic.p2.jackut.models.entities.IdsUsuarios;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Codec binário dos mapas de relacionamentos ("relacionamentos.ser"): ídolos, fãs, paqueras e inimigos.
+ * Cada mapa associa um login a um conjunto de logins.
+ */
+public final class RelacionamentoCodec {
+
+    /** Tipo gravado no cabeçalho do snapshot. */
+    public static final String TIPO = "relacionamentos";
+
+    /** Versão atual do esquema. */
+    public static final int VERSAO = 1;
+
+    private RelacionamentoCodec() {
+    }
+
+    /**
+     * Grava o conjunto de logins relacionados a um usuário.
+     *
+     * @param out Escritor binário.
+     * @param relacionados Conjunto de logins.
+     * @throws IOException Se ocorrer erro de escrita.
+     */
+    public static void escreverConjunto(EscritorBinario out, Set<String> relacionados) throws IOException {
+        out.escreverLogins(relacionados);
+    }
+
+    /**
+     * Lê um conjunto gravado por {@link #escreverConjunto(EscritorBinario, Set)}.
+     *
+     * @param in Leitor binário.
+     * @param versao Versão do esquema do snapshot.
+     * @param ids Tabela dos identificadores dos logins do sistema.
+     * @return O conjunto de logins.
+     * @throws IOException Se ocorrer erro de leitura.
+     */
+    public static Set<String> lerConjunto(LeitorBinario in, int versao, IdsUsuarios ids) throws IOException {
+        Set<String> relacionados = new ConjuntoLogins(ids);
+        in.lerLogins(relacionados);
+        return relacionados;
+    }
+
+    /**
+     * Grava um mapa de relacionamentos.
+     *
+     * @param out Escritor binário.
+     * @param relacionamentos Mapa de login para conjunto de logins relacionados.
+     * @throws IOException Se ocorrer erro de escrita.
+     */
+    public static void escreverMapa(EscritorBinario out, Map<String, Set<String>> relacionamentos) throws IOException {
+        out.escreverVarInt(relacionamentos.size());
+        for (Map.Entry<String, Set<String>> entrada : relacionamentos.entrySet()) {
+            out.escreverTextoRepetido(entrada.getKey());
+            escreverConjunto(out, entrada.getValue());
+        }
+    }
+
+    /**
+     * Lê um mapa de relacionamentos.
+     *
+     * @param in Leitor binário.
+     * @param versao Versão do esquema do snapshot.
+     * @param ids Tabela dos identificadores dos logins do sistema.
+     * @return Mapa de login para conjunto de logins relacionados.
+     * @throws IOException Se ocorrer erro de leitura.
+     */
+    public static Map<String, Set<String>> lerMapa(LeitorBinario in, int versao, IdsUsuarios ids) throws IOException {
+        int total = in.lerVarInt();
+        Map<String, Set<String>> relacionamentos = new ConcurrentHashMap<>(Math.max(16, total));
+        for (int i = 0; i < total; i++) {
+            String login = in.lerTextoRepetido();
+            relacionamentos.put(login, lerConjunto(in, versao, ids));
+        }
+        return relacionamentos;
+    }
+}
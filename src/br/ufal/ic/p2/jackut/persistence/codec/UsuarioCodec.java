@@ -0,0 +1,102 @@
+package br.ufal.ic.p2.jackut.persistence.codec;
+
+import br.ufal.ic.p2.jackut.models.entities.Usuario;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Codec binário de {@link Usuario} e do mapa de usuários ("usuarios.ser").
+ */
+public final class UsuarioCodec {
+
+    /** Tipo gravado no cabeçalho do snapshot. */
+    public static final String TIPO = "usuarios";
+
+    /** Versão atual do esquema. */
+    public static final int VERSAO = 1;
+
+    private UsuarioCodec() {
+    }
+
+    /**
+     * Grava um usuário: login, senha, nome, atributos do perfil e comunidades.
+     *
+     * @param out Escritor binário.
+     * @param usuario Usuário a ser gravado.
+     * @throws IOException Se ocorrer erro de escrita.
+     */
+    public static void escrever(EscritorBinario out, Usuario usuario) throws IOException {
+        out.escreverTextoRepetido(usuario.getLogin());
+        out.escreverTexto(usuario.getSenha());
+        out.escreverTexto(usuario.getNome());
+
+        Map<String, String> atributos = usuario.getAtributos();
+        out.escreverVarInt(atributos.size());
+        for (Map.Entry<String, String> atributo : atributos.entrySet()) {
+            out.escreverTextoRepetido(atributo.getKey());
+            out.escreverTexto(atributo.getValue());
+        }
+
+        out.escreverVarInt(usuario.comunidades.size());
+        for (String comunidade : usuario.comunidades) {
+            out.escreverTextoRepetido(comunidade);
+        }
+    }
+
+    /**
+     * Lê um usuário gravado por {@link #escrever(EscritorBinario, Usuario)}.
+     *
+     * @param in Leitor binário.
+     * @param versao Versão do esquema do snapshot.
+     * @return O usuário lido.
+     * @throws IOException Se ocorrer erro de leitura.
+     */
+    public static Usuario ler(LeitorBinario in, int versao) throws IOException {
+        Usuario usuario = new Usuario(in.lerTextoRepetido(), in.lerTexto(), in.lerTexto());
+
+        int atributos = in.lerVarInt();
+        for (int i = 0; i < atributos; i++) {
+            usuario.setAtributo(in.lerTextoRepetido(), in.lerTexto());
+        }
+
+        int comunidades = in.lerVarInt();
+        for (int i = 0; i < comunidades; i++) {
+            usuario.entrarComunidade(in.lerTextoRepetido());
+        }
+        return usuario;
+    }
+
+    /**
+     * Grava o mapa de usuários.
+     *
+     * @param out Escritor binário.
+     * @param usuarios Mapa de login para usuário.
+     * @throws IOException Se ocorrer erro de escrita.
+     */
+    public static void escreverMapa(EscritorBinario out, Map<String, Usuario> usuarios) throws IOException {
+        out.escreverVarInt(usuarios.size());
+        for (Usuario usuario : usuarios.values()) {
+            escrever(out, usuario);
+        }
+    }
+
+    /**
+     * Lê o mapa de usuários.
+     *
+     * @param in Leitor binário.
+     * @param versao Versão do esquema do snapshot.
+     * @return Mapa de login para usuário.
+     * @throws IOException Se ocorrer erro de leitura.
+     */
+    public static Map<String, Usuario> lerMapa(LeitorBinario in, int versao) throws IOException {
+        int total = in.lerVarInt();
+        Map<String, Usuario> usuarios = new HashMap<>(Math.max(16, total * 4 / 3 + 1));
+        for (int i = 0; i < total; i++) {
+            Usuario usuario = ler(in, versao);
+            usuarios.put(usuario.getLogin(), usuario);
+        }
+        return usuarios;
+    }
+}
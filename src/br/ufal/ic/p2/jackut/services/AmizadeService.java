@@ -1,58 +1,110 @@
 package br.ufal.ic.p2.jackut.services;
 
 import br.ufal.ic.p2.jackut.models.entities.Amizade;
+import br.ufal.ic.p2.jackut.models.entities.GrafoAmizades;
+import br.ufal.ic.p2.jackut.models.entities.IdsUsuarios;
 import br.ufal.ic.p2.jackut.models.entities.Usuario;
 import br.ufal.ic.p2.jackut.models.exceptions.*;
 import br.ufal.ic.p2.jackut.models.exceptions.RelacionamentoExceptions.UsuarioEhSeuInimigoException;
+import br.ufal.ic.p2.jackut.persistence.Armazenamento;
+import br.ufal.ic.p2.jackut.persistence.CarregamentoAdiado;
+import br.ufal.ic.p2.jackut.persistence.Journal;
+import br.ufal.ic.p2.jackut.persistence.Repositorio;
+import br.ufal.ic.p2.jackut.persistence.SnapshotIncremental;
+import br.ufal.ic.p2.jackut.persistence.codec.AmizadeCodec;
 
-import java.io.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
- * Servio responsvel pela lgica de amizades no sistema Jackut.
+ * Serviço responsável pela lógica de amizades no sistema Jackut.
  * Permite adicionar amigos, verificar amizades e persistir dados.
  */
-public class AmizadeService {
+public class AmizadeService implements Repositorio {
 
-    /** Servio de usurios utilizado para acessar dados dos usurios. */
+    /** Serviço de usuários utilizado para acessar dados dos usuários. */
     private UsuarioService usuarioService;
 
-    /** Servio de sesso utilizado para autenticar aes com base na sesso. */
+    /** Serviço de sessão utilizado para autenticar ações com base na sessão. */
     private SessaoService sessaoService;
 
-    /** Servio de relacionamentos utilizado para verificar inimigos. */
+    /** Serviço de relacionamentos utilizado para verificar inimigos. */
     private RelacionamentoService relacionamentoService;
 
-    /** Mapa que armazena as amizades associadas a cada usurio. */
-    public Map<String, Amizade> amizades = new LinkedHashMap<>();
+    /** Mapa que armazena as amizades associadas a cada usuário; concorrente, para as consultas sem travas. */
+    private Map<String, Amizade> amizades = new ConcurrentHashMap<>();
+
+    /** Visão de leitura das amizades confirmadas, em formato CSR, consultada por {@link #ehAmigo(String, String)}. */
+    private final GrafoAmizades grafo;
+
+    /** Estratégia de persistência das mutações (memória, snapshot ou journal). */
+    private Armazenamento armazenamento;
+
+    /** Snapshot incremental de "amizades.ser"; registra quais usuários tiveram amizades alteradas desde o último checkpoint. */
+    private final SnapshotIncremental snapshot = new SnapshotIncremental("amizades.ser", AmizadeCodec.TIPO, AmizadeCodec.VERSAO);
+    private final SnapshotIncremental.Secao<Amizade> alteradas = snapshot.secao(() -> amizades, carregadas -> amizades = carregadas,
+            AmizadeCodec::escreverMapa, (in, versao) -> AmizadeCodec.lerMapa(in, versao, usuarioService.getIds()),
+            AmizadeCodec::escrever, (in, versao) -> AmizadeCodec.ler(in, versao, usuarioService.getIds()));
+
+    /** Carregamento de "amizades.ser", executado em paralelo com os demais na inicialização do sistema. */
+    private final CarregamentoAdiado carregamento = new CarregamentoAdiado("amizades.ser", this::loadAmizadesFromFile);
 
     /**
      * Construtor da classe {@code AmizadeService}.
      *
-     * @param usuarioService Servio de usurios.
-     * @param sessaoService Servio de sesses.
-     * @param relacionamentoService Servio de relacionamentos (amizades/inimizades).
+     * @param usuarioService Serviço de usuários.
+     * @param sessaoService Serviço de sessões.
+     * @param relacionamentoService Serviço de relacionamentos (amizades/inimizades).
      */
     public AmizadeService(UsuarioService usuarioService, SessaoService sessaoService, RelacionamentoService relacionamentoService) {
         this.usuarioService = usuarioService;
         this.sessaoService = sessaoService;
         this.relacionamentoService = relacionamentoService;
-        this.amizades = loadAmizadesFromFile();
+        this.grafo = new GrafoAmizades(usuarioService.getIds());
+    }
+
+    /**
+     * Retorna o carregamento do estado persistido deste serviço, que deve ser executado antes do primeiro uso.
+     *
+     * @return O carregamento de "amizades.ser".
+     */
+    public CarregamentoAdiado getCarregamento() {
+        return carregamento;
+    }
+
+    /**
+     * Define o armazenamento que persiste as mutações deste serviço e o registra como repositório.
+     *
+     * @param armazenamento Armazenamento escolhido na construção da {@code Facade}.
+     */
+    public void setArmazenamento(Armazenamento armazenamento) {
+        this.armazenamento = armazenamento;
+        armazenamento.registrar(this);
+    }
+
+    /**
+     * Registra no journal as operações de amizade que ele deve reaplicar na recuperação.
+     *
+     * @param journal Journal de mutações do sistema.
+     */
+    @Override
+    public void registrarOperacoes(Journal journal) {
+        journal.registrarOperacao("adicionarAmigo", args -> aplicarAdicionarAmigo(args[0], args[1]));
     }
 
     /**
-     * Tenta adicionar um amigo. Caso haja convite pendente de outro usurio, a amizade  confirmada.
+     * Tenta adicionar um amigo. Caso haja convite pendente de outro usuário, a amizade é confirmada.
      *
-     * @param idSessao ID da sesso do usurio solicitante.
-     * @param amigoLogin Login do usurio a ser adicionado como amigo.
-     * @throws UsuarioException Se houver problemas com os usurios.
-     * @throws UsuarioEhSeuInimigoException Se o usurio alvo for inimigo do solicitante.
+     * @param idSessao ID da sessão do usuário solicitante.
+     * @param amigoLogin Login do usuário a ser adicionado como amigo.
+     * @throws UsuarioException Se houver problemas com os usuários.
+     * @throws UsuarioEhSeuInimigoException Se o usuário alvo for inimigo do solicitante.
      */
     public void adicionarAmigo(String idSessao, String amigoLogin) throws UsuarioException, UsuarioEhSeuInimigoException {
         Usuario usuario = sessaoService.getUsuarioPorSessao(idSessao);
         Usuario amigo = usuarioService.getUsuario(amigoLogin);
 
-        if (relacionamentoService.ehInimigo(idSessao, amigoLogin)) {
+        if (relacionamentoService.ehInimigoPorLogin(usuario.getLogin(), amigoLogin)) {
             throw new UsuarioEhSeuInimigoException(usuarioService.getAtributoUsuario(amigoLogin, "nome"));
         }
 
@@ -64,11 +116,10 @@ public class AmizadeService {
             throw new UsuarioNaoPodeAdicionarASiMesmoException();
         }
 
-        amizades.putIfAbsent(usuario.getLogin(), new Amizade());
-        amizades.putIfAbsent(amigoLogin, new Amizade());
+        amizades.putIfAbsent(usuario.getLogin(), new Amizade(usuarioService.getIds()));
+        amizades.putIfAbsent(amigoLogin, new Amizade(usuarioService.getIds()));
 
         Amizade amizadeUsuario = amizades.get(usuario.getLogin());
-        Amizade amizadeAmigo = amizades.get(amigoLogin);
 
         if (amizadeUsuario.getAmigos().contains(amigoLogin)) {
             throw new UsuarioJahehAmigoException();
@@ -78,69 +129,154 @@ public class AmizadeService {
             throw new EsperandoAceitacaoException();
         }
 
+        aplicarAdicionarAmigo(usuario.getLogin(), amigoLogin);
+        persistir("adicionarAmigo", usuario.getLogin(), amigoLogin);
+    }
+
+    /**
+     * Aceita o convite pendente do outro usuário ou, se não houver, envia um novo convite.
+     *
+     * @param login Login do usuário solicitante.
+     * @param amigoLogin Login do usuário a ser adicionado como amigo.
+     */
+    private void aplicarAdicionarAmigo(String login, String amigoLogin) {
+        Amizade amizadeUsuario = amizades.computeIfAbsent(login, k -> new Amizade(usuarioService.getIds()));
+        Amizade amizadeAmigo = amizades.computeIfAbsent(amigoLogin, k -> new Amizade(usuarioService.getIds()));
+
         if (amizadeUsuario.getConvitesRecebidos().contains(amigoLogin)) {
             // Aceita amizade
             amizadeUsuario.getConvitesRecebidos().remove(amigoLogin);
-            amizadeAmigo.getConvitesEnviados().remove(usuario.getLogin());
+            amizadeAmigo.getConvitesEnviados().remove(login);
             amizadeUsuario.getAmigos().add(amigoLogin);
-            amizadeAmigo.getAmigos().add(usuario.getLogin());
+            amizadeAmigo.getAmigos().add(login);
+            grafo.adicionar(login, amigoLogin);
         } else {
             // Envia convite
             amizadeUsuario.getConvitesEnviados().add(amigoLogin);
-            amizadeAmigo.getConvitesRecebidos().add(usuario.getLogin());
+            amizadeAmigo.getConvitesRecebidos().add(login);
         }
+        alteradas.marcar(login);
+        alteradas.marcar(amigoLogin);
+    }
+
+    /**
+     * Persiste uma mutação conforme o armazenamento: nada, regravação do snapshot ou registro no journal.
+     *
+     * @param operacao Nome da operação realizada.
+     * @param argumentos Argumentos necessários para reaplicá-la.
+     */
+    private void persistir(String operacao, String... argumentos) {
+        armazenamento.mutacao(this, operacao, argumentos);
     }
 
     /**
-     * Verifica se dois usurios so amigos.
+     * Verifica se dois usuários são amigos.
      *
-     * @param login Login do usurio.
-     * @param amigoLogin Login do possvel amigo.
-     * @return {@code true} se forem amigos, {@code false} caso contrrio.
-     * @throws UsuarioException Se o usurio no existir.
+     * @param login Login do usuário.
+     * @param amigoLogin Login do possível amigo.
+     * @return {@code true} se forem amigos, {@code false} caso contrário.
+     * @throws UsuarioException Se o usuário não existir.
      */
     public boolean ehAmigo(String login, String amigoLogin) throws UsuarioException {
         Usuario usuario = usuarioService.getUsuario(login);
-        amizades.putIfAbsent(usuario.getLogin(), new Amizade());
-        return amizades.get(usuario.getLogin()).getAmigos().contains(amigoLogin);
+        return grafo.ehAmigo(usuario.getLogin(), amigoLogin); // Consulta sem travas
     }
 
     /**
-     * Retorna o conjunto de logins dos amigos do usurio.
+     * Retorna o conjunto de logins dos amigos do usuário.
      *
-     * @param login Login do usurio.
+     * @param login Login do usuário.
      * @return Um {@link Set} contendo os logins dos amigos.
-     * @throws UsuarioException Se o usurio no existir.
+     * @throws UsuarioException Se o usuário não existir.
      */
     public Set<String> getAmigos(String login) throws UsuarioException {
         Usuario usuario = usuarioService.getUsuario(login);
-        amizades.putIfAbsent(usuario.getLogin(), new Amizade());
-        return amizades.get(usuario.getLogin()).getAmigos();
+        Amizade amizade = amizades.get(usuario.getLogin());
+        return amizade != null ? amizade.getAmigos() : Collections.emptySet();
     }
 
     /**
-     * Salva o estado atual das amizades no arquivo "amizades.ser".
+     * Retorna os amigos em comum de dois usuários.
+     *
+     * @param login Login de um usuário.
+     * @param outro Login do outro.
+     * @return Os logins dos amigos em comum, na ordem em que os usuários foram registrados.
+     * @throws UsuarioNaoCadastradoException Se algum dos usuários não existir.
      */
-    public void saveAmizadesToFile() {
-        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream("amizades.ser"))) {
-            oos.writeObject(amizades);
-        } catch (Exception e) {
-            e.printStackTrace();
+    public List<String> getAmigosEmComum(String login, String outro) throws UsuarioNaoCadastradoException {
+        usuarioService.getUsuario(login);
+        usuarioService.getUsuario(outro);
+        IdsUsuarios tabela = grafo.getTabela();
+        int id = tabela.buscar(login);
+        int idOutro = tabela.buscar(outro);
+        if (id < 0 || idOutro < 0) {
+            return Collections.emptyList();
+        }
+
+        int[] comuns = grafo.getAmigosEmComum(id, idOutro);
+        List<String> logins = new ArrayList<>(comuns.length);
+        for (int amigo : comuns) {
+            logins.add(tabela.login(amigo));
         }
+        return logins;
     }
 
     /**
-     * Carrega o estado das amizades a partir do arquivo "amizades.ser".
+     * Conta os amigos em comum de dois usuários, sem criar a lista deles.
      *
-     * @return Um {@link Map} com os dados de amizade carregados, ou um mapa vazio em caso de falha.
+     * @param login Login de um usuário.
+     * @param outro Login do outro.
+     * @return A quantidade de amigos em comum.
+     * @throws UsuarioNaoCadastradoException Se algum dos usuários não existir.
+     */
+    public int contarAmigosEmComum(String login, String outro) throws UsuarioNaoCadastradoException {
+        usuarioService.getUsuario(login);
+        usuarioService.getUsuario(outro);
+        IdsUsuarios tabela = grafo.getTabela();
+        int id = tabela.buscar(login);
+        int idOutro = tabela.buscar(outro);
+        return id < 0 || idOutro < 0 ? 0 : grafo.contarAmigosEmComum(id, idOutro);
+    }
+
+    /**
+     * Retorna os logins para os quais o usuário enviou convites de amizade ainda não aceitos.
+     *
+     * @param login Login do usuário.
+     * @return Os convites pendentes; vazio se não houver nenhum.
+     */
+    public Set<String> getConvitesEnviados(String login) {
+        Amizade amizade = amizades.get(login);
+        return amizade != null ? amizade.getConvitesEnviados() : Collections.emptySet();
+    }
+
+    /**
+     * Retorna a visão de leitura das amizades confirmadas, para consultas e percursos sem travas.
+     *
+     * @return O grafo de amizades.
+     */
+    public GrafoAmizades getGrafo() {
+        return grafo;
+    }
+
+    /**
+     * Salva no arquivo "amizades.ser" as amizades alteradas desde o último checkpoint.
+     */
+    public void saveAmizadesToFile() {
+        snapshot.salvar();
+    }
+
+    /**
+     * Carrega o estado das amizades a partir do arquivo "amizades.ser" e dos seus segmentos incrementais.
+     * Caso não existam dados, o mapa de amizades permanece vazio.
      */
     @SuppressWarnings("unchecked")
-    private Map<String, Amizade> loadAmizadesFromFile() {
-        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream("amizades.ser"))) {
-            return (Map<String, Amizade>) ois.readObject();
-        } catch (Exception e) {
-            return new LinkedHashMap<>();
-        }
+    private void loadAmizadesFromFile() {
+        snapshot.carregar(ois -> {
+            amizades = new ConcurrentHashMap<>((Map<String, Amizade>) ois.readObject());
+            amizades.values().forEach(amizade -> amizade.indexar(usuarioService.getIds()));
+            return true;
+        });
+        grafo.reconstruir(amizades, usuarioService.getIds());
     }
 
     /**
@@ -148,6 +284,22 @@ public class AmizadeService {
      */
     public void zerar() {
         amizades.clear();
+        grafo.reconstruir(amizades, usuarioService.getIds());
+        armazenamento.zerado(this);
+    }
+
+    @Override
+    public String getNome() {
+        return "amizades";
+    }
+
+    @Override
+    public void salvar() {
         saveAmizadesToFile();
     }
+
+    @Override
+    public void apagar() {
+        snapshot.salvarCompleto();
+    }
 }
@@ -1,79 +1,172 @@
 package br.ufal.ic.p2.jackut.services;
 
 import br.ufal.ic.p2.jackut.models.entities.Comunidade;
+import br.ufal.ic.p2.jackut.models.entities.Intersecao;
 import br.ufal.ic.p2.jackut.models.entities.Usuario;
 import br.ufal.ic.p2.jackut.models.exceptions.*;
+import br.ufal.ic.p2.jackut.persistence.Armazenamento;
+import br.ufal.ic.p2.jackut.persistence.CarregamentoAdiado;
+import br.ufal.ic.p2.jackut.persistence.Journal;
+import br.ufal.ic.p2.jackut.persistence.Repositorio;
+import br.ufal.ic.p2.jackut.persistence.SnapshotIncremental;
+import br.ufal.ic.p2.jackut.persistence.codec.ComunidadeCodec;
 
-import java.io.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
- * Servio responsvel pela criao, gerenciamento e persistncia de comunidades no sistema Jackut.
+ * Serviço responsável pela criação, gerenciamento e persistência de comunidades no sistema Jackut.
  */
-public class ComunidadeService {
+public class ComunidadeService implements Repositorio {
 
-    /** Servio responsvel pela manipulao de usurios. */
+    /** Serviço responsável pela manipulação de usuários. */
     private UsuarioService usuarioService;
 
-    /** Servio responsvel pela manipulao de sesses de usurios. */
+    /** Serviço responsável pela manipulação de sessões de usuários. */
     private SessaoService sessaoService;
 
-    /** Mapa que associa o nome da comunidade ao objeto {@link Comunidade}. */
-    public Map<String, Comunidade> comunidades = new LinkedHashMap<>();
+    /** Serviço de mensagens, que mantém o log de cada comunidade e o cursor de cada membro. */
+    private MensagemService mensagemService;
+
+    /** Mapa que associa o nome da comunidade ao objeto {@link Comunidade}; concorrente, para as consultas sem travas. */
+    private Map<String, Comunidade> comunidades = new ConcurrentHashMap<>();
+
+    /** Estratégia de persistência das mutações (memória, snapshot ou journal). */
+    private Armazenamento armazenamento;
+
+    /** Snapshot incremental de "comunidades.ser"; registra quais comunidades mudaram desde o último checkpoint. */
+    private final SnapshotIncremental snapshot = new SnapshotIncremental("comunidades.ser", ComunidadeCodec.TIPO, ComunidadeCodec.VERSAO);
+    private final SnapshotIncremental.Secao<Comunidade> alteradas = snapshot.secao(() -> comunidades, carregadas -> comunidades = carregadas,
+            ComunidadeCodec::escreverMapa, (in, versao) -> ComunidadeCodec.lerMapa(in, versao, usuarioService.getIds()),
+            ComunidadeCodec::escrever, (in, versao) -> ComunidadeCodec.ler(in, versao, usuarioService.getIds()));
+
+    /** Carregamento de "comunidades.ser", executado em paralelo com os demais na inicialização do sistema. */
+    private final CarregamentoAdiado carregamento = new CarregamentoAdiado("comunidades.ser", this::loadComunidadesFromFile);
 
     /**
      * Construtor da classe {@code ComunidadeService}.
      *
-     * @param usuarioService Servio de usurios.
-     * @param sessaoService Servio de sesses.
+     * @param usuarioService Serviço de usuários.
+     * @param sessaoService Serviço de sessões.
      */
     public ComunidadeService(UsuarioService usuarioService, SessaoService sessaoService) {
         this.usuarioService = usuarioService;
         this.sessaoService = sessaoService;
-        this.comunidades = loadComunidadesFromFile();
     }
 
     /**
-     * Remove todas as comunidades criadas por um determinado usurio.
-     * Remove tambm a comunidade da lista de todos os membros.
+     * Define o serviço de mensagens, avisado quando um membro entra numa comunidade ou uma comunidade é removida.
+     *
+     * @param mensagemService Serviço de mensagens.
+     */
+    public void setMensagemService(MensagemService mensagemService) {
+        this.mensagemService = mensagemService;
+    }
+
+    /**
+     * Retorna o carregamento do estado persistido deste serviço, que deve ser executado antes do primeiro uso.
+     *
+     * @return O carregamento de "comunidades.ser".
+     */
+    public CarregamentoAdiado getCarregamento() {
+        return carregamento;
+    }
+
+    /**
+     * Define o armazenamento que persiste as mutações deste serviço e o registra como repositório.
      *
-     * @param login Login do usurio dono das comunidades.
-     * @throws UsuarioNaoCadastradoException Se o usurio no estiver cadastrado.
+     * @param armazenamento Armazenamento escolhido na construção da {@code Facade}.
+     */
+    public void setArmazenamento(Armazenamento armazenamento) {
+        this.armazenamento = armazenamento;
+        armazenamento.registrar(this);
+    }
+
+    /**
+     * Registra no journal as operações de comunidades que ele deve reaplicar na recuperação.
+     *
+     * @param journal Journal de mutações do sistema.
+     */
+    @Override
+    public void registrarOperacoes(Journal journal) {
+        journal.registrarOperacao("criarComunidade", args -> {
+            Usuario dono = usuarioService.buscarUsuario(args[0]);
+            if (dono != null) {
+                aplicarCriarComunidade(dono, args[1], args[2]);
+            }
+        });
+        journal.registrarOperacao("adicionarComunidade", args -> {
+            Usuario usuario = usuarioService.buscarUsuario(args[0]);
+            Comunidade comunidade = comunidades.get(args[1]);
+            if (usuario != null && comunidade != null) {
+                aplicarAdicionarMembro(usuario, comunidade);
+            }
+        });
+        journal.registrarOperacao("removerComunidade", args -> {
+            Usuario usuario = usuarioService.buscarUsuario(args[0]);
+            if (usuario != null) {
+                aplicarRemoverComunidades(usuario);
+            }
+        });
+    }
+
+    /**
+     * Remove todas as comunidades criadas por um determinado usuário.
+     * Remove também a comunidade da lista de todos os membros.
+     *
+     * @param login Login do usuário dono das comunidades.
+     * @throws UsuarioNaoCadastradoException Se o usuário não estiver cadastrado.
      */
     public void removerComunidade(String login) throws UsuarioNaoCadastradoException {
         Usuario usuario = usuarioService.getUsuario(login);
         if (usuario == null) throw new UsuarioNaoCadastradoException();
 
+        aplicarRemoverComunidades(usuario);
+
+        persistir("removerComunidade", login);
+        armazenamento.alterado(usuarioService); // A remoção também altera a lista de comunidades dos membros
+    }
+
+    /**
+     * Remove as comunidades de que o usuário é dono, retirando-as também da lista de todos os membros.
+     *
+     * @param usuario Usuário dono das comunidades.
+     */
+    private void aplicarRemoverComunidades(Usuario usuario) {
+        String login = usuario.getLogin();
         List<String> comunidadesUsuario = new ArrayList<>(usuario.comunidades);
 
         for (String nomeComunidade : comunidadesUsuario) {
             Comunidade comunidade = comunidades.get(nomeComunidade);
 
             if (comunidade != null && comunidade.getloginDono().equals(login)) {
+                if (mensagemService != null) {
+                    mensagemService.removerComunidade(nomeComunidade, comunidade.getMembrosComunidade());
+                }
                 for (String participante : new HashSet<>(comunidade.getMembrosComunidade())) {
-                    Usuario user = usuarioService.usuarios.get(participante);
+                    Usuario user = usuarioService.buscarUsuario(participante);
                     if (user != null) {
-                        user.comunidades.remove(nomeComunidade);
+                        user.sairComunidade(nomeComunidade);
+                        usuarioService.marcarAlterado(user);
                     }
                 }
 
                 comunidades.remove(nomeComunidade);
-                usuario.comunidades.remove(nomeComunidade);
+                usuario.sairComunidade(nomeComunidade);
+                alteradas.marcar(nomeComunidade);
             }
         }
-
-        saveComunidadesToFile();
-        usuarioService.saveUsuariosToFile();
+        usuarioService.marcarAlterado(usuario);
     }
 
     /**
      * Cria uma nova comunidade no sistema.
      *
-     * @param idSessao ID da sesso do usurio que criar a comunidade.
+     * @param idSessao ID da sessão do usuário que criará a comunidade.
      * @param nome Nome da comunidade.
-     * @param descricao Descrio da comunidade.
-     * @throws UsuarioException Se o usurio no estiver autenticado.
-     * @throws ComunidadeNomeExisteException Se j existir uma comunidade com esse nome.
+     * @param descricao Descrição da comunidade.
+     * @throws UsuarioException Se o usuário não estiver autenticado.
+     * @throws ComunidadeNomeExisteException Se já existir uma comunidade com esse nome.
      */
     public void criarComunidade(String idSessao, String nome, String descricao)
             throws UsuarioException, ComunidadeNomeExisteException {
@@ -81,21 +174,57 @@ public class ComunidadeService {
         String loginDono = dono.getLogin();
 
         if (!comunidades.containsKey(nome)) {
-            Comunidade comunidade = new Comunidade(loginDono, nome, descricao);
-            comunidades.put(nome, comunidade);
-            dono.comunidades.add(nome);
-            saveComunidadesToFile();
+            aplicarCriarComunidade(dono, nome, descricao);
+            persistir("criarComunidade", loginDono, nome, descricao);
+            armazenamento.alterado(usuarioService);
         } else {
             throw new ComunidadeNomeExisteException();
         }
     }
 
     /**
-     * Retorna a descrio de uma comunidade.
+     * Registra uma nova comunidade, tendo o usuário informado como dono e primeiro membro.
+     *
+     * @param dono Usuário dono da comunidade.
+     * @param nome Nome da comunidade.
+     * @param descricao Descrição da comunidade.
+     */
+    private void aplicarCriarComunidade(Usuario dono, String nome, String descricao) {
+        Comunidade comunidade = new Comunidade(dono.getLogin(), nome, descricao, usuarioService.getIds());
+        comunidades.put(nome, comunidade);
+        dono.entrarComunidade(nome);
+        alteradas.marcar(nome);
+        usuarioService.marcarAlterado(dono);
+        if (mensagemService != null) {
+            mensagemService.entrarNaComunidade(dono.getLogin(), nome);
+        }
+    }
+
+    /**
+     * Obtém uma comunidade pelo nome, sem lançar exceção se ela não existir.
+     *
+     * @param nome Nome da comunidade.
+     * @return A comunidade, ou {@code null} se não houver comunidade com esse nome.
+     */
+    public Comunidade buscarComunidade(String nome) {
+        return nome != null ? comunidades.get(nome) : null;
+    }
+
+    /**
+     * Retorna todas as comunidades do sistema.
+     *
+     * @return Uma visão das comunidades, sem ordem definida.
+     */
+    public Collection<Comunidade> listarComunidades() {
+        return comunidades.values();
+    }
+
+    /**
+     * Retorna a descrição de uma comunidade.
      *
      * @param nome Nome da comunidade.
-     * @return A descrio da comunidade.
-     * @throws ComunidadeNaoExisteException Se a comunidade no existir.
+     * @return A descrição da comunidade.
+     * @throws ComunidadeNaoExisteException Se a comunidade não existir.
      */
     public String getDescricaoComunidade(String nome) throws ComunidadeNaoExisteException {
         Comunidade comunidade = comunidades.get(nome);
@@ -108,7 +237,7 @@ public class ComunidadeService {
      *
      * @param nome Nome da comunidade.
      * @return Login do dono da comunidade.
-     * @throws ComunidadeNaoExisteException Se a comunidade no existir.
+     * @throws ComunidadeNaoExisteException Se a comunidade não existir.
      */
     public String getDonoComunidade(String nome) throws ComunidadeNaoExisteException {
         Comunidade comunidade = comunidades.get(nome);
@@ -121,7 +250,7 @@ public class ComunidadeService {
      *
      * @param nome Nome da comunidade.
      * @return Conjunto com os logins dos membros da comunidade.
-     * @throws ComunidadeNaoExisteException Se a comunidade no existir.
+     * @throws ComunidadeNaoExisteException Se a comunidade não existir.
      */
     public Set<String> getMembrosComunidade(String nome) throws ComunidadeNaoExisteException {
         Comunidade comunidade = comunidades.get(nome);
@@ -130,44 +259,48 @@ public class ComunidadeService {
     }
 
     /**
-     * Salva o estado atual das comunidades no arquivo "comunidades.ser".
+     * Persiste uma mutação conforme o armazenamento: nada, regravação do snapshot ou registro no journal.
+     *
+     * @param operacao Nome da operação realizada.
+     * @param argumentos Argumentos necessários para reaplicá-la.
+     */
+    private void persistir(String operacao, String... argumentos) {
+        armazenamento.mutacao(this, operacao, argumentos);
+    }
+
+    /**
+     * Salva no arquivo "comunidades.ser" (ou num segmento incremental) as comunidades alteradas desde o último checkpoint.
      */
     public void saveComunidadesToFile() {
-        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream("comunidades.ser"))) {
-            oos.writeObject(comunidades);
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
+        snapshot.salvar();
     }
 
     /**
-     * Carrega as comunidades a partir do arquivo "comunidades.ser".
-     *
-     * @return Mapa com os dados das comunidades.
+     * Carrega as comunidades a partir do arquivo "comunidades.ser" e dos seus segmentos incrementais.
      */
     @SuppressWarnings("unchecked")
-    private Map<String, Comunidade> loadComunidadesFromFile() {
-        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream("comunidades.ser"))) {
-            return (Map<String, Comunidade>) ois.readObject();
-        } catch (Exception e) {
-            return new LinkedHashMap<>();
-        }
+    private void loadComunidadesFromFile() {
+        snapshot.carregar(ois -> {
+            comunidades = new ConcurrentHashMap<>((Map<String, Comunidade>) ois.readObject());
+            comunidades.values().forEach(comunidade -> comunidade.indexar(usuarioService.getIds()));
+            return true;
+        });
     }
 
     /**
-     * Remove todas as comunidades do sistema (reseta o servio).
+     * Remove todas as comunidades do sistema (reseta o serviço).
      */
     public void zerar() {
         comunidades.clear();
-        saveComunidadesToFile();
+        armazenamento.zerado(this);
     }
 
     /**
-     * Retorna a lista de nomes de comunidades das quais o usurio participa.
+     * Retorna a lista de nomes de comunidades das quais o usuário participa.
      *
-     * @param login Login do usurio.
+     * @param login Login do usuário.
      * @return Lista de nomes das comunidades.
-     * @throws UsuarioNaoCadastradoException Se o usurio no existir.
+     * @throws UsuarioNaoCadastradoException Se o usuário não existir.
      */
     public List<String> getComunidades(String login) throws UsuarioNaoCadastradoException {
         Usuario usuario = usuarioService.getUsuario(login);
@@ -176,13 +309,39 @@ public class ComunidadeService {
     }
 
     /**
-     * Adiciona um usurio autenticado a uma comunidade existente.
+     * Retorna as comunidades em comum de dois usuários, pela interseção das suas listas em ordem alfabética.
      *
-     * @param idSessao ID da sesso do usurio.
+     * @param login Login de um usuário.
+     * @param outro Login do outro.
+     * @return Os nomes das comunidades em comum, em ordem alfabética.
+     * @throws UsuarioNaoCadastradoException Se algum dos usuários não existir.
+     */
+    public List<String> getComunidadesEmComum(String login, String outro) throws UsuarioNaoCadastradoException {
+        return Intersecao.intersecao(usuarioService.getUsuario(login).getComunidadesOrdenadas(),
+                usuarioService.getUsuario(outro).getComunidadesOrdenadas());
+    }
+
+    /**
+     * Conta as comunidades em comum de dois usuários, sem criar a lista delas.
+     *
+     * @param login Login de um usuário.
+     * @param outro Login do outro.
+     * @return A quantidade de comunidades em comum.
+     * @throws UsuarioNaoCadastradoException Se algum dos usuários não existir.
+     */
+    public int contarComunidadesEmComum(String login, String outro) throws UsuarioNaoCadastradoException {
+        return Intersecao.contar(usuarioService.getUsuario(login).getComunidadesOrdenadas(),
+                usuarioService.getUsuario(outro).getComunidadesOrdenadas());
+    }
+
+    /**
+     * Adiciona um usuário autenticado a uma comunidade existente.
+     *
+     * @param idSessao ID da sessão do usuário.
      * @param nomeComunidade Nome da comunidade.
-     * @throws UsuarioException Se o usurio no estiver autenticado.
-     * @throws ComunidadeNaoExisteException Se a comunidade no existir.
-     * @throws UsuarioJaFazParteComunidadeException Se o usurio j participa da comunidade.
+     * @throws UsuarioException Se o usuário não estiver autenticado.
+     * @throws ComunidadeNaoExisteException Se a comunidade não existir.
+     * @throws UsuarioJaFazParteComunidadeException Se o usuário já participa da comunidade.
      */
     public void adicionarComunidade(String idSessao, String nomeComunidade)
             throws UsuarioException, ComunidadeNaoExisteException, UsuarioJaFazParteComunidadeException {
@@ -198,8 +357,39 @@ public class ComunidadeService {
             throw new UsuarioJaFazParteComunidadeException();
         }
 
-        comunidade.adicionarMembro(login);
-        usuario.comunidades.add(nomeComunidade);
+        aplicarAdicionarMembro(usuario, comunidade);
+        persistir("adicionarComunidade", login, nomeComunidade);
+        armazenamento.alterado(usuarioService);
+    }
+
+    /**
+     * Inclui o usuário entre os membros da comunidade e a comunidade na lista do usuário.
+     *
+     * @param usuario Usuário que passa a participar da comunidade.
+     * @param comunidade Comunidade de destino.
+     */
+    private void aplicarAdicionarMembro(Usuario usuario, Comunidade comunidade) {
+        comunidade.adicionarMembro(usuario.getLogin());
+        usuario.entrarComunidade(comunidade.getNome());
+        alteradas.marcar(comunidade.getNome());
+        usuarioService.marcarAlterado(usuario);
+        if (mensagemService != null) {
+            mensagemService.entrarNaComunidade(usuario.getLogin(), comunidade.getNome());
+        }
+    }
+
+    @Override
+    public String getNome() {
+        return "comunidades";
+    }
+
+    @Override
+    public void salvar() {
         saveComunidadesToFile();
     }
+
+    @Override
+    public void apagar() {
+        snapshot.salvarCompleto();
+    }
 }
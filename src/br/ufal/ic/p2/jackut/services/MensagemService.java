@@ -1,109 +1,580 @@
 package br.ufal.ic.p2.jackut.services;
 
+import br.ufal.ic.p2.jackut.concorrencia.PublicadorCaixa;
 import br.ufal.ic.p2.jackut.models.entities.Comunidade;
+import br.ufal.ic.p2.jackut.models.entities.LogMensagens;
 import br.ufal.ic.p2.jackut.models.entities.Mensagem;
 import br.ufal.ic.p2.jackut.models.entities.Usuario;
 import br.ufal.ic.p2.jackut.models.exceptions.ComunidadeNaoExisteException;
 import br.ufal.ic.p2.jackut.models.exceptions.NaoHaMensagensException;
 import br.ufal.ic.p2.jackut.models.exceptions.UsuarioException;
+import br.ufal.ic.p2.jackut.persistence.CaixasMapeadas;
+import br.ufal.ic.p2.jackut.persistence.Armazenamento;
+import br.ufal.ic.p2.jackut.persistence.CarregamentoAdiado;
+import br.ufal.ic.p2.jackut.persistence.Journal;
+import br.ufal.ic.p2.jackut.persistence.Repositorio;
+import br.ufal.ic.p2.jackut.persistence.SnapshotIncremental;
+import br.ufal.ic.p2.jackut.persistence.codec.MensagemCodec;
 
-import java.io.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * Servio responsvel pelo envio, leitura e persistncia de mensagens trocadas entre membros de comunidades.
+ * Serviço responsável pelo envio, leitura e persistência de mensagens trocadas entre membros de comunidades.
+ *
+ * <p>Cada comunidade tem um único log de mensagens ({@link LogMensagens}), e cada membro apenas um cursor em cada
+ * log, a partir do momento em que entrou: enviar uma mensagem é acrescentá-la ao log, qualquer que seja o número
+ * de membros, e ler a próxima mensagem de um usuário é escolher, entre os logs das suas comunidades, a de menor
+ * número de sequência.</p>
  */
-public class MensagemService {
+public class MensagemService implements Repositorio {
 
-    /** Servio que gerencia comunidades e seus membros. */
+    /** Avisos de chegada de mensagens para as assinaturas ativas. */
+    private final PublicadorCaixa.Avisos avisos = new PublicadorCaixa.Avisos();
+
+    /** Serviço que gerencia os usuários cadastrados. */
+    private UsuarioService usuarioService;
+
+    /** Serviço que gerencia comunidades e seus membros. */
     private ComunidadeService comunidadeService;
 
-    /** Servio que gerencia sesses e autenticao de usurios. */
+    /** Serviço que gerencia sessões e autenticação de usuários. */
     private SessaoService sessaoService;
 
-    /** Mapa que associa cada usurio a uma fila de mensagens recebidas. */
-    private Map<String, Queue<Mensagem>> mensagens = new LinkedHashMap<>();
+    /** Log de mensagens de cada comunidade, pelo nome da comunidade. */
+    private Map<String, LogMensagens> logs = new ConcurrentHashMap<>();
+
+    /**
+     * Cursores de cada usuário: para cada comunidade de que participa, a sequência da próxima mensagem a ler.
+     * O mapa de um usuário só é alterado sob a sua trava.
+     */
+    private Map<String, Map<String, Long>> cursores = new ConcurrentHashMap<>();
+
+    /**
+     * Mensagens já separadas para cada usuário, fora dos logs: as gravadas antes dos logs de comunidade e as que
+     * ele ainda não tinha lido quando a comunidade foi removida. Ficam em ordem de sequência.
+     */
+    private Map<String, Queue<Mensagem>> mensagens = new ConcurrentHashMap<>();
+
+    /** Sequência da próxima mensagem enviada; as mensagens anteriores aos logs têm sequência zero. */
+    private final AtomicLong proximaSequencia = new AtomicLong(1);
+
+    /** Estratégia de persistência das mutações (memória, snapshot ou journal). */
+    private Armazenamento armazenamento;
+
+    /** Snapshot incremental de "mensagens.ser"; registra quais filas, logs e cursores mudaram desde o último checkpoint. */
+    private final SnapshotIncremental snapshot = new SnapshotIncremental("mensagens.ser", MensagemCodec.TIPO, MensagemCodec.VERSAO);
+    private final SnapshotIncremental.Secao<Queue<Mensagem>> filasAlteradas = snapshot.secao(() -> mensagens, carregadas -> mensagens = carregadas,
+            MensagemCodec::escreverMapa, MensagemCodec::lerMapa, MensagemCodec::escreverFila, MensagemCodec::lerFila);
+    private final SnapshotIncremental.Secao<LogMensagens> logsAlterados = snapshot.secao(2, () -> logs, carregados -> logs = carregados,
+            MensagemCodec::escreverLogs, MensagemCodec::lerLogs, MensagemCodec::escreverLog, MensagemCodec::lerLog);
+    private final SnapshotIncremental.Secao<Map<String, Long>> cursoresAlterados = snapshot.secao(2, () -> cursores, carregados -> cursores = carregados,
+            MensagemCodec::escreverMapaCursores, MensagemCodec::lerMapaCursores, MensagemCodec::escreverCursores, MensagemCodec::lerCursores);
+
+    /** Carregamento de "mensagens.ser", adiado até o primeiro acesso às mensagens. */
+    private final CarregamentoAdiado carregamento = new CarregamentoAdiado("mensagens.ser", this::loadMensagensFromFile);
 
     /**
      * Construtor da classe {@code MensagemService}.
      *
-     * @param comunidadeService Servio de gerenciamento de comunidades.
-     * @param sessaoService Servio de gerenciamento de sesses.
+     * @param usuarioService Serviço de gerenciamento de usuários.
+     * @param comunidadeService Serviço de gerenciamento de comunidades.
+     * @param sessaoService Serviço de gerenciamento de sessões.
      */
-    public MensagemService(ComunidadeService comunidadeService, SessaoService sessaoService) {
+    public MensagemService(UsuarioService usuarioService, ComunidadeService comunidadeService, SessaoService sessaoService) {
+        this.usuarioService = usuarioService;
         this.comunidadeService = comunidadeService;
         this.sessaoService = sessaoService;
-        this.mensagens = loadMensagensFromFile();
     }
 
     /**
-     * L a prxima mensagem disponvel para o usurio autenticado.
-     * A mensagem  removida da fila aps leitura.
+     * Retorna o carregamento do estado persistido deste serviço.
+     *
+     * @return O carregamento de "mensagens.ser".
+     */
+    public CarregamentoAdiado getCarregamento() {
+        return carregamento;
+    }
+
+    /**
+     * Define o armazenamento que persiste as mutações deste serviço e o registra como repositório.
+     *
+     * @param armazenamento Armazenamento escolhido na construção da {@code Facade}.
+     */
+    public void setArmazenamento(Armazenamento armazenamento) {
+        this.armazenamento = armazenamento;
+        armazenamento.registrar(this);
+    }
+
+    /**
+     * Registra no journal as operações de mensagens que ele deve reaplicar na recuperação.
+     * A entrada de membros e a remoção de comunidades são reaplicadas pelas operações de comunidades.
+     *
+     * @param journal Journal de mutações do sistema.
+     */
+    @Override
+    public void registrarOperacoes(Journal journal) {
+        journal.registrarOperacao("enviarMensagem", args -> {
+            if (comunidadeService.buscarComunidade(args[1]) != null) {
+                postar(args[1], args[2]);
+            }
+        });
+        journal.registrarOperacao("enviarMensagens", this::postarNasComunidades);
+        journal.registrarOperacao("lerMensagem", args -> retirar(args[0]));
+        journal.registrarOperacao("lerMensagens", args -> retirar(args[0], Integer.parseInt(args[1])));
+        journal.registrarOperacao("removerMensagens", args -> aplicarRemoverMensagens(args[0]));
+    }
+
+    /**
+     * Lê a próxima mensagem disponível para o usuário autenticado.
+     * A mensagem é removida da fila após leitura.
      *
-     * @param idSessao ID da sesso do usurio.
+     * @param idSessao ID da sessão do usuário.
      * @return O texto da mensagem lida.
-     * @throws UsuarioException Se a sesso for invlida.
-     * @throws NaoHaMensagensException Se no houver mensagens para o usurio.
+     * @throws UsuarioException Se a sessão for inválida.
+     * @throws NaoHaMensagensException Se não houver mensagens para o usuário.
      */
     public String lerMensagem(String idSessao) throws UsuarioException {
         Usuario usuario = sessaoService.getUsuarioPorSessao(idSessao);
-        Queue<Mensagem> mensagensUsuario = mensagens.get(usuario.getLogin());
+        Mensagem mensagem = retirar(usuario.getLogin());
 
-        if (mensagensUsuario == null || mensagensUsuario.isEmpty()) {
+        if (mensagem == null) {
             throw new NaoHaMensagensException();
         }
 
-        Mensagem mensagem = mensagensUsuario.poll();
-        saveMensagensToFile();
+        persistir("lerMensagem", usuario.getLogin());
 
         return mensagem.getMensagem();
     }
 
+    /**
+     * Lê de uma vez várias mensagens do usuário autenticado, com uma única consulta da sessão e uma única
+     * mutação persistida, em vez de uma por mensagem.
+     *
+     * @param idSessao ID da sessão do usuário.
+     * @param max Quantidade máxima de mensagens a ler.
+     * @return Os textos das mensagens lidas, da mais antiga à mais recente; vazia, sem exceção, se não houver mensagens.
+     * @throws UsuarioException Se a sessão for inválida.
+     */
+    public List<String> lerMensagens(String idSessao, int max) throws UsuarioException {
+        String login = sessaoService.getUsuarioPorSessao(idSessao).getLogin();
+
+        List<String> lidas = retirar(login, max);
+        if (!lidas.isEmpty()) {
+            persistir("lerMensagens", login, String.valueOf(lidas.size()));
+        }
+        return lidas;
+    }
+
+    /**
+     * Retira as mensagens mais antigas do usuário, até a quantidade informada.
+     *
+     * @param login Login do usuário.
+     * @param max Quantidade máxima de mensagens.
+     * @return Os textos das mensagens retiradas, em ordem.
+     */
+    private List<String> retirar(String login, int max) {
+        List<String> lidas = new ArrayList<>(Math.min(Math.max(max, 0), 64));
+        while (lidas.size() < max) {
+            Mensagem mensagem = retirar(login);
+            if (mensagem == null) {
+                break;
+            }
+            lidas.add(mensagem.getMensagem());
+        }
+        return lidas;
+    }
+
+    /**
+     * Retira a mensagem mais antiga do usuário: a de menor sequência entre a sua fila e os logs das suas
+     * comunidades, a partir dos seus cursores.
+     *
+     * @param login Login do usuário.
+     * @return A mensagem retirada, ou {@code null} se o usuário já leu todas.
+     */
+    private Mensagem retirar(String login) {
+        carregamento.garantir();
+        Queue<Mensagem> fila = mensagens.get(login);
+        Mensagem escolhida = fila != null ? fila.peek() : null;
+        String comunidade = null;
+
+        Map<String, Long> cursoresUsuario = cursores.get(login);
+        if (cursoresUsuario != null) {
+            for (Map.Entry<String, Long> cursor : cursoresUsuario.entrySet()) {
+                LogMensagens log = logs.get(cursor.getKey());
+                Mensagem proxima = log != null ? log.proxima(cursor.getValue()) : null;
+                if (proxima != null && (escolhida == null || proxima.getSequencia() < escolhida.getSequencia())) {
+                    escolhida = proxima;
+                    comunidade = cursor.getKey();
+                }
+            }
+        }
+
+        if (escolhida == null) {
+            return null;
+        }
+        if (comunidade == null) {
+            fila.poll();
+            filasAlteradas.marcar(login);
+        } else {
+            logs.get(comunidade).marcarLida(escolhida);
+            cursoresUsuario.put(comunidade, escolhida.getSequencia() + 1);
+            cursoresAlterados.marcar(login);
+        }
+        return escolhida;
+    }
+
+    /**
+     * Conta as mensagens ainda não lidas do usuário logado, sem retirá-las: as da sua fila e, em cada comunidade,
+     * as do log a partir do seu cursor, com uma busca binária por comunidade (um contador por membro teria de ser
+     * atualizado em todos os membros a cada envio). Sem mensagens, resulta em zero, e não numa exceção como em
+     * {@link #lerMensagem(String)}.
+     *
+     * @param idSessao ID da sessão do usuário.
+     * @return A quantidade de mensagens que o usuário ainda pode ler.
+     * @throws UsuarioException Se a sessão for inválida.
+     */
+    public int contarMensagens(String idSessao) throws UsuarioException {
+        String login = sessaoService.getUsuarioPorSessao(idSessao).getLogin();
+
+        carregamento.garantir();
+        Queue<Mensagem> fila = mensagens.get(login);
+        int total = fila != null ? fila.size() : 0;
+
+        Map<String, Long> cursoresUsuario = cursores.get(login);
+        if (cursoresUsuario != null) {
+            for (Map.Entry<String, Long> cursor : cursoresUsuario.entrySet()) {
+                LogMensagens log = logs.get(cursor.getKey());
+                if (log != null) {
+                    total += log.contarDesde(cursor.getValue());
+                }
+            }
+        }
+        return total;
+    }
+
     /**
      * Envia uma mensagem para todos os membros de uma comunidade.
      *
-     * @param idSessao ID da sesso do remetente.
+     * @param idSessao ID da sessão do remetente.
      * @param comunidade Nome da comunidade de destino.
-     * @param texto Contedo da mensagem.
-     * @throws UsuarioException Se a sesso for invlida.
-     * @throws ComunidadeNaoExisteException Se a comunidade no existir.
+     * @param texto Conteúdo da mensagem.
+     * @throws UsuarioException Se a sessão for inválida.
+     * @throws ComunidadeNaoExisteException Se a comunidade não existir.
      */
     public void enviarMensagem(String idSessao, String comunidade, String texto)
             throws UsuarioException, ComunidadeNaoExisteException {
         Usuario remetente = sessaoService.getUsuarioPorSessao(idSessao);
-        Set<String> membros = comunidadeService.getMembrosComunidade(comunidade);
+        if (comunidadeService.buscarComunidade(comunidade) == null) {
+            throw new ComunidadeNaoExisteException();
+        }
+
+        carregamento.garantir();
+        // A sequência é atribuída na ordem do journal, para que a recuperação leia as mensagens na mesma ordem.
+        armazenamento.mutacaoOrdenada(this, () -> postar(comunidade, texto),
+                "enviarMensagem", remetente.getLogin(), comunidade, texto);
+    }
+
+    /**
+     * Envia a mesma mensagem a várias comunidades, com uma única consulta da sessão e uma única mutação persistida.
+     * Uma comunidade inexistente não interrompe o envio às demais, e uma comunidade repetida recebe a mensagem
+     * uma única vez.
+     *
+     * @param idSessao ID da sessão do remetente.
+     * @param comunidades Nomes das comunidades, na ordem de envio.
+     * @param texto Conteúdo da mensagem.
+     * @return As comunidades que não receberam a mensagem, com a mensagem do erro de cada uma, na ordem da lista.
+     * @throws UsuarioException Se a sessão for inválida.
+     */
+    public Map<String, String> enviarMensagens(String idSessao, List<String> comunidades, String texto)
+            throws UsuarioException {
+        Usuario remetente = sessaoService.getUsuarioPorSessao(idSessao);
+
+        Map<String, String> falhas = new LinkedHashMap<>();
+        List<String> argumentos = new ArrayList<>(comunidades.size() + 2);
+        argumentos.add(remetente.getLogin());
+        argumentos.add(texto);
+        for (String comunidade : new LinkedHashSet<>(comunidades)) {
+            if (comunidadeService.buscarComunidade(comunidade) == null) {
+                falhas.put(comunidade, new ComunidadeNaoExisteException().getMessage());
+            } else {
+                argumentos.add(comunidade);
+            }
+        }
+
+        if (argumentos.size() > 2) {
+            String[] envio = argumentos.toArray(new String[0]);
+            carregamento.garantir();
+            armazenamento.mutacaoOrdenada(this, () -> postarNasComunidades(envio), "enviarMensagens", envio);
+        }
+        return falhas;
+    }
+
+    /**
+     * Acrescenta a mesma mensagem aos logs de várias comunidades, ignorando as que não existem mais.
+     *
+     * @param envio O login do remetente e o texto da mensagem, seguidos dos nomes das comunidades.
+     */
+    private void postarNasComunidades(String[] envio) {
+        for (int i = 2; i < envio.length; i++) {
+            if (comunidadeService.buscarComunidade(envio[i]) != null) {
+                postar(envio[i], envio[1]);
+            }
+        }
+    }
+
+    /**
+     * Acrescenta uma mensagem ao log da comunidade, com a próxima sequência.
+     *
+     * @param comunidade Nome da comunidade.
+     * @param texto Conteúdo da mensagem.
+     */
+    private void postar(String comunidade, String texto) {
+        carregamento.garantir();
+        logs.computeIfAbsent(comunidade, k -> new LogMensagens())
+                .adicionar(new Mensagem(texto, proximaSequencia.getAndIncrement()));
+        logsAlterados.marcar(comunidade);
+        avisarMembros(comunidade);
+    }
+
+    /**
+     * Avisa os membros assinantes de uma comunidade que chegou uma mensagem. Percorre apenas as assinaturas
+     * ativas, e não os membros: sem assinaturas, não custa nada além da verificação.
+     *
+     * @param comunidade Nome da comunidade, travada pelo remetente.
+     */
+    private void avisarMembros(String comunidade) {
+        if (avisos.isVazio()) {
+            return;
+        }
+        Comunidade destino = comunidadeService.buscarComunidade(comunidade);
+        if (destino == null) {
+            return;
+        }
+        for (String login : avisos.getChaves()) {
+            if (destino.getMembrosComunidade().contains(login)) {
+                avisos.avisar(login);
+            }
+        }
+    }
+
+    /**
+     * Cria a assinatura das mensagens de comunidades do usuário logado: cada mensagem enviada a uma comunidade
+     * de que ele participa é entregue aos assinantes, conforme pedirem, sem que precisem consultar
+     * {@link #lerMensagem(String)}.
+     *
+     * @param idSessao ID da sessão do usuário.
+     * @param retirada Leitura das mensagens do usuário, no modo de concorrência da {@code Facade}.
+     * @return O publicador das mensagens do usuário.
+     * @throws UsuarioException Se a sessão for inválida.
+     */
+    public Flow.Publisher<String> assinarMensagens(String idSessao, PublicadorCaixa.Retirada<String> retirada)
+            throws UsuarioException {
+        String login = sessaoService.getUsuarioPorSessao(idSessao).getLogin();
+        return new PublicadorCaixa<>(login, avisos, retirada);
+    }
+
+    /**
+     * Cria o cursor de um novo membro no log da comunidade, depois das mensagens já enviadas.
+     * Chamado pelo {@link ComunidadeService} ao criar a comunidade ou incluir um membro, com a comunidade travada.
+     *
+     * @param login Login do novo membro.
+     * @param comunidade Nome da comunidade.
+     */
+    public void entrarNaComunidade(String login, String comunidade) {
+        carregamento.garantir();
+        if (abrirCursor(login, comunidade)) {
+            armazenamento.alterado(this);
+        }
+    }
 
-        Mensagem mensagem = new Mensagem(texto, remetente.getLogin(), comunidade);
+    /**
+     * Cria o cursor de um membro no log da comunidade, se ainda não existir.
+     *
+     * @param login Login do membro.
+     * @param comunidade Nome da comunidade.
+     * @return {@code true} se o cursor foi criado.
+     */
+    private boolean abrirCursor(String login, String comunidade) {
+        Map<String, Long> cursoresUsuario = cursores.computeIfAbsent(login, k -> new LinkedHashMap<>());
+        if (cursoresUsuario.containsKey(comunidade)) {
+            return false;
+        }
+
+        LogMensagens log = logs.get(comunidade);
+        if (log == null) {
+            log = new LogMensagens();
+            logs.put(comunidade, log);
+            logsAlterados.marcar(comunidade);
+        }
+        log.adicionarLeitor();
+        cursoresUsuario.put(comunidade, proximaSequencia.get());
+        cursoresAlterados.marcar(login);
+        return true;
+    }
+
+    /**
+     * Descarta o log de uma comunidade removida; as mensagens que cada membro ainda não tinha lido passam
+     * para a fila do membro, de modo que continuam sendo lidas na mesma ordem.
+     * Chamado pelo {@link ComunidadeService} antes de remover a comunidade.
+     *
+     * @param comunidade Nome da comunidade.
+     * @param membros Membros da comunidade.
+     */
+    public void removerComunidade(String comunidade, Collection<String> membros) {
+        carregamento.garantir();
+        LogMensagens log = logs.remove(comunidade);
+        if (log == null) {
+            return;
+        }
+        logsAlterados.marcar(comunidade);
 
         for (String membro : membros) {
-            mensagens.computeIfAbsent(membro, k -> new LinkedList<>()).add(mensagem);
+            Map<String, Long> cursoresMembro = cursores.get(membro);
+            Long cursor = cursoresMembro != null ? cursoresMembro.remove(comunidade) : null;
+            if (cursor == null) {
+                continue;
+            }
+            cursoresAlterados.marcar(membro);
+
+            List<Mensagem> naoLidas = log.desde(cursor);
+            if (!naoLidas.isEmpty()) {
+                List<Mensagem> fila = new ArrayList<>(mensagens.getOrDefault(membro, new LinkedList<>()));
+                fila.addAll(naoLidas);
+                fila.sort(Comparator.comparingLong(Mensagem::getSequencia));
+                mensagens.put(membro, new LinkedList<>(fila));
+                filasAlteradas.marcar(membro);
+            }
         }
+        armazenamento.alterado(this);
+    }
 
-        saveMensagensToFile();
+    /**
+     * Remove as mensagens e os cursores de um usuário removido do sistema.
+     *
+     * @param login Login do usuário.
+     */
+    public void removerMensagens(String login) {
+        aplicarRemoverMensagens(login);
+        persistir("removerMensagens", login);
     }
 
     /**
-     * Salva o mapa de mensagens no arquivo "mensagens.ser".
+     * Fecha os cursores do usuário, liberando as mensagens que só ele ainda não tinha lido, e descarta a sua fila.
+     *
+     * @param login Login do usuário.
+     */
+    private void aplicarRemoverMensagens(String login) {
+        carregamento.garantir();
+        Map<String, Long> cursoresUsuario = cursores.remove(login);
+        if (cursoresUsuario != null) {
+            for (Map.Entry<String, Long> cursor : cursoresUsuario.entrySet()) {
+                LogMensagens log = logs.get(cursor.getKey());
+                if (log != null) {
+                    log.removerLeitor(cursor.getValue());
+                }
+            }
+            cursoresAlterados.marcar(login);
+        }
+        if (mensagens.remove(login) != null) {
+            filasAlteradas.marcar(login);
+        }
+    }
+
+    /**
+     * Persiste uma mutação conforme o armazenamento: nada, regravação do snapshot ou registro no journal.
+     *
+     * @param operacao Nome da operação realizada.
+     * @param argumentos Argumentos necessários para reaplicá-la.
+     */
+    private void persistir(String operacao, String... argumentos) {
+        armazenamento.mutacao(this, operacao, argumentos);
+    }
+
+    /**
+     * Salva no arquivo "mensagens.ser" (ou num segmento incremental) as filas, os logs e os cursores alterados
+     * desde o último checkpoint.
      */
     public void saveMensagensToFile() {
-        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream("mensagens.ser"))) {
-            oos.writeObject(mensagens);
-        } catch (Exception e) {
-            e.printStackTrace();
+        if (!carregamento.isCarregado()) { // Mensagens nunca acessadas não têm alterações a gravar
+            return;
         }
+        snapshot.salvar();
     }
 
     /**
-     * Carrega as mensagens a partir do arquivo "mensagens.ser".
+     * Carrega as mensagens a partir do arquivo "mensagens.ser" e dos seus segmentos incrementais, e refaz a
+     * contagem de leitores de cada log a partir dos cursores.
      *
-     * @return Mapa com as filas de mensagens por usurio.
+     * <p>As filas gravadas antes dos logs de comunidade (a serialização Java, a versão 1 do snapshot e as filas
+     * mapeadas de "mensagens.caixas") passam a ser as filas separadas dos usuários, lidas antes das mensagens
+     * novas; os membros das comunidades existentes ganham um cursor a partir da próxima mensagem.</p>
      */
     @SuppressWarnings("unchecked")
-    private Map<String, Queue<Mensagem>> loadMensagensFromFile() {
-        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream("mensagens.ser"))) {
-            return (Map<String, Queue<Mensagem>>) ois.readObject();
-        } catch (Exception e) {
-            return new LinkedHashMap<>();
+    private void loadMensagensFromFile() {
+        snapshot.carregar(ois -> {
+            mensagens = new ConcurrentHashMap<>((Map<String, Queue<Mensagem>>) ois.readObject());
+            return true;
+        });
+
+        CaixasMapeadas antigas = new CaixasMapeadas("mensagens.caixas", MensagemCodec.TIPO);
+        if (antigas.existe()) {
+            antigas.carregar();
+            for (String login : antigas.getDonos()) {
+                Queue<Mensagem> fila = mensagens.computeIfAbsent(login, k -> new LinkedList<>());
+                for (String texto = antigas.retirar(login); texto != null; texto = antigas.retirar(login)) {
+                    fila.add(new Mensagem(texto, 0));
+                }
+            }
+            snapshot.salvarCompleto();
+            antigas.zerar();
+        }
+
+        recontarLeitores();
+    }
+
+    /**
+     * Refaz, depois do carregamento, a contagem de leitores de cada log e a próxima sequência, e abre os
+     * cursores que faltam aos membros das comunidades (as criadas antes dos logs).
+     */
+    private void recontarLeitores() {
+        long ultima = 0;
+        for (Queue<Mensagem> fila : mensagens.values()) {
+            for (Mensagem mensagem : fila) {
+                ultima = Math.max(ultima, mensagem.getSequencia());
+            }
+        }
+        for (LogMensagens log : logs.values()) {
+            ultima = Math.max(ultima, log.getUltimaSequencia());
+        }
+
+        Map<String, List<Long>> cursoresPorLog = new HashMap<>();
+        for (Map<String, Long> cursoresUsuario : cursores.values()) {
+            for (Map.Entry<String, Long> cursor : cursoresUsuario.entrySet()) {
+                cursoresPorLog.computeIfAbsent(cursor.getKey(), k -> new ArrayList<>()).add(cursor.getValue());
+                ultima = Math.max(ultima, cursor.getValue() - 1);
+            }
+        }
+        proximaSequencia.set(ultima + 1);
+
+        for (Map.Entry<String, LogMensagens> log : logs.entrySet()) {
+            List<Long> cursoresLog = cursoresPorLog.getOrDefault(log.getKey(), Collections.emptyList());
+            long[] ordenados = new long[cursoresLog.size()];
+            for (int i = 0; i < ordenados.length; i++) {
+                ordenados[i] = cursoresLog.get(i);
+            }
+            Arrays.sort(ordenados);
+            log.getValue().recontar(ordenados);
+        }
+
+        for (Comunidade comunidade : comunidadeService.listarComunidades()) {
+            for (String membro : comunidade.getMembrosComunidade()) {
+                if (usuarioService.buscarUsuario(membro) != null) { // Usuários removidos continuam na lista de membros
+                    abrirCursor(membro, comunidade.getNome());
+                }
+            }
         }
     }
 
@@ -111,7 +582,26 @@ public class MensagemService {
      * Remove todas as mensagens do sistema e salva o estado limpo.
      */
     public void zerar() {
+        carregamento.dispensar(); // O conteúdo persistido seria descartado: não há por que lê-lo
         mensagens.clear();
+        logs.clear();
+        cursores.clear();
+        proximaSequencia.set(1);
+        armazenamento.zerado(this);
+    }
+
+    @Override
+    public String getNome() {
+        return "mensagens";
+    }
+
+    @Override
+    public void salvar() {
         saveMensagensToFile();
     }
+
+    @Override
+    public void apagar() {
+        snapshot.salvarCompleto();
+    }
 }
@@ -1,66 +1,135 @@
 package br.ufal.ic.p2.jackut.services;
 
+import br.ufal.ic.p2.jackut.concorrencia.PublicadorCaixa;
 import br.ufal.ic.p2.jackut.models.entities.Recado;
 import br.ufal.ic.p2.jackut.models.entities.Sessao;
 import br.ufal.ic.p2.jackut.models.entities.Usuario;
 import br.ufal.ic.p2.jackut.models.exceptions.*;
 import br.ufal.ic.p2.jackut.models.exceptions.RelacionamentoExceptions.UsuarioEhSeuInimigoException;
+import br.ufal.ic.p2.jackut.persistence.CaixasMapeadas;
+import br.ufal.ic.p2.jackut.persistence.Armazenamento;
+import br.ufal.ic.p2.jackut.persistence.CarregamentoAdiado;
+import br.ufal.ic.p2.jackut.persistence.Journal;
+import br.ufal.ic.p2.jackut.persistence.Repositorio;
+import br.ufal.ic.p2.jackut.persistence.SnapshotIncremental;
+import br.ufal.ic.p2.jackut.persistence.codec.RecadoCodec;
 
-import java.io.*;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Flow;
 
 /**
- * Servio responsvel pelo envio, leitura, remoo e persistncia de recados privados entre usurios.
+ * Serviço responsável pelo envio, leitura, remoção e persistência de recados privados entre usuários.
  */
-public class RecadoService {
+public class RecadoService implements Repositorio {
 
-    /** Mapa que associa logins de usurios s suas caixas de recados. */
-    private Map<String, Recado> recados = new HashMap<>();
+    /** Mapa que associa logins de usuários às suas caixas de recados. */
+    private Map<String, Recado> recados = new ConcurrentHashMap<>();
+
+    /** Snapshot incremental de "recados.ser"; registra quais caixas mudaram desde o último checkpoint. */
+    private final SnapshotIncremental snapshot = new SnapshotIncremental("recados.ser", RecadoCodec.TIPO, RecadoCodec.VERSAO);
+    private final SnapshotIncremental.Secao<Recado> caixasAlteradas = snapshot.secao(() -> recados, carregados -> recados = carregados,
+            RecadoCodec::escreverMapa, RecadoCodec::lerMapa, RecadoCodec::escrever, RecadoCodec::ler);
+
+    /**
+     * Caixas de recados fora do heap, em segmentos mapeados em memória no diretório "recados.caixas"
+     * (com {@code -Djackut.caixas=mapeadas}); nulo quando as caixas ficam no mapa {@link #recados} (padrão).
+     */
+    private CaixasMapeadas caixasMapeadas = CaixasMapeadas.ATIVADAS ? new CaixasMapeadas("recados.caixas", RecadoCodec.TIPO) : null;
+
+    /** Carregamento de "recados.ser", adiado até o primeiro acesso às caixas de recados. */
+    private final CarregamentoAdiado carregamento = new CarregamentoAdiado("recados.ser", this::loadRecadosFromFile);
+
+    /** Avisos de chegada de recados para as assinaturas ativas. */
+    private final PublicadorCaixa.Avisos avisos = new PublicadorCaixa.Avisos();
 
     private UsuarioService usuarioService;
     private SessaoService sessaoService;
     private RelacionamentoService relacionamentoService;
 
+    /** Estratégia de persistência das mutações (memória, snapshot ou journal). */
+    private Armazenamento armazenamento;
+
     /**
-     * Construtor do servio de recados.
+     * Construtor do serviço de recados.
      *
-     * @param usuarioService Servio de gerenciamento de usurios.
-     * @param sessaoService Servio de gerenciamento de sesses.
+     * @param usuarioService Serviço de gerenciamento de usuários.
+     * @param sessaoService Serviço de gerenciamento de sessões.
      */
     public RecadoService(UsuarioService usuarioService, SessaoService sessaoService) {
         this.usuarioService = usuarioService;
         this.sessaoService = sessaoService;
-        this.recados = loadRecadosFromFile();
     }
 
     /**
-     * Define o servio de relacionamentos para verificao de inimigos.
+     * Retorna o carregamento do estado persistido deste serviço.
+     *
+     * @return O carregamento de "recados.ser".
+     */
+    public CarregamentoAdiado getCarregamento() {
+        return carregamento;
+    }
+
+    /**
+     * Define o serviço de relacionamentos para verificação de inimigos.
      *
-     * @param relacionamentoService Servio de relacionamento.
+     * @param relacionamentoService Serviço de relacionamento.
      */
     public void setRelacionamentoService(RelacionamentoService relacionamentoService) {
         this.relacionamentoService = relacionamentoService;
     }
 
     /**
-     * Remove todos os recados de um usurio especfico.
+     * Define o armazenamento que persiste as mutações deste serviço e o registra como repositório.
      *
-     * @param login Login do usurio.
+     * @param armazenamento Armazenamento escolhido na construção da {@code Facade}.
+     */
+    public void setArmazenamento(Armazenamento armazenamento) {
+        this.armazenamento = armazenamento;
+        if (!armazenamento.isPersistente()) {
+            caixasMapeadas = null; // Segmentos mapeados exigem disco: as caixas ficam no heap
+        }
+        armazenamento.registrar(this);
+    }
+
+    /**
+     * Registra no journal as operações de recados que ele deve reaplicar na recuperação.
+     *
+     * @param journal Journal de mutações do sistema.
+     */
+    @Override
+    public void registrarOperacoes(Journal journal) {
+        journal.registrarOperacao("enviarRecado", args -> adicionarNaCaixa(args[0], args[1]));
+        journal.registrarOperacao("enviarRecados", this::adicionarNasCaixas);
+        journal.registrarOperacao("lerRecado", args -> retirarDaCaixa(args[0]));
+        journal.registrarOperacao("lerRecados", args -> retirarDaCaixa(args[0], Integer.parseInt(args[1])));
+        journal.registrarOperacao("removerRecado", args -> limparCaixas());
+    }
+
+    /**
+     * Remove todos os recados de um usuário específico.
+     *
+     * @param login Login do usuário.
      */
     public void removerRecado(String login) {
-        recados.clear();
-        saveRecadosToFile();
+        limparCaixas();
+        persistir("removerRecado", login);
     }
 
     /**
-     * Envia um recado de um usurio logado para outro usurio.
+     * Envia um recado de um usuário logado para outro usuário.
      *
-     * @param idSessao Sesso do remetente.
-     * @param destinatario Login do destinatrio.
+     * @param idSessao Sessão do remetente.
+     * @param destinatario Login do destinatário.
      * @param recado Texto do recado.
-     * @throws UsuarioException Se a sesso for invlida.
-     * @throws UsuarioEhSeuInimigoException Se o destinatrio for inimigo do remetente.
+     * @throws UsuarioException Se a sessão for inválida.
+     * @throws UsuarioEhSeuInimigoException Se o destinatário for inimigo do remetente.
      * @throws UsuarioNaoPodeEnviarRecadoParaSiMesmoException Se o remetente tentar enviar para si mesmo.
      */
     public void enviarRecado(String idSessao, String destinatario, String recado)
@@ -68,7 +137,7 @@ public class RecadoService {
         Usuario remetente = sessaoService.getUsuarioPorSessao(idSessao);
         Usuario recebedor = usuarioService.getUsuario(destinatario);
 
-        if (relacionamentoService.ehInimigo(idSessao, destinatario)) {
+        if (relacionamentoService.ehInimigoPorLogin(remetente.getLogin(), destinatario)) {
             throw new UsuarioEhSeuInimigoException(usuarioService.getAtributoUsuario(destinatario, "nome"));
         }
 
@@ -76,84 +145,299 @@ public class RecadoService {
             throw new UsuarioNaoPodeEnviarRecadoParaSiMesmoException();
         }
 
-        Recado inboxDestinatario = recados.get(destinatario);
-        if (inboxDestinatario == null) {
-            inboxDestinatario = new Recado();
-            recados.put(destinatario, inboxDestinatario);
+        entregar(destinatario, recado);
+    }
+
+    /**
+     * Envia o mesmo recado a vários destinatários, com uma única consulta da sessão e dos inimigos do remetente
+     * e uma única mutação persistida. Um destinatário inválido não interrompe o envio aos demais, e um
+     * destinatário repetido recebe o recado uma única vez.
+     *
+     * @param idSessao Sessão do remetente.
+     * @param destinatarios Logins dos destinatários, na ordem de entrega.
+     * @param recado Texto do recado, compartilhado por todas as caixas.
+     * @return Os destinatários que não receberam o recado, com a mensagem do erro de cada um, na ordem da lista.
+     * @throws UsuarioException Se a sessão for inválida.
+     */
+    public Map<String, String> enviarRecados(String idSessao, List<String> destinatarios, String recado)
+            throws UsuarioException {
+        Usuario remetente = sessaoService.getUsuarioPorSessao(idSessao);
+        Set<String> inimigos = relacionamentoService.getInimigos(remetente.getLogin());
+
+        Map<String, String> falhas = new LinkedHashMap<>();
+        List<String> argumentos = new ArrayList<>(destinatarios.size() + 1);
+        argumentos.add(recado);
+        for (String destinatario : new LinkedHashSet<>(destinatarios)) {
+            try {
+                Usuario recebedor = usuarioService.getUsuario(destinatario);
+                if (inimigos.contains(destinatario)) {
+                    throw new UsuarioEhSeuInimigoException(recebedor.getNome());
+                }
+                if (remetente == recebedor) {
+                    throw new UsuarioNaoPodeEnviarRecadoParaSiMesmoException();
+                }
+                argumentos.add(destinatario);
+            } catch (UsuarioException | UsuarioEhSeuInimigoException e) {
+                falhas.put(destinatario, e.getMessage());
+            }
         }
 
-        inboxDestinatario.adicionarRecado(recado);
-        saveRecadosToFile();
+        if (argumentos.size() > 1) {
+            String[] entrega = argumentos.toArray(new String[0]);
+            carregamento.garantir();
+            armazenamento.mutacaoOrdenada(this, () -> adicionarNasCaixas(entrega), "enviarRecados", entrega);
+        }
+        return falhas;
     }
 
     /**
-     * Envia um recado do sistema Jackut para um usurio (sem sesso).
+     * Envia um recado do sistema Jackut para um usuário (sem sessão).
      *
-     * @param destinatario Login do destinatrio.
+     * @param destinatario Login do destinatário.
      * @param recado Texto do recado.
-     * @throws UsuarioNaoCadastradoException Se o destinatrio no existir.
+     * @throws UsuarioNaoCadastradoException Se o destinatário não existir.
      */
     public void enviarRecadoJackut(String destinatario, String recado)
             throws UsuarioNaoCadastradoException {
         Usuario recebedor = usuarioService.getUsuario(destinatario);
 
-        Recado inboxDestinatario = recados.get(destinatario);
-        if (inboxDestinatario == null) {
-            inboxDestinatario = new Recado();
-            recados.put(destinatario, inboxDestinatario);
+        entregar(destinatario, recado);
+    }
+
+    /**
+     * Adiciona o recado à caixa do destinatário e o persiste. A caixa aceita vários remetentes ao mesmo tempo,
+     * sem a trava do destinatário; o armazenamento registra os envios na ordem em que entraram nas caixas.
+     *
+     * @param destinatario Login do destinatário.
+     * @param recado Texto do recado.
+     */
+    private void entregar(String destinatario, String recado) {
+        carregamento.garantir(); // Fora da exclusão do journal: a primeira leitura das caixas pode ser demorada
+        armazenamento.mutacaoOrdenada(this, () -> adicionarNaCaixa(destinatario, recado), "enviarRecado", destinatario, recado);
+    }
+
+    /**
+     * Adiciona um recado à caixa do destinatário, criando-a se necessário.
+     *
+     * @param destinatario Login do destinatário.
+     * @param recado Texto do recado.
+     */
+    private void adicionarNaCaixa(String destinatario, String recado) {
+        carregamento.garantir();
+        if (caixasMapeadas != null) {
+            caixasMapeadas.adicionar(destinatario, recado);
+        } else {
+            Recado inboxDestinatario = recados.computeIfAbsent(destinatario, login -> new Recado());
+            inboxDestinatario.adicionarRecado(recado);
+            caixasAlteradas.marcar(destinatario);
         }
+        avisos.avisar(destinatario);
+    }
 
-        inboxDestinatario.adicionarRecado(recado);
-        saveRecadosToFile();
+    /**
+     * Adiciona o mesmo recado às caixas de vários destinatários.
+     *
+     * @param entrega O texto do recado, seguido dos logins dos destinatários.
+     */
+    private void adicionarNasCaixas(String[] entrega) {
+        for (int i = 1; i < entrega.length; i++) {
+            adicionarNaCaixa(entrega[i], entrega[0]);
+        }
     }
 
     /**
-     * L o prximo recado disponvel para o usurio logado.
+     * Retira o recado mais antigo da caixa do usuário.
      *
-     * @param idSessao Sesso do usurio.
-     * @return Texto do recado.
-     * @throws UsuarioException Se a sesso for invlida.
-     * @throws NaoHaRecadosException Se no houver recados disponveis.
+     * @param login Login do dono da caixa.
+     * @return O recado retirado, ou {@code null} se a caixa estiver vazia ou não existir.
      */
-    public String lerRecado(String idSessao) throws UsuarioException {
-        Usuario usuario = sessaoService.getUsuarioPorSessao(idSessao);
-        String login = usuario.getLogin();
+    private String retirarDaCaixa(String login) {
+        carregamento.garantir();
+        if (caixasMapeadas != null) {
+            return caixasMapeadas.retirar(login); // Apenas avança o cursor da caixa
+        }
 
         Recado inbox = recados.get(login);
         if (inbox == null) {
-            throw new NaoHaRecadosException();
+            return null;
         }
 
         String mensagem = inbox.lerRecado();
+        if (mensagem != null) {
+            caixasAlteradas.marcar(login);
+        }
+        return mensagem;
+    }
+
+    /**
+     * Retira os recados mais antigos da caixa do usuário, até a quantidade informada.
+     *
+     * @param login Login do dono da caixa.
+     * @param max Quantidade máxima de recados.
+     * @return Os recados retirados, do mais antigo ao mais recente; vazia se a caixa estiver vazia.
+     */
+    private List<String> retirarDaCaixa(String login, int max) {
+        carregamento.garantir();
+        Recado inbox = caixasMapeadas == null ? recados.get(login) : null;
+        if (max <= 0 || (caixasMapeadas == null && inbox == null)) {
+            return Collections.emptyList();
+        }
+
+        List<String> lidos = new ArrayList<>(Math.min(max, 64));
+        while (lidos.size() < max) {
+            String recado = inbox != null ? inbox.lerRecado() : caixasMapeadas.retirar(login);
+            if (recado == null) {
+                break;
+            }
+            lidos.add(recado);
+        }
+        if (inbox != null && !lidos.isEmpty()) {
+            caixasAlteradas.marcar(login);
+        }
+        return lidos;
+    }
+
+    /**
+     * Esvazia todas as caixas de recados.
+     */
+    private void limparCaixas() {
+        carregamento.garantir();
+        if (caixasMapeadas != null) {
+            caixasMapeadas.limpar();
+            return;
+        }
+
+        recados.clear();
+        snapshot.marcarCompleto();
+    }
+
+    /**
+     * Persiste uma mutação conforme o armazenamento: nada, regravação do snapshot ou registro no journal.
+     *
+     * @param operacao Nome da operação realizada.
+     * @param argumentos Argumentos necessários para reaplicá-la.
+     */
+    private void persistir(String operacao, String... argumentos) {
+        armazenamento.mutacao(this, operacao, argumentos);
+    }
+
+    /**
+     * Lê o próximo recado disponível para o usuário logado.
+     *
+     * @param idSessao Sessão do usuário.
+     * @return Texto do recado.
+     * @throws UsuarioException Se a sessão for inválida.
+     * @throws NaoHaRecadosException Se não houver recados disponíveis.
+     */
+    public String lerRecado(String idSessao) throws UsuarioException {
+        Usuario usuario = sessaoService.getUsuarioPorSessao(idSessao);
+        String login = usuario.getLogin();
+
+        String mensagem = retirarDaCaixa(login);
         if (mensagem == null) {
             throw new NaoHaRecadosException();
         }
 
+        persistir("lerRecado", login);
         return mensagem;
     }
 
     /**
-     * Salva os recados no arquivo "recados.ser".
+     * Lê de uma vez vários recados do usuário logado, com uma única consulta da sessão e uma única mutação
+     * persistida, em vez de uma por recado.
+     *
+     * @param idSessao Sessão do usuário.
+     * @param max Quantidade máxima de recados a ler.
+     * @return Os recados lidos, do mais antigo ao mais recente; vazia, sem exceção, se não houver recados.
+     * @throws UsuarioException Se a sessão for inválida.
      */
-    public void saveRecadosToFile() {
-        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream("recados.ser"))) {
-            oos.writeObject(recados);
-        } catch (Exception e) {
-            e.printStackTrace();
+    public List<String> lerRecados(String idSessao, int max) throws UsuarioException {
+        String login = sessaoService.getUsuarioPorSessao(idSessao).getLogin();
+
+        List<String> lidos = retirarDaCaixa(login, max);
+        if (!lidos.isEmpty()) {
+            persistir("lerRecados", login, String.valueOf(lidos.size()));
+        }
+        return lidos;
+    }
+
+    /**
+     * Conta os recados ainda não lidos do usuário logado, sem retirá-los; uma caixa vazia resulta em zero,
+     * e não numa exceção como em {@link #lerRecado(String)}.
+     *
+     * @param idSessao Sessão do usuário.
+     * @return A quantidade de recados na caixa do usuário.
+     * @throws UsuarioException Se a sessão for inválida.
+     */
+    public int contarRecados(String idSessao) throws UsuarioException {
+        String login = sessaoService.getUsuarioPorSessao(idSessao).getLogin();
+
+        carregamento.garantir();
+        if (caixasMapeadas != null) {
+            return caixasMapeadas.contar(login);
         }
+        Recado inbox = recados.get(login);
+        return inbox != null ? inbox.contarRecados() : 0;
     }
 
     /**
-     * Carrega os recados do arquivo "recados.ser".
+     * Cria a assinatura dos recados do usuário logado: cada recado que chega à sua caixa é entregue aos
+     * assinantes, conforme pedirem, sem que precisem consultar {@link #lerRecado(String)}.
      *
-     * @return Mapa de recados carregado do disco.
+     * @param idSessao Sessão do usuário.
+     * @param retirada Leitura dos recados da caixa do usuário, no modo de concorrência da {@code Facade}.
+     * @return O publicador dos recados do usuário.
+     * @throws UsuarioException Se a sessão for inválida.
+     */
+    public Flow.Publisher<String> assinarRecados(String idSessao, PublicadorCaixa.Retirada<String> retirada)
+            throws UsuarioException {
+        String login = sessaoService.getUsuarioPorSessao(idSessao).getLogin();
+        return new PublicadorCaixa<>(login, avisos, retirada);
+    }
+
+    /**
+     * Salva no arquivo "recados.ser" (ou num segmento incremental) as caixas alteradas desde o último checkpoint.
+     */
+    public void saveRecadosToFile() {
+        if (!carregamento.isCarregado()) { // Caixas nunca acessadas não têm alterações a gravar
+            return;
+        }
+
+        if (caixasMapeadas != null) {
+            caixasMapeadas.salvar();
+        } else {
+            snapshot.salvar();
+        }
+    }
+
+    /**
+     * Carrega os recados do arquivo "recados.ser" e dos seus segmentos incrementais.
+     * Com as caixas mapeadas, carrega apenas o índice de cursores; na primeira vez, os recados de "recados.ser"
+     * são transferidos para os segmentos e o arquivo antigo é apagado.
      */
     @SuppressWarnings("unchecked")
-    private Map<String, Recado> loadRecadosFromFile() {
-        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream("recados.ser"))) {
-            return (Map<String, Recado>) ois.readObject();
-        } catch (Exception e) {
-            return new HashMap<>();
+    private void loadRecadosFromFile() {
+        if (caixasMapeadas != null && caixasMapeadas.existe()) {
+            caixasMapeadas.carregar();
+            return;
+        }
+
+        snapshot.carregar(ois -> {
+            recados = new ConcurrentHashMap<>((Map<String, Recado>) ois.readObject());
+            return true;
+        });
+
+        if (caixasMapeadas != null) {
+            caixasMapeadas.carregar();
+            for (Map.Entry<String, Recado> caixa : recados.entrySet()) {
+                String recado;
+                while ((recado = caixa.getValue().lerRecado()) != null) {
+                    caixasMapeadas.adicionar(caixa.getKey(), recado);
+                }
+            }
+            recados.clear();
+            caixasMapeadas.salvar();
+            snapshot.apagar();
         }
     }
 
@@ -161,7 +445,28 @@ public class RecadoService {
      * Remove todos os recados do sistema e salva o estado limpo.
      */
     public void zerar() {
+        carregamento.dispensar(); // O conteúdo persistido seria descartado: não há por que lê-lo
         recados.clear();
+        armazenamento.zerado(this);
+    }
+
+    @Override
+    public String getNome() {
+        return "recados";
+    }
+
+    @Override
+    public void salvar() {
         saveRecadosToFile();
     }
+
+    @Override
+    public void apagar() {
+        if (caixasMapeadas != null) {
+            caixasMapeadas.zerar();
+            snapshot.apagar();
+        } else {
+            snapshot.salvarCompleto();
+        }
+    }
 }
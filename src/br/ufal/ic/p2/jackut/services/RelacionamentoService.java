@@ -1,82 +1,180 @@
 package br.ufal.ic.p2.jackut.services;
 
+import br.ufal.ic.p2.jackut.models.entities.ConjuntoLogins;
+import br.ufal.ic.p2.jackut.models.entities.FiltroBloom;
+import br.ufal.ic.p2.jackut.models.entities.IdsUsuarios;
 import br.ufal.ic.p2.jackut.models.entities.Usuario;
 import br.ufal.ic.p2.jackut.models.exceptions.RelacionamentoExceptions.*;
 import br.ufal.ic.p2.jackut.models.exceptions.UsuarioException;
 import br.ufal.ic.p2.jackut.models.exceptions.UsuarioNaoCadastradoException;
+import br.ufal.ic.p2.jackut.persistence.Armazenamento;
+import br.ufal.ic.p2.jackut.persistence.CarregamentoAdiado;
+import br.ufal.ic.p2.jackut.persistence.Journal;
+import br.ufal.ic.p2.jackut.persistence.Repositorio;
+import br.ufal.ic.p2.jackut.persistence.SnapshotIncremental;
+import br.ufal.ic.p2.jackut.persistence.codec.RelacionamentoCodec;
 
-import java.io.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 /**
- * Servio responsvel pela gesto dos relacionamentos entre usurios: dolos, fs, paqueras e inimigos.
+ * Serviço responsável pela gestão dos relacionamentos entre usuários: ídolos, fãs, paqueras e inimigos.
  */
-public class RelacionamentoService {
+public class RelacionamentoService implements Repositorio {
 
-    /** Mapa que associa cada usurio aos seus dolos. */
-    private Map<String, Set<String>> idolos = new HashMap<>();
+    /** Capacidade mínima do filtro de inimizades, em pares. */
+    private static final int CAPACIDADE_FILTRO = 1024;
 
-    /** Mapa que associa cada dolo aos seus fs. */
-    private Map<String, Set<String>> fas = new HashMap<>();
+    /** Mapa que associa cada usuário aos seus ídolos. */
+    private Map<String, Set<String>> idolos = new ConcurrentHashMap<>();
 
-    /** Mapa que associa cada usurio s suas paqueras. */
-    private Map<String, Set<String>> paqueras = new HashMap<>();
+    /** Mapa que associa cada ídolo aos seus fãs. */
+    private Map<String, Set<String>> fas = new ConcurrentHashMap<>();
 
-    /** Mapa que associa cada usurio aos seus inimigos. */
-    private Map<String, Set<String>> inimigos = new HashMap<>();
+    /** Mapa que associa cada usuário às suas paqueras. */
+    private Map<String, Set<String>> paqueras = new ConcurrentHashMap<>();
+
+    /** Mapa que associa cada usuário aos seus inimigos. */
+    private Map<String, Set<String>> inimigos = new ConcurrentHashMap<>();
+
+    /**
+     * Filtro de Bloom dos pares (usuário, inimigo) de {@link #inimigos}, consultado antes do mapa: a resposta
+     * comum, "não é inimigo", sai do filtro sem nenhuma busca em mapa. Substituído por um filtro com o dobro
+     * dos pares quando enche; incluído e substituído sob a trava do serviço.
+     */
+    private volatile FiltroBloom filtroInimigos = new FiltroBloom(CAPACIDADE_FILTRO);
+
+    /** Pares incluídos em {@link #filtroInimigos}. */
+    private int paresFiltro;
 
     private UsuarioService usuarioService;
     private SessaoService sessaoService;
     private RecadoService recadoService;
 
+    /** Estratégia de persistência das mutações (memória, snapshot ou journal). */
+    private Armazenamento armazenamento;
+
+    /** Snapshot incremental de "relacionamentos.ser", com uma seção para cada mapa de relacionamentos. */
+    private final SnapshotIncremental snapshot = new SnapshotIncremental("relacionamentos.ser", RelacionamentoCodec.TIPO, RelacionamentoCodec.VERSAO);
+    private final SnapshotIncremental.Secao<Set<String>> idolosAlterados = secao(() -> idolos, carregados -> idolos = carregados);
+    private final SnapshotIncremental.Secao<Set<String>> fasAlterados = secao(() -> fas, carregados -> fas = carregados);
+    private final SnapshotIncremental.Secao<Set<String>> paquerasAlteradas = secao(() -> paqueras, carregadas -> paqueras = carregadas);
+    private final SnapshotIncremental.Secao<Set<String>> inimigosAlterados = secao(() -> inimigos, carregados -> inimigos = carregados);
+
+    /** Carregamento de "relacionamentos.ser", executado em paralelo com os demais na inicialização do sistema. */
+    private final CarregamentoAdiado carregamento = new CarregamentoAdiado("relacionamentos.ser", this::carregarRelacionamentos);
+
     /**
-     * Construtor do servio de relacionamentos.
+     * Construtor do serviço de relacionamentos.
      *
-     * @param usuarioService Servio de gerenciamento de usurios.
-     * @param sessaoService Servio de gerenciamento de sesses.
+     * @param usuarioService Serviço de gerenciamento de usuários.
+     * @param sessaoService Serviço de gerenciamento de sessões.
      */
     public RelacionamentoService(UsuarioService usuarioService, SessaoService sessaoService) {
         this.usuarioService = usuarioService;
         this.sessaoService = sessaoService;
-        carregarRelacionamentos();
     }
 
     /**
-     * Define o servio de recados para envio de mensagens entre usurios.
+     * Retorna o carregamento do estado persistido deste serviço, que deve ser executado antes do primeiro uso.
+     *
+     * @return O carregamento de "relacionamentos.ser".
+     */
+    public CarregamentoAdiado getCarregamento() {
+        return carregamento;
+    }
+
+    /**
+     * Define o serviço de recados para envio de mensagens entre usuários.
      *
-     * @param recadoService Servio de gerenciamento de recados.
+     * @param recadoService Serviço de gerenciamento de recados.
      */
     public void setRecadoService(RecadoService recadoService) {
         this.recadoService = recadoService;
     }
 
     /**
-     * Salva os relacionamentos no arquivo "relacionamentos.ser".
+     * Define o armazenamento que persiste as mutações deste serviço e o registra como repositório.
+     *
+     * @param armazenamento Armazenamento escolhido na construção da {@code Facade}.
+     */
+    public void setArmazenamento(Armazenamento armazenamento) {
+        this.armazenamento = armazenamento;
+        armazenamento.registrar(this);
+    }
+
+    /**
+     * Registra no journal as operações de relacionamento que ele deve reaplicar na recuperação.
+     *
+     * @param journal Journal de mutações do sistema.
+     */
+    @Override
+    public void registrarOperacoes(Journal journal) {
+        journal.registrarOperacao("adicionarIdolo", args -> aplicarAdicionarIdolo(args[0], args[1]));
+        journal.registrarOperacao("adicionarPaquera", args -> aplicarAdicionarPaquera(args[0], args[1]));
+        journal.registrarOperacao("adicionarInimigo", args -> aplicarAdicionarInimigo(args[0], args[1]));
+    }
+
+    /**
+     * Persiste uma mutação conforme o armazenamento: nada, regravação do snapshot ou registro no journal.
+     *
+     * @param operacao Nome da operação realizada.
+     * @param argumentos Argumentos necessários para reaplicá-la.
+     */
+    private void persistir(String operacao, String... argumentos) {
+        armazenamento.mutacao(this, operacao, argumentos);
+    }
+
+    /**
+     * Salva no arquivo "relacionamentos.ser" os relacionamentos alterados desde o último checkpoint.
      */
     public void saveRelacionamentoToFile() {
-        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream("relacionamentos.ser"))) {
-            oos.writeObject(idolos);
-            oos.writeObject(fas);
-            oos.writeObject(paqueras);
-            oos.writeObject(inimigos);
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        snapshot.salvar();
     }
 
     /**
-     * Carrega os relacionamentos dos usurios a partir do arquivo "relacionamentos.ser".
+     * Carrega os relacionamentos dos usuários a partir do arquivo "relacionamentos.ser" e dos seus segmentos incrementais.
      */
     @SuppressWarnings("unchecked")
     private void carregarRelacionamentos() {
-        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream("relacionamentos.ser"))) {
-            idolos = (Map<String, Set<String>>) ois.readObject();
-            fas = (Map<String, Set<String>>) ois.readObject();
-            paqueras = (Map<String, Set<String>>) ois.readObject();
-            inimigos = (Map<String, Set<String>>) ois.readObject();
-        } catch (IOException | ClassNotFoundException e) {
-            e.printStackTrace();
-        }
+        snapshot.carregar(ois -> {
+            idolos = converter((Map<String, Set<String>>) ois.readObject());
+            fas = converter((Map<String, Set<String>>) ois.readObject());
+            paqueras = converter((Map<String, Set<String>>) ois.readObject());
+            inimigos = converter((Map<String, Set<String>>) ois.readObject());
+            return true;
+        });
+        reconstruirFiltroInimigos();
+    }
+
+    /**
+     * Converte um mapa lido da serialização Java, com conjuntos {@code HashSet}, para {@link ConjuntoLogins}.
+     *
+     * @param lido Mapa de login para logins relacionados.
+     * @return Um mapa concorrente com os mesmos relacionamentos.
+     */
+    private Map<String, Set<String>> converter(Map<String, Set<String>> lido) {
+        IdsUsuarios ids = usuarioService.getIds();
+        Map<String, Set<String>> convertido = new ConcurrentHashMap<>(Math.max(16, lido.size()));
+        lido.forEach((login, relacionados) -> convertido.put(login, new ConjuntoLogins(ids, relacionados)));
+        return convertido;
+    }
+
+    /**
+     * Adiciona ao snapshot a seção de um dos mapas de relacionamentos.
+     *
+     * @param atual Fornece o mapa atual.
+     * @param definir Substitui o mapa pelo mapa carregado.
+     * @return A seção criada.
+     */
+    private SnapshotIncremental.Secao<Set<String>> secao(Supplier<Map<String, Set<String>>> atual,
+                                                          Consumer<Map<String, Set<String>>> definir) {
+        return snapshot.secao(atual, definir, RelacionamentoCodec::escreverMapa,
+                (in, versao) -> RelacionamentoCodec.lerMapa(in, versao, usuarioService.getIds()),
+                RelacionamentoCodec::escreverConjunto,
+                (in, versao) -> RelacionamentoCodec.lerConjunto(in, versao, usuarioService.getIds()));
     }
 
     /**
@@ -87,72 +185,96 @@ public class RelacionamentoService {
         fas.clear();
         paqueras.clear();
         inimigos.clear();
-        saveRelacionamentoToFile();
+        reconstruirFiltroInimigos();
+        armazenamento.zerado(this);
     }
 
     /**
-     * Verifica se o usurio  f de um dolo.
+     * Verifica se o usuário é fã de um ídolo.
      *
-     * @param login Login do usurio.
-     * @param idolo Login do dolo.
-     * @return true se o usurio for f do dolo, caso contrrio, false.
+     * @param login Login do usuário.
+     * @param idolo Login do ídolo.
+     * @return true se o usuário for fã do ídolo, caso contrário, false.
      */
     public boolean ehFa(String login, String idolo) {
         return idolos.containsKey(login) && idolos.get(login).contains(idolo);
     }
 
     /**
-     * Adiciona um dolo para o usurio logado.
+     * Adiciona um ídolo para o usuário logado.
      *
-     * @param idSessao Sesso do usurio logado.
-     * @param idolo Login do dolo a ser adicionado.
-     * @throws UsuarioException Se houver algum erro relacionado ao usurio, como tentar ser f de si mesmo.
-     * @throws UsuarioEhSeuInimigoException Se o usurio tentar adicionar um inimigo como dolo.
+     * @param idSessao Sessão do usuário logado.
+     * @param idolo Login do ídolo a ser adicionado.
+     * @throws UsuarioException Se houver algum erro relacionado ao usuário, como tentar ser fã de si mesmo.
+     * @throws UsuarioEhSeuInimigoException Se o usuário tentar adicionar um inimigo como ídolo.
      */
     public void adicionarIdolo(String idSessao, String idolo) throws UsuarioException, UsuarioEhSeuInimigoException {
         Usuario usuario = sessaoService.getUsuarioPorSessao(idSessao);
         String login = usuario.getLogin();
 
-        if (this.ehInimigo(idSessao, idolo)) {
+        if (ehInimigoPorLogin(login, idolo)) {
             throw new UsuarioEhSeuInimigoException(usuarioService.getAtributoUsuario(idolo, "nome"));
         }
 
         if (login.equals(idolo)) {
-            throw new UsuarioException("Usurio no pode ser f de si mesmo.");
+            throw new UsuarioException("Usuário não pode ser fã de si mesmo.");
         }
 
         if (usuarioService.getUsuario(idolo) == null) {
-            throw new UsuarioException("Usurio no cadastrado.");
+            throw new UsuarioException("Usuário não cadastrado.");
         }
 
-        // Evitar duplicao
-        idolos.putIfAbsent(login, new HashSet<>());
-        if (!idolos.get(login).add(idolo)) {
-            throw new UsuarioException("Usurio j est adicionado como dolo.");
+        // Evitar duplicação
+        if (ehFa(login, idolo)) {
+            throw new UsuarioException("Usuário já está adicionado como ídolo.");
         }
 
-        // Adiciona o f na lista de fs do dolo
-        fas.putIfAbsent(idolo, new HashSet<>());
-        fas.get(idolo).add(login);
+        aplicarAdicionarIdolo(login, idolo);
+        persistir("adicionarIdolo", login, idolo);
+    }
+
+    /**
+     * Registra o ídolo do usuário e o usuário entre os fãs do ídolo.
+     *
+     * @param login Login do fã.
+     * @param idolo Login do ídolo.
+     */
+    private void aplicarAdicionarIdolo(String login, String idolo) {
+        idolos.computeIfAbsent(login, k -> new ConjuntoLogins(usuarioService.getIds())).add(idolo);
+
+        // Adiciona o fã na lista de fãs do ídolo
+        fas.computeIfAbsent(idolo, k -> new ConjuntoLogins(usuarioService.getIds())).add(login);
+        idolosAlterados.marcar(login);
+        fasAlterados.marcar(idolo);
     }
 
     /**
-     * Retorna os fs de um dolo.
+     * Retorna os fãs de um ídolo.
      *
-     * @param login Login do dolo.
-     * @return Conjunto de fs do dolo.
+     * @param login Login do ídolo.
+     * @return Conjunto de fãs do ídolo.
      */
     public Set<String> getFas(String login) {
-        return fas.getOrDefault(login, new HashSet<>());
+        return fas.getOrDefault(login, Collections.emptySet());
     }
 
     /**
-     * Verifica se dois usurios esto na categoria de "paquera".
+     * Retorna os ídolos de um usuário.
      *
-     * @param idSessao Sesso do usurio logado.
-     * @param paquera Login do usurio que o logado est interessado.
-     * @return true se o usurio est na lista de paqueras, caso contrrio, false.
-     * @throws UsuarioException Se houver um erro no usurio logado.
+     * @param login Login do fã.
+     * @return Conjunto de ídolos do usuário.
+     */
+    public Set<String> getIdolos(String login) {
+        return idolos.getOrDefault(login, Collections.emptySet());
+    }
+
+    /**
+     * Verifica se dois usuários estão na categoria de "paquera".
+     *
+     * @param idSessao Sessão do usuário logado.
+     * @param paquera Login do usuário que o logado está interessado.
+     * @return true se o usuário está na lista de paqueras, caso contrário, false.
+     * @throws UsuarioException Se houver um erro no usuário logado.
      */
     public boolean ehPaquera(String idSessao, String paquera) throws UsuarioException {
         Usuario usuario = sessaoService.getUsuarioPorSessao(idSessao);
@@ -162,20 +284,20 @@ public class RelacionamentoService {
     }
 
     /**
-     * Adiciona um usurio  lista de paqueras de outro usurio.
+     * Adiciona um usuário à lista de paqueras de outro usuário.
      *
-     * @param idSessao Sesso do usurio logado.
-     * @param paquera Login do usurio a ser adicionado como paquera.
-     * @throws UsuarioException Se houver erro relacionado ao usurio, como ser paquera de si mesmo.
-     * @throws UsuarioJaEstaAdicionadoComoPaqueraException Se o usurio j estiver na lista de paqueras.
-     * @throws UsuarioNaoPodeSerPaqueraDeSiMesmoException Se o usurio tentar ser paquera de si mesmo.
-     * @throws UsuarioEhSeuInimigoException Se o usurio tentar adicionar um inimigo como paquera.
+     * @param idSessao Sessão do usuário logado.
+     * @param paquera Login do usuário a ser adicionado como paquera.
+     * @throws UsuarioException Se houver erro relacionado ao usuário, como ser paquera de si mesmo.
+     * @throws UsuarioJaEstaAdicionadoComoPaqueraException Se o usuário já estiver na lista de paqueras.
+     * @throws UsuarioNaoPodeSerPaqueraDeSiMesmoException Se o usuário tentar ser paquera de si mesmo.
+     * @throws UsuarioEhSeuInimigoException Se o usuário tentar adicionar um inimigo como paquera.
      */
     public void adicionarPaquera(String idSessao, String paquera) throws UsuarioException, UsuarioJaEstaAdicionadoComoPaqueraException, UsuarioNaoPodeSerPaqueraDeSiMesmoException, UsuarioEhSeuInimigoException {
         Usuario usuario = sessaoService.getUsuarioPorSessao(idSessao);
         String login = usuario.getLogin();
 
-        if (this.ehInimigo(idSessao, paquera)) {
+        if (ehInimigoPorLogin(login, paquera)) {
             throw new UsuarioEhSeuInimigoException(usuarioService.getAtributoUsuario(paquera, "nome"));
         }
 
@@ -183,7 +305,7 @@ public class RelacionamentoService {
             throw new UsuarioNaoPodeSerPaqueraDeSiMesmoException();
         }
 
-        paqueras.putIfAbsent(login, new HashSet<>());
+        paqueras.putIfAbsent(login, new ConjuntoLogins(usuarioService.getIds()));
         Usuario usuarioPaquera = usuarioService.getUsuario(paquera);
 
         if (usuarioPaquera == null) {
@@ -194,37 +316,60 @@ public class RelacionamentoService {
             throw new UsuarioJaEstaAdicionadoComoPaqueraException();
         }
 
-        paqueras.get(login).add(paquera);
-        paqueras.putIfAbsent(paquera, new HashSet<>());
+        aplicarAdicionarPaquera(login, paquera);
+        persistir("adicionarPaquera", login, paquera);
 
         if (paqueras.get(paquera).contains(login)) {
-            recadoService.enviarRecadoJackut(paquera, usuarioService.getAtributoUsuario(login, "nome") + "  seu paquera - Recado do Jackut.");
-            recadoService.enviarRecadoJackut(login, usuarioService.getAtributoUsuario(paquera, "nome") + "  seu paquera - Recado do Jackut.");
+            recadoService.enviarRecadoJackut(paquera, usuarioService.getAtributoUsuario(login, "nome") + " é seu paquera - Recado do Jackut.");
+            recadoService.enviarRecadoJackut(login, usuarioService.getAtributoUsuario(paquera, "nome") + " é seu paquera - Recado do Jackut.");
         }
     }
 
     /**
-     * Retorna a lista de paqueras de um usurio.
+     * Registra a paquera na lista do usuário.
+     *
+     * @param login Login do usuário.
+     * @param paquera Login da paquera.
+     */
+    private void aplicarAdicionarPaquera(String login, String paquera) {
+        paqueras.computeIfAbsent(login, k -> new ConjuntoLogins(usuarioService.getIds())).add(paquera);
+        paqueras.putIfAbsent(paquera, new ConjuntoLogins(usuarioService.getIds()));
+        paquerasAlteradas.marcar(login);
+        paquerasAlteradas.marcar(paquera);
+    }
+
+    /**
+     * Retorna a lista de paqueras de um usuário.
      *
-     * @param idSessao Sesso do usurio logado.
-     * @return Conjunto de paqueras do usurio.
-     * @throws UsuarioException Se houver erro com o usurio logado.
+     * @param idSessao Sessão do usuário logado.
+     * @return Conjunto de paqueras do usuário.
+     * @throws UsuarioException Se houver erro com o usuário logado.
      */
     public Set<String> getPaqueras(String idSessao) throws UsuarioException {
         Usuario usuario = sessaoService.getUsuarioPorSessao(idSessao);
         String login = usuario.getLogin();
 
-        return paqueras.getOrDefault(login, new HashSet<>());
+        return paqueras.getOrDefault(login, Collections.emptySet());
+    }
+
+    /**
+     * Retorna a lista de paqueras de um usuário a partir do login, sem exigir uma sessão.
+     *
+     * @param login Login do usuário.
+     * @return Conjunto de paqueras do usuário.
+     */
+    public Set<String> getPaquerasDoUsuario(String login) {
+        return paqueras.getOrDefault(login, Collections.emptySet());
     }
 
     /**
-     * Adiciona um inimigo a um usurio.
+     * Adiciona um inimigo a um usuário.
      *
-     * @param idSessao Sesso do usurio logado.
+     * @param idSessao Sessão do usuário logado.
      * @param inimigo Login do inimigo a ser adicionado.
-     * @throws UsuarioException Se houver erro relacionado ao usurio, como adicionar inimigo de si mesmo.
-     * @throws UsuarioJaEstaAdicionadoComoInimigoException Se o usurio j  inimigo.
-     * @throws UsuarioNaoPodeSerInimigoDeSiMesmoException Se o usurio tentar adicionar a si mesmo como inimigo.
+     * @throws UsuarioException Se houver erro relacionado ao usuário, como adicionar inimigo de si mesmo.
+     * @throws UsuarioJaEstaAdicionadoComoInimigoException Se o usuário já é inimigo.
+     * @throws UsuarioNaoPodeSerInimigoDeSiMesmoException Se o usuário tentar adicionar a si mesmo como inimigo.
      */
     public void adicionarInimigo(String idSessao, String inimigo) throws UsuarioException, UsuarioJaEstaAdicionadoComoInimigoException, UsuarioNaoPodeSerInimigoDeSiMesmoException {
         Usuario usuario = sessaoService.getUsuarioPorSessao(idSessao);
@@ -236,13 +381,10 @@ public class RelacionamentoService {
             throw new UsuarioNaoCadastradoException();
         }
 
-        inimigos.putIfAbsent(login, new HashSet<>());
-        Set<String> listaInimizade = inimigos.get(login);
-
-        inimigos.putIfAbsent(inimigo, new HashSet<>());
-        Set<String> listaInimizadeInimigo = inimigos.get(inimigo);
+        inimigos.putIfAbsent(login, new ConjuntoLogins(usuarioService.getIds()));
+        inimigos.putIfAbsent(inimigo, new ConjuntoLogins(usuarioService.getIds()));
 
-        if (ehInimigo(idSessao, inimigo)) {
+        if (ehInimigoPorLogin(login, inimigo)) {
             throw new UsuarioJaEstaAdicionadoComoInimigoException();
         }
 
@@ -250,22 +392,105 @@ public class RelacionamentoService {
             throw new UsuarioNaoPodeSerInimigoDeSiMesmoException();
         }
 
-        listaInimizade.add(inimigo);
-        listaInimizadeInimigo.add(login);
+        aplicarAdicionarInimigo(login, inimigo);
+        persistir("adicionarInimigo", login, inimigo);
+    }
+
+    /**
+     * Registra a inimizade, que é sempre recíproca.
+     *
+     * @param login Login do usuário.
+     * @param inimigo Login do inimigo.
+     */
+    private void aplicarAdicionarInimigo(String login, String inimigo) {
+        inimigos.computeIfAbsent(login, k -> new ConjuntoLogins(usuarioService.getIds())).add(inimigo);
+        inimigos.computeIfAbsent(inimigo, k -> new ConjuntoLogins(usuarioService.getIds())).add(login);
+        inimigosAlterados.marcar(login);
+        inimigosAlterados.marcar(inimigo);
+        incluirNoFiltro(login, inimigo);
+        incluirNoFiltro(inimigo, login);
+    }
+
+    /**
+     * Inclui um par no filtro de inimizades, trocando-o por um maior se a capacidade se esgotar.
+     *
+     * @param login Login do usuário.
+     * @param inimigo Login do inimigo.
+     */
+    private synchronized void incluirNoFiltro(String login, String inimigo) {
+        filtroInimigos.adicionar(login, inimigo);
+        if (++paresFiltro > filtroInimigos.getCapacidade()) {
+            reconstruirFiltroInimigos();
+        }
+    }
+
+    /**
+     * Recria o filtro de inimizades a partir do mapa, com folga para o dobro dos pares; usado também após o
+     * carregamento e o reset. Uma inclusão concorrente espera a trava e entra no filtro novo.
+     */
+    private synchronized void reconstruirFiltroInimigos() {
+        int pares = 0;
+        for (Set<String> inimigosUsuario : inimigos.values()) {
+            pares += inimigosUsuario.size();
+        }
+        FiltroBloom filtro = new FiltroBloom(Math.max(CAPACIDADE_FILTRO, pares * 2));
+        inimigos.forEach((login, inimigosUsuario) -> inimigosUsuario.forEach(inimigo -> filtro.adicionar(login, inimigo)));
+        paresFiltro = pares;
+        filtroInimigos = filtro;
     }
 
     /**
-     * Verifica se dois usurios so inimigos.
+     * Verifica se dois usuários são inimigos.
      *
-     * @param idSessao Sesso do usurio logado.
-     * @param inimigo Login do possvel inimigo.
-     * @return true se forem inimigos, caso contrrio, false.
-     * @throws UsuarioException Se houver erro com a sesso do usurio.
+     * @param idSessao Sessão do usuário logado.
+     * @param inimigo Login do possível inimigo.
+     * @return true se forem inimigos, caso contrário, false.
+     * @throws UsuarioException Se houver erro com a sessão do usuário.
      */
     public boolean ehInimigo(String idSessao, String inimigo) throws UsuarioException {
         Usuario usuario = sessaoService.getUsuarioPorSessao(idSessao);
-        String login = usuario.getLogin();
+        return ehInimigoPorLogin(usuario.getLogin(), inimigo);
+    }
+
+    /**
+     * Verifica se dois usuários são inimigos, para quem já resolveu a sessão. O filtro de Bloom responde
+     * sozinho quando não são; só um "talvez" consulta o mapa de inimigos.
+     *
+     * @param login Login do usuário.
+     * @param inimigo Login do possível inimigo.
+     * @return true se forem inimigos, caso contrário, false.
+     */
+    public boolean ehInimigoPorLogin(String login, String inimigo) {
+        if (inimigo == null || !filtroInimigos.talvezContenha(login, inimigo)) {
+            return false;
+        }
+        Set<String> inimigosUsuario = inimigos.get(login);
+        return inimigosUsuario != null && inimigosUsuario.contains(inimigo);
+    }
+
+    /**
+     * Retorna os inimigos de um usuário, para verificar vários logins com uma única consulta ao mapa.
+     *
+     * @param login Login do usuário.
+     * @return Conjunto somente leitura com os logins dos inimigos; vazio se não houver nenhum.
+     */
+    public Set<String> getInimigos(String login) {
+        Set<String> inimigosUsuario = inimigos.get(login);
+        return inimigosUsuario == null ? Collections.emptySet() : Collections.unmodifiableSet(inimigosUsuario);
+    }
+
+    @Override
+    public String getNome() {
+        return "relacionamentos";
+    }
+
+    @Override
+    public void salvar() {
+        saveRelacionamentoToFile();
+    }
 
-        return inimigos.containsKey(login) && inimigos.get(login).contains(inimigo);
+    @Override
+    public void apagar() {
+        snapshot.salvarCompleto();
     }
 }
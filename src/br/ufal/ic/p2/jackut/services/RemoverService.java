@@ -6,7 +6,7 @@ import br.ufal.ic.p2.jackut.models.exceptions.UsuarioException;
 import br.ufal.ic.p2.jackut.models.exceptions.UsuarioNaoCadastradoException;
 
 /**
- * Servio responsvel por remover um usurio do sistema, incluindo suas associaes com comunidades, amizades e recados.
+ * Serviço responsável por remover um usuário do sistema, incluindo suas associações com comunidades, amizades e recados.
  */
 public class RemoverService {
 
@@ -19,15 +19,15 @@ public class RemoverService {
     private SessaoService sessaoService;
 
     /**
-     * Construtor do servio de remoo de usurio.
+     * Construtor do serviço de remoção de usuário.
      *
-     * @param usuarioService Servio responsvel pelo gerenciamento de usurios.
-     * @param amizadeService Servio responsvel pela gesto de amizades.
-     * @param recadoService Servio responsvel pelo envio e remoo de recados.
-     * @param comunidadeService Servio responsvel pela gesto das comunidades.
-     * @param relacionamentoService Servio responsvel pelos relacionamentos (dolos, fs, paqueras, inimigos).
-     * @param mensagemService Servio responsvel pelo gerenciamento de mensagens.
-     * @param sessaoService Servio responsvel pela gesto de sesses de usurios.
+     * @param usuarioService Serviço responsável pelo gerenciamento de usuários.
+     * @param amizadeService Serviço responsável pela gestão de amizades.
+     * @param recadoService Serviço responsável pelo envio e remoção de recados.
+     * @param comunidadeService Serviço responsável pela gestão das comunidades.
+     * @param relacionamentoService Serviço responsável pelos relacionamentos (ídolos, fãs, paqueras, inimigos).
+     * @param mensagemService Serviço responsável pelo gerenciamento de mensagens.
+     * @param sessaoService Serviço responsável pela gestão de sessões de usuários.
      */
     public RemoverService(UsuarioService usuarioService, AmizadeService amizadeService, RecadoService recadoService,
                           ComunidadeService comunidadeService, RelacionamentoService relacionamentoService,
@@ -42,24 +42,27 @@ public class RemoverService {
     }
 
     /**
-     * Remove um usurio do sistema, incluindo a remoo de suas associaes com comunidades, amizades e recados.
+     * Remove um usuário do sistema, incluindo a remoção de suas associações com comunidades, amizades, recados e mensagens.
      *
-     * @param idSessao Identificador da sesso do usurio logado.
-     * @throws UsuarioException Se ocorrer algum erro relacionado ao usurio durante o processo de remoo.
-     * @throws ComunidadeNaoExisteException Se a comunidade associada ao usurio no existir.
+     * @param idSessao Identificador da sessão do usuário logado.
+     * @throws UsuarioException Se ocorrer algum erro relacionado ao usuário durante o processo de remoção.
+     * @throws ComunidadeNaoExisteException Se a comunidade associada ao usuário não existir.
      */
     public void removerUsuario(String idSessao) throws UsuarioException, ComunidadeNaoExisteException {
-        // Obtm o usurio a partir da sesso ativa.
+        // Obtém o usuário a partir da sessão ativa.
         Usuario usuario = sessaoService.getUsuarioPorSessao(idSessao);
         String login = usuario.getLogin();
 
-        // Remove o usurio da comunidade associada (se existir).
+        // Remove o usuário da comunidade associada (se existir).
         comunidadeService.removerComunidade(login);
 
-        // Remove o usurio do servio de usurios.
+        // Remove o usuário do serviço de usuários.
         usuarioService.removerUsuario(login);
 
-        // Remove os recados relacionados ao usurio.
+        // Remove os recados relacionados ao usuário.
         recadoService.removerRecado(login);
+
+        // Fecha os cursores do usuário nos logs das comunidades e descarta as suas mensagens.
+        mensagemService.removerMensagens(login);
     }
 }
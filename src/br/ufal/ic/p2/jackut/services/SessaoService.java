@@ -1,43 +1,43 @@
 package br.ufal.ic.p2.jackut.services;
 
-import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 import br.ufal.ic.p2.jackut.models.entities.*;
 import br.ufal.ic.p2.jackut.models.exceptions.*;
 
 /**
- * Servio responsvel pelo gerenciamento das sesses dos usurios no sistema.
- * Isso inclui abrir novas sesses, editar perfis e obter informaes sobre o usurio logado.
+ * Serviço responsável pelo gerenciamento das sessões dos usuários no sistema.
+ * Isso inclui abrir novas sessões, editar perfis e obter informações sobre o usuário logado.
  */
 public class SessaoService {
-    private Map<String, Sessao> sessoes = new HashMap<>(); // Mapeia ID da sesso para a Sesso
-    private UsuarioService usuarioService; // Servio para acessar informaes de usurios
+    private Map<String, Sessao> sessoes = new ConcurrentHashMap<>(); // Mapeia ID da sessão para a Sessão
+    private UsuarioService usuarioService; // Serviço para acessar informações de usuários
 
     /**
-     * Construtor do servio de sesses.
+     * Construtor do serviço de sessões.
      *
-     * @param usuarioService Servio responsvel pela manipulao de usurios.
+     * @param usuarioService Serviço responsável pela manipulação de usuários.
      */
     public SessaoService(UsuarioService usuarioService) {
         this.usuarioService = usuarioService;
     }
 
     /**
-     * Abre uma nova sesso para um usurio, verificando o login e senha.
+     * Abre uma nova sessão para um usuário, verificando o login e senha.
      *
-     * @param login O login do usurio que deseja abrir a sesso.
-     * @param senha A senha do usurio.
-     * @return O ID da nova sesso criada.
+     * @param login O login do usuário que deseja abrir a sessão.
+     * @param senha A senha do usuário.
+     * @return O ID da nova sessão criada.
      * @throws LoginSenhaInvalidosException Se o login ou a senha estiverem incorretos.
      */
     public String abrirSessao(String login, String senha) throws LoginSenhaInvalidosException {
-        // Valida se o login e a senha so vlidos
+        // Valida se o login e a senha são válidos
         try {
             Usuario usuario = usuarioService.getUsuario(login);
 
-            // Se o usurio no existir ou a senha no corresponder
+            // Se o usuário não existir ou a senha não corresponder
             if (usuario == null || !usuario.getSenha().equals(senha)) {
                 throw new LoginSenhaInvalidosException();
             }
@@ -46,50 +46,62 @@ public class SessaoService {
             throw new LoginSenhaInvalidosException();
         }
 
-        // Caso o login e senha sejam vlidos, cria a nova sesso
-        String idSessao = UUID.randomUUID().toString(); // Gerar ID nico para a sesso
+        // Caso o login e senha sejam válidos, cria a nova sessão
+        String idSessao = UUID.randomUUID().toString(); // Gerar ID único para a sessão
         Sessao novaSessao = new Sessao(idSessao, login);
-        sessoes.put(idSessao, novaSessao); // Armazena a sesso no mapa de sesses
+        sessoes.put(idSessao, novaSessao); // Armazena a sessão no mapa de sessões
 
-        return idSessao; // Retorna o ID da sesso criada
+        return idSessao; // Retorna o ID da sessão criada
     }
 
     /**
-     * Edita um atributo do perfil do usurio logado.
+     * Edita um atributo do perfil do usuário logado.
      *
-     * @param idSessao O ID da sesso do usurio logado.
+     * @param idSessao O ID da sessão do usuário logado.
      * @param atributo O atributo do perfil que se deseja editar (por exemplo, nome, email).
      * @param valor O novo valor para o atributo.
-     * @throws UsuarioException Se ocorrer algum erro relacionado ao usurio ou sesso.
+     * @throws UsuarioException Se ocorrer algum erro relacionado ao usuário ou sessão.
      */
     public void editarPerfil(String idSessao, String atributo, String valor) throws UsuarioException {
-        Sessao sessao = sessoes.get(idSessao);
+        Sessao sessao = idSessao != null ? sessoes.get(idSessao) : null;
 
         if (sessao == null) {
             throw new UsuarioNaoCadastradoException();
         }
 
-        String login = sessao.getLogin(); // Obtm o login do usurio a partir da sesso
+        String login = sessao.getLogin(); // Obtém o login do usuário a partir da sessão
 
-        Usuario usuario = usuarioService.getUsuario(login); // Obtm o objeto do usurio a partir do login
+        Usuario usuario = usuarioService.getUsuario(login); // Obtém o objeto do usuário a partir do login
 
-        usuario.setAtributo(atributo, valor); // Edita o atributo do usurio
+        usuarioService.editarAtributo(usuario, atributo, valor); // Edita o atributo do usuário
     }
 
     /**
-     * Obtm o usurio associado a uma sesso, caso a sesso seja vlida.
+     * Obtém o usuário associado a uma sessão, caso a sessão seja válida.
      *
-     * @param idSessao O ID da sesso ativa.
-     * @return O usurio associado a essa sesso.
-     * @throws UsuarioException Se a sesso for invlida ou o usurio no for encontrado.
+     * @param idSessao O ID da sessão ativa.
+     * @return O usuário associado a essa sessão.
+     * @throws UsuarioException Se a sessão for inválida ou o usuário não for encontrado.
      */
     public Usuario getUsuarioPorSessao(String idSessao) throws UsuarioException {
-        Sessao sessao = sessoes.get(idSessao); // Obtm a sesso atravs do ID
+        Sessao sessao = idSessao != null ? sessoes.get(idSessao) : null; // Obtém a sessão através do ID
 
         if (sessao == null) {
-            throw new UsuarioNaoCadastradoException(); // Lana exceo se a sesso no for vlida
+            throw new UsuarioNaoCadastradoException(); // Lança exceção se a sessão não for válida
         }
 
-        return usuarioService.getUsuario(sessao.getLogin()); // Retorna o usurio associado a essa sesso
+        return usuarioService.getUsuario(sessao.getLogin()); // Retorna o usuário associado a essa sessão
+    }
+
+    /**
+     * Obtém o login do usuário de uma sessão, sem verificar se o usuário ainda existe.
+     * Usado pela {@code Facade} para decidir quais travas tomar antes da operação.
+     *
+     * @param idSessao O ID da sessão.
+     * @return O login do usuário, ou {@code null} se a sessão não existir.
+     */
+    public String getLogin(String idSessao) {
+        Sessao sessao = idSessao != null ? sessoes.get(idSessao) : null;
+        return sessao != null ? sessao.getLogin() : null;
     }
 }
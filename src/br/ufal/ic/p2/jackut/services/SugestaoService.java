@@ -0,0 +1,296 @@
+package br.ufal.ic.p2.jackut.services;
+
+import br.ufal.ic.p2.jackut.models.entities.GrafoAmizades;
+import br.ufal.ic.p2.jackut.models.entities.IdsUsuarios;
+import br.ufal.ic.p2.jackut.models.entities.Intersecao;
+import br.ufal.ic.p2.jackut.models.entities.Usuario;
+import br.ufal.ic.p2.jackut.models.exceptions.UsuarioNaoCadastradoException;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Serviço de sugestões de amizade: os amigos dos amigos de um usuário, ordenados pela quantidade de amigos em
+ * comum e, no empate, pela quantidade de comunidades em comum. Ficam de fora o próprio usuário, os seus amigos,
+ * os usuários a quem ele enviou convites ainda pendentes, os seus inimigos e os usuários removidos.
+ *
+ * <p>Os amigos dos amigos são lidos do {@link GrafoAmizades}, sem travas: cada linha é copiada para um único
+ * vetor, que é ordenado para contar as repetições (os amigos em comum). Para usuários com
+ * {@link #LIMITE_PARALELO} amigos ou mais, a coleta é dividida em tarefas no {@link ForkJoinPool} comum, e a
+ * ordenação é sempre {@link Arrays#parallelSort(int[])}.</p>
+ *
+ * <p>O resultado de cada usuário fica em cache até que uma alteração possa mudá-lo: uma amizade ou convite
+ * invalida os dois usuários e os amigos de cada um; uma inimizade, os dois usuários; a entrada numa
+ * comunidade, o usuário e os amigos dos seus amigos; a remoção de um usuário ou o reset, todo o cache.</p>
+ */
+public class SugestaoService {
+
+    /** Quantidade de amigos a partir da qual a coleta é feita em paralelo (com {@code -Djackut.sugestoes.paralelo=N}). */
+    public static final int LIMITE_PARALELO = Integer.getInteger("jackut.sugestoes.paralelo", 256);
+
+    /** Quantidade máxima de amigos percorridos por cada tarefa da coleta paralela. */
+    private static final int AMIGOS_POR_TAREFA = 64;
+
+    /** Ordem das sugestões: mais amigos em comum, depois mais comunidades em comum, depois o login. */
+    private static final Comparator<Candidato> ORDEM = Comparator.comparingInt((Candidato c) -> -c.amigosEmComum)
+            .thenComparingInt(c -> -c.comunidadesEmComum)
+            .thenComparing(c -> c.login);
+
+    /** Candidato a sugestão, com a sua pontuação. */
+    private static final class Candidato {
+
+        private final String login;
+        private final int amigosEmComum;
+        private int comunidadesEmComum;
+
+        private Candidato(String login, int amigosEmComum) {
+            this.login = login;
+            this.amigosEmComum = amigosEmComum;
+        }
+    }
+
+    /** Sugestões guardadas de um usuário. */
+    private static final class Sugestoes {
+
+        private final List<String> logins;
+
+        /** Quantidade pedida no cálculo; se vierem menos logins, não há outros candidatos. */
+        private final int quantidade;
+
+        private Sugestoes(List<String> logins, int quantidade) {
+            this.logins = logins;
+            this.quantidade = quantidade;
+        }
+    }
+
+    /** Coleta paralela das linhas dos amigos. */
+    private static final class Coleta extends RecursiveTask<int[]> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient GrafoAmizades grafo;
+        private final int[] amigos;
+        private final int inicio;
+        private final int fim;
+
+        private Coleta(GrafoAmizades grafo, int[] amigos, int inicio, int fim) {
+            this.grafo = grafo;
+            this.amigos = amigos;
+            this.inicio = inicio;
+            this.fim = fim;
+        }
+
+        @Override
+        protected int[] compute() {
+            if (fim - inicio <= AMIGOS_POR_TAREFA) {
+                return coletar(grafo, amigos, inicio, fim);
+            }
+            int meio = (inicio + fim) >>> 1;
+            Coleta esquerda = new Coleta(grafo, amigos, inicio, meio);
+            esquerda.fork();
+            int[] direita = new Coleta(grafo, amigos, meio, fim).compute();
+            return concatenar(esquerda.join(), direita);
+        }
+    }
+
+    private final UsuarioService usuarioService;
+    private final AmizadeService amizadeService;
+    private final RelacionamentoService relacionamentoService;
+
+    /** Sugestões calculadas, por login. */
+    private final Map<String, Sugestoes> cache = new ConcurrentHashMap<>();
+
+    /** Incrementada a cada invalidação, sob a trava do serviço: um cálculo só entra no cache se nenhuma ocorreu durante ele. */
+    private long versao;
+
+    /**
+     * Construtor da classe {@code SugestaoService}.
+     *
+     * @param usuarioService Serviço de usuários.
+     * @param amizadeService Serviço de amizades, dono do grafo.
+     * @param relacionamentoService Serviço de relacionamentos, que conhece os inimigos.
+     */
+    public SugestaoService(UsuarioService usuarioService, AmizadeService amizadeService, RelacionamentoService relacionamentoService) {
+        this.usuarioService = usuarioService;
+        this.amizadeService = amizadeService;
+        this.relacionamentoService = relacionamentoService;
+    }
+
+    /**
+     * Sugere novos amigos a um usuário.
+     *
+     * @param login Login do usuário.
+     * @param quantidade Quantidade máxima de sugestões.
+     * @return Os logins sugeridos, do mais ao menos relevante; vazia se não houver candidatos.
+     * @throws UsuarioNaoCadastradoException Se o usuário não existir.
+     */
+    public List<String> sugerirAmigos(String login, int quantidade) throws UsuarioNaoCadastradoException {
+        Usuario usuario = usuarioService.getUsuario(login);
+        if (quantidade <= 0) {
+            return Collections.emptyList();
+        }
+
+        Sugestoes guardadas = cache.get(login);
+        if (guardadas != null && (guardadas.quantidade >= quantidade || guardadas.logins.size() < guardadas.quantidade)) {
+            return guardadas.logins.subList(0, Math.min(quantidade, guardadas.logins.size()));
+        }
+
+        long inicio;
+        synchronized (this) {
+            inicio = versao;
+        }
+        List<String> logins = calcular(usuario, quantidade);
+        synchronized (this) {
+            if (versao == inicio) {
+                cache.put(login, new Sugestoes(logins, quantidade));
+            }
+        }
+        return logins;
+    }
+
+    /**
+     * Invalida as sugestões afetadas por uma amizade ou um convite entre dois usuários.
+     *
+     * @param login Login de um dos usuários.
+     * @param amigo Login do outro.
+     */
+    public synchronized void invalidarAmizade(String login, String amigo) {
+        versao++;
+        invalidarVizinhanca(login, 1);
+        invalidarVizinhanca(amigo, 1);
+    }
+
+    /**
+     * Invalida as sugestões afetadas pela entrada de um usuário numa comunidade.
+     *
+     * @param login Login do usuário.
+     */
+    public synchronized void invalidarComunidade(String login) {
+        versao++;
+        invalidarVizinhanca(login, 2);
+    }
+
+    /**
+     * Invalida as sugestões afetadas por uma inimizade, que é recíproca: as dos dois usuários.
+     *
+     * @param login Login de quem declarou a inimizade.
+     * @param inimigo Login do inimigo.
+     */
+    public synchronized void invalidarInimizade(String login, String inimigo) {
+        versao++;
+        invalidarVizinhanca(login, 0);
+        invalidarVizinhanca(inimigo, 0);
+    }
+
+    /**
+     * Invalida todas as sugestões; usado na remoção de um usuário e no reset do sistema.
+     */
+    public synchronized void invalidarTudo() {
+        versao++;
+        cache.clear();
+    }
+
+    /**
+     * Remove do cache um usuário e os usuários a até {@code distancia} amizades dele.
+     */
+    private void invalidarVizinhanca(String login, int distancia) {
+        if (login == null) {
+            return;
+        }
+        cache.remove(login);
+        GrafoAmizades grafo = amizadeService.getGrafo();
+        IdsUsuarios tabela = grafo.getTabela();
+        int id = tabela.buscar(login);
+        if (id < 0 || distancia == 0) {
+            return;
+        }
+        for (int amigo : grafo.getAmigos(id)) {
+            invalidarVizinhanca(tabela.login(amigo), distancia - 1);
+        }
+    }
+
+    private List<String> calcular(Usuario usuario, int quantidade) {
+        String login = usuario.getLogin();
+        GrafoAmizades grafo = amizadeService.getGrafo();
+        IdsUsuarios tabela = grafo.getTabela();
+        int id = tabela.buscar(login);
+        if (id < 0) {
+            return Collections.emptyList();
+        }
+
+        int[] amigos = grafo.getAmigos(id);
+        int[] candidatos = amigos.length >= LIMITE_PARALELO
+                ? ForkJoinPool.commonPool().invoke(new Coleta(grafo, amigos, 0, amigos.length))
+                : coletar(grafo, amigos, 0, amigos.length);
+        Arrays.parallelSort(candidatos); // Sequencial abaixo do limite do próprio Arrays
+
+        Set<String> convites = amizadeService.getConvitesEnviados(login);
+        Set<String> inimigos = relacionamentoService.getInimigos(login);
+        List<Candidato> lista = new ArrayList<>();
+        for (int i = 0; i < candidatos.length; ) {
+            int candidato = candidatos[i];
+            int repeticoes = 0;
+            while (i < candidatos.length && candidatos[i] == candidato) {
+                i++;
+                repeticoes++;
+            }
+            if (candidato == id || Arrays.binarySearch(amigos, candidato) >= 0) {
+                continue;
+            }
+            String outro = tabela.login(candidato);
+            if (!convites.contains(outro) && !inimigos.contains(outro)) {
+                lista.add(new Candidato(outro, repeticoes));
+            }
+        }
+
+        // As comunidades só desempatam: bastam os candidatos com tantos amigos em comum quanto o último sugerido.
+        lista.sort(Comparator.comparingInt((Candidato c) -> -c.amigosEmComum));
+        String[] comunidades = usuario.getComunidadesOrdenadas();
+        List<Candidato> escolhidos = new ArrayList<>();
+        for (Candidato candidato : lista) {
+            if (escolhidos.size() >= quantidade && candidato.amigosEmComum < escolhidos.get(quantidade - 1).amigosEmComum) {
+                break;
+            }
+            Usuario outro = usuarioService.buscarUsuario(candidato.login);
+            if (outro == null) {
+                continue; // Removido: as amizades de um usuário removido continuam no grafo
+            }
+            candidato.comunidadesEmComum = Intersecao.contar(comunidades, outro.getComunidadesOrdenadas());
+            escolhidos.add(candidato);
+        }
+
+        escolhidos.sort(ORDEM);
+        List<String> logins = new ArrayList<>(Math.min(quantidade, escolhidos.size()));
+        for (int i = 0; i < escolhidos.size() && i < quantidade; i++) {
+            logins.add(escolhidos.get(i).login);
+        }
+        return Collections.unmodifiableList(logins);
+    }
+
+    /**
+     * Copia para um único vetor as linhas de um intervalo de amigos.
+     */
+    private static int[] coletar(GrafoAmizades grafo, int[] amigos, int inicio, int fim) {
+        int[][] linhas = new int[fim - inicio][];
+        int total = 0;
+        for (int i = inicio; i < fim; i++) {
+            linhas[i - inicio] = grafo.getAmigos(amigos[i]);
+            total += linhas[i - inicio].length;
+        }
+        int[] candidatos = new int[total];
+        int posicao = 0;
+        for (int[] linha : linhas) {
+            System.arraycopy(linha, 0, candidatos, posicao, linha.length);
+            posicao += linha.length;
+        }
+        return candidatos;
+    }
+
+    private static int[] concatenar(int[] a, int[] b) {
+        int[] resultado = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, resultado, a.length, b.length);
+        return resultado;
+    }
+}
@@ -2,81 +2,185 @@ package br.ufal.ic.p2.jackut.services;
 
 import java.util.HashMap;
 import java.util.Map;
-import java.io.*;
 
+import br.ufal.ic.p2.jackut.models.entities.IdsUsuarios;
 import br.ufal.ic.p2.jackut.models.entities.Usuario;
 import br.ufal.ic.p2.jackut.models.exceptions.*;
+import br.ufal.ic.p2.jackut.persistence.ArmazenamentoFragmentado;
+import br.ufal.ic.p2.jackut.persistence.Armazenamento;
+import br.ufal.ic.p2.jackut.persistence.CarregamentoAdiado;
+import br.ufal.ic.p2.jackut.persistence.Journal;
+import br.ufal.ic.p2.jackut.persistence.Repositorio;
+import br.ufal.ic.p2.jackut.persistence.SnapshotIncremental;
+import br.ufal.ic.p2.jackut.persistence.codec.UsuarioCodec;
 
 /**
- * Servio responsvel pela manipulao e persistncia de usurios no sistema.
- * Isso inclui a criao de usurios, remoo, obteno de atributos e persistncia em arquivo.
+ * Serviço responsável pela manipulação e persistência de usuários no sistema.
+ * Isso inclui a criação de usuários, remoção, obtenção de atributos e persistência em arquivo.
  */
-public class UsuarioService {
-    public Map<String, Usuario> usuarios = new HashMap<>(); // Mapeia login para o objeto Usuario
+public class UsuarioService implements Repositorio {
+
+    /** Quantidade de usuários mantidos na memória; os inativos além desse número são lidos do disco quando voltam a ser usados. */
+    private static final int USUARIOS_RESIDENTES = Integer.getInteger("jackut.usuarios.residentes", 100_000);
+
+    /** Usuários particionados pelo login em fragmentos no diretório "usuarios"; só os usuários em uso ficam na memória. */
+    private final ArmazenamentoFragmentado<Usuario> usuarios = new ArmazenamentoFragmentado<>("usuarios", UsuarioCodec.TIPO,
+            UsuarioCodec.VERSAO, UsuarioCodec::escreverMapa, UsuarioCodec::lerMapa, USUARIOS_RESIDENTES);
+    private Armazenamento armazenamento; // Estratégia de persistência das mutações
+
+    /** Identificadores dos logins nos conjuntos de relacionamentos deste sistema; trocada por uma vazia ao zerar. */
+    private volatile IdsUsuarios ids = new IdsUsuarios();
+
+    /** Conversão de "usuarios.ser" (formato anterior, num único arquivo) para os fragmentos, executada na inicialização. */
+    private final CarregamentoAdiado carregamento = new CarregamentoAdiado("usuarios", this::loadUsuariosFromFile);
 
     /**
-     * Construtor que carrega os usurios do arquivo persistido.
+     * Construtor do serviço de usuários. Os usuários persistidos são lidos por {@link #getCarregamento()}.
      */
     public UsuarioService() {
-        usuarios = loadUsuariosFromFile();
     }
 
     /**
-     * Remove um usurio do sistema com base no login.
+     * Remove um usuário do sistema com base no login.
      *
-     * @param login O login do usurio a ser removido.
+     * @param login O login do usuário a ser removido.
      */
     public void removerUsuario(String login) {
-        usuarios.remove(login); // Remove o usurio do mapa
-        saveUsuariosToFile(); // Salva o estado aps a remoo
+        aplicarRemoverUsuario(login); // Remove o usuário do mapa
+        persistir("removerUsuario", login); // Salva o estado após a remoção
     }
 
     /**
-     * Salva todos os usurios persistidos em um arquivo binrio.
+     * Retorna a tabela dos identificadores dos logins, usada por todos os conjuntos de relacionamentos do sistema.
+     *
+     * @return A tabela atual; substituída por uma vazia em {@link #zerar()}.
      */
-    public void saveUsuariosToFile() {
-        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream("usuarios.ser"))) {
-            oos.writeObject(usuarios); // Salva o mapa de usurios no arquivo
-        } catch (Exception e) {
-            e.printStackTrace(); // Em caso de erro, imprime a stack trace
+    public IdsUsuarios getIds() {
+        return ids;
+    }
+
+    /**
+     * Retorna o carregamento do estado persistido deste serviço, que deve ser executado antes do primeiro uso.
+     *
+     * @return O carregamento dos usuários.
+     */
+    public CarregamentoAdiado getCarregamento() {
+        return carregamento;
+    }
+
+    /**
+     * Marca um usuário como alterado, para que seja gravado no próximo checkpoint e não seja despejado da memória antes disso.
+     * Usado pelos serviços que modificam dados guardados no próprio {@link Usuario}, como suas comunidades.
+     *
+     * @param usuario O usuário alterado.
+     */
+    public void marcarAlterado(Usuario usuario) {
+        usuarios.colocar(usuario.getLogin(), usuario);
+    }
+
+    /**
+     * Define o armazenamento que persiste as mutações deste serviço e o registra como repositório.
+     *
+     * @param armazenamento Armazenamento escolhido na construção da {@code Facade}.
+     */
+    public void setArmazenamento(Armazenamento armazenamento) {
+        this.armazenamento = armazenamento;
+        if (!armazenamento.isPersistente()) {
+            usuarios.desativarDisco(); // Todos os usuários ficam na memória, sem fragmentos em disco
         }
+        armazenamento.registrar(this);
+    }
+
+    /**
+     * Registra no journal as operações de usuário que ele deve reaplicar na recuperação.
+     *
+     * @param journal Journal de mutações do sistema.
+     */
+    @Override
+    public void registrarOperacoes(Journal journal) {
+        journal.registrarOperacao("criarUsuario", args -> aplicarCriarUsuario(args[0], args[1], args[2]));
+        journal.registrarOperacao("removerUsuario", args -> aplicarRemoverUsuario(args[0]));
+        journal.registrarOperacao("editarPerfil", args -> {
+            Usuario usuario = usuarios.buscar(args[0]);
+            if (usuario != null) {
+                aplicarAtributo(usuario, args[1], args[2]);
+            }
+        });
     }
 
     /**
-     * Carrega os usurios de um arquivo binrio.
+     * Persiste uma mutação conforme o armazenamento: nada, regravação do snapshot ou registro no journal.
      *
-     * @return Um mapa de usurios carregado do arquivo ou um mapa vazio caso no existam dados.
+     * @param operacao Nome da operação realizada.
+     * @param argumentos Argumentos necessários para reaplicá-la.
+     */
+    private void persistir(String operacao, String... argumentos) {
+        armazenamento.mutacao(this, operacao, argumentos);
+    }
+
+    /**
+     * Salva nos fragmentos os usuários alterados desde o último checkpoint.
+     * Em seguida, os usuários inativos que excedem a capacidade deixam a memória.
+     */
+    public void saveUsuariosToFile() {
+        usuarios.salvar(); // Regrava apenas os fragmentos com usuários alterados
+    }
+
+    /**
+     * Converte para os fragmentos os usuários gravados no formato anterior, num único arquivo "usuarios.ser"
+     * (com seus segmentos incrementais ou em serialização Java). Os usuários já fragmentados não são lidos aqui:
+     * cada um é carregado no primeiro acesso.
      */
     @SuppressWarnings("unchecked")
-    private Map<String, Usuario> loadUsuariosFromFile() {
-        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream("usuarios.ser"))) {
-            return (Map<String, Usuario>) ois.readObject(); // Retorna o mapa de usurios carregado
-        } catch (Exception e) {
-            return new HashMap<>(); // Caso no seja possvel carregar, retorna um mapa vazio
+    private void loadUsuariosFromFile() {
+        SnapshotIncremental legado = new SnapshotIncremental("usuarios.ser", UsuarioCodec.TIPO, UsuarioCodec.VERSAO);
+        if (usuarios.existe() || !legado.existe()) {
+            return;
         }
+
+        Map<String, Usuario> anteriores = new HashMap<>();
+        legado.secao(() -> anteriores, anteriores::putAll, UsuarioCodec::escreverMapa, UsuarioCodec::lerMapa, UsuarioCodec::escrever, UsuarioCodec::ler);
+        legado.carregar(ois -> {
+            anteriores.putAll((Map<String, Usuario>) ois.readObject()); // Snapshot antigo, em serialização Java
+            return true;
+        });
+
+        anteriores.forEach(usuarios::colocar);
+        usuarios.salvar();
+        legado.apagar();
     }
 
     /**
-     * Limpa todos os usurios e salva o estado vazio no arquivo.
+     * Limpa todos os usuários, da memória e do disco.
      */
     public void zerar() {
-        usuarios.clear(); // Limpa todos os usurios do mapa
-        saveUsuariosToFile(); // Salva o estado vazio no arquivo
+        usuarios.limpar(); // Remove todos os usuários da memória
+        ids = new IdsUsuarios(); // Antes dos demais serviços, que recriam o grafo e os conjuntos com a nova tabela
+        armazenamento.zerado(this);
+    }
+
+    /**
+     * Descreve o uso de memória do armazenamento de usuários.
+     *
+     * @return Usuários residentes, leituras do disco e despejos.
+     */
+    public String getEstatisticasArmazenamento() {
+        return usuarios.estatisticas();
     }
 
     /**
-     * Obtm o valor de um atributo de um usurio.
+     * Obtém o valor de um atributo de um usuário.
      *
-     * @param login O login do usurio.
+     * @param login O login do usuário.
      * @param atributo O nome do atributo a ser recuperado (ex: "login", "nome", "senha").
      * @return O valor do atributo requisitado.
-     * @throws UsuarioException Se o usurio no for encontrado ou o atributo no existir.
+     * @throws UsuarioException Se o usuário não for encontrado ou o atributo não existir.
      */
     public String getAtributoUsuario(String login, String atributo) throws UsuarioException {
-        Usuario usuario = usuarios.get(login);
+        Usuario usuario = usuarios.buscar(login);
 
         if (usuario == null) {
-            throw new UsuarioNaoCadastradoException(); // Lana exceo se o usurio no for encontrado
+            throw new UsuarioNaoCadastradoException(); // Lança exceção se o usuário não for encontrado
         }
 
         // Retorna o atributo especificado
@@ -88,53 +192,103 @@ public class UsuarioService {
             case "senha":
                 return usuario.getSenha();
             default:
-                return usuario.getAtributo(atributo); // Obtm outros atributos genricos
+                return usuario.getAtributo(atributo); // Obtém outros atributos genéricos
         }
     }
 
     /**
-     * Cria um novo usurio no sistema.
+     * Cria um novo usuário no sistema.
      *
-     * @param login O login do novo usurio.
-     * @param senha A senha do novo usurio.
-     * @param nome O nome do novo usurio.
-     * @throws UsuarioException Se o login ou senha forem invlidos, ou se o usurio j existir.
+     * @param login O login do novo usuário.
+     * @param senha A senha do novo usuário.
+     * @param nome O nome do novo usuário.
+     * @throws UsuarioException Se o login ou senha forem inválidos, ou se o usuário já existir.
      */
     public void criarUsuario(String login, String senha, String nome) throws UsuarioException {
         if (login == null || login.trim().isEmpty()) {
-            throw new LoginInvalidoException(); // Lana exceo se o login for invlido
+            throw new LoginInvalidoException(); // Lança exceção se o login for inválido
         }
         if (senha == null || senha.trim().isEmpty()) {
-            throw new SenhaInvalidaException(); // Lana exceo se a senha for invlida
+            throw new SenhaInvalidaException(); // Lança exceção se a senha for inválida
         }
 
-        // Verifica se o login j existe
-        if (usuarios.containsKey(login)) {
-            throw new ContaJaExisteNomeException(); // Lana exceo se a conta j existir
+        // Verifica se o login já existe
+        if (usuarios.contem(login)) {
+            throw new ContaJaExisteNomeException(); // Lança exceção se a conta já existir
         }
 
-        // Cria o novo usurio e adiciona ao mapa
-        Usuario novoUsuario = new Usuario(login, senha, nome);
-        usuarios.put(login, novoUsuario);
+        // Cria o novo usuário e adiciona ao mapa
+        aplicarCriarUsuario(login, senha, nome);
 
-        // Persiste os dados do novo usurio
-        saveUsuariosToFile();
+        // Persiste os dados do novo usuário
+        persistir("criarUsuario", login, senha, nome);
     }
 
     /**
-     * Obtm um usurio a partir do login.
+     * Define ou atualiza um atributo do perfil de um usuário e persiste a alteração.
      *
-     * @param login O login do usurio.
+     * @param usuario O usuário cujo perfil será editado.
+     * @param atributo O nome do atributo.
+     * @param valor O novo valor do atributo.
+     */
+    public void editarAtributo(Usuario usuario, String atributo, String valor) {
+        aplicarAtributo(usuario, atributo, valor);
+        persistir("editarPerfil", usuario.getLogin(), atributo, valor);
+    }
+
+    private void aplicarCriarUsuario(String login, String senha, String nome) {
+        ids.id(login); // O identificador denso usado pelos conjuntos de relacionamentos
+        usuarios.colocar(login, new Usuario(login, senha, nome));
+    }
+
+    private void aplicarRemoverUsuario(String login) {
+        usuarios.remover(login);
+    }
+
+    private void aplicarAtributo(Usuario usuario, String atributo, String valor) {
+        usuario.setAtributo(atributo, valor);
+        usuarios.colocar(usuario.getLogin(), usuario);
+    }
+
+    /**
+     * Obtém um usuário a partir do login.
+     *
+     * @param login O login do usuário.
      * @return O objeto Usuario correspondente ao login.
-     * @throws UsuarioNaoCadastradoException Se o usurio no for encontrado.
+     * @throws UsuarioNaoCadastradoException Se o usuário não for encontrado.
      */
     public Usuario getUsuario(String login) throws UsuarioNaoCadastradoException {
-        Usuario usuario = usuarios.get(login);
+        Usuario usuario = usuarios.buscar(login); // Lê o usuário do seu fragmento se ele não estiver na memória
 
         if (usuario == null) {
-            throw new UsuarioNaoCadastradoException(); // Lana exceo se o usurio no for encontrado
+            throw new UsuarioNaoCadastradoException(); // Lança exceção se o usuário não for encontrado
         }
 
         return usuario; // Retorna o objeto Usuario
     }
+
+    /**
+     * Obtém um usuário a partir do login, sem lançar exceção se ele não existir.
+     *
+     * @param login O login do usuário.
+     * @return O usuário, ou {@code null} se não houver usuário com esse login.
+     */
+    public Usuario buscarUsuario(String login) {
+        return usuarios.buscar(login);
+    }
+
+    @Override
+    public String getNome() {
+        return "usuarios";
+    }
+
+    @Override
+    public void salvar() {
+        saveUsuariosToFile();
+    }
+
+    @Override
+    public void apagar() {
+        usuarios.apagar(); // Apaga os fragmentos do disco
+    }
 }
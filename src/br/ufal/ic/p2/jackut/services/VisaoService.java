@@ -0,0 +1,355 @@
+package br.ufal.ic.p2.jackut.services;
+
+import br.ufal.ic.p2.jackut.concorrencia.EscritorUnico;
+import br.ufal.ic.p2.jackut.concorrencia.Travas;
+import br.ufal.ic.p2.jackut.models.entities.Comunidade;
+import br.ufal.ic.p2.jackut.models.entities.ConjuntoLogins;
+import br.ufal.ic.p2.jackut.models.entities.Usuario;
+import br.ufal.ic.p2.jackut.models.exceptions.*;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Visões imutáveis de usuários e comunidades, publicadas pela thread do {@link EscritorUnico} e lidas
+ * sem trava nenhuma pelas consultas da {@code Facade}.
+ *
+ * <p>Cada visão é uma cópia do que as consultas precisam (atributos, amigos, comunidades, fãs, ídolos e paqueras
+ * de um usuário; descrição, dono e membros de uma comunidade), construída na thread escritora e substituída
+ * por inteiro ao fim de cada lote que toca a sua chave, antes que as threads do lote sejam liberadas:
+ * uma consulta feita depois de uma operação já enxerga o seu efeito.</p>
+ *
+ * <p>As visões são criadas no primeiro acesso e mantidas enquanto o sistema não for zerado nem tiver um
+ * usuário removido; a consulta de um usuário inexistente também fica registrada, até que ele seja criado.</p>
+ */
+public class VisaoService {
+
+    /** Visão de um usuário. */
+    private static final class VisaoUsuario {
+
+        /** Visão de um login sem usuário cadastrado. */
+        private static final VisaoUsuario AUSENTE = new VisaoUsuario(null, Collections.emptyList(),
+                Collections.emptySet(), Collections.emptySet(), Collections.emptySet(), Collections.emptySet());
+
+        /** Atributos do perfil, incluindo login, nome e senha; {@code null} se o usuário não existir. */
+        private final Map<String, String> atributos;
+        private final List<String> comunidades;
+        private final Set<String> amigos;
+        private final Set<String> fas;
+        private final Set<String> idolos;
+        private final Set<String> paqueras;
+
+        private VisaoUsuario(Map<String, String> atributos, List<String> comunidades, Set<String> amigos,
+                             Set<String> fas, Set<String> idolos, Set<String> paqueras) {
+            this.atributos = atributos;
+            this.comunidades = comunidades;
+            this.amigos = amigos;
+            this.fas = fas;
+            this.idolos = idolos;
+            this.paqueras = paqueras;
+        }
+    }
+
+    /** Visão de uma comunidade. */
+    private static final class VisaoComunidade {
+
+        /** Visão de um nome sem comunidade cadastrada. */
+        private static final VisaoComunidade AUSENTE = new VisaoComunidade(null, null, Collections.emptySet());
+
+        private final String descricao;
+        private final String dono;
+        private final Set<String> membros;
+
+        private VisaoComunidade(String descricao, String dono, Set<String> membros) {
+            this.descricao = descricao;
+            this.dono = dono;
+            this.membros = membros;
+        }
+    }
+
+    private final UsuarioService usuarioService;
+    private final AmizadeService amizadeService;
+    private final ComunidadeService comunidadeService;
+    private final RelacionamentoService relacionamentoService;
+
+    /** Thread escritora, que constrói as visões ausentes sem disputar o estado com os comandos. */
+    private final EscritorUnico escritor;
+
+    private final Map<String, VisaoUsuario> usuarios = new ConcurrentHashMap<>();
+    private final Map<String, VisaoComunidade> comunidades = new ConcurrentHashMap<>();
+
+    /**
+     * Construtor da classe {@code VisaoService}.
+     *
+     * @param usuarioService Serviço de usuários.
+     * @param amizadeService Serviço de amizades.
+     * @param comunidadeService Serviço de comunidades.
+     * @param relacionamentoService Serviço de relacionamentos.
+     * @param escritor Thread escritora que aplica os comandos da {@code Facade}.
+     */
+    public VisaoService(UsuarioService usuarioService, AmizadeService amizadeService, ComunidadeService comunidadeService,
+                        RelacionamentoService relacionamentoService, EscritorUnico escritor) {
+        this.usuarioService = usuarioService;
+        this.amizadeService = amizadeService;
+        this.comunidadeService = comunidadeService;
+        this.relacionamentoService = relacionamentoService;
+        this.escritor = escritor;
+    }
+
+    /**
+     * Republica as visões já criadas das chaves tocadas por um lote; chamado pela thread escritora ao fim do lote.
+     *
+     * @param chaves Logins e chaves de comunidade ({@link Travas#comunidade(String)}) tocados pelo lote.
+     * @param todas Se o lote alterou o sistema inteiro: todas as visões são descartadas.
+     */
+    public void atualizar(Set<String> chaves, boolean todas) {
+        if (todas) {
+            usuarios.clear();
+            comunidades.clear();
+            return;
+        }
+
+        for (String chave : chaves) {
+            if (usuarios.containsKey(chave)) {
+                usuarios.put(chave, construirUsuario(chave));
+            }
+            String nome = nomeComunidade(chave);
+            if (nome != null && comunidades.containsKey(nome)) {
+                comunidades.put(nome, construirComunidade(nome));
+            }
+        }
+    }
+
+    /**
+     * Retorna um atributo do perfil de um usuário.
+     *
+     * @param login Login do usuário.
+     * @param atributo Nome do atributo ("login", "nome", "senha" ou um atributo do perfil).
+     * @return O valor do atributo.
+     * @throws UsuarioException Se o usuário não existir ou o atributo não estiver preenchido.
+     */
+    public String getAtributoUsuario(String login, String atributo) throws UsuarioException {
+        Map<String, String> atributos = existente(login).atributos;
+        if (!atributos.containsKey(atributo)) {
+            throw new AtributoNaoPreenchidoException();
+        }
+        return atributos.get(atributo);
+    }
+
+    /**
+     * Verifica se dois usuários são amigos.
+     *
+     * @param login Login do usuário.
+     * @param amigo Login do possível amigo.
+     * @return {@code true} se forem amigos.
+     * @throws UsuarioNaoCadastradoException Se o usuário não existir.
+     */
+    public boolean ehAmigo(String login, String amigo) throws UsuarioNaoCadastradoException {
+        existente(login);
+        return amizadeService.getGrafo().ehAmigo(login, amigo); // O grafo é publicado pela thread escritora
+    }
+
+    /**
+     * Retorna os amigos de um usuário.
+     *
+     * @param login Login do usuário.
+     * @return Os logins dos amigos, na ordem em que as amizades foram feitas.
+     * @throws UsuarioNaoCadastradoException Se o usuário não existir.
+     */
+    public Set<String> getAmigos(String login) throws UsuarioNaoCadastradoException {
+        return existente(login).amigos;
+    }
+
+    /**
+     * Retorna as comunidades de um usuário.
+     *
+     * @param login Login do usuário.
+     * @return Os nomes das comunidades, na ordem de entrada.
+     * @throws UsuarioNaoCadastradoException Se o usuário não existir.
+     */
+    public List<String> getComunidades(String login) throws UsuarioNaoCadastradoException {
+        return existente(login).comunidades;
+    }
+
+    /**
+     * Verifica se o usuário é fã de um ídolo.
+     *
+     * @param login Login do usuário.
+     * @param idolo Login do ídolo.
+     * @return {@code true} se o usuário for fã do ídolo.
+     */
+    public boolean ehFa(String login, String idolo) {
+        return usuario(login).idolos.contains(idolo);
+    }
+
+    /**
+     * Retorna os fãs de um usuário.
+     *
+     * @param login Login do ídolo.
+     * @return Os logins dos fãs.
+     */
+    public Set<String> getFas(String login) {
+        return usuario(login).fas;
+    }
+
+    /**
+     * Verifica se um usuário está entre as paqueras de outro.
+     *
+     * @param login Login do usuário.
+     * @param paquera Login da possível paquera.
+     * @return {@code true} se for paquera do usuário.
+     */
+    public boolean ehPaquera(String login, String paquera) {
+        return usuario(login).paqueras.contains(paquera);
+    }
+
+    /**
+     * Retorna as paqueras de um usuário.
+     *
+     * @param login Login do usuário.
+     * @return Os logins das paqueras.
+     */
+    public Set<String> getPaqueras(String login) {
+        return usuario(login).paqueras;
+    }
+
+    /**
+     * Retorna a descrição de uma comunidade.
+     *
+     * @param nome Nome da comunidade.
+     * @return A descrição.
+     * @throws ComunidadeNaoExisteException Se a comunidade não existir.
+     */
+    public String getDescricaoComunidade(String nome) throws ComunidadeNaoExisteException {
+        return existente(nome, comunidade(nome)).descricao;
+    }
+
+    /**
+     * Retorna o dono de uma comunidade.
+     *
+     * @param nome Nome da comunidade.
+     * @return O login do dono.
+     * @throws ComunidadeNaoExisteException Se a comunidade não existir.
+     */
+    public String getDonoComunidade(String nome) throws ComunidadeNaoExisteException {
+        return existente(nome, comunidade(nome)).dono;
+    }
+
+    /**
+     * Retorna os membros de uma comunidade.
+     *
+     * @param nome Nome da comunidade.
+     * @return Os logins dos membros, na ordem de entrada.
+     * @throws ComunidadeNaoExisteException Se a comunidade não existir.
+     */
+    public Set<String> getMembrosComunidade(String nome) throws ComunidadeNaoExisteException {
+        return existente(nome, comunidade(nome)).membros;
+    }
+
+    private VisaoUsuario existente(String login) throws UsuarioNaoCadastradoException {
+        VisaoUsuario visao = usuario(login);
+        if (visao.atributos == null) {
+            throw new UsuarioNaoCadastradoException();
+        }
+        return visao;
+    }
+
+    private VisaoComunidade existente(String nome, VisaoComunidade visao) throws ComunidadeNaoExisteException {
+        if (visao.dono == null) {
+            throw new ComunidadeNaoExisteException();
+        }
+        return visao;
+    }
+
+    /**
+     * Retorna a visão publicada de um usuário, construindo-a na thread escritora se ainda não existir.
+     *
+     * @param login Login do usuário.
+     * @return A visão, ou {@link VisaoUsuario#AUSENTE}.
+     */
+    private VisaoUsuario usuario(String login) {
+        if (login == null) {
+            return VisaoUsuario.AUSENTE;
+        }
+        VisaoUsuario visao = usuarios.get(login);
+        if (visao == null) {
+            visao = escritor.executar(() -> usuarios.computeIfAbsent(login, this::construirUsuario));
+        }
+        return visao;
+    }
+
+    private VisaoComunidade comunidade(String nome) {
+        if (nome == null) {
+            return VisaoComunidade.AUSENTE;
+        }
+        VisaoComunidade visao = comunidades.get(nome);
+        if (visao == null) {
+            visao = escritor.executar(() -> comunidades.computeIfAbsent(nome, this::construirComunidade));
+        }
+        return visao;
+    }
+
+    /**
+     * Copia o estado de um usuário; chamado apenas na thread escritora.
+     *
+     * @param login Login do usuário.
+     * @return A visão do usuário.
+     */
+    private VisaoUsuario construirUsuario(String login) {
+        Usuario usuario = usuarioService.buscarUsuario(login);
+        if (usuario == null) {
+            return VisaoUsuario.AUSENTE;
+        }
+
+        Map<String, String> atributos = new HashMap<>(usuario.getAtributos());
+        atributos.put("login", usuario.getLogin());
+        atributos.put("nome", usuario.getNome());
+        atributos.put("senha", usuario.getSenha());
+
+        Set<String> amigos;
+        try {
+            amigos = amizadeService.getAmigos(login);
+        } catch (UsuarioException e) {
+            amigos = Collections.emptySet();
+        }
+
+        return new VisaoUsuario(Collections.unmodifiableMap(atributos),
+                List.copyOf(usuario.comunidades),
+                copiar(amigos),
+                copiar(relacionamentoService.getFas(login)),
+                copiar(relacionamentoService.getIdolos(login)),
+                copiar(relacionamentoService.getPaquerasDoUsuario(login)));
+    }
+
+    /**
+     * Copia o estado de uma comunidade; chamado apenas na thread escritora.
+     *
+     * @param nome Nome da comunidade.
+     * @return A visão da comunidade.
+     */
+    private VisaoComunidade construirComunidade(String nome) {
+        Comunidade comunidade = comunidadeService.buscarComunidade(nome);
+        if (comunidade == null) {
+            return VisaoComunidade.AUSENTE;
+        }
+        return new VisaoComunidade(comunidade.getDescricao(), comunidade.getloginDono(), copiar(comunidade.getMembrosComunidade()));
+    }
+
+    /**
+     * Copia um conjunto de logins preservando a ordem de iteração.
+     */
+    private Set<String> copiar(Set<String> origem) {
+        return origem.isEmpty() ? Collections.emptySet()
+                : Collections.unmodifiableSet(new ConjuntoLogins(usuarioService.getIds(), origem));
+    }
+
+    /**
+     * Extrai o nome de uma chave de comunidade.
+     *
+     * @return O nome, ou {@code null} se a chave for um login.
+     */
+    private static String nomeComunidade(String chave) {
+        String prefixo = Travas.comunidade("");
+        return chave.startsWith(prefixo) ? chave.substring(prefixo.length()) : null;
+    }
+}
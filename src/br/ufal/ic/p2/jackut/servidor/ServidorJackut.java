@@ -0,0 +1,381 @@
+package br.ufal.ic.p2.jackut.servidor;
+
+import br.ufal.ic.p2.jackut.Facade;
+import br.ufal.ic.p2.jackut.concorrencia.ThreadsVirtuais;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Servidor TCP que expõe a {@link Facade} pelo mesmo protocolo de linhas dos scripts do EasyAccept:
+ * cada linha é um comando {@code nome chave=valor chave="valor com espaços"}, opcionalmente atribuído a uma
+ * variável ({@code s1=abrirSessao login=jpsauve senha=sauvejp}), e os valores podem usar variáveis já
+ * atribuídas na mesma conexão ({@code lerRecado id=${s1}}).
+ *
+ * <p>Cada linha recebe exatamente uma linha de resposta, na ordem: {@code OK}, {@code OK <resultado>} ou
+ * {@code ERRO <mensagem>}. Uma linha com mais de {@link #LIMITE_LINHA} caracteres é descartada, sem ser guardada
+ * inteira na memória, e respondida com um erro; da mesma forma, uma conexão guarda no máximo
+ * {@link #LIMITE_VARIAVEIS} variáveis, e um comando que criaria mais uma é recusado sem ser executado. Linhas
+ * vazias e comentários ({@code #}) não têm resposta, e {@code quit} encerra a conexão. O cliente pode enviar vários comandos sem esperar as respostas: elas são acumuladas e enviadas
+ * juntas quando não há mais nenhum comando já recebido, de modo que um lote de comandos custa uma ida e volta.</p>
+ *
+ * <p>Cada conexão é atendida por uma thread própria, virtual quando a JVM as oferece ({@link ThreadsVirtuais});
+ * os comandos são executados diretamente na {@code Facade}, que pode ser chamada por várias threads no modo de
+ * concorrência escolhido por {@code jackut.concorrencia}.</p>
+ *
+ * <p>O protocolo não tem autenticação de conexões: por padrão, o servidor só aceita conexões da própria máquina
+ * (endereço de loopback), e os métodos administrativos da {@code Facade} não são expostos ({@link TabelaComandos}).</p>
+ *
+ * <p>Uso: {@code java br.ufal.ic.p2.jackut.servidor.ServidorJackut [porta] [endereço]} (padrão: 7070, loopback).
+ * O sistema é encerrado ({@code encerrarSistema}) quando a JVM termina.</p>
+ */
+public class ServidorJackut implements Closeable {
+
+    /** Porta padrão do servidor. */
+    public static final int PORTA_PADRAO = 7070;
+
+    /** Tamanho máximo de uma linha de comando, em caracteres (com {@code -Djackut.servidor.linha=N}). */
+    public static final int LIMITE_LINHA = Integer.getInteger("jackut.servidor.linha", 64 * 1024);
+
+    /** Quantidade máxima de variáveis atribuídas numa conexão (com {@code -Djackut.servidor.variaveis=N}). */
+    public static final int LIMITE_VARIAVEIS = Integer.getInteger("jackut.servidor.variaveis", 1024);
+
+    private final Facade facade;
+    private final TabelaComandos tabela = new TabelaComandos();
+    private final ServerSocket servidor;
+    private final AtomicLong conexoes = new AtomicLong();
+    private final AtomicLong comandos = new AtomicLong();
+    private Thread aceitacao;
+
+    /**
+     * Construtor da classe {@code ServidorJackut}, que aceita apenas conexões da própria máquina.
+     *
+     * @param facade Fachada que executa os comandos.
+     * @param porta Porta TCP; 0 escolhe uma porta livre.
+     * @throws IOException Se a porta não puder ser reservada.
+     */
+    public ServidorJackut(Facade facade, int porta) throws IOException {
+        this(facade, InetAddress.getLoopbackAddress(), porta);
+    }
+
+    /**
+     * Construtor da classe {@code ServidorJackut}; a porta já fica reservada, mas as conexões só são aceitas
+     * depois de {@link #iniciar()}.
+     *
+     * @param facade Fachada que executa os comandos.
+     * @param endereco Endereço local em que o servidor escuta.
+     * @param porta Porta TCP; 0 escolhe uma porta livre.
+     * @throws IOException Se a porta não puder ser reservada.
+     */
+    public ServidorJackut(Facade facade, InetAddress endereco, int porta) throws IOException {
+        this.facade = facade;
+        this.servidor = new ServerSocket();
+        this.servidor.setReuseAddress(true);
+        this.servidor.bind(new InetSocketAddress(endereco, porta));
+    }
+
+    public static void main(String[] args) throws Exception {
+        int porta = args.length > 0 ? Integer.parseInt(args[0]) : PORTA_PADRAO;
+        InetAddress endereco = args.length > 1 ? InetAddress.getByName(args[1]) : InetAddress.getLoopbackAddress();
+        Facade facade = new Facade();
+        ServidorJackut servidor = new ServidorJackut(facade, endereco, porta);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            servidor.close();
+            facade.encerrarSistema();
+        }, "jackut-encerramento"));
+
+        servidor.iniciar();
+        System.out.println("Jackut ouvindo em " + endereco.getHostAddress() + ":" + servidor.getPorta());
+        servidor.aguardar();
+    }
+
+    /**
+     * Retorna a porta em que o servidor aceita conexões.
+     *
+     * @return A porta TCP.
+     */
+    public int getPorta() {
+        return servidor.getLocalPort();
+    }
+
+    /**
+     * Começa a aceitar conexões numa thread própria.
+     */
+    public synchronized void iniciar() {
+        if (aceitacao == null) {
+            aceitacao = new Thread(this::aceitar, "jackut-servidor");
+            aceitacao.start();
+        }
+    }
+
+    /**
+     * Espera o servidor ser fechado.
+     *
+     * @throws InterruptedException Se a thread for interrompida durante a espera.
+     */
+    public void aguardar() throws InterruptedException {
+        Thread thread;
+        synchronized (this) {
+            thread = aceitacao;
+        }
+        if (thread != null) {
+            thread.join();
+        }
+    }
+
+    /**
+     * Descreve o uso do servidor.
+     *
+     * @return Conexões aceitas e comandos executados, numa linha.
+     */
+    public String estatisticas() {
+        return String.format("servidor: %d conexões, %d comandos", conexoes.get(), comandos.get());
+    }
+
+    /**
+     * Para de aceitar conexões; as conexões abertas terminam quando os clientes as fecharem.
+     */
+    @Override
+    public void close() {
+        try {
+            servidor.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void aceitar() {
+        while (!servidor.isClosed()) {
+            try {
+                Socket socket = servidor.accept();
+                ThreadsVirtuais.iniciar("jackut-conexao-" + conexoes.incrementAndGet(), () -> atender(socket));
+            } catch (IOException e) {
+                if (!servidor.isClosed()) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * Atende uma conexão até o cliente fechá-la ou enviar {@code quit}.
+     *
+     * @param socket A conexão.
+     */
+    private void atender(Socket socket) {
+        Map<String, String> variaveis = new HashMap<>();
+        try (socket;
+             BufferedReader entrada = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             Writer saida = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))) {
+            socket.setTcpNoDelay(true);
+            StringBuilder linha = new StringBuilder();
+            int lida;
+            while ((lida = lerLinha(entrada, linha)) != FIM) {
+                String resposta;
+                if (lida == LONGA) {
+                    resposta = "ERRO Linha maior que " + LIMITE_LINHA + " caracteres.";
+                } else {
+                    String texto = linha.toString().trim();
+                    if (texto.isEmpty() || texto.startsWith("#")) {
+                        continue;
+                    }
+                    if (texto.equals("quit")) {
+                        saida.write("OK\n");
+                        break;
+                    }
+                    resposta = executar(texto, variaveis);
+                }
+
+                saida.write(resposta);
+                saida.write('\n');
+                if (!entrada.ready()) { // Nenhum outro comando já recebido: envia as respostas acumuladas
+                    saida.flush();
+                }
+            }
+        } catch (IOException e) {
+            // A conexão foi interrompida pelo cliente.
+        }
+    }
+
+    /** Resultados de {@link #lerLinha(Reader, StringBuilder)}. */
+    private static final int FIM = -1;
+    private static final int LINHA = 0;
+    private static final int LONGA = 1;
+
+    /**
+     * Lê uma linha, terminada por {@code \n}, até {@link #LIMITE_LINHA} caracteres; o restante de uma linha
+     * mais longa é lido e descartado.
+     *
+     * @param entrada A entrada da conexão.
+     * @param linha Onde a linha é guardada, sem a quebra de linha; esvaziado antes da leitura.
+     * @return {@code LINHA}, {@code LONGA} (descartada) ou {@code FIM} se a conexão terminou sem nenhum caractere.
+     * @throws IOException Se a leitura falhar.
+     */
+    private static int lerLinha(Reader entrada, StringBuilder linha) throws IOException {
+        linha.setLength(0);
+        boolean longa = false;
+        int c;
+        while ((c = entrada.read()) != -1 && c != '\n') {
+            if (linha.length() < LIMITE_LINHA) {
+                linha.append((char) c);
+            } else {
+                longa = true;
+            }
+        }
+        if (c == -1 && linha.length() == 0 && !longa) {
+            return FIM;
+        }
+        return longa ? LONGA : LINHA;
+    }
+
+    /**
+     * Executa uma linha do protocolo.
+     *
+     * @param linha O comando, sem espaços nas pontas.
+     * @param variaveis Variáveis atribuídas na conexão.
+     * @return A linha de resposta, sem a quebra de linha.
+     */
+    String executar(String linha, Map<String, String> variaveis) {
+        comandos.incrementAndGet();
+        try {
+            List<String> partes = separar(linha);
+            String nome = partes.get(0);
+            String variavel = null;
+            int igual = nome.indexOf('=');
+            if (igual >= 0) {
+                variavel = nome.substring(0, igual);
+                nome = nome.substring(igual + 1);
+                if (variaveis.size() >= LIMITE_VARIAVEIS && !variaveis.containsKey(variavel)) {
+                    return "ERRO Mais de " + LIMITE_VARIAVEIS + " variáveis na conexão.";
+                }
+            }
+
+            List<String> argumentos = new ArrayList<>(partes.size() - 1);
+            for (String parte : partes.subList(1, partes.size())) {
+                argumentos.add(substituir(parte, variaveis));
+            }
+
+            TabelaComandos.Operacao operacao = tabela.buscar(nome, argumentos.size());
+            if (operacao == null) {
+                return "ERRO Comando desconhecido: " + nome + "/" + argumentos.size();
+            }
+
+            Object resultado = operacao.executar(facade, argumentos);
+            if (variavel != null) {
+                variaveis.put(variavel, String.valueOf(resultado));
+            }
+            return resultado == null ? "OK" : "OK " + umaLinha(String.valueOf(resultado));
+        } catch (Exception e) {
+            String mensagem = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+            return "ERRO " + umaLinha(mensagem);
+        }
+    }
+
+    /**
+     * Separa uma linha no nome do comando e nos valores dos argumentos, como o EasyAccept:
+     * {@code chave=valor} ou {@code chave="valor com espaços"}, com {@code \"} e {@code \\} dentro das aspas.
+     *
+     * @param linha A linha do comando.
+     * @return O nome do comando (com a variável, se houver) seguido dos valores, sem as chaves.
+     * @throws IllegalArgumentException Se houver aspas sem fechamento.
+     */
+    static List<String> separar(String linha) {
+        List<String> partes = new ArrayList<>();
+        int i = 0;
+        int n = linha.length();
+        while (i < n) {
+            while (i < n && Character.isWhitespace(linha.charAt(i))) {
+                i++;
+            }
+            if (i == n) {
+                break;
+            }
+
+            StringBuilder valor = new StringBuilder();
+            boolean primeiro = partes.isEmpty();
+            boolean chave = !primeiro;
+            while (i < n && !Character.isWhitespace(linha.charAt(i))) {
+                char c = linha.charAt(i);
+                if (c == '=' && chave) { // Descarta a chave do argumento
+                    chave = false;
+                    valor.setLength(0);
+                    i++;
+                } else if (c == '"') {
+                    chave = false;
+                    i = lerAspas(linha, i + 1, valor);
+                } else {
+                    valor.append(c);
+                    i++;
+                }
+            }
+            partes.add(valor.toString());
+        }
+        if (partes.isEmpty()) {
+            throw new IllegalArgumentException("Linha vazia.");
+        }
+        return partes;
+    }
+
+    /**
+     * Lê um valor entre aspas.
+     *
+     * @param linha A linha do comando.
+     * @param inicio Posição logo após a aspa inicial.
+     * @param valor Onde o valor é acumulado.
+     * @return A posição logo após a aspa final.
+     */
+    private static int lerAspas(String linha, int inicio, StringBuilder valor) {
+        for (int i = inicio; i < linha.length(); i++) {
+            char c = linha.charAt(i);
+            if (c == '\\' && i + 1 < linha.length()) {
+                valor.append(linha.charAt(++i));
+            } else if (c == '"') {
+                return i + 1;
+            } else {
+                valor.append(c);
+            }
+        }
+        throw new IllegalArgumentException("Aspas sem fechamento.");
+    }
+
+    /**
+     * Substitui as variáveis {@code ${nome}} de um valor.
+     *
+     * @param valor O valor do argumento.
+     * @param variaveis Variáveis atribuídas na conexão.
+     * @return O valor com as variáveis substituídas; variáveis desconhecidas ficam como estão.
+     */
+    private static String substituir(String valor, Map<String, String> variaveis) {
+        int inicio = valor.indexOf("${");
+        if (inicio < 0) {
+            return valor;
+        }
+
+        StringBuilder resultado = new StringBuilder();
+        int atual = 0;
+        while (inicio >= 0) {
+            int fim = valor.indexOf('}', inicio);
+            if (fim < 0) {
+                break;
+            }
+            String substituto = variaveis.get(valor.substring(inicio + 2, fim));
+            resultado.append(valor, atual, inicio).append(substituto != null ? substituto : valor.substring(inicio, fim + 1));
+            atual = fim + 1;
+            inicio = valor.indexOf("${", atual);
+        }
+        return resultado.append(valor, atual, valor.length()).toString();
+    }
+
+    private static String umaLinha(String texto) {
+        return texto.replace("\r\n", " ").replace('\n', ' ').replace('\r', ' ');
+    }
+}
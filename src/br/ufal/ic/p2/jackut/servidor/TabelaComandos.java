@@ -0,0 +1,164 @@
+package br.ufal.ic.p2.jackut.servidor;
+
+import br.ufal.ic.p2.jackut.Facade;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Function;
+
+/**
+ * Tabela dos comandos do protocolo de linhas: cada método público da {@link Facade} vira um comando com o
+ * mesmo nome, resolvido uma única vez, na construção da tabela, para um {@link MethodHandle} já adaptado
+ * para receber os argumentos num vetor. A execução de um comando não usa reflexão: apenas converte os
+ * argumentos de texto e invoca o handle.
+ *
+ * <p>Como no EasyAccept, os argumentos são passados na ordem em que aparecem na linha; os nomes
+ * ({@code login=}, {@code id=}...) servem apenas de documentação. Métodos sobrecarregados são distinguidos
+ * pela quantidade de argumentos. São aceitos parâmetros de texto, inteiros e booleanos; as listas, como os
+ * destinatários de {@code enviarRecados}, já são texto no formato dos conjuntos retornados pela {@code Facade}
+ * ("{a,b,c}"). Métodos que retornam outros objetos, como as assinaturas de recados, não viram comandos: o
+ * resultado não caberia numa linha.</p>
+ *
+ * <p>Os métodos administrativos ({@link #ADMINISTRATIVOS}) também ficam de fora: apagar ou encerrar o sistema e
+ * ler as suas métricas cabe ao processo que hospeda a {@code Facade}, não a qualquer cliente da rede.</p>
+ */
+public class TabelaComandos {
+
+    /** Conversores dos argumentos de texto para cada tipo de parâmetro aceito. */
+    private static final Map<Class<?>, Function<String, Object>> CONVERSORES = Map.of(
+            String.class, texto -> texto,
+            int.class, Integer::valueOf,
+            long.class, Long::valueOf,
+            boolean.class, Boolean::valueOf);
+
+    /** Métodos da {@code Facade} que não viram comandos: os que apagam ou encerram o sistema e os de métricas. */
+    public static final Set<String> ADMINISTRATIVOS = Set.of("zerarSistema", "encerrarSistema",
+            "getRelatorioInicializacao", "getEstatisticasPersistencia", "getEstatisticasConcorrencia");
+
+    /**
+     * Operação resolvida: um método da {@code Facade} e os conversores dos seus parâmetros.
+     */
+    public static final class Operacao {
+
+        private final String nome;
+        private final MethodHandle handle;
+        private final List<Function<String, Object>> conversores;
+
+        private Operacao(String nome, MethodHandle handle, List<Function<String, Object>> conversores) {
+            this.nome = nome;
+            this.handle = handle;
+            this.conversores = conversores;
+        }
+
+        /**
+         * Retorna o nome do comando.
+         *
+         * @return O nome do método da {@code Facade}.
+         */
+        public String getNome() {
+            return nome;
+        }
+
+        /**
+         * Executa o comando sobre uma {@code Facade}.
+         *
+         * @param facade A fachada do sistema.
+         * @param argumentos Os argumentos, em texto, na ordem dos parâmetros.
+         * @return O resultado do método, ou {@code null} se ele não retornar nada.
+         * @throws NumberFormatException Se um argumento numérico não puder ser convertido.
+         * @throws Exception A exceção lançada pelo método da {@code Facade}; um {@link Error} é propagado como está.
+         */
+        public Object executar(Facade facade, List<String> argumentos) throws Exception {
+            Object[] valores = new Object[conversores.size() + 1];
+            valores[0] = facade;
+            for (int i = 0; i < conversores.size(); i++) {
+                valores[i + 1] = conversores.get(i).apply(argumentos.get(i));
+            }
+            try {
+                return (Object) handle.invokeExact(valores);
+            } catch (Exception | Error e) {
+                throw e;
+            } catch (Throwable e) { // Nenhum método da Facade declara outro Throwable
+                throw new UndeclaredThrowableException(e);
+            }
+        }
+    }
+
+    /** Comandos por nome e quantidade de argumentos ("nome/aridade"). */
+    private final Map<String, Operacao> comandos = new HashMap<>();
+
+    /**
+     * Constrói a tabela a partir dos métodos públicos da {@code Facade}, exceto os administrativos.
+     */
+    public TabelaComandos() {
+        MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+        for (Method metodo : Facade.class.getMethods()) {
+            if (metodo.getDeclaringClass() != Facade.class || Modifier.isStatic(metodo.getModifiers())
+                    || ADMINISTRATIVOS.contains(metodo.getName())) {
+                continue;
+            }
+
+            Class<?> retorno = metodo.getReturnType();
+            if (!retorno.isPrimitive() && retorno != String.class) { // void também é primitivo
+                continue;
+            }
+
+            Class<?>[] tipos = metodo.getParameterTypes();
+            List<Function<String, Object>> conversores = new ArrayList<>(tipos.length);
+            for (Class<?> tipo : tipos) {
+                Function<String, Object> conversor = CONVERSORES.get(tipo);
+                if (conversor == null) {
+                    break;
+                }
+                conversores.add(conversor);
+            }
+            if (conversores.size() < tipos.length) {
+                continue;
+            }
+
+            try {
+                MethodHandle handle = lookup.unreflect(metodo);
+                handle = handle.asType(MethodType.genericMethodType(tipos.length + 1)) // Primitivos em caixas; void vira null
+                        .asSpreader(Object[].class, tipos.length + 1);
+                comandos.putIfAbsent(chave(metodo.getName(), tipos.length), new Operacao(metodo.getName(), handle, List.copyOf(conversores)));
+            } catch (IllegalAccessException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Busca o comando com o nome e a quantidade de argumentos informados.
+     *
+     * @param nome Nome do comando.
+     * @param argumentos Quantidade de argumentos.
+     * @return O comando, ou {@code null} se a {@code Facade} não tiver esse método.
+     */
+    public Operacao buscar(String nome, int argumentos) {
+        return comandos.get(chave(nome, argumentos));
+    }
+
+    /**
+     * Retorna os comandos disponíveis, no formato "nome/aridade".
+     *
+     * @return Os comandos, em ordem alfabética.
+     */
+    public Iterable<String> getComandos() {
+        return Collections.unmodifiableSet(new TreeSet<>(comandos.keySet()));
+    }
+
+    private static String chave(String nome, int argumentos) {
+        return nome + "/" + argumentos;
+    }
+}